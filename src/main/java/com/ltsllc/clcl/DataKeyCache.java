@@ -0,0 +1,278 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.clcl;
+
+import com.ltsllc.common.util.Utils;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Data keys for envelope encryption, so the expensive asymmetric {@link Key}
+ * is used once per data key rather than once per message.
+ *
+ * <P>
+ *     A cache belongs to one {@link Key}.  On the writing side the key is a
+ *     public key and {@link #getCurrentKey()} hands out the same data key,
+ *     already wrapped, until the rotation policy says it is time for a new
+ *     one.  On the reading side the key is a private key and
+ *     {@link #unwrap(byte[], byte[])} remembers the data keys it has
+ *     unwrapped, by their IDs, so a data key that was used for many files is
+ *     unwrapped once.
+ * </P>
+ *
+ * <P>
+ *     Each use of a data key is a new {@link EncryptingOutputStream}, with a
+ *     random nonce prefix of its own.  Limiting the uses of a key keeps the
+ *     chance of two streams sharing a prefix negligible.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>key - the key that wraps or unwraps the data keys.</LI>
+ *     <LI>maxAge - the number of milliseconds a data key is used for before it is replaced.</LI>
+ *     <LI>maxUses - the number of times a data key is used before it is replaced.</LI>
+ *     <LI>capacity - the number of unwrapped data keys to remember.</LI>
+ *     <LI>currentKey - the data key handed out by getCurrentKey.</LI>
+ *     <LI>unwrappedKeys - the data keys that have been unwrapped, by ID, least recently used first.</LI>
+ *     <LI>unwrapping - the data keys that are being unwrapped right now, by ID.</LI>
+ * </UL>
+ */
+public class DataKeyCache {
+    /**
+     * A data key along with its ID and its wrapped form.
+     */
+    public static class DataKey {
+        private byte[] id;
+        private SecretKey secretKey;
+        private byte[] wrappedKey;
+        private long created;
+        private long uses;
+
+        public DataKey (byte[] id, SecretKey secretKey, byte[] wrappedKey) {
+            this.id = id;
+            this.secretKey = secretKey;
+            this.wrappedKey = wrappedKey;
+            this.created = System.currentTimeMillis();
+        }
+
+        public byte[] getId() {
+            return id;
+        }
+
+        public SecretKey getSecretKey() {
+            return secretKey;
+        }
+
+        public byte[] getWrappedKey() {
+            return wrappedKey;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public long getUses() {
+            return uses;
+        }
+
+        public void use () {
+            uses++;
+        }
+    }
+
+    public static final int ID_SIZE = 16;
+    public static final long DEFAULT_MAX_AGE = 24 * 60 * 60 * 1000; // one day
+    public static final long DEFAULT_MAX_USES = 1 << 20;
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static SecureRandom ourRandom = new SecureRandom();
+
+    private Key key;
+    private long maxAge;
+    private long maxUses;
+    private int capacity;
+    private DataKey currentKey;
+    private Map<String, SecretKey> unwrappedKeys;
+    private ConcurrentHashMap<String, FutureTask<SecretKey>> unwrapping = new ConcurrentHashMap<String, FutureTask<SecretKey>>();
+
+    public DataKeyCache (Key key) {
+        this(key, DEFAULT_MAX_AGE, DEFAULT_MAX_USES, DEFAULT_CAPACITY);
+    }
+
+    public DataKeyCache (Key key, long maxAge, long maxUses, int capacity) {
+        this.key = key;
+        this.maxAge = maxAge;
+        this.maxUses = maxUses;
+        this.capacity = capacity;
+
+        this.unwrappedKeys = new LinkedHashMap<String, SecretKey>(16, 0.75f, true) {
+            protected boolean removeEldestEntry (Map.Entry<String, SecretKey> eldest) {
+                return size() > getCapacity();
+            }
+        };
+    }
+
+    public Key getKey() {
+        return key;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    public void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    public long getMaxUses() {
+        return maxUses;
+    }
+
+    public void setMaxUses(long maxUses) {
+        this.maxUses = maxUses;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public ConcurrentHashMap<String, FutureTask<SecretKey>> getUnwrapping() {
+        return unwrapping;
+    }
+
+    public synchronized int size () {
+        return unwrappedKeys.size();
+    }
+
+    /**
+     * Create a new data key and wrap it with a key.
+     */
+    public static DataKey createDataKey (Key key) throws EncryptionException {
+        try {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance(EncryptingOutputStream.DATA_ALGORITHM);
+            keyGenerator.init(EncryptingOutputStream.DATA_KEY_SIZE);
+            SecretKey secretKey = keyGenerator.generateKey();
+
+            byte[] id = new byte[ID_SIZE];
+            ourRandom.nextBytes(id);
+
+            byte[] wrappedKey = key.encrypt(secretKey.getEncoded());
+
+            return new DataKey(id, secretKey, wrappedKey);
+        } catch (GeneralSecurityException e) {
+            throw new EncryptionException("Exception trying to create a data key", e);
+        }
+    }
+
+    public synchronized boolean needsRotation () {
+        if (null == currentKey)
+            return true;
+
+        if (currentKey.getUses() >= getMaxUses())
+            return true;
+
+        return System.currentTimeMillis() - currentKey.getCreated() >= getMaxAge();
+    }
+
+    /**
+     * The data key to encrypt with, replacing it first if the rotation
+     * policy says so.
+     *
+     * <P>
+     *     Each call counts as a use of the key.
+     * </P>
+     */
+    public synchronized DataKey getCurrentKey () throws EncryptionException {
+        if (needsRotation())
+            currentKey = createDataKey(getKey());
+
+        currentKey.use();
+
+        return currentKey;
+    }
+
+    /**
+     * Get a data key back from its wrapped form, unwrapping it only if we
+     * have not seen its ID before.
+     *
+     * <P>
+     *     The lock on the cache is only held to look the key up and to add it.
+     *     The unwrapping itself, which uses the asymmetric key, happens outside
+     *     the lock, so threads that need different keys do not wait for each
+     *     other.  Threads that need the same key at the same time share one
+     *     unwrapping through {@link #getUnwrapping()}.
+     * </P>
+     */
+    public SecretKey unwrap (byte[] id, final byte[] wrappedKey) throws EncryptionException {
+        String idString = Utils.bytesToString(id);
+
+        synchronized (this) {
+            SecretKey secretKey = unwrappedKeys.get(idString);
+            if (null != secretKey)
+                return secretKey;
+        }
+
+        FutureTask<SecretKey> task = new FutureTask<SecretKey>(new Callable<SecretKey>() {
+            public SecretKey call() throws EncryptionException {
+                byte[] keyBytes = getKey().decrypt(wrappedKey);
+                return new SecretKeySpec(keyBytes, EncryptingOutputStream.DATA_ALGORITHM);
+            }
+        });
+
+        FutureTask<SecretKey> unwrapping = getUnwrapping().putIfAbsent(idString, task);
+        if (null == unwrapping) {
+            unwrapping = task;
+            task.run();
+        }
+
+        try {
+            SecretKey secretKey = unwrapping.get();
+
+            synchronized (this) {
+                unwrappedKeys.put(idString, secretKey);
+            }
+
+            return secretKey;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EncryptionException)
+                throw (EncryptionException) e.getCause();
+
+            throw new EncryptionException("Exception trying to unwrap a data key", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EncryptionException("Interrupted waiting for a data key", e);
+        } finally {
+            if (unwrapping == task)
+                getUnwrapping().remove(idString, task);
+        }
+    }
+}
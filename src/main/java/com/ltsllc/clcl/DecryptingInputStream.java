@@ -0,0 +1,206 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.clcl;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * An {@link InputStream} that decrypts what an {@link EncryptingOutputStream}
+ * wrote.
+ *
+ * <P>
+ *     The header is read, and the data key unwrapped, when the stream is
+ *     created.  Given a {@link DataKeyCache}, a data key whose ID the cache
+ *     has seen before is not unwrapped again.  After that the stream decrypts one chunk at a time as it is
+ *     read.  A chunk that fails authentication, or a stream that ends
+ *     before its last chunk, causes an {@link IOException}.
+ * </P>
+ */
+public class DecryptingInputStream extends InputStream {
+    public static final int MAX_WRAPPED_KEY_SIZE = 64 * 1024;
+
+    private DataInputStream in;
+    private byte version;
+    private SecretKey dataKey;
+    private byte[] noncePrefix;
+    private int chunkSize;
+    private byte[] chunk;
+    private int chunkPosition;
+    private int chunkNumber;
+    private boolean lastChunkRead;
+
+    public DecryptingInputStream (InputStream in, Key key) throws EncryptionException, IOException {
+        this(in, key, null);
+    }
+
+    public DecryptingInputStream (InputStream in, DataKeyCache dataKeyCache) throws EncryptionException, IOException {
+        this(in, dataKeyCache.getKey(), dataKeyCache);
+    }
+
+    private DecryptingInputStream (InputStream in, Key key, DataKeyCache dataKeyCache)
+            throws EncryptionException, IOException
+    {
+        this.in = new DataInputStream(in);
+
+        byte[] magic = new byte[EncryptingOutputStream.MAGIC.length];
+        this.in.readFully(magic);
+        if (!Arrays.equals(magic, EncryptingOutputStream.MAGIC))
+            throw new IOException("Not an encrypted stream");
+
+        version = this.in.readByte();
+        if (version != EncryptingOutputStream.VERSION && version != EncryptingOutputStream.VERSION_1)
+            throw new IOException("Unsupported encrypted stream version: " + version);
+
+        chunkSize = this.in.readInt();
+
+        byte[] id = null;
+        if (version != EncryptingOutputStream.VERSION_1) {
+            id = new byte[this.in.readUnsignedByte()];
+            this.in.readFully(id);
+        }
+
+        int wrappedKeyLength = this.in.readInt();
+        if (wrappedKeyLength < 1 || wrappedKeyLength > MAX_WRAPPED_KEY_SIZE)
+            throw new IOException("Invalid wrapped key length: " + wrappedKeyLength);
+
+        byte[] wrappedKey = new byte[wrappedKeyLength];
+        this.in.readFully(wrappedKey);
+
+        noncePrefix = new byte[EncryptingOutputStream.NONCE_PREFIX_SIZE];
+        this.in.readFully(noncePrefix);
+
+        if (null != dataKeyCache && null != id) {
+            dataKey = dataKeyCache.unwrap(id, wrappedKey);
+        } else {
+            byte[] keyBytes = key.decrypt(wrappedKey);
+            dataKey = new SecretKeySpec(keyBytes, EncryptingOutputStream.DATA_ALGORITHM);
+        }
+    }
+
+    /**
+     * Does the data start with the {@link EncryptingOutputStream#MAGIC} of an encrypted stream?
+     */
+    public static boolean isEncryptedStream (byte[] prefix, int length) {
+        if (length < EncryptingOutputStream.MAGIC.length)
+            return false;
+
+        for (int i = 0; i < EncryptingOutputStream.MAGIC.length; i++) {
+            if (prefix[i] != EncryptingOutputStream.MAGIC[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Read and decrypt the next chunk.
+     *
+     * @return false if there are no more chunks.
+     */
+    private boolean readChunk () throws IOException {
+        if (lastChunkRead)
+            return false;
+
+        int length;
+        boolean last;
+        byte[] cipherText;
+
+        try {
+            length = in.readInt();
+            last = in.readByte() != 0;
+
+            // a chunk holds at most chunkSize bytes of plaintext plus the tag
+            if (length < 0 || length > chunkSize + EncryptingOutputStream.TAG_SIZE / 8)
+                throw new IOException("Invalid chunk length: " + length);
+
+            cipherText = new byte[length];
+            in.readFully(cipherText);
+        } catch (EOFException e) {
+            throw new IOException("Encrypted stream ended before its last chunk", e);
+        }
+
+        try {
+            Cipher cipher = Cipher.getInstance(EncryptingOutputStream.CHUNK_ALGORITHM);
+            byte[] nonce = EncryptingOutputStream.createNonce(noncePrefix, chunkNumber);
+            GCMParameterSpec parameterSpec = new GCMParameterSpec(EncryptingOutputStream.TAG_SIZE, nonce);
+            cipher.init(Cipher.DECRYPT_MODE, dataKey, parameterSpec);
+            cipher.updateAAD(EncryptingOutputStream.createAssociatedData(version, chunkNumber, last));
+            chunk = cipher.doFinal(cipherText);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chunk " + chunkNumber + " failed to decrypt", e);
+        }
+
+        chunkPosition = 0;
+        chunkNumber++;
+        lastChunkRead = last;
+
+        return true;
+    }
+
+    /**
+     * Make sure there is something left in the current chunk.
+     *
+     * @return false at the end of the stream.
+     */
+    private boolean fill () throws IOException {
+        while (null == chunk || chunkPosition >= chunk.length) {
+            if (!readChunk())
+                return false;
+        }
+
+        return true;
+    }
+
+    public int read () throws IOException {
+        if (!fill())
+            return -1;
+
+        return chunk[chunkPosition++] & 0xFF;
+    }
+
+    public int read (byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+
+        if (!fill())
+            return -1;
+
+        int count = Math.min(length, chunk.length - chunkPosition);
+        System.arraycopy(chunk, chunkPosition, buffer, offset, count);
+        chunkPosition += count;
+
+        return count;
+    }
+
+    public int available () {
+        return (null == chunk) ? 0 : chunk.length - chunkPosition;
+    }
+
+    public void close () throws IOException {
+        in.close();
+    }
+}
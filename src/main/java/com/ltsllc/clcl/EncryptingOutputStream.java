@@ -0,0 +1,221 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.clcl;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * An {@link OutputStream} that encrypts what is written to it in a binary,
+ * chunked format.
+ *
+ * <P>
+ *     The stream starts with a header:
+ * </P>
+ * <UL>
+ *     <LI>the 4 bytes of {@link #MAGIC},</LI>
+ *     <LI>a version byte,</LI>
+ *     <LI>the chunk size, as an int,</LI>
+ *     <LI>the length of the ID of the data key, as a byte, followed by the ID,</LI>
+ *     <LI>the length of the wrapped key, as an int, followed by the wrapped key and</LI>
+ *     <LI>an 8 byte nonce prefix.</LI>
+ * </UL>
+ * <P>
+ *     The data key is an AES key, wrapped (encrypted) with an asymmetric
+ *     {@link Key}.  It usually comes from a {@link DataKeyCache}, so many
+ *     streams share it and a reader that has seen its ID before does not have
+ *     to unwrap it again.  Version 1 streams have no ID.  After the header come the chunks, each of
+ *     which is the length of its ciphertext as an int, a byte that is 1 for the
+ *     last chunk and 0 otherwise, and then the ciphertext.  Each chunk is
+ *     encrypted with AES-GCM, with a nonce made of the nonce prefix and the
+ *     number of the chunk.  The number of the chunk and whether it is the last
+ *     one are authenticated along with it, so chunks cannot be reordered,
+ *     dropped or cut off without {@link DecryptingInputStream} noticing.
+ * </P>
+ *
+ * <P>
+ *     Compared with an {@link EncryptedMessage}, nothing is hex encoded, and
+ *     neither side needs to hold more than one chunk in memory.  There is
+ *     always a last chunk, even if it is empty, so {@link #finish()} or
+ *     {@link #close()} must be called for the stream to be readable.
+ * </P>
+ */
+public class EncryptingOutputStream extends OutputStream {
+    public static final byte[] MAGIC = { 'M', 'E', 'N', 'C' };
+    public static final byte VERSION_1 = 1;
+    public static final byte VERSION = 2;
+    public static final String DATA_ALGORITHM = "AES";
+    public static final String CHUNK_ALGORITHM = "AES/GCM/NoPadding";
+    public static final int DATA_KEY_SIZE = 128; // bits
+    public static final int TAG_SIZE = 128; // bits
+    public static final int NONCE_PREFIX_SIZE = 8;
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private static SecureRandom ourRandom = new SecureRandom();
+
+    private DataOutputStream out;
+    private DataKeyCache.DataKey dataKey;
+    private byte[] noncePrefix;
+    private byte[] chunk;
+    private int chunkLength;
+    private int chunkNumber;
+    private boolean finished;
+
+    /**
+     * Encrypt with a data key of our own, wrapped with the key.
+     */
+    public EncryptingOutputStream (OutputStream out, Key key) throws EncryptionException, IOException {
+        this(out, key, DEFAULT_CHUNK_SIZE);
+    }
+
+    public EncryptingOutputStream (OutputStream out, Key key, int chunkSize) throws EncryptionException, IOException {
+        this(out, DataKeyCache.createDataKey(key), chunkSize);
+    }
+
+    /**
+     * Encrypt with the current data key of a cache.
+     */
+    public EncryptingOutputStream (OutputStream out, DataKeyCache dataKeyCache) throws EncryptionException, IOException {
+        this(out, dataKeyCache.getCurrentKey(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public EncryptingOutputStream (OutputStream out, DataKeyCache.DataKey dataKey, int chunkSize) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.chunk = new byte[chunkSize];
+        this.dataKey = dataKey;
+
+        noncePrefix = new byte[NONCE_PREFIX_SIZE];
+        ourRandom.nextBytes(noncePrefix);
+
+        this.out.write(MAGIC);
+        this.out.writeByte(VERSION);
+        this.out.writeInt(chunkSize);
+        this.out.writeByte(dataKey.getId().length);
+        this.out.write(dataKey.getId());
+        this.out.writeInt(dataKey.getWrappedKey().length);
+        this.out.write(dataKey.getWrappedKey());
+        this.out.write(noncePrefix);
+    }
+
+    /**
+     * The nonce for a chunk: the nonce prefix followed by the number of the chunk.
+     */
+    public static byte[] createNonce (byte[] noncePrefix, int chunkNumber) {
+        byte[] nonce = new byte[noncePrefix.length + 4];
+        System.arraycopy(noncePrefix, 0, nonce, 0, noncePrefix.length);
+        nonce[noncePrefix.length] = (byte) (chunkNumber >>> 24);
+        nonce[noncePrefix.length + 1] = (byte) (chunkNumber >>> 16);
+        nonce[noncePrefix.length + 2] = (byte) (chunkNumber >>> 8);
+        nonce[noncePrefix.length + 3] = (byte) chunkNumber;
+
+        return nonce;
+    }
+
+    /**
+     * The data that is authenticated along with a chunk: the version, the
+     * number of the chunk and the last chunk flag.
+     */
+    public static byte[] createAssociatedData (byte version, int chunkNumber, boolean last) {
+        byte[] associatedData = new byte[6];
+        associatedData[0] = version;
+        associatedData[1] = (byte) (chunkNumber >>> 24);
+        associatedData[2] = (byte) (chunkNumber >>> 16);
+        associatedData[3] = (byte) (chunkNumber >>> 8);
+        associatedData[4] = (byte) chunkNumber;
+        associatedData[5] = (byte) (last ? 1 : 0);
+
+        return associatedData;
+    }
+
+    public void write (int b) throws IOException {
+        if (chunkLength == chunk.length)
+            writeChunk(false);
+
+        chunk[chunkLength++] = (byte) b;
+    }
+
+    public void write (byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (chunkLength == chunk.length)
+                writeChunk(false);
+
+            int count = Math.min(length, chunk.length - chunkLength);
+            System.arraycopy(buffer, offset, chunk, chunkLength, count);
+            chunkLength += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Encrypt and write out the chunk we have been filling.
+     */
+    private void writeChunk (boolean last) throws IOException {
+        byte[] cipherText = null;
+
+        try {
+            Cipher cipher = Cipher.getInstance(CHUNK_ALGORITHM);
+            GCMParameterSpec parameterSpec = new GCMParameterSpec(TAG_SIZE, createNonce(noncePrefix, chunkNumber));
+            cipher.init(Cipher.ENCRYPT_MODE, dataKey.getSecretKey(), parameterSpec);
+            cipher.updateAAD(createAssociatedData(VERSION, chunkNumber, last));
+            cipherText = cipher.doFinal(chunk, 0, chunkLength);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Exception trying to encrypt chunk " + chunkNumber, e);
+        }
+
+        out.writeInt(cipherText.length);
+        out.writeByte(last ? 1 : 0);
+        out.write(cipherText);
+
+        chunkNumber++;
+        chunkLength = 0;
+    }
+
+    /**
+     * Write out the last chunk, without closing the underlying stream.
+     *
+     * <P>
+     *     Nothing can be written after this.
+     * </P>
+     */
+    public void finish () throws IOException {
+        if (finished)
+            return;
+
+        writeChunk(true);
+        out.flush();
+        finished = true;
+    }
+
+    public void flush () throws IOException {
+        out.flush();
+    }
+
+    public void close () throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -127,6 +127,15 @@ public class Utils {
         }
     }
 
+    public static void closeIgnoreExceptions(Closeable closeable) {
+        if (null != closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
     public static void closeIgnoreExceptions(Socket socket) {
         if (null != socket) {
             try {
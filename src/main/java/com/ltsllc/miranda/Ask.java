@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda;
+
+import com.ltsllc.miranda.miranda.Miranda;
+import com.ltsllc.miranda.timer.MirandaTimer;
+import com.ltsllc.miranda.timer.TimeoutMessage;
+import org.apache.log4j.Logger;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A request that is waiting for a reply; see {@link Consumer#ask(BlockingQueue, Message, long)}.
+ *
+ * <P>
+ *     The request is sent with a {@link ReplyQueue} as its sender, so whoever
+ *     answers it, whether through {@link Message#reply(Message)} or by sending
+ *     to {@link Message#getSender()}, completes the future instead of waking a
+ *     thread.  The first message to arrive wins; anything after that is
+ *     ignored.
+ * </P>
+ *
+ * <P>
+ *     The timeout is a {@link TimerTask} on the {@link Timer} of
+ *     {@link Miranda#timer}, which puts a {@link TimeoutMessage} on the reply
+ *     queue.  When there is no timer, such as in tests, a timer shared by all
+ *     Asks is used instead.  The task is cancelled as soon as the future is
+ *     completed, and the timer is purged of cancelled tasks every
+ *     {@link #PURGE_INTERVAL} cancellations, so answered requests do not
+ *     hold on to timer entries until their timeouts would have fired.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>correlationId - the correlation ID of the request.</LI>
+ *     <LI>future - completed with the reply, or with a {@link TimeoutException}.</LI>
+ *     <LI>replyQueue - the queue that the reply should be sent to.</LI>
+ *     <LI>timerTask - the timeout, while it is scheduled.</LI>
+ * </UL>
+ */
+public class Ask {
+    private static Logger logger = Logger.getLogger(Ask.class);
+
+    public static final int PURGE_INTERVAL = 1024;
+
+    private static Timer ourTimer;
+    private static AtomicInteger ourCancellations = new AtomicInteger();
+
+    public static synchronized Timer getTimer () {
+        if (null == ourTimer)
+            ourTimer = new Timer("ask timer", true);
+
+        return ourTimer;
+    }
+
+    /**
+     * The timer that timeouts go on: the one belonging to {@link Miranda#timer}
+     * if there is one, otherwise the shared one.
+     */
+    public static Timer getTimeoutTimer () {
+        MirandaTimer mirandaTimer = Miranda.timer;
+
+        if (null != mirandaTimer && null != mirandaTimer.getTimer())
+            return mirandaTimer.getTimer();
+
+        return getTimer();
+    }
+
+    private long correlationId;
+    private CompletableFuture<Message> future;
+    private ReplyQueue replyQueue;
+    private TimeoutMessage timeoutMessage;
+    private Timer timer;
+    private TimerTask timerTask;
+
+    public long getCorrelationId() {
+        return correlationId;
+    }
+
+    public CompletableFuture<Message> getFuture() {
+        return future;
+    }
+
+    public ReplyQueue getReplyQueue() {
+        return replyQueue;
+    }
+
+    public synchronized TimerTask getTimerTask() {
+        return timerTask;
+    }
+
+    public Ask (long correlationId) {
+        this.correlationId = correlationId;
+        this.future = new CompletableFuture<Message>();
+        this.replyQueue = new ReplyQueue();
+        this.timeoutMessage = new TimeoutMessage(null, this);
+    }
+
+    /**
+     * Fail the future with a {@link TimeoutException} if no reply arrives within timeout milliseconds.
+     */
+    public synchronized void scheduleTimeout (long timeout) {
+        timer = getTimeoutTimer();
+        timerTask = new TimerTask() {
+            public void run() {
+                getReplyQueue().offer(timeoutMessage);
+            }
+        };
+
+        timer.schedule(timerTask, timeout);
+    }
+
+    /**
+     * Stop waiting for the timeout, if one was scheduled.
+     */
+    public synchronized void cancelTimeout () {
+        if (null == timerTask)
+            return;
+
+        if (timerTask.cancel() && ourCancellations.incrementAndGet() % PURGE_INTERVAL == 0)
+            timer.purge();
+
+        timerTask = null;
+    }
+
+    public boolean complete (Message message) {
+        if (message == timeoutMessage) {
+            String text = "No reply to request " + getCorrelationId();
+            return fail(new TimeoutException(text));
+        }
+
+        boolean completed = future.complete(message);
+
+        if (completed)
+            cancelTimeout();
+        else if (logger.isDebugEnabled())
+            logger.debug("Ignoring late reply to request " + getCorrelationId() + ": " + message);
+
+        return completed;
+    }
+
+    public boolean fail (Throwable throwable) {
+        boolean completed = future.completeExceptionally(throwable);
+        cancelTimeout();
+
+        return completed;
+    }
+
+    /**
+     * A queue that completes its {@link Ask} instead of holding messages.
+     */
+    public class ReplyQueue extends LinkedBlockingQueue<Message> {
+        public Ask getAsk () {
+            return Ask.this;
+        }
+
+        @Override
+        public boolean offer (Message message) {
+            complete(message);
+            return true;
+        }
+
+        @Override
+        public boolean offer (Message message, long timeout, TimeUnit unit) {
+            return offer(message);
+        }
+
+        @Override
+        public void put (Message message) {
+            offer(message);
+        }
+
+        @Override
+        public boolean add (Message message) {
+            return offer(message);
+        }
+    }
+}
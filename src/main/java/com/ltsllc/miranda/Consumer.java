@@ -16,16 +16,32 @@
 
 package com.ltsllc.miranda;
 
+import com.ltsllc.miranda.clientinterface.results.Results;
 import com.ltsllc.miranda.deliveries.Comparer;
 import com.ltsllc.miranda.miranda.Miranda;
 import com.ltsllc.miranda.miranda.messages.StopMessage;
+import com.ltsllc.miranda.property.MirandaProperties;
 import org.apache.log4j.Logger;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * A {@link Subsystem} that processes its messages with a {@link State}.
+ *
+ * <P>
+ *     A Consumer can run in one of two modes.  By default it gets its own thread
+ *     and {@link #run()} blocks on its queue.  If {@link Miranda#dispatcher} has
+ *     been defined, then {@link #start()} hands the Consumer to the
+ *     {@link Dispatcher} instead and {@link #runBatch()} is called whenever
+ *     messages are waiting.
+ * </P>
+ *
  * Created by Clark on 1/1/2017.
  */
 public class Consumer extends Subsystem implements Comparer {
@@ -40,18 +56,135 @@ public class Consumer extends Subsystem implements Comparer {
     }
 
     private State currentState;
+    private Dispatcher dispatcher;
+    private AtomicBoolean scheduled = new AtomicBoolean(false);
+    private boolean dispatchStarted;
+    private volatile boolean terminated;
+    private int batchSize;
+    private List<Message> batch;
+    private int batchRemaining;
+    private Trace trace;
+    private Stash stash;
+    private ConsumerMetrics metrics;
+
+    public Dispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public boolean isScheduled() {
+        return scheduled.get();
+    }
+
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    /**
+     * The most messages that {@link #run()} takes off the queue at once.
+     *
+     * <P>
+     *     This comes from {@link MirandaProperties#PROPERTY_CONSUMER_BATCH_SIZE}, which can be set
+     *     for a particular subsystem by appending "." and the subsystem name.  A value of 1 means
+     *     one {@link BlockingQueue#take()} per message.
+     * </P>
+     */
+    public int getBatchSize() {
+        if (batchSize < 1)
+            batchSize = getBatchSizeProperty(getName());
+
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public static int getBatchSizeProperty (String name) {
+        String value = Mailbox.getSubsystemProperty(MirandaProperties.PROPERTY_CONSUMER_BATCH_SIZE, name);
+
+        try {
+            if (null != value)
+                return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid batch size, " + value + ", for " + name, e);
+        }
+
+        return Integer.parseInt(MirandaProperties.DEFAULT_CONSUMER_BATCH_SIZE);
+    }
+
+    public List<Message> getBatch () {
+        if (null == batch)
+            batch = new ArrayList<Message>();
+
+        return batch;
+    }
+
+    /**
+     * The {@link Trace} for this Consumer, which is named after it.
+     */
+    public Trace getTrace () {
+        if (null == trace)
+            trace = Trace.forName(getName());
+
+        return trace;
+    }
+
+    /**
+     * The messages that our states have deferred; see {@link Stash}.
+     */
+    public Stash getStash () {
+        if (null == stash)
+            stash = new Stash(Stash.getCapacityProperty(getName()));
+
+        return stash;
+    }
+
+    /**
+     * The next deferred message to replay, or null if there are none.
+     */
+    public Message pollStash () {
+        if (null == stash)
+            return null;
+
+        return stash.pollReplay();
+    }
+
+    public boolean hasReplay () {
+        return null != stash && stash.hasReplay();
+    }
+
+    /**
+     * Are there messages waiting to be processed after the current one?
+     *
+     * <P>
+     *     This covers the rest of the current batch as well as our queue, so a
+     *     state can put off work until everything that has already arrived has
+     *     been processed.
+     * </P>
+     */
+    public boolean hasPendingMessages () {
+        return batchRemaining > 0 || hasReplay() || (null != getQueue() && !getQueue().isEmpty());
+    }
+
+    /**
+     * The runtime metrics for this Consumer; see {@link ConsumerMetrics}.
+     */
+    public ConsumerMetrics getMetrics () {
+        if (null == metrics)
+            metrics = new ConsumerMetrics(this);
+
+        return metrics;
+    }
 
     public State getCurrentState() {
         return currentState;
     }
 
     public void setCurrentState(State s) {
-        if (null == currentState)
-            logger.info(this + " transitioning from null to " + s);
-        else if (null == s)
-            logger.info(this + " in state " + currentState + " transitioning to null");
-        else if (currentState.getClass() != s.getClass())
-            logger.info(this + " in state " + currentState + " transitioning to " + s);
+        getTrace().transition(this, currentState, s);
+
+        if (null != s && s != currentState && ConsumerMetrics.isEnabled())
+            getMetrics().stateChanged(s);
 
         State nextState = s;
 
@@ -73,6 +206,46 @@ public class Consumer extends Subsystem implements Comparer {
 
     public Consumer () {}
 
+    /**
+     * Can this Consumer be run in a {@link Dispatcher}?
+     *
+     * <P>
+     *     Subclasses that block in their states, or that depend on having a thread
+     *     of their own, should return false.
+     * </P>
+     */
+    public boolean isDispatchable () {
+        return true;
+    }
+
+    /**
+     * Start the Consumer.
+     *
+     * <P>
+     *     If {@link Miranda#dispatcher} is defined, and this Consumer can be
+     *     dispatched, then the Consumer is run on the dispatcher; otherwise it gets
+     *     a thread of its own.
+     * </P>
+     */
+    public void start () {
+        Dispatcher dispatcher = Miranda.dispatcher;
+
+        if (null == dispatcher || !isDispatchable() || !(getQueue() instanceof Mailbox)) {
+            super.start();
+        } else {
+            this.dispatcher = dispatcher;
+            Mailbox mailbox = (Mailbox) getQueue();
+            mailbox.setOwner(this);
+            setStarted(true);
+
+            //
+            // the first batch runs the start state, even if there are no messages
+            //
+            scheduled.set(true);
+            dispatcher.dispatch(this);
+        }
+    }
+
     public void basicConstructor (String name) {
         super.basicConstructor(name, null);
     }
@@ -98,12 +271,17 @@ public class Consumer extends Subsystem implements Comparer {
     }
 
     public State processMessageInCurrentState(Message message) {
+        long start = ConsumerMetrics.isEnabled() ? System.nanoTime() : 0;
+
         try {
             State nextState = processMessage(message);
             return nextState;
         } catch (Throwable t) {
             Panic panic = new Panic("Unchecked exception in processMessage", t, Panic.Reasons.ExceptionInProcessMessage);
             Miranda.getInstance().panic(panic);
+        } finally {
+            if (0 != start)
+                getMetrics().messageProcessed(message.getSubject(), System.nanoTime() - start);
         }
 
         return getCurrentState();
@@ -121,35 +299,238 @@ public class Consumer extends Subsystem implements Comparer {
      * and processes it.  By default, the method sotps when the next
      * State is an instance of {@link StopState}.
      * </p>
+     * <p>
+     * If {@link #getBatchSize()} is more than 1, then the method drains as
+     * many as that many messages at a time and processes them in a tight loop;
+     * see {@link #processBatch(List)}.
+     * </p>
+     * <p>
+     * This is the thread-per-Consumer mode; see {@link #runBatch()} for the
+     * {@link Dispatcher} mode.
+     * </p>
      */
     public void run() {
+        setReceiver(Thread.currentThread());
+
         State nextState = startCurrentState();
         State stop = StopState.getInstance();
-        logger.info(this + " starting");
+        getTrace().starting(this);
 
         while (nextState != stop && !Miranda.panicking && nextState != null && !getStopped()) {
-            State currentState = getCurrentState();
-            setCurrentState(nextState);
-            if (currentState != nextState) {
-                setCurrentState(nextState.start());
+            transitionTo(nextState);
+
+            if (getBatchSize() > 1) {
+                fillBatch(getBatch());
+                nextState = processBatch(getBatch());
+            } else {
+                Message m = getNextMessage();
+                if (null != m) {
+                    getTrace().received(this, getCurrentState(), m);
+                    nextState = processMessageInCurrentState(m);
+                }
+            }
+        }
+
+        terminate();
+    }
+
+    /**
+     * Drain up to {@link #getBatchSize()} messages into the batch, waiting if there are none.
+     *
+     * <P>
+     *     Deferred messages that are being replayed come first.
+     * </P>
+     */
+    public void fillBatch (List<Message> batch) {
+        int batchSize = getBatchSize();
+
+        if (hasReplay()) {
+            getStash().drainReplayTo(batch, batchSize);
+            getQueue().drainTo(batch, batchSize - batch.size());
+        } else if (getQueue().drainTo(batch, batchSize) < 1) {
+            Message message = getNextMessage();
+
+            if (null != message) {
+                batch.add(message);
+                getQueue().drainTo(batch, batchSize - 1);
+            }
+        }
+    }
+
+    /**
+     * Process a batch of messages in order.
+     *
+     * <P>
+     *     State changes are applied between messages, and processing stops as soon
+     *     as a message yields a state that means we should stop (see
+     *     {@link #shouldContinue(State)}).  Any messages left over at that point
+     *     are discarded along with the Consumer.
+     * </P>
+     *
+     * <P>
+     *     Control messages that arrive while a batch is being processed are
+     *     processed ahead of the rest of the batch (see {@link Mailbox.Lanes}), and
+     *     so are deferred messages that a state restores (see {@link Stash}).
+     * </P>
+     *
+     * @param batch The messages to process.  This is empty when the method returns.
+     * @return The state returned by the last message processed, which has not been transitioned to.
+     */
+    public State processBatch (List<Message> batch) {
+        State nextState = getCurrentState();
+        int i = 0;
+
+        while (i < batch.size()) {
+            if (i > 0) {
+                if (!shouldContinue(nextState))
+                    break;
+
+                transitionTo(nextState);
             }
 
-            Message m = getNextMessage();
-            if (null != m) {
-                logger.info(this + " in state " + getCurrentState() + " received " + m);
-                nextState = processMessageInCurrentState(m);
+            Message m = null;
+            if (i > 0) {
+                m = pollControlMessage();
+
+                if (null == m)
+                    m = pollStash();
             }
+
+            if (null == m)
+                m = batch.get(i++);
+
+            batchRemaining = batch.size() - i;
+            getTrace().received(this, getCurrentState(), m);
+            nextState = processMessageInCurrentState(m);
+        }
+
+        batch.clear();
+        batchRemaining = 0;
+
+        return nextState;
+    }
+
+    /**
+     * Take the next control message from our queue, if our queue is a {@link Mailbox} and there is one.
+     */
+    public Message pollControlMessage () {
+        if (getQueue() instanceof Mailbox) {
+            Mailbox mailbox = (Mailbox) getQueue();
+            return mailbox.poll(Mailbox.Lanes.Control);
         }
 
+        return null;
+    }
+
+    public boolean shouldContinue (State nextState) {
+        return nextState != StopState.getInstance() && !Miranda.panicking && nextState != null && !getStopped();
+    }
+
+    public void terminate () {
+        terminated = true;
+
         if (Miranda.panicking) {
             logger.error(this + " is terminating due to a panic");
         } else {
-            logger.info(this + " terminating");
+            getTrace().terminating(this);
+        }
+    }
+
+    /**
+     * Move to the next state, starting it if it is new.
+     */
+    public void transitionTo (State nextState) {
+        State currentState = getCurrentState();
+        setCurrentState(nextState);
+        if (currentState != nextState) {
+            setCurrentState(nextState.start());
+        }
+    }
+
+    /**
+     * Tell our {@link Mailbox} which thread is processing its messages, so
+     * it does not make that thread wait for room.
+     */
+    public void setReceiver (Thread thread) {
+        if (getQueue() instanceof Mailbox)
+            ((Mailbox) getQueue()).setReceiver(thread);
+    }
+
+    /**
+     * Called by our {@link Mailbox} when a message arrives.
+     */
+    public void messageArrived () {
+        if (null != getDispatcher() && !isTerminated())
+            schedule();
+    }
+
+    /**
+     * Schedule this Consumer with its {@link Dispatcher}, if it is not already scheduled.
+     */
+    public void schedule () {
+        if (scheduled.compareAndSet(false, true))
+            getDispatcher().dispatch(this);
+    }
+
+    /**
+     * Process a batch of messages on a {@link Dispatcher} thread.
+     *
+     * <P>
+     *     This is the dispatcher version of {@link #run()}.  The first time it is
+     *     called it starts the current state.  After that it processes up to
+     *     {@link Dispatcher#getBatchSize()} messages, honoring state changes and
+     *     stops between messages, and then reschedules itself if there is still
+     *     work waiting.
+     * </P>
+     */
+    public void runBatch () {
+        setReceiver(Thread.currentThread());
+
+        try {
+            if (!dispatchStarted) {
+                dispatchStarted = true;
+
+                State nextState = startCurrentState();
+                getTrace().starting(this);
+
+                if (!shouldContinue(nextState)) {
+                    terminate();
+                    return;
+                }
+
+                transitionTo(nextState);
+            }
+
+            List<Message> batch = getBatch();
+            int batchSize = getDispatcher().getBatchSize();
+
+            if (hasReplay())
+                getStash().drainReplayTo(batch, batchSize);
+
+            getQueue().drainTo(batch, batchSize - batch.size());
+
+            if (!batch.isEmpty()) {
+                State nextState = processBatch(batch);
+
+                if (shouldContinue(nextState))
+                    transitionTo(nextState);
+                else
+                    terminate();
+            }
+        } finally {
+            setReceiver(null);
+            scheduled.set(false);
+
+            //
+            // a message may have arrived after our last poll but before we cleared the flag
+            //
+            if (!isTerminated() && (!getQueue().isEmpty() || hasReplay()))
+                schedule();
         }
     }
 
     public Message getNextMessage() {
-        Message nextMessage = null;
+        Message nextMessage = pollStash();
         boolean keepWaiting = true;
 
         while (null == nextMessage && keepWaiting) {
@@ -195,23 +576,85 @@ public class Consumer extends Subsystem implements Comparer {
     }
 
 
-    public void send(Message m, BlockingQueue<Message> queue) {
-        logger.info(this + " in state " + getCurrentState() + " is sending " + m);
+    /**
+     * Send a message.
+     *
+     * @return {@link Results#Success} if the message was sent, {@link Results#MailboxFull} if the
+     * receiver's {@link Mailbox} turned it away, or {@link Results#Exception} if we were interrupted.
+     */
+    public Results send(Message m, BlockingQueue<Message> queue) {
+        getTrace().sending(this, getCurrentState(), m);
+        return deliver(m, queue);
+    }
+
+
+    public static Results staticSend(Message m, BlockingQueue<Message> queue) {
+        Trace.getStaticTrace().sending(null, null, m);
+        return deliver(m, queue);
+    }
+
+    /**
+     * Put a message on a queue.  A {@link Mailbox} is asked to
+     * {@link Mailbox#deliver(Message)} it, so a full Mailbox that rejects the
+     * message says so.
+     */
+    public static Results deliver (Message message, BlockingQueue<Message> queue) {
+        if (queue instanceof Mailbox) {
+            Results result = ((Mailbox) queue).deliver(message);
+
+            if (result != Results.Success)
+                logger.warn("Could not deliver " + message + " to " + ((Mailbox) queue).getName() + ": " + result);
+
+            return result;
+        }
+
         try {
-            queue.put(m);
+            queue.put(message);
+            return Results.Success;
         } catch (InterruptedException e) {
             logger.info("Exception trying to sendToMe message", e);
+            return Results.Exception;
         }
     }
 
+    /**
+     * Send a request and get a future for the reply.
+     *
+     * <P>
+     *     The message is given a new correlation ID and its sender becomes an
+     *     {@link Ask.ReplyQueue}, so the future is completed by the first message
+     *     sent back, without a thread waiting for it.  If nothing comes back
+     *     within timeout milliseconds, the future fails with a
+     *     {@link java.util.concurrent.TimeoutException}.  If the target's
+     *     {@link Mailbox} turns the request away, the future fails at once.
+     * </P>
+     *
+     * @param target The queue to send the request to.
+     * @param message The request.
+     * @param timeout How long, in milliseconds, to wait for the reply.
+     * @return A future that is completed with the reply.
+     */
+    public CompletableFuture<Message> ask (BlockingQueue<Message> target, Message message, long timeout) {
+        Ask ask = new Ask(Message.nextCorrelationId());
 
-    public static void staticSend(Message m, BlockingQueue<Message> queue) {
-        logger.info("Sending " + m);
-        try {
-            queue.put(m);
-        } catch (InterruptedException e) {
-            logger.info("Exception trying to sendToMe message", e);
+        message.setCorrelationId(ask.getCorrelationId());
+        message.setSender(ask.getReplyQueue());
+        if (null == message.getSenderObject())
+            message.setSenderObject(this);
+
+        ask.scheduleTimeout(timeout);
+
+        Results result = send(message, target);
+        if (result != Results.Success) {
+            String text = "Could not send request " + ask.getCorrelationId() + ": " + result;
+            ask.fail(new MirandaUncheckedException(text));
         }
+
+        return ask.getFuture();
+    }
+
+    public CompletableFuture<Message> ask (Consumer target, Message message, long timeout) {
+        return ask(target.getQueue(), message, timeout);
     }
 
     /**
@@ -241,12 +684,8 @@ public class Consumer extends Subsystem implements Comparer {
     /**
      * Send a message to this object.
      */
-    public void sendToMe(Message message) {
-        try {
-            getQueue().put(message);
-        } catch (InterruptedException e) {
-            Panic panic = new Panic("Exception trying to sendToMe message", e, Panic.Reasons.ExceptionSendingMessage);
-        }
+    public Results sendToMe(Message message) {
+        return deliver(message, getQueue());
     }
 
     @Override
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda;
+
+import java.util.List;
+
+/**
+ * A snapshot of the {@link ConsumerMetrics} of a {@link Consumer}.
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>name - the name of the Consumer.</LI>
+ *     <LI>depth - the number of messages waiting in its queue.</LI>
+ *     <LI>enqueued - the total number of messages added to its {@link Mailbox}.</LI>
+ *     <LI>enqueueRate - messages added per second, on average.</LI>
+ *     <LI>processed - the total number of messages processed.</LI>
+ *     <LI>throughput - messages processed per second, on average.</LI>
+ *     <LI>busyNanos - the total time spent processing messages.</LI>
+ *     <LI>subjects - processing times for each subject that has been seen.</LI>
+ *     <LI>states - times for each state class that has been seen.</LI>
+ *     <LI>transitions - the number of transitions between state classes.</LI>
+ * </UL>
+ */
+public class ConsumerGauge {
+    public static class SubjectGauge {
+        private Message.Subjects subject;
+        private long count;
+        private long totalNanos;
+        private long[] histogram;
+
+        public Message.Subjects getSubject() {
+            return subject;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * See {@link ConsumerMetrics} for the buckets.
+         */
+        public long[] getHistogram() {
+            return histogram;
+        }
+
+        public SubjectGauge (Message.Subjects subject, long count, long totalNanos, long[] histogram) {
+            this.subject = subject;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.histogram = histogram;
+        }
+    }
+
+    public static class StateGauge {
+        private String state;
+        private long entries;
+        private long messages;
+        private long busyNanos;
+        private long residentNanos;
+
+        public String getState() {
+            return state;
+        }
+
+        public long getEntries() {
+            return entries;
+        }
+
+        public long getMessages() {
+            return messages;
+        }
+
+        public long getBusyNanos() {
+            return busyNanos;
+        }
+
+        public long getResidentNanos() {
+            return residentNanos;
+        }
+
+        public StateGauge (String state, long entries, long messages, long busyNanos, long residentNanos) {
+            this.state = state;
+            this.entries = entries;
+            this.messages = messages;
+            this.busyNanos = busyNanos;
+            this.residentNanos = residentNanos;
+        }
+    }
+
+    public static class TransitionGauge {
+        private String from;
+        private String to;
+        private long count;
+
+        public String getFrom() {
+            return from;
+        }
+
+        public String getTo() {
+            return to;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public TransitionGauge (String from, String to, long count) {
+            this.from = from;
+            this.to = to;
+            this.count = count;
+        }
+    }
+
+    private String name;
+    private int depth;
+    private long enqueued;
+    private double enqueueRate;
+    private long processed;
+    private double throughput;
+    private long busyNanos;
+    private List<SubjectGauge> subjects;
+    private List<StateGauge> states;
+    private List<TransitionGauge> transitions;
+
+    public String getName() {
+        return name;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getEnqueued() {
+        return enqueued;
+    }
+
+    public double getEnqueueRate() {
+        return enqueueRate;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    public List<SubjectGauge> getSubjects() {
+        return subjects;
+    }
+
+    public List<StateGauge> getStates() {
+        return states;
+    }
+
+    public List<TransitionGauge> getTransitions() {
+        return transitions;
+    }
+
+    public SubjectGauge getSubject (Message.Subjects subject) {
+        for (SubjectGauge subjectGauge : subjects) {
+            if (subjectGauge.getSubject() == subject)
+                return subjectGauge;
+        }
+
+        return null;
+    }
+
+    public StateGauge getState (String state) {
+        for (StateGauge stateGauge : states) {
+            if (stateGauge.getState().equals(state))
+                return stateGauge;
+        }
+
+        return null;
+    }
+
+    public ConsumerGauge (String name, int depth, long enqueued, double enqueueRate, long processed,
+                          double throughput, long busyNanos, List<SubjectGauge> subjects, List<StateGauge> states,
+                          List<TransitionGauge> transitions) {
+        this.name = name;
+        this.depth = depth;
+        this.enqueued = enqueued;
+        this.enqueueRate = enqueueRate;
+        this.processed = processed;
+        this.throughput = throughput;
+        this.busyNanos = busyNanos;
+        this.subjects = subjects;
+        this.states = states;
+        this.transitions = transitions;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda;
+
+import com.google.gson.Gson;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runtime metrics for one {@link Consumer}.
+ *
+ * <P>
+ *     For each Consumer we keep the time spent processing each
+ *     {@link Message.Subjects}, as a count, a total and a histogram; the time
+ *     spent in each class of {@link State}, both busy and in total; and the
+ *     number of transitions between state classes.  Together with the depth
+ *     and enqueue count of the Consumer's {@link Mailbox} this is enough to
+ *     tell which subsystem is the bottleneck.
+ * </P>
+ *
+ * <P>
+ *     Everything that is recorded per message goes into arrays that are
+ *     allocated up front, so recording a message allocates nothing.  A state
+ *     class or transition that has not been seen before allocates a counter
+ *     once.  Metrics are written by the thread running the Consumer and may
+ *     be read from any thread through {@link #getGauge()}.
+ * </P>
+ *
+ * <P>
+ *     The histogram buckets are powers of two in microseconds: bucket 0 is
+ *     under 1us, bucket n is from 2^(n-1) up to 2^n us, and the last bucket
+ *     holds everything longer.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>consumer - the Consumer being measured.</LI>
+ *     <LI>started - when, in nanoseconds, the metrics were created.</LI>
+ *     <LI>counts, totals, histograms - per subject processing times.</LI>
+ *     <LI>states - per state class times.</LI>
+ *     <LI>transitions - the number of transitions from one state class to another.</LI>
+ * </UL>
+ */
+public class ConsumerMetrics {
+    public static final int BUCKETS = 24;
+
+    private static final int SUBJECTS = Message.Subjects.values().length;
+
+    private static Gson ourGson = new Gson();
+
+    private static final Map<ConsumerMetrics, Boolean> ourMetrics =
+            Collections.synchronizedMap(new WeakHashMap<ConsumerMetrics, Boolean>());
+
+    private static volatile boolean ourEnabled = true;
+
+    public static boolean isEnabled () {
+        return ourEnabled;
+    }
+
+    public static void setEnabled (boolean enabled) {
+        ourEnabled = enabled;
+    }
+
+    public static int toBucket (long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * The gauges of every Consumer that is still in use.
+     */
+    public static List<ConsumerGauge> getGauges () {
+        List<ConsumerMetrics> list;
+
+        synchronized (ourMetrics) {
+            list = new ArrayList<ConsumerMetrics>(ourMetrics.keySet());
+        }
+
+        List<ConsumerGauge> gauges = new ArrayList<ConsumerGauge>(list.size());
+        for (ConsumerMetrics metrics : list) {
+            gauges.add(metrics.getGauge());
+        }
+
+        return gauges;
+    }
+
+    /**
+     * A JSON snapshot of {@link #getGauges()}.
+     */
+    public static String toJson () {
+        return ourGson.toJson(getGauges());
+    }
+
+    public static class StateTimes {
+        private AtomicLong entries = new AtomicLong();
+        private AtomicLong messages = new AtomicLong();
+        private AtomicLong busyNanos = new AtomicLong();
+        private AtomicLong residentNanos = new AtomicLong();
+    }
+
+    private Consumer consumer;
+    private long started;
+    private AtomicLongArray counts = new AtomicLongArray(SUBJECTS);
+    private AtomicLongArray totals = new AtomicLongArray(SUBJECTS);
+    private AtomicLongArray histograms = new AtomicLongArray(SUBJECTS * BUCKETS);
+    private ConcurrentHashMap<Class<?>, StateTimes> states = new ConcurrentHashMap<Class<?>, StateTimes>();
+    private ConcurrentHashMap<Class<?>, ConcurrentHashMap<Class<?>, AtomicLong>> transitions =
+            new ConcurrentHashMap<Class<?>, ConcurrentHashMap<Class<?>, AtomicLong>>();
+
+    private Class<?> currentClass;
+    private StateTimes current;
+    private long enteredAt;
+
+    public Consumer getConsumer() {
+        return consumer;
+    }
+
+    public ConsumerMetrics (Consumer consumer) {
+        this.consumer = consumer;
+        this.started = System.nanoTime();
+
+        ourMetrics.put(this, Boolean.TRUE);
+    }
+
+    private StateTimes getStateTimes (Class<?> clazz) {
+        StateTimes stateTimes = states.get(clazz);
+
+        if (null == stateTimes) {
+            stateTimes = new StateTimes();
+            StateTimes previous = states.putIfAbsent(clazz, stateTimes);
+            if (null != previous)
+                stateTimes = previous;
+        }
+
+        return stateTimes;
+    }
+
+    /**
+     * Record the Consumer moving to a new state.
+     */
+    public void stateChanged (State state) {
+        long now = System.nanoTime();
+        Class<?> nextClass = state.getClass();
+
+        if (null != current)
+            current.residentNanos.addAndGet(now - enteredAt);
+
+        if (null != currentClass && currentClass != nextClass) {
+            ConcurrentHashMap<Class<?>, AtomicLong> map = transitions.get(currentClass);
+            if (null == map) {
+                map = new ConcurrentHashMap<Class<?>, AtomicLong>();
+                ConcurrentHashMap<Class<?>, AtomicLong> previous = transitions.putIfAbsent(currentClass, map);
+                if (null != previous)
+                    map = previous;
+            }
+
+            AtomicLong count = map.get(nextClass);
+            if (null == count) {
+                count = new AtomicLong();
+                AtomicLong previous = map.putIfAbsent(nextClass, count);
+                if (null != previous)
+                    count = previous;
+            }
+
+            count.incrementAndGet();
+        }
+
+        if (currentClass != nextClass) {
+            current = getStateTimes(nextClass);
+            current.entries.incrementAndGet();
+            currentClass = nextClass;
+        }
+
+        enteredAt = now;
+    }
+
+    /**
+     * Record the time taken to process a message.
+     */
+    public void messageProcessed (Message.Subjects subject, long nanos) {
+        if (null == subject)
+            return;
+
+        int index = subject.ordinal();
+
+        counts.incrementAndGet(index);
+        totals.addAndGet(index, nanos);
+        histograms.incrementAndGet(index * BUCKETS + toBucket(nanos));
+
+        StateTimes stateTimes = current;
+        if (null != stateTimes) {
+            stateTimes.messages.incrementAndGet();
+            stateTimes.busyNanos.addAndGet(nanos);
+        }
+    }
+
+    public long getProcessed () {
+        long processed = 0;
+
+        for (int i = 0; i < SUBJECTS; i++) {
+            processed += counts.get(i);
+        }
+
+        return processed;
+    }
+
+    public ConsumerGauge getGauge () {
+        double seconds = Math.max(1, System.nanoTime() - started) / 1000000000.0;
+        BlockingQueue<Message> queue = consumer.getQueue();
+
+        int depth = 0;
+        long enqueued = 0;
+        if (queue instanceof Mailbox) {
+            Mailbox mailbox = (Mailbox) queue;
+            depth = mailbox.size();
+            enqueued = mailbox.getEnqueued();
+        } else if (null != queue) {
+            depth = queue.size();
+        }
+
+        List<ConsumerGauge.SubjectGauge> subjects = new ArrayList<ConsumerGauge.SubjectGauge>();
+        long busyNanos = 0;
+        long processed = 0;
+
+        for (Message.Subjects subject : Message.Subjects.values()) {
+            int index = subject.ordinal();
+            long count = counts.get(index);
+
+            if (count > 0) {
+                long[] histogram = new long[BUCKETS];
+                for (int i = 0; i < BUCKETS; i++) {
+                    histogram[i] = histograms.get(index * BUCKETS + i);
+                }
+
+                long total = totals.get(index);
+                subjects.add(new ConsumerGauge.SubjectGauge(subject, count, total, histogram));
+                busyNanos += total;
+                processed += count;
+            }
+        }
+
+        List<ConsumerGauge.StateGauge> stateGauges = new ArrayList<ConsumerGauge.StateGauge>();
+        for (Map.Entry<Class<?>, StateTimes> entry : states.entrySet()) {
+            StateTimes stateTimes = entry.getValue();
+            long residentNanos = stateTimes.residentNanos.get();
+
+            if (stateTimes == current)
+                residentNanos += System.nanoTime() - enteredAt;
+
+            stateGauges.add(new ConsumerGauge.StateGauge(entry.getKey().getSimpleName(), stateTimes.entries.get(),
+                    stateTimes.messages.get(), stateTimes.busyNanos.get(), residentNanos));
+        }
+
+        List<ConsumerGauge.TransitionGauge> transitionGauges = new ArrayList<ConsumerGauge.TransitionGauge>();
+        for (Map.Entry<Class<?>, ConcurrentHashMap<Class<?>, AtomicLong>> from : transitions.entrySet()) {
+            for (Map.Entry<Class<?>, AtomicLong> to : from.getValue().entrySet()) {
+                transitionGauges.add(new ConsumerGauge.TransitionGauge(from.getKey().getSimpleName(),
+                        to.getKey().getSimpleName(), to.getValue().get()));
+            }
+        }
+
+        return new ConsumerGauge(consumer.getName(), depth, enqueued, enqueued / seconds, processed,
+                processed / seconds, busyNanos, subjects, stateGauges, transitionGauges);
+    }
+}
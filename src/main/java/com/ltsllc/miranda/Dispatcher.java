@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ltsllc.miranda;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link Consumer}s on a shared, bounded fork-join pool instead of giving
+ * each one its own thread.
+ *
+ * <P>
+ *     A Consumer that is dispatched is scheduled onto the pool whenever a message
+ *     arrives in its {@link Mailbox}.  A worker then processes up to
+ *     {@link #getBatchSize()} messages before giving the worker back.  A Consumer
+ *     is never scheduled twice at the same time, so its states still only ever
+ *     see one thread at a time.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>pool - the pool that the Consumers run in.</LI>
+ *     <LI>batchSize - the maximum number of messages a Consumer processes each time it is scheduled.</LI>
+ * </UL>
+ */
+public class Dispatcher {
+    public static final int DEFAULT_BATCH_SIZE = 32;
+
+    private static Logger logger = Logger.getLogger(Dispatcher.class);
+
+    private ForkJoinPool pool;
+    private int batchSize;
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Build a new Dispatcher.
+     *
+     * @param poolSize The number of worker threads.  Values less than 1 mean one per processor.
+     * @param batchSize The maximum number of messages to process per scheduling.  Values less than
+     *                  1 mean {@link #DEFAULT_BATCH_SIZE}.
+     */
+    public Dispatcher (int poolSize, int batchSize) {
+        if (poolSize < 1)
+            poolSize = Runtime.getRuntime().availableProcessors();
+
+        if (batchSize < 1)
+            batchSize = DEFAULT_BATCH_SIZE;
+
+        //
+        // asyncMode gives us FIFO scheduling for tasks that are never joined
+        //
+        this.pool = new ForkJoinPool(poolSize, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        this.batchSize = batchSize;
+
+        logger.info("dispatcher started with " + poolSize + " workers and a batch size of " + batchSize);
+    }
+
+    /**
+     * Schedule a Consumer to process its mailbox.
+     *
+     * <P>
+     *     Callers must ensure that the Consumer is not already scheduled; see
+     *     {@link Consumer#schedule()}.
+     * </P>
+     */
+    public void dispatch (final Consumer consumer) {
+        getPool().execute(new Runnable() {
+            public void run() {
+                consumer.runBatch();
+            }
+        });
+    }
+
+    public void shutdown () {
+        getPool().shutdown();
+    }
+
+    public boolean awaitTermination (long timeout) throws InterruptedException {
+        return getPool().awaitTermination(timeout, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,700 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ltsllc.miranda;
+
+import com.ltsllc.miranda.clientinterface.results.Results;
+import com.ltsllc.miranda.miranda.Miranda;
+import com.ltsllc.miranda.property.MirandaProperties;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The queue that a {@link Subsystem} receives its messages from.
+ *
+ * <P>
+ *     A Mailbox is a bounded, array-backed {@link BlockingQueue} built on a
+ *     lock-free {@link RingBuffer}.  Senders never take a lock unless the
+ *     receiver is asleep in {@link #take()} or the Mailbox is full and its
+ *     policy is to block.
+ * </P>
+ *
+ * <P>
+ *     What happens when a Mailbox is full is decided by its
+ *     {@link OverflowPolicies}.  Both the capacity and the policy can be set
+ *     for all subsystems, or for a particular subsystem by appending "." and
+ *     the subsystem name to the property; for example
+ *     "com.ltsllc.miranda.MailboxCapacity.writer".
+ * </P>
+ *
+ * <P>
+ *     Messages are sorted into {@link Lanes} by their {@link Message.Subjects}.
+ *     Control messages, like {@link Message.Subjects#Stop} and
+ *     {@link Message.Subjects#Timeout}, go into their own, small lane which is
+ *     always emptied before the data lane; so a subsystem that is far behind on
+ *     its data can still be stopped or answer a health check.  The capacity and
+ *     overflow policy apply to the data lane; when the control lane is full,
+ *     control messages simply wait in the data lane, where
+ *     {@link OverflowPolicies#DropOldest} passes over them.
+ * </P>
+ *
+ * <P>
+ *     A Mailbox also tells its owner when something arrives, which is what lets
+ *     a {@link Consumer} that is running in a {@link Dispatcher} get scheduled,
+ *     and keeps the counters reported by {@link #getGauge()}.
+ * </P>
+ *
+ * <P>
+ *     A sender that has to wait for room waits through
+ *     {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)}, so a
+ *     {@link Dispatcher} thread that blocks is replaced rather than lost.  The
+ *     receiver itself never waits: a message that a subsystem sends to its own
+ *     full Mailbox is rejected, since waiting for itself to make room would
+ *     never end.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>receiver - the thread that is currently processing the messages of this Mailbox, if any.</LI>
+ * </UL>
+ */
+public class Mailbox extends AbstractQueue<Message> implements BlockingQueue<Message> {
+    public enum OverflowPolicies {
+        Block, // senders wait until there is room
+        Reject, // the new message is discarded
+        DropOldest // the oldest message is discarded to make room
+    }
+
+    /**
+     * The lanes of a Mailbox, in the order that they are emptied.
+     */
+    public enum Lanes {
+        Control,
+        Data
+    }
+
+    public static final int CONTROL_LANE_CAPACITY = 256;
+
+    public static final Message.Subjects[] CONTROL_SUBJECTS = {
+            Message.Subjects.Stop,
+            Message.Subjects.Shutdown,
+            Message.Subjects.ShutdownResponse,
+            Message.Subjects.Panic,
+            Message.Subjects.Timeout,
+            Message.Subjects.HealthCheck,
+            Message.Subjects.HealthCheckUpdate,
+            Message.Subjects.ClusterHealthCheck,
+            Message.Subjects.ClusterHealthCheckUpdate
+    };
+
+    private static Logger logger = Logger.getLogger(Mailbox.class);
+
+    private static final Lanes[] ourLanes = new Lanes[Message.Subjects.values().length];
+
+    static {
+        Arrays.fill(ourLanes, Lanes.Data);
+
+        for (Message.Subjects subject : CONTROL_SUBJECTS) {
+            ourLanes[subject.ordinal()] = Lanes.Control;
+        }
+    }
+
+    public static Lanes getLane (Message.Subjects subject) {
+        return ourLanes[subject.ordinal()];
+    }
+
+    /**
+     * Change the lane that a subject goes into.
+     *
+     * <P>
+     *     This affects every Mailbox and should be done before any messages are sent.
+     * </P>
+     */
+    public static void setLane (Message.Subjects subject, Lanes lane) {
+        ourLanes[subject.ordinal()] = lane;
+    }
+
+    private static final Map<Mailbox, Boolean> ourMailboxes = Collections.synchronizedMap(new WeakHashMap<Mailbox, Boolean>());
+
+    private String name;
+    private RingBuffer<Message>[] lanes;
+    private RingBuffer<Message> dataLane;
+    private OverflowPolicies overflowPolicy;
+    private Consumer owner;
+    private volatile Thread receiver;
+
+    private ReentrantLock lock = new ReentrantLock();
+    private Condition notEmpty = lock.newCondition();
+    private Condition notFull = lock.newCondition();
+    private volatile int waitingReceivers;
+    private volatile int waitingSenders;
+
+    private LongAdder enqueued = new LongAdder();
+    private LongAdder rejected = new LongAdder();
+    private LongAdder dropped = new LongAdder();
+    private volatile int highWaterMark;
+
+    public String getName() {
+        return name;
+    }
+
+    public OverflowPolicies getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public Consumer getOwner() {
+        return owner;
+    }
+
+    public void setOwner(Consumer owner) {
+        this.owner = owner;
+    }
+
+    public Thread getReceiver() {
+        return receiver;
+    }
+
+    public void setReceiver(Thread receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * The capacity of the data lane.
+     */
+    public int getCapacity () {
+        return dataLane.capacity();
+    }
+
+    public int getLaneDepth (Lanes lane) {
+        return lanes[lane.ordinal()].size();
+    }
+
+    public int[] getLaneDepths () {
+        int[] depths = new int[lanes.length];
+
+        for (int i = 0; i < lanes.length; i++) {
+            depths[i] = lanes[i].size();
+        }
+
+        return depths;
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public long getEnqueued () {
+        return enqueued.sum();
+    }
+
+    public long getRejected () {
+        return rejected.sum();
+    }
+
+    public long getDropped () {
+        return dropped.sum();
+    }
+
+    public Mailbox () {
+        this(null);
+    }
+
+    /**
+     * Build a Mailbox using the capacity and overflow policy from {@link Miranda#properties}.
+     *
+     * @param name The name of the owning subsystem; used to look up per-subsystem settings.
+     */
+    public Mailbox (String name) {
+        this(name, getCapacityProperty(name), getOverflowPolicyProperty(name));
+    }
+
+    @SuppressWarnings("unchecked")
+    public Mailbox (String name, int capacity, OverflowPolicies overflowPolicy) {
+        this.name = name;
+        this.overflowPolicy = overflowPolicy;
+
+        this.lanes = new RingBuffer[Lanes.values().length];
+        for (Lanes lane : Lanes.values()) {
+            if (lane == Lanes.Data)
+                lanes[lane.ordinal()] = new RingBuffer<Message>(capacity);
+            else
+                lanes[lane.ordinal()] = new RingBuffer<Message>(CONTROL_LANE_CAPACITY);
+        }
+
+        this.dataLane = lanes[Lanes.Data.ordinal()];
+
+        ourMailboxes.put(this, Boolean.TRUE);
+    }
+
+    public static String getSubsystemProperty (String property, String name) {
+        MirandaProperties properties = Miranda.properties;
+        if (null == properties)
+            return null;
+
+        String value = null;
+        if (null != name)
+            value = properties.getProperty(property + "." + name);
+
+        if (null == value)
+            value = properties.getProperty(property);
+
+        return value;
+    }
+
+    public static int getCapacityProperty (String name) {
+        String value = getSubsystemProperty(MirandaProperties.PROPERTY_MAILBOX_CAPACITY, name);
+
+        try {
+            if (null != value)
+                return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid mailbox capacity, " + value + ", for " + name, e);
+        }
+
+        return Integer.parseInt(MirandaProperties.DEFAULT_MAILBOX_CAPACITY);
+    }
+
+    public static OverflowPolicies getOverflowPolicyProperty (String name) {
+        String value = getSubsystemProperty(MirandaProperties.PROPERTY_MAILBOX_OVERFLOW_POLICY, name);
+        if (null == value)
+            value = MirandaProperties.DEFAULT_MAILBOX_OVERFLOW_POLICY;
+
+        value = value.trim();
+
+        if (value.equalsIgnoreCase("reject"))
+            return OverflowPolicies.Reject;
+        else if (value.equalsIgnoreCase("dropOldest") || value.equalsIgnoreCase("drop"))
+            return OverflowPolicies.DropOldest;
+        else
+            return OverflowPolicies.Block;
+    }
+
+    /**
+     * The gauges for every Mailbox that is still in use.
+     */
+    public static List<MailboxGauge> getGauges () {
+        List<Mailbox> mailboxes;
+
+        synchronized (ourMailboxes) {
+            mailboxes = new ArrayList<Mailbox>(ourMailboxes.keySet());
+        }
+
+        List<MailboxGauge> gauges = new ArrayList<MailboxGauge>(mailboxes.size());
+        for (Mailbox mailbox : mailboxes) {
+            gauges.add(mailbox.getGauge());
+        }
+
+        return gauges;
+    }
+
+    public MailboxGauge getGauge () {
+        return new MailboxGauge(getName(), size(), getLaneDepths(), getCapacity(), getHighWaterMark(), getEnqueued(),
+                getRejected(), getDropped());
+    }
+
+    /**
+     * Deliver a message according to our {@link OverflowPolicies}.
+     *
+     * @return {@link Results#Success} if the message was added, {@link Results#MailboxFull} if it was
+     * rejected, or {@link Results#Exception} if we were interrupted while waiting for room.
+     */
+    public Results deliver (Message message) {
+        try {
+            if (enqueue(message, true))
+                return Results.Success;
+            else
+                return Results.MailboxFull;
+        } catch (InterruptedException e) {
+            return Results.Exception;
+        }
+    }
+
+    /**
+     * Try to add a message to its lane without waiting.
+     *
+     * <P>
+     *     Control messages that do not fit in the control lane are tried in
+     *     the data lane.
+     * </P>
+     */
+    private boolean offerToLane (Message message) {
+        if (getLane(message.getSubject()) == Lanes.Control && lanes[Lanes.Control.ordinal()].offer(message))
+            return true;
+
+        return dataLane.offer(message);
+    }
+
+    protected boolean enqueue (Message message, boolean mayBlock) throws InterruptedException {
+        if (offerToLane(message)) {
+            messageAdded();
+            return true;
+        }
+
+        switch (getOverflowPolicy()) {
+            case DropOldest: {
+                int skipped = 0;
+
+                while (!dataLane.offer(message)) {
+                    Message oldest = dataLane.poll();
+                    if (null == oldest)
+                        continue;
+
+                    if (getLane(oldest.getSubject()) == Lanes.Control) {
+                        requeue(oldest);
+
+                        if (++skipped >= getCapacity()) {
+                            rejected.increment();
+                            logger.warn(getName() + " is full of control messages, rejecting " + message);
+                            return false;
+                        }
+                    } else {
+                        dropped.increment();
+                        logger.warn(getName() + " is full, dropping " + oldest);
+                    }
+                }
+
+                messageAdded();
+                return true;
+            }
+
+            case Block: {
+                if (!mayBlock)
+                    return false;
+
+                if (Thread.currentThread() == getReceiver()) {
+                    rejected.increment();
+                    logger.error(getName() + " is full and cannot wait for itself, rejecting " + message);
+                    return false;
+                }
+
+                waitForRoom(message);
+                messageAdded();
+                return true;
+            }
+
+            default: {
+                rejected.increment();
+                logger.warn(getName() + " is full, rejecting " + message);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Put back a control message that was taken out of the data lane while
+     * looking for something to drop.  Control messages are never dropped;
+     * this goes to the control lane if it has room, otherwise to the back of
+     * the data lane, where the poll that took it out has just made room.
+     */
+    private void requeue (Message message) {
+        while (!lanes[Lanes.Control.ordinal()].offer(message) && !dataLane.offer(message)) {
+            Thread.yield();
+        }
+    }
+
+    private void waitForRoom (Message message) throws InterruptedException {
+        ForkJoinPool.managedBlock(new RoomBlocker(message));
+    }
+
+    /**
+     * Waits for room for a message and adds it.
+     */
+    private class RoomBlocker implements ForkJoinPool.ManagedBlocker {
+        private Message message;
+        private boolean added;
+
+        public RoomBlocker (Message message) {
+            this.message = message;
+        }
+
+        public boolean isReleasable () {
+            if (!added)
+                added = offerToLane(message);
+
+            return added;
+        }
+
+        public boolean block () throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                waitingSenders++;
+
+                while (!isReleasable()) {
+                    notFull.await();
+                }
+            } finally {
+                waitingSenders--;
+                lock.unlock();
+            }
+
+            return true;
+        }
+    }
+
+    private void messageAdded () {
+        enqueued.increment();
+
+        int depth = dataLane.size();
+        if (depth > highWaterMark)
+            highWaterMark = depth;
+
+        if (waitingReceivers > 0) {
+            lock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Consumer owner = getOwner();
+        if (null != owner)
+            owner.messageArrived();
+    }
+
+    private void messageRemoved () {
+        if (waitingSenders > 0) {
+            lock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Add a message, waiting for room if our policy is {@link OverflowPolicies#Block}.
+     *
+     * <P>
+     *     A message that is turned away, because our policy is
+     *     {@link OverflowPolicies#Reject} and we are full, because the receiver
+     *     is sending to itself while we are full, or because there is nothing
+     *     {@link OverflowPolicies#DropOldest} may drop, is not discarded
+     *     silently: this throws an IllegalStateException.  Use
+     *     {@link #deliver(Message)} to get a result instead.
+     * </P>
+     */
+    @Override
+    public void put (Message message) throws InterruptedException {
+        if (!enqueue(message, true))
+            throw new IllegalStateException("Mailbox " + getName() + " is full: " + message);
+    }
+
+    /**
+     * Add a message without waiting.
+     *
+     * @return true if the message was added.
+     */
+    @Override
+    public boolean offer (Message message) {
+        try {
+            return enqueue(message, false);
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean offer (Message message, long timeout, TimeUnit unit) throws InterruptedException {
+        if (offerToLane(message)) {
+            messageAdded();
+            return true;
+        }
+
+        if (getOverflowPolicy() != OverflowPolicies.Block)
+            return enqueue(message, false);
+
+        long nanos = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            waitingSenders++;
+
+            while (!offerToLane(message)) {
+                if (nanos <= 0)
+                    return false;
+
+                nanos = notFull.awaitNanos(nanos);
+            }
+        } finally {
+            waitingSenders--;
+            lock.unlock();
+        }
+
+        messageAdded();
+        return true;
+    }
+
+    /**
+     * Remove the next message, taking it from the first non-empty lane.
+     */
+    @Override
+    public Message poll () {
+        Message message = null;
+
+        for (int i = 0; i < lanes.length && null == message; i++) {
+            message = lanes[i].poll();
+        }
+
+        if (null != message)
+            messageRemoved();
+
+        return message;
+    }
+
+    /**
+     * Remove the next message from a particular lane.
+     */
+    public Message poll (Lanes lane) {
+        Message message = lanes[lane.ordinal()].poll();
+
+        if (null != message)
+            messageRemoved();
+
+        return message;
+    }
+
+    @Override
+    public Message take () throws InterruptedException {
+        Message message = poll();
+        if (null != message)
+            return message;
+
+        lock.lockInterruptibly();
+        try {
+            waitingReceivers++;
+
+            while (null == (message = poll())) {
+                notEmpty.await();
+            }
+
+            return message;
+        } finally {
+            waitingReceivers--;
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Message poll (long timeout, TimeUnit unit) throws InterruptedException {
+        Message message = poll();
+        if (null != message)
+            return message;
+
+        long nanos = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            waitingReceivers++;
+
+            while (null == (message = poll())) {
+                if (nanos <= 0)
+                    return null;
+
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+
+            return message;
+        } finally {
+            waitingReceivers--;
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Message peek () {
+        Message message = null;
+
+        for (int i = 0; i < lanes.length && null == message; i++) {
+            message = lanes[i].peek();
+        }
+
+        return message;
+    }
+
+    @Override
+    public int size () {
+        int size = 0;
+
+        for (RingBuffer<Message> lane : lanes) {
+            size += lane.size();
+        }
+
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty () {
+        for (RingBuffer<Message> lane : lanes) {
+            if (!lane.isEmpty())
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * The room left in the data lane.
+     */
+    @Override
+    public int remainingCapacity () {
+        return getCapacity() - dataLane.size();
+    }
+
+    @Override
+    public int drainTo (Collection<? super Message> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo (Collection<? super Message> collection, int maxElements) {
+        if (collection == this)
+            throw new IllegalArgumentException();
+
+        int count = 0;
+        for (int i = 0; i < lanes.length && count < maxElements; i++) {
+            count += lanes[i].drainTo(collection, maxElements - count);
+        }
+
+        if (count > 0)
+            messageRemoved();
+
+        return count;
+    }
+
+    /**
+     * A weakly consistent iterator over a snapshot of the Mailbox, in lane order; it does not
+     * support removal.
+     */
+    @Override
+    public Iterator<Message> iterator () {
+        List<Message> list = new ArrayList<Message>();
+
+        for (RingBuffer<Message> lane : lanes) {
+            list.addAll(lane.snapshot());
+        }
+
+        return Collections.unmodifiableList(list).iterator();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ltsllc.miranda;
+
+/**
+ * A snapshot of the state of a {@link Mailbox}.
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>name - the name of the subsystem that owns the Mailbox.</LI>
+ *     <LI>depth - the number of messages waiting.</LI>
+ *     <LI>laneDepths - the number of messages waiting in each {@link Mailbox.Lanes}, in order.</LI>
+ *     <LI>capacity - the most messages that can be waiting.</LI>
+ *     <LI>highWaterMark - the largest data lane depth seen.</LI>
+ *     <LI>enqueued - the total number of messages added.</LI>
+ *     <LI>rejected - the number of messages discarded because the Mailbox was full.</LI>
+ *     <LI>dropped - the number of old messages discarded to make room for new ones.</LI>
+ * </UL>
+ */
+public class MailboxGauge {
+    private String name;
+    private int depth;
+    private int[] laneDepths;
+    private int capacity;
+    private int highWaterMark;
+    private long enqueued;
+    private long rejected;
+    private long dropped;
+
+    public String getName() {
+        return name;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int[] getLaneDepths() {
+        return laneDepths;
+    }
+
+    public int getLaneDepth(Mailbox.Lanes lane) {
+        return laneDepths[lane.ordinal()];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public long getEnqueued() {
+        return enqueued;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public MailboxGauge (String name, int depth, int[] laneDepths, int capacity, int highWaterMark, long enqueued,
+                         long rejected, long dropped) {
+        this.name = name;
+        this.depth = depth;
+        this.laneDepths = laneDepths;
+        this.capacity = capacity;
+        this.highWaterMark = highWaterMark;
+        this.enqueued = enqueued;
+        this.rejected = rejected;
+        this.dropped = dropped;
+    }
+}
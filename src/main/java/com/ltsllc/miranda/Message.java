@@ -17,10 +17,14 @@
 package com.ltsllc.miranda;
 
 import com.google.gson.Gson;
+import com.ltsllc.miranda.clientinterface.results.Results;
 import com.ltsllc.miranda.miranda.Miranda;
+import com.ltsllc.miranda.property.MirandaProperties;
 import org.apache.log4j.Logger;
 
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by Clark on 12/30/2016.
@@ -31,6 +35,7 @@ public class Message {
         AddObjects,
         AddServlets,
         AddSession,
+        Append,
         Ballot,
         Broadcast,
         CheckSession,
@@ -65,6 +70,7 @@ public class Message {
         DeleteUserResponse,
         DeleteSubscription,
         DeleteSubscriptionResponse,
+        DeliveryFailed,
         Disconnect,
         Disconnected,
         DoneSynchronizing,
@@ -73,11 +79,13 @@ public class Message {
         Election,
         EndConversation,
         Evict,
+        EventsAvailable,
         ExceptionDuringScanMessage,
         Expired,
         FileChanged,
         FileDoesNotExist,
         FileLoaded,
+        FlushWrites,
         GarbageCollection,
         GetDeliveries,
         GetFile,
@@ -165,6 +173,8 @@ public class Message {
         Stop,
         StopWatching,
         Synchronize,
+        SubscriptionAdded,
+        SubscriptionDeleted,
         Timeout,
         UnknownHandle,
         UnwatchFile,
@@ -192,10 +202,66 @@ public class Message {
     private static Gson ourGson = new Gson();
     private static Logger logger = Logger.getLogger(Message.class);
 
+    private static AtomicLong ourNextCorrelationId = new AtomicLong(1);
+
+    /**
+     * A new correlation ID.  Correlation IDs are never 0, which means "none".
+     */
+    public static long nextCorrelationId () {
+        return ourNextCorrelationId.getAndIncrement();
+    }
+
+    private static volatile MirandaProperties.ProvenanceModes ourProvenanceMode =
+            MirandaProperties.ProvenanceModes.Sampled;
+    private static volatile int ourSampleRate =
+            Integer.parseInt(MirandaProperties.DEFAULT_MESSAGE_PROVENANCE_SAMPLE_RATE);
+
+    public static MirandaProperties.ProvenanceModes getProvenanceMode() {
+        return ourProvenanceMode;
+    }
+
+    public static int getSampleRate() {
+        return ourSampleRate;
+    }
+
+    /**
+     * Control how often a message records where it was created.
+     *
+     * <P>
+     *     Recording the creation site means capturing a stack trace, which is
+     *     expensive, so by default only 1 in sampleRate messages does it.
+     * </P>
+     *
+     * @param mode Whether to record creation sites never, for a sample of messages, or always.
+     * @param sampleRate For {@link MirandaProperties.ProvenanceModes#Sampled}, record 1 in this many messages.
+     */
+    public static void setProvenance (MirandaProperties.ProvenanceModes mode, int sampleRate) {
+        if (sampleRate < 1)
+            sampleRate = 1;
+
+        ourSampleRate = sampleRate;
+        ourProvenanceMode = mode;
+    }
+
+    public static boolean shouldRecordProvenance () {
+        switch (ourProvenanceMode) {
+            case Always:
+                return true;
+
+            case Sampled:
+                return ThreadLocalRandom.current().nextInt(ourSampleRate) == 0;
+
+            default:
+                return false;
+        }
+    }
+
     private Subjects subject;
     private BlockingQueue<Message> sender;
     private Object senderObject;
     private Exception where;
+    private long correlationId;
+    private long inReplyTo;
 
     public BlockingQueue<Message> getSender () {
         return sender;
@@ -207,20 +273,58 @@ public class Message {
 
     public Object getSenderObject() { return senderObject; }
 
+    /**
+     * The ID used to match a request to its reply, or 0 if the message is not a request.
+     */
+    public long getCorrelationId() {
+        return correlationId;
+    }
+
+    public void setCorrelationId(long correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    /**
+     * The correlation ID of the request that this message answers, or 0 if it is not a reply.
+     */
+    public long getInReplyTo() {
+        return inReplyTo;
+    }
+
+    public void setInReplyTo(long inReplyTo) {
+        this.inReplyTo = inReplyTo;
+    }
+
+    /**
+     * Where this message was created, or null if that was not recorded (see
+     * {@link #setProvenance(MirandaProperties.ProvenanceModes, int)}).
+     */
     public Exception getWhere() {
         return where;
     }
 
+    /**
+     * A cheap hint as to where a message came from: the class of the object that sent it.
+     */
+    public String getSenderClassName () {
+        if (null == senderObject)
+            return null;
+
+        return senderObject.getClass().getName();
+    }
+
 
     public Message (Subjects subject, BlockingQueue<Message> sender, Object senderObject) {
         this.subject = subject;
         this.sender = sender;
         this.senderObject = senderObject;
 
-        this.where = new Exception();
+        if (shouldRecordProvenance())
+            this.where = new Exception();
     }
 
     public void respond (Message m) throws InterruptedException {
+        m.setInReplyTo(getCorrelationId());
         getSender().put(m);
     }
 
@@ -233,13 +337,23 @@ public class Message {
         return ourGson.toJson(this);
     }
 
-    public void reply (Message message) {
-        try {
-            getSender().put(message);
-        } catch (InterruptedException e) {
-            Panic panic = new Panic("Interrupted trying to send reply.", e, Panic.Reasons.ExceptionSendingMessage);
+    /**
+     * Send a reply through {@link Consumer#deliver(Message, BlockingQueue)}.
+     *
+     * @return The result of the delivery; {@link Results#MailboxFull} if the
+     * sender's mailbox turned the reply away.
+     */
+    public Results reply (Message message) {
+        message.setInReplyTo(getCorrelationId());
+
+        Results result = Consumer.deliver(message, getSender());
+
+        if (result == Results.Exception) {
+            Panic panic = new Panic("Interrupted trying to send reply.", Panic.Reasons.ExceptionSendingMessage);
             Miranda.getInstance().panic(panic);
         }
+
+        return result;
     }
 
     public boolean equals (Object o) {
@@ -63,6 +63,7 @@ public class Panic extends Exception {
         Startup, // something happend during startup this usually means we are an instance of StartupPanic
         ServletTimeout, // A servlet timed out waiting for a response from the system
         Test,
+        TooManyDeferredMessages, // a state could not defer a message because its stash was full
         UncaughtException, // A misc checked exception was caught
         UnrecognizedPublicKeyClass,
         UnrecognizedNode, // a node shut down that we don't have a record of
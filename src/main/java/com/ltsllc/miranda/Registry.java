@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda;
+
+import org.apache.log4j.Logger;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The well-known subsystems of a node, by name and by class.
+ *
+ * <P>
+ *     Any thread can look a subsystem up without taking a lock.  Names are not
+ *     case sensitive, so "Cluster" and "cluster" are the same subsystem.
+ *     Lookups by class return a subsystem of that class, or of a subclass, so
+ *     callers get a typed reference without a cast.
+ * </P>
+ *
+ * <P>
+ *     Objects that want to know when subsystems come and go can add a
+ *     {@link Listener}.  Listeners are called on the thread that registered or
+ *     unregistered the subsystem.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>byName - the subsystems, keyed by their lower case names.</LI>
+ *     <LI>byClass - the subsystems, keyed by their classes.</LI>
+ *     <LI>listeners - the objects that are told about subsystems coming and going.</LI>
+ * </UL>
+ */
+public class Registry {
+    public interface Listener {
+        void registered (String name, Subsystem subsystem);
+        void unregistered (String name, Subsystem subsystem);
+    }
+
+    private static Logger logger = Logger.getLogger(Registry.class);
+
+    private static Registry ourInstance = new Registry();
+
+    public static Registry getInstance () {
+        return ourInstance;
+    }
+
+    public static String toKey (String name) {
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    private Map<String, Subsystem> byName = new ConcurrentHashMap<String, Subsystem>();
+    private ConcurrentHashMap<Class<?>, Subsystem> byClass = new ConcurrentHashMap<Class<?>, Subsystem>();
+    private CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    public void addListener (Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener (Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void register (Subsystem subsystem) {
+        register(subsystem.getName(), subsystem);
+    }
+
+    /**
+     * Register a subsystem under a name, replacing whatever was registered under that name.
+     *
+     * <P>
+     *     Registering null is the same as {@link #unregister(String)}.
+     * </P>
+     */
+    public void register (String name, Subsystem subsystem) {
+        if (null == name)
+            return;
+
+        if (null == subsystem) {
+            unregister(name);
+            return;
+        }
+
+        Subsystem previous = byName.put(toKey(name), subsystem);
+        byClass.put(subsystem.getClass(), subsystem);
+
+        if (previous == subsystem)
+            return;
+
+        if (null != previous) {
+            removeClass(previous);
+            fireUnregistered(name, previous);
+        }
+
+        fireRegistered(name, subsystem);
+    }
+
+    public Subsystem unregister (String name) {
+        if (null == name)
+            return null;
+
+        Subsystem subsystem = byName.remove(toKey(name));
+
+        if (null != subsystem) {
+            removeClass(subsystem);
+            fireUnregistered(name, subsystem);
+        }
+
+        return subsystem;
+    }
+
+    public Subsystem find (String name) {
+        if (null == name)
+            return null;
+
+        return byName.get(toKey(name));
+    }
+
+    /**
+     * Find a subsystem by name, returning null if there is none or if it is not a clazz.
+     */
+    public <T extends Subsystem> T find (String name, Class<T> clazz) {
+        Subsystem subsystem = find(name);
+
+        if (clazz.isInstance(subsystem))
+            return clazz.cast(subsystem);
+        else
+            return null;
+    }
+
+    /**
+     * Find a subsystem that is a clazz, or a subclass of clazz.
+     */
+    public <T extends Subsystem> T find (Class<T> clazz) {
+        Subsystem subsystem = byClass.get(clazz);
+
+        if (null == subsystem) {
+            for (Subsystem candidate : byName.values()) {
+                if (clazz.isInstance(candidate)) {
+                    subsystem = candidate;
+                    break;
+                }
+            }
+        }
+
+        if (null == subsystem)
+            return null;
+
+        return clazz.cast(subsystem);
+    }
+
+    public BlockingQueue<Message> findQueue (String name) {
+        Subsystem subsystem = find(name);
+
+        if (null == subsystem)
+            return null;
+
+        return subsystem.getQueue();
+    }
+
+    public int size () {
+        return byName.size();
+    }
+
+    public void clear () {
+        byName.clear();
+        byClass.clear();
+    }
+
+    /**
+     * Remove a subsystem from byClass, if it is still the one registered for its class.
+     *
+     * <P>
+     *     This compares identities because subsystems define equals in terms of their state.
+     * </P>
+     */
+    private void removeClass (Subsystem subsystem) {
+        byClass.computeIfPresent(subsystem.getClass(), (clazz, current) -> current == subsystem ? null : current);
+    }
+
+    private void fireRegistered (String name, Subsystem subsystem) {
+        for (Listener listener : listeners) {
+            try {
+                listener.registered(name, subsystem);
+            } catch (RuntimeException e) {
+                logger.warn("Exception in registry listener", e);
+            }
+        }
+    }
+
+    private void fireUnregistered (String name, Subsystem subsystem) {
+        for (Listener listener : listeners) {
+            try {
+                listener.unregistered(name, subsystem);
+            } catch (RuntimeException e) {
+                logger.warn("Exception in registry listener", e);
+            }
+        }
+    }
+}
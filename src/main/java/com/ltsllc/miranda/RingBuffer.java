@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ltsllc.miranda;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, array-backed, lock-free queue.
+ *
+ * <P>
+ *     This is the classic sequence-per-slot ring buffer: every slot carries a
+ *     sequence number that tells producers when the slot is free and consumers
+ *     when it has been published.  Any number of threads can offer and poll;
+ *     a {@link Mailbox} normally has many producers and a single consumer, but
+ *     overflow handling may also remove from the head.
+ * </P>
+ *
+ * <P>
+ *     Nothing here blocks and nothing is allocated per element.  Blocking is
+ *     layered on top by {@link Mailbox}.
+ * </P>
+ */
+public class RingBuffer<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Build a new RingBuffer.
+     *
+     * @param capacity The minimum capacity.  This is rounded up to the next power of two.
+     */
+    public RingBuffer (int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+
+        int size = 1;
+        while (size < capacity)
+            size = size << 1;
+
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<E>(size);
+        this.sequences = new AtomicLongArray(size);
+
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity () {
+        return mask + 1;
+    }
+
+    /**
+     * Add an element to the tail, if there is room.
+     *
+     * @return true if the element was added, false if the buffer was full.
+     */
+    public boolean offer (E element) {
+        if (null == element)
+            throw new NullPointerException();
+
+        long position = tail.get();
+
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Remove the element at the head.
+     *
+     * @return the element or null if nothing has been published.
+     */
+    public E poll () {
+        long position = head.get();
+
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    public E peek () {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference < 0)
+                return null;
+
+            E element = elements.get(index);
+            if (difference == 0 && null != element && head.get() == position)
+                return element;
+        }
+    }
+
+    /**
+     * The number of elements, including any that are still being published.
+     */
+    public int size () {
+        while (true) {
+            long before = head.get();
+            long currentTail = tail.get();
+            long after = head.get();
+
+            if (before == after) {
+                long size = currentTail - after;
+
+                if (size < 0)
+                    return 0;
+                else if (size > capacity())
+                    return capacity();
+                else
+                    return (int) size;
+            }
+        }
+    }
+
+    public boolean isEmpty () {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * Remove up to maxElements, in order, adding them to the collection.
+     *
+     * @return the number of elements removed.
+     */
+    public int drainTo (Collection<? super E> collection, int maxElements) {
+        int count = 0;
+
+        while (count < maxElements) {
+            E element = poll();
+            if (null == element)
+                break;
+
+            collection.add(element);
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * A weakly consistent copy of the published elements, from head to tail.
+     */
+    public List<E> snapshot () {
+        List<E> list = new ArrayList<E>();
+
+        long end = tail.get();
+        for (long position = head.get(); position < end; position++) {
+            int index = (int) position & mask;
+            if (sequences.get(index) == position + 1) {
+                E element = elements.get(index);
+                if (null != element)
+                    list.add(element);
+            }
+        }
+
+        return list;
+    }
+}
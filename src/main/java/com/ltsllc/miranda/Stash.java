@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda;
+
+import com.ltsllc.miranda.property.MirandaProperties;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+
+/**
+ * Messages that a {@link State} has put aside until it is ready for them.
+ *
+ * <P>
+ *     {@link State#defer(Message)} adds a message to the stash, and
+ *     {@link State#restoreDeferredMessages()} makes everything in the stash
+ *     ready for replay.  The owning {@link Consumer} then delivers replayed
+ *     messages, in the order they were deferred, before anything else in its
+ *     mailbox.  Messages are never copied back into the mailbox.
+ * </P>
+ *
+ * <P>
+ *     A stash holds at most {@link #getCapacity()} messages; after that,
+ *     messages are dropped and counted.  The capacity comes from
+ *     {@link MirandaProperties#PROPERTY_STASH_CAPACITY}, which can be set
+ *     per subsystem the same way as the mailbox properties.
+ * </P>
+ *
+ * <P>
+ *     A stash belongs to one Consumer and is only used from the thread that is
+ *     running it, so it is not synchronized.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>stashed - messages that have been deferred and not yet restored.</LI>
+ *     <LI>replay - messages that have been restored and not yet delivered.</LI>
+ *     <LI>capacity - the most messages the stash can hold.</LI>
+ *     <LI>highWaterMark - the most messages the stash has held.</LI>
+ *     <LI>total - the number of messages that have been stashed.</LI>
+ *     <LI>dropped - the number of messages dropped because the stash was full.</LI>
+ * </UL>
+ */
+public class Stash {
+    private static Logger logger = Logger.getLogger(Stash.class);
+
+    public static int getCapacityProperty (String name) {
+        String value = Mailbox.getSubsystemProperty(MirandaProperties.PROPERTY_STASH_CAPACITY, name);
+
+        try {
+            if (null != value)
+                return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid stash capacity, " + value + ", for " + name, e);
+        }
+
+        return Integer.parseInt(MirandaProperties.DEFAULT_STASH_CAPACITY);
+    }
+
+    private ArrayDeque<Message> stashed = new ArrayDeque<Message>();
+    private ArrayDeque<Message> replay = new ArrayDeque<Message>();
+    private int capacity;
+    private int highWaterMark;
+    private long total;
+    private long dropped;
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public Stash (int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int size () {
+        return stashed.size() + replay.size();
+    }
+
+    public boolean isEmpty () {
+        return stashed.isEmpty() && replay.isEmpty();
+    }
+
+    public boolean hasReplay () {
+        return !replay.isEmpty();
+    }
+
+    /**
+     * Put a message aside.
+     *
+     * @return true if the message was stashed, false if the stash was full and the message was dropped.
+     */
+    public boolean stash (Message message) {
+        if (size() >= getCapacity()) {
+            dropped++;
+            return false;
+        }
+
+        stashed.addLast(message);
+        total++;
+
+        if (size() > highWaterMark)
+            highWaterMark = size();
+
+        return true;
+    }
+
+    /**
+     * Make everything that has been stashed ready to be replayed, after anything that is already waiting to be
+     * replayed.
+     */
+    public void unstashAll () {
+        if (replay.isEmpty()) {
+            ArrayDeque<Message> temp = replay;
+            replay = stashed;
+            stashed = temp;
+        } else {
+            replay.addAll(stashed);
+            stashed.clear();
+        }
+    }
+
+    /**
+     * The next message to replay, or null if there are none.
+     */
+    public Message pollReplay () {
+        return replay.pollFirst();
+    }
+
+    public int drainReplayTo (Collection<Message> collection, int maxElements) {
+        int count = 0;
+
+        while (count < maxElements && !replay.isEmpty()) {
+            collection.add(replay.pollFirst());
+            count++;
+        }
+
+        return count;
+    }
+}
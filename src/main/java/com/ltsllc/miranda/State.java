@@ -16,12 +16,12 @@
 
 package com.ltsllc.miranda;
 
+import com.ltsllc.miranda.clientinterface.results.Results;
 import com.ltsllc.miranda.miranda.Miranda;
 import com.ltsllc.miranda.miranda.messages.StopMessage;
+import com.ltsllc.miranda.property.MirandaProperties;
 import org.apache.log4j.Logger;
 
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 
@@ -35,11 +35,7 @@ public abstract class State {
 
     private Consumer container;
     private boolean started = false;
-    private List<Message> deferredQueue;
-
-    public List<Message> getDeferredQueue() {
-        return deferredQueue;
-    }
+    private Stash localStash;
 
     public boolean stated () {
         return started;
@@ -53,26 +49,48 @@ public abstract class State {
         return container;
     }
 
+    /**
+     * The {@link Trace} of our container, or the static trace if we do not have one.
+     */
+    public Trace getTrace () {
+        Trace trace = null;
+
+        if (null != getContainer())
+            trace = getContainer().getTrace();
+
+        if (null == trace)
+            trace = Trace.getStaticTrace();
+
+        return trace;
+    }
+
     public State (Consumer container) {
         this.container = container;
-        this.deferredQueue = new LinkedList<Message>();
     }
 
     public State start ()
     {
         setStarted(true);
-        logger.info (getContainer() + " starting");
+        getTrace().starting(getContainer());
         return this;
     }
 
-    public void send (BlockingQueue<Message> queue, Message m) {
-        try {
-            logger.info (getContainer() + " in state " + this + " sending " + m);
-            queue.put(m);
-        } catch (InterruptedException e) {
-            Panic panic = new Panic("Interrupted while trying to send message", e, Panic.Reasons.ExceptionSendingMessage);
+    /**
+     * Send a message through {@link Consumer#deliver(Message, BlockingQueue)}.
+     *
+     * @return The result of the delivery; {@link Results#MailboxFull} if the
+     * receiver turned the message away.
+     */
+    public Results send (BlockingQueue<Message> queue, Message m) {
+        getTrace().sending(getContainer(), this, m);
+        Results result = Consumer.deliver(m, queue);
+
+        if (result == Results.Exception) {
+            Panic panic = new Panic("Interrupted while trying to send message", Panic.Reasons.ExceptionSendingMessage);
             Miranda.getInstance().panic(panic);
         }
+
+        return result;
     }
 
     /**
@@ -96,7 +114,10 @@ public abstract class State {
             default : {
                 String message = getContainer() + " in state " + getContainer().getCurrentState() + " does not understand " + m;
                 logger.error(message);
-                logger.error("Message created at", m.getWhere());
+                if (null != m.getWhere())
+                    logger.error("Message created at", m.getWhere());
+                else
+                    logger.error("Message sent by " + m.getSenderClassName());
                 Panic panic = new Panic(message, null, Panic.Reasons.DoesNotUnderstand);
                 Miranda.getInstance().panic(panic);
             }
@@ -150,17 +171,48 @@ public abstract class State {
         return getContainer().getCurrentState();
     }
 
+    /**
+     * The {@link Stash} of our container, or one of our own if our container does not have one.
+     */
+    public Stash getStash () {
+        Stash stash = null;
+
+        if (null != getContainer())
+            stash = getContainer().getStash();
+
+        if (null == stash) {
+            if (null == localStash)
+                localStash = new Stash(Integer.parseInt(MirandaProperties.DEFAULT_STASH_CAPACITY));
+
+            stash = localStash;
+        }
+
+        return stash;
+    }
+
+    /**
+     * Put a message aside until {@link #restoreDeferredMessages()} is called.
+     *
+     * <P>
+     *     A deferred message is usually a request or a reply that something is
+     *     waiting on, so when the stash is full this panics rather than letting
+     *     the message go without a word.
+     * </P>
+     */
     public State defer (Message message) {
-        getDeferredQueue().add(message);
+        if (!getStash().stash(message)) {
+            Panic panic = new Panic(getContainer() + " has too many deferred messages, could not defer " + message,
+                    Panic.Reasons.TooManyDeferredMessages);
+            Miranda.panicMiranda(panic);
+        }
 
         return getContainer().getCurrentState();
     }
 
+    /**
+     * Replay the deferred messages, in the order they were deferred, ahead of any other messages.
+     */
     public void restoreDeferredMessages () {
-        for (Message message : getDeferredQueue()) {
-            getContainer().getQueue().add(message);
-        }
-
-        getDeferredQueue().clear();
+        getStash().unstashAll();
     }
 }
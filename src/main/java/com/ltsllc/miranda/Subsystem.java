@@ -19,10 +19,9 @@ package com.ltsllc.miranda;
 import com.ltsllc.miranda.deliveries.Comparer;
 import org.apache.log4j.Logger;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A Miranda subsystem.
@@ -32,7 +31,8 @@ import java.util.concurrent.LinkedBlockingQueue;
  *     <LI>map - unlike most other attributes</LI>
  *     <LI>name - the name of the subsystem</LI>
  *     <LI>queue - the queue that the subsystem gets messages from.</LI>
- *     <LI>thre - the thread the subystem is running in.</LI>
+ *     <LI>thre - the thread the subystem is running in.  This is null for a {@link Consumer} that
+ *     is running in a {@link Dispatcher}.</LI>
  * </UL>
  *
  * <H2>Methods</H2>
@@ -42,17 +42,20 @@ import java.util.concurrent.LinkedBlockingQueue;
  * Created by Clark on 12/30/2016.
  */
 public abstract class Subsystem implements Runnable,Comparer {
-    private static Map<String, BlockingQueue<Message>> ourMap = new HashMap<String, BlockingQueue<Message>>();
+    private static Map<String, BlockingQueue<Message>> ourMap = new ConcurrentHashMap<String, BlockingQueue<Message>>();
 
-    public static synchronized void register (String name, BlockingQueue<Message> queue)
+    /**
+     * Register a queue under a name.  See {@link Registry} for looking up subsystems themselves.
+     */
+    public static void register (String name, BlockingQueue<Message> queue)
     {
         ourMap.put(name, queue);
     }
-    public static synchronized void unregister (String name)
+    public static void unregister (String name)
     {
         ourMap.remove(name);
     }
-    public synchronized BlockingQueue<Message> find (String name) {
+    public BlockingQueue<Message> find (String name) {
         return ourMap.get(name);
     }
 
@@ -94,7 +97,7 @@ public abstract class Subsystem implements Runnable,Comparer {
 
     public Subsystem () {}
     public Subsystem (String name) {
-        basicConstructor(name, new LinkedBlockingQueue<Message>());
+        basicConstructor(name, new Mailbox(name));
     }
 
     public Subsystem (String name, BlockingQueue<Message> queue) {
@@ -103,7 +106,7 @@ public abstract class Subsystem implements Runnable,Comparer {
 
     public void basicConstructor (String name, BlockingQueue<Message> queue) {
         if (null == queue)
-            queue = new LinkedBlockingQueue<Message>();
+            queue = new Mailbox(name);
 
         this.started = false;
         this.stopped = false;
@@ -144,6 +147,9 @@ public abstract class Subsystem implements Runnable,Comparer {
         if (!getQueue().equals(other.getQueue()))
             return false;
 
+        if (null == getThread())
+            return null == other.getThread();
+
         return getThread().equals(other.getThread());
     }
 }
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracing for the messages and state changes of a {@link Consumer}.
+ *
+ * <P>
+ *     Each subsystem traces to its own log4j logger, named {@link #PREFIX} plus
+ *     the subsystem name (with anything that is not a letter or digit replaced
+ *     by '_'), so levels can be set per subsystem in log4j.xml.  For example,
+ *     setting com.ltsllc.miranda.trace.writer to DEBUG shows every message the
+ *     writer sends and receives.
+ * </P>
+ *
+ * <P>
+ *     The methods take the objects involved rather than a string, and check the
+ *     level before doing anything else, so a disabled trace allocates nothing
+ *     and calls no toString methods.
+ * </P>
+ *
+ * <P>
+ *     In async mode (see {@link #setAsync(boolean)}) events are handed to a
+ *     daemon thread that formats and logs them, so actor threads only pay for
+ *     an offer to a bounded queue.  If that queue is full the event is dropped
+ *     and counted.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>logger - the logger for the subsystem.</LI>
+ * </UL>
+ */
+public class Trace {
+    public enum Events {
+        Starting,
+        Sending,
+        Received,
+        Transition,
+        Terminating
+    }
+
+    public static final String PREFIX = "com.ltsllc.miranda.trace";
+    public static final int ASYNC_QUEUE_SIZE = 8192;
+
+    private static Logger logger = Logger.getLogger(Trace.class);
+
+    private static Trace ourStaticTrace = new Trace(Logger.getLogger(PREFIX + ".static"));
+
+    private static volatile BlockingQueue<TraceEvent> ourAsyncQueue;
+    private static Thread ourAsyncThread;
+    private static LongAdder ourDropped = new LongAdder();
+
+    /**
+     * The trace for sends that do not come from a Consumer.
+     */
+    public static Trace getStaticTrace () {
+        return ourStaticTrace;
+    }
+
+    public static boolean isAsync () {
+        return null != ourAsyncQueue;
+    }
+
+    public static long getDropped () {
+        return ourDropped.sum();
+    }
+
+    public static String toLoggerName (String name) {
+        if (null == name)
+            return PREFIX;
+
+        StringBuilder stringBuilder = new StringBuilder(PREFIX.length() + 1 + name.length());
+        stringBuilder.append(PREFIX);
+        stringBuilder.append('.');
+
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            stringBuilder.append(Character.isLetterOrDigit(c) ? c : '_');
+        }
+
+        return stringBuilder.toString();
+    }
+
+    public static Trace forName (String name) {
+        return new Trace(Logger.getLogger(toLoggerName(name)));
+    }
+
+    /**
+     * Turn async tracing on or off.
+     */
+    public static synchronized void setAsync (boolean async) {
+        if (async && null == ourAsyncQueue) {
+            BlockingQueue<TraceEvent> queue = new ArrayBlockingQueue<TraceEvent>(ASYNC_QUEUE_SIZE);
+            ourAsyncThread = new Thread(new AsyncWriter(queue), "trace writer");
+            ourAsyncThread.setDaemon(true);
+            ourAsyncThread.start();
+            ourAsyncQueue = queue;
+        } else if (!async && null != ourAsyncQueue) {
+            ourAsyncQueue = null;
+            ourAsyncThread.interrupt();
+            ourAsyncThread = null;
+        }
+    }
+
+    private Logger traceLogger;
+
+    public Logger getLogger() {
+        return traceLogger;
+    }
+
+    public Trace (Logger logger) {
+        this.traceLogger = logger;
+    }
+
+    public boolean isDebugEnabled () {
+        return traceLogger.isDebugEnabled();
+    }
+
+    public boolean isInfoEnabled () {
+        return traceLogger.isInfoEnabled();
+    }
+
+    public void starting (Object subsystem) {
+        if (isInfoEnabled())
+            log(Level.INFO, Events.Starting, subsystem, null, null);
+    }
+
+    public void terminating (Object subsystem) {
+        if (isInfoEnabled())
+            log(Level.INFO, Events.Terminating, subsystem, null, null);
+    }
+
+    public void sending (Object subsystem, State state, Message message) {
+        if (isDebugEnabled())
+            log(Level.DEBUG, Events.Sending, subsystem, state, message);
+    }
+
+    public void received (Object subsystem, State state, Message message) {
+        if (isDebugEnabled())
+            log(Level.DEBUG, Events.Received, subsystem, state, message);
+    }
+
+    /**
+     * Trace a change of state.  Only changes to a different class of state are interesting.
+     */
+    public void transition (Object subsystem, State from, State to) {
+        if (isInfoEnabled() && (null == from || null == to || from.getClass() != to.getClass()))
+            log(Level.INFO, Events.Transition, subsystem, from, to);
+    }
+
+    private void log (Level level, Events event, Object subsystem, State state, Object detail) {
+        TraceEvent traceEvent = new TraceEvent(traceLogger, level, event, subsystem, state, detail);
+        BlockingQueue<TraceEvent> queue = ourAsyncQueue;
+
+        if (null == queue)
+            traceEvent.write();
+        else if (!queue.offer(traceEvent))
+            ourDropped.increment();
+    }
+
+    public static class TraceEvent {
+        private Logger logger;
+        private Level level;
+        private Events event;
+        private Object subsystem;
+        private State state;
+        private Object detail;
+
+        public TraceEvent (Logger logger, Level level, Events event, Object subsystem, State state, Object detail) {
+            this.logger = logger;
+            this.level = level;
+            this.event = event;
+            this.subsystem = subsystem;
+            this.state = state;
+            this.detail = detail;
+        }
+
+        public String format () {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("event=");
+            stringBuilder.append(event);
+            stringBuilder.append(" subsystem=");
+            stringBuilder.append(subsystem);
+
+            if (event == Events.Transition) {
+                stringBuilder.append(" from=");
+                stringBuilder.append(state);
+                stringBuilder.append(" to=");
+                stringBuilder.append(detail);
+            } else {
+                if (null != state) {
+                    stringBuilder.append(" state=");
+                    stringBuilder.append(state);
+                }
+
+                if (null != detail) {
+                    stringBuilder.append(" message=");
+                    stringBuilder.append(detail);
+                }
+            }
+
+            return stringBuilder.toString();
+        }
+
+        public void write () {
+            logger.log(level, format());
+        }
+    }
+
+    public static class AsyncWriter implements Runnable {
+        private BlockingQueue<TraceEvent> queue;
+
+        public AsyncWriter (BlockingQueue<TraceEvent> queue) {
+            this.queue = queue;
+        }
+
+        public void run () {
+            try {
+                while (true) {
+                    TraceEvent traceEvent = queue.take();
+
+                    try {
+                        traceEvent.write();
+                    } catch (RuntimeException e) {
+                        logger.warn("Exception writing trace event", e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                //
+                // async tracing was turned off; write whatever is left
+                //
+                TraceEvent traceEvent = queue.poll();
+                while (null != traceEvent) {
+                    traceEvent.write();
+                    traceEvent = queue.poll();
+                }
+            }
+        }
+    }
+}
@@ -37,6 +37,13 @@ import java.security.NoSuchAlgorithmException;
  *     If the sha1 values do not match then the two objects are not equal ---
  *     The lastChange determines which object is out of date.
  * </P>
+ *
+ * <P>
+ *     For a {@link SingleFile} the "sha1" is really a
+ *     {@link com.ltsllc.miranda.file.ContentDigest} of the elements of the
+ *     file, which is the same on every node that has the same elements,
+ *     whatever order they are in.
+ * </P>
  */
 public class Version  {
     private static Logger logger = Logger.getLogger(Version.class);
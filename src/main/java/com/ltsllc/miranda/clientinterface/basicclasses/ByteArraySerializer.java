@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.clientinterface.basicclasses;
+
+import com.google.gson.*;
+
+import java.lang.reflect.Type;
+import java.util.Base64;
+
+/**
+ * Serialize a byte array as a base 64 string rather than an array of numbers.
+ *
+ * <P>
+ *     Gson writes a byte[] as a JSON array with one number per byte, which
+ *     takes up to five characters a byte and has to be parsed one number at a
+ *     time.  A base 64 string takes four characters for every three bytes.
+ * </P>
+ *
+ * <P>
+ *     The old array form is still accepted when deserializing, so files and
+ *     messages written before the change can be read.
+ * </P>
+ */
+public class ByteArraySerializer implements JsonSerializer<byte[]>, JsonDeserializer<byte[]> {
+    public JsonElement serialize(byte[] bytes, Type type, JsonSerializationContext jsonSerializationContext) {
+        if (null == bytes)
+            return JsonNull.INSTANCE;
+
+        return new JsonPrimitive(Base64.getEncoder().encodeToString(bytes));
+    }
+
+    public byte[] deserialize(JsonElement jsonElement, Type type, JsonDeserializationContext jsonDeserializationContext)
+            throws JsonParseException
+    {
+        if (null == jsonElement || jsonElement.isJsonNull())
+            return null;
+
+        if (jsonElement.isJsonArray())
+            return fromArray(jsonElement.getAsJsonArray());
+
+        try {
+            return Base64.getDecoder().decode(jsonElement.getAsString());
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException("Invalid base 64 content", e);
+        }
+    }
+
+    public byte[] fromArray (JsonArray jsonArray) {
+        byte[] bytes = new byte[jsonArray.size()];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = jsonArray.get(i).getAsByte();
+        }
+
+        return bytes;
+    }
+}
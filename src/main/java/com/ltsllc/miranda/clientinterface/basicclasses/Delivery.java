@@ -69,6 +69,10 @@ public class Delivery extends MirandaObject {
         return eventGuid.equals(other.eventGuid);
     }
 
+    public Object getPrimaryKey () {
+        return eventGuid;
+    }
+
     @Override
     public void copyFrom(Mergeable mergeable) {
         Delivery other = (Delivery) mergeable;
@@ -17,6 +17,7 @@
 package com.ltsllc.miranda.clientinterface.basicclasses;
 
 import com.google.gson.Gson;
+import com.google.gson.annotations.JsonAdapter;
 import com.ltsllc.common.util.ImprovedRandom;
 import com.ltsllc.common.util.Utils;
 
@@ -102,6 +103,9 @@ import java.util.UUID;
  *                 for example an HTTP POST that has an empty body,
  *                 this property will generally be a zero length array.
  *             </p>
+ *             <p>
+ *                 In JSON the content is a base 64 string; see {@link ByteArraySerializer}.
+ *             </p>
  *         </td>
  *     </tr>
  * </table>
@@ -126,7 +130,10 @@ public class Event extends MirandaObject implements DirectoryEntry, Evictable {
     }
 
     private String guid;
+
+    @JsonAdapter(ByteArraySerializer.class)
     private byte[] content;
+
     private String userName;
     private long timeOfCreation;
     private Methods method;
@@ -178,6 +185,10 @@ public class Event extends MirandaObject implements DirectoryEntry, Evictable {
         return stringsAreEqual(guid, other.guid);
     }
 
+    public Object getPrimaryKey () {
+        return guid;
+    }
+
     @Override
     public void copyFrom(Mergeable mergeable) {
         Event other = (Event) mergeable;
@@ -227,6 +238,10 @@ public class Event extends MirandaObject implements DirectoryEntry, Evictable {
         this.awaitingDelivery.add(deliverer);
     }
 
+    public void removeAwaitingDelivery (Object deliverer) {
+        this.awaitingDelivery.remove(deliverer);
+    }
+
     /**
      * Is this Event the same as another Event?
      *
@@ -341,6 +356,6 @@ public class Event extends MirandaObject implements DirectoryEntry, Evictable {
      * </p>
      */
     public boolean canBeEvicted () {
-        return awaitingDelivery.size() <= 0;
+        return null == awaitingDelivery || awaitingDelivery.size() <= 0;
     }
 }
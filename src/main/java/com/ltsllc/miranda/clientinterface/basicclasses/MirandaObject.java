@@ -104,6 +104,23 @@ abstract public class MirandaObject extends Mergeable implements Equivalent {
     }
 
 
+    /**
+     * Return the "primary key" that {@link #isEquivalentTo(Object)} compares.
+     *
+     * <p>
+     *     Two instances of the same class that are equivalent must return
+     *     {@link #equals(Object)} equivalent keys, and two that are not must
+     *     not.  This lets a collection of objects be indexed by key rather than
+     *     searched.  The default is null, which means the class has no such
+     *     key and must be searched.
+     * </p>
+     *
+     * @return The key, or null if the class does not have one.
+     */
+    public Object getPrimaryKey () {
+        return null;
+    }
+
     public String toJson () {
         return gson.toJson(this);
     }
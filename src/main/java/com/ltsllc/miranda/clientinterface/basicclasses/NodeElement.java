@@ -20,6 +20,7 @@ import com.google.gson.Gson;
 import com.ltsllc.common.util.ImprovedRandom;
 
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 
 /**
@@ -57,6 +58,10 @@ public class NodeElement extends MirandaObject {
         return port == other.port;
     }
 
+    public Object getPrimaryKey () {
+        return Arrays.asList(dns, port);
+    }
+
     @Override
     public void copyFrom(Mergeable mergeable) {
         NodeElement other = (NodeElement) mergeable;
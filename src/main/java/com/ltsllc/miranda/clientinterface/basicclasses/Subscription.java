@@ -18,6 +18,8 @@ package com.ltsllc.miranda.clientinterface.basicclasses;
 
 import com.google.gson.Gson;
 
+import java.util.Arrays;
+
 /**
  * A subscription to a topic.
  *
@@ -132,6 +134,10 @@ public class Subscription extends MirandaObject {
         return stringsAreEqual(livelinessUrl, other.livelinessUrl);
     }
 
+    public Object getPrimaryKey () {
+        return Arrays.asList(owner, dataUrl, livelinessUrl);
+    }
+
     @Override
     public void copyFrom(Mergeable mergeable) {
         Subscription other = (Subscription) mergeable;
@@ -43,6 +43,10 @@ public class Topic extends MirandaObject {
         return stringsAreEqual(name, other.name);
     }
 
+    public Object getPrimaryKey () {
+        return name;
+    }
+
     @Override
     public void copyFrom(Mergeable mergeable) {
         Topic other = (Topic) mergeable;
@@ -135,6 +135,10 @@ public class User extends MirandaObject {
         return stringsAreEqual(name, other.name);
     }
 
+    public Object getPrimaryKey () {
+        return name;
+    }
+
     public String getPublicKeyPem() throws EncryptionException {
         if (null == publicKeyPem && null != publicKey)
             publicKeyPem = publicKey.toPem();
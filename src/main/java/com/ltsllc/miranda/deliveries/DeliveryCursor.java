@@ -0,0 +1,187 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.deliveries;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * How far delivery to a subscription has got, in terms of the sequence
+ * numbers the {@link com.ltsllc.miranda.event.EventLog} gives the events of
+ * the subscription's topic.
+ *
+ * <P>
+ *     Every event up to and including acknowledged has been delivered.
+ *     Events after that which were acknowledged out of order are bits in
+ *     outOfOrder: bit 0 is acknowledged + 1, bit 1 is acknowledged + 2 and
+ *     so on.  When the event just after acknowledged is acknowledged, the
+ *     cursor moves forward over it and every acknowledged event that
+ *     follows, so the bitmap only ever covers the gap between the oldest
+ *     undelivered event and the newest delivered one.
+ * </P>
+ *
+ * <P>
+ *     Since the sequence numbers only count the events of one topic, other
+ *     topics never leave holes for the cursor to wait on.  A cursor starts
+ *     just before the first event it should get, and events that the log
+ *     has deleted are skipped with {@link #skipTo(long)}, so the bitmap
+ *     never covers events that will not be delivered.
+ * </P>
+ *
+ * <P>
+ *     This takes the place of a record per event per subscription: the size
+ *     of a cursor does not depend on how many events have been delivered.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>subscription - the name of the subscription.</LI>
+ *     <LI>topic - the name of the topic the subscription is for.</LI>
+ *     <LI>acknowledged - the sequence number of the last event in the contiguous run of delivered events.</LI>
+ *     <LI>outOfOrder - the events after acknowledged that have been delivered.</LI>
+ * </UL>
+ */
+public class DeliveryCursor {
+    private String subscription;
+    private String topic;
+    private long acknowledged;
+    private BitSet outOfOrder;
+
+    /**
+     * A cursor that has delivered nothing, and whose first event is the
+     * one with the sequence number first.
+     */
+    public DeliveryCursor (String subscription, String topic, long first) {
+        this(subscription, topic, first - 1, new BitSet());
+    }
+
+    public DeliveryCursor (String subscription, String topic, long acknowledged, BitSet outOfOrder) {
+        this.subscription = subscription;
+        this.topic = topic;
+        this.acknowledged = acknowledged;
+        this.outOfOrder = outOfOrder;
+    }
+
+    public String getSubscription() {
+        return subscription;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public long getAcknowledged() {
+        return acknowledged;
+    }
+
+    /**
+     * The number of events after {@link #getAcknowledged()} that have been delivered.
+     */
+    public int getOutOfOrderCount () {
+        return outOfOrder.cardinality();
+    }
+
+    /**
+     * The sequence number of the first event that has not been delivered.
+     */
+    public long getNextUndelivered () {
+        return acknowledged + 1;
+    }
+
+    public boolean isAcknowledged (long sequence) {
+        if (sequence <= acknowledged)
+            return true;
+
+        long bit = sequence - acknowledged - 1;
+        return bit < Integer.MAX_VALUE && outOfOrder.get((int) bit);
+    }
+
+    /**
+     * Record that the event with a sequence number has been delivered.
+     *
+     * @return false if it had already been acknowledged.
+     */
+    public boolean acknowledge (long sequence) {
+        if (isAcknowledged(sequence))
+            return false;
+
+        long bit = sequence - acknowledged - 1;
+        if (bit >= Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Sequence " + sequence + " is too far past " + acknowledged);
+
+        outOfOrder.set((int) bit);
+        advance(outOfOrder.nextClearBit(0));
+
+        return true;
+    }
+
+    /**
+     * Treat every event before the one with a sequence number as delivered,
+     * because the log no longer has them.
+     *
+     * @return false if the cursor was already past them.
+     */
+    public boolean skipTo (long first) {
+        long skipped = first - 1 - acknowledged;
+        if (skipped <= 0)
+            return false;
+
+        if (skipped >= outOfOrder.length()) {
+            acknowledged = first - 1;
+            outOfOrder = new BitSet();
+        } else {
+            advance((int) skipped);
+        }
+
+        advance(outOfOrder.nextClearBit(0));
+
+        return true;
+    }
+
+    /**
+     * Move acknowledged forward by a number of events, shifting the bitmap down to match.
+     */
+    private void advance (int count) {
+        if (count > 0) {
+            acknowledged += count;
+            outOfOrder = outOfOrder.get(count, Math.max(count, outOfOrder.length()));
+        }
+    }
+
+    public void writeTo (DataOutputStream dataOutputStream) throws IOException {
+        byte[] bitmap = outOfOrder.toByteArray();
+
+        dataOutputStream.writeUTF(subscription);
+        dataOutputStream.writeUTF(topic);
+        dataOutputStream.writeLong(acknowledged);
+        dataOutputStream.writeInt(bitmap.length);
+        dataOutputStream.write(bitmap);
+    }
+
+    public static DeliveryCursor readFrom (DataInputStream dataInputStream) throws IOException {
+        String subscription = dataInputStream.readUTF();
+        String topic = dataInputStream.readUTF();
+        long acknowledged = dataInputStream.readLong();
+        byte[] bitmap = new byte[dataInputStream.readInt()];
+        dataInputStream.readFully(bitmap);
+
+        return new DeliveryCursor(subscription, topic, acknowledged, BitSet.valueOf(bitmap));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.deliveries;
+
+import com.ltsllc.miranda.Message;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An event could not be delivered to a subscription.
+ *
+ * <P>
+ *     What the {@link DeliveryManager} does next depends on the error policy
+ *     of the subscription.  There is no reply.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>subscription - the name of the subscription.</LI>
+ *     <LI>sequence - the sequence number of the event within its topic.</LI>
+ * </UL>
+ */
+public class DeliveryFailedMessage extends Message {
+    private String subscription;
+    private long sequence;
+
+    public String getSubscription() {
+        return subscription;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public DeliveryFailedMessage (BlockingQueue<Message> senderQueue, Object sender, String subscription, long sequence) {
+        super(Subjects.DeliveryFailed, senderQueue, sender);
+
+        this.subscription = subscription;
+        this.sequence = sequence;
+    }
+}
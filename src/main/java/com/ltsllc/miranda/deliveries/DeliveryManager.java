@@ -16,19 +16,472 @@
 
 package com.ltsllc.miranda.deliveries;
 
-import com.ltsllc.miranda.manager.DirectoryManager;
+import com.ltsllc.clcl.EncryptionException;
+import com.ltsllc.miranda.Consumer;
+import com.ltsllc.miranda.Message;
+import com.ltsllc.miranda.clientinterface.basicclasses.Event;
+import com.ltsllc.miranda.clientinterface.basicclasses.Subscription;
+import com.ltsllc.miranda.event.EventLog;
+import com.ltsllc.miranda.file.Journal;
 import com.ltsllc.miranda.reader.Reader;
 import com.ltsllc.miranda.writer.Writer;
+import org.apache.log4j.Logger;
 
-import java.io.IOException;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by Clark on 5/1/2017.
+ *
+ * <P>
+ *     Delivers the events in the {@link EventLog} to subscriptions, keeping
+ *     how far each subscription has got as one {@link DeliveryCursor} per
+ *     subscription rather than a record per event.
+ * </P>
+ *
+ * <P>
+ *     Each subscription has at most one event on its way at a time, sent by
+ *     a {@link DeliveryTask} on one of the manager's delivery threads.  The
+ *     task reports back with a {@link NewDeliveryMessage} or a
+ *     {@link DeliveryFailedMessage}; the manager then moves the cursor and
+ *     sends the next event, if there is one.  When a delivery fails, a
+ *     subscription with an error policy of Drop skips the event.  Otherwise
+ *     the event is tried again the next time the topic gets a new event.
+ * </P>
+ *
+ * <P>
+ *     When a cursor moves, only that move is written: a record of the change
+ *     is appended to the {@link Journal} of the cursors file.  The size of a
+ *     record depends only on the names of the subscription and topic, not on
+ *     how many subscriptions or deliveries there are.  Every
+ *     {@link Journal#getCheckpointInterval()} records all the cursors are
+ *     written to the cursors file, and the Writer removes the journal.  The
+ *     cursors always use a journal, whether or not journaling is on for
+ *     other files.
+ * </P>
+ *
+ * <P>
+ *     Everything but the delivery threads runs on the manager's own thread,
+ *     so none of it is synchronized.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>reader - reads the cursors file.</LI>
+ *     <LI>writer - writes the cursors file.</LI>
+ *     <LI>eventLog - where the events come from.</LI>
+ *     <LI>cursors - the cursor of each subscription, by the name of the subscription.</LI>
+ *     <LI>subscriptions - the subscriptions, by name.</LI>
+ *     <LI>inFlight - the subscriptions that have an event on its way.</LI>
+ *     <LI>cursorsFile - the file that holds the cursors.</LI>
+ *     <LI>journalRecords - the number of records in the journal since the cursors file was last written.</LI>
+ *     <LI>deliverers - the threads that send events to subscriptions.</LI>
+ * </UL>
  */
-public class DeliveryManager extends DirectoryManager {
+public class DeliveryManager extends Consumer {
+    private static Logger logger = Logger.getLogger(DeliveryManager.class);
+
     public static final String NAME = "delivery manager";
+    public static final String CURSORS_FILE = "cursors";
+    public static final int DELIVERY_THREADS = 4;
+
+    /**
+     * The kinds of records in the journal of the cursors file.
+     */
+    public enum RecordTypes {
+        Created,
+        Acknowledged,
+        Skipped,
+        Removed
+    }
+
+    private Reader reader;
+    private Writer writer;
+    private EventLog eventLog;
+    private Map<String, DeliveryCursor> cursors = new HashMap<String, DeliveryCursor>();
+    private Map<String, Subscription> subscriptions = new HashMap<String, Subscription>();
+    private Set<String> inFlight = new HashSet<String>();
+    private File cursorsFile;
+    private int journalRecords;
+    private ExecutorService deliverers;
+
+    public Reader getReader() {
+        return reader;
+    }
+
+    public Writer getWriter() {
+        return writer;
+    }
+
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    public File getCursorsFile() {
+        return cursorsFile;
+    }
+
+    public int getJournalRecords() {
+        return journalRecords;
+    }
+
+    public Map<String, Subscription> getSubscriptions() {
+        return subscriptions;
+    }
+
+    public Set<String> getInFlight() {
+        return inFlight;
+    }
+
+    public ExecutorService getDeliverers() {
+        return deliverers;
+    }
+
+    public void setDeliverers(ExecutorService deliverers) {
+        this.deliverers = deliverers;
+    }
+
+    public DeliveryManager (String directory, Reader reader, Writer writer, EventLog eventLog) throws IOException {
+        super(NAME);
+
+        this.reader = reader;
+        this.writer = writer;
+        this.eventLog = eventLog;
+
+        File file = new File(directory);
+        if (!file.isDirectory() && !file.mkdirs())
+            throw new IOException("Could not create " + file);
+
+        this.cursorsFile = new File(file, CURSORS_FILE);
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, NAME + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+
+        this.deliverers = Executors.newFixedThreadPool(DELIVERY_THREADS, threadFactory);
+
+        DeliveryManagerReadyState deliveryManagerReadyState = new DeliveryManagerReadyState(this);
+        setCurrentState(deliveryManagerReadyState);
+
+        loadCursors();
+    }
+
+    /**
+     * Read the cursors written by {@link #writeCursors()}, if there are any,
+     * and then replay the journal records written since.
+     */
+    public void loadCursors () throws IOException {
+        cursors.clear();
+        journalRecords = 0;
+
+        if (getCursorsFile().exists()) {
+            try {
+                byte[] data = Reader.readFile(getCursorsFile(), getReader().getDataKeyCache());
+                for (DeliveryCursor cursor : fromBytes(data)) {
+                    cursors.put(cursor.getSubscription(), cursor);
+                }
+            } catch (EncryptionException e) {
+                throw new IOException("Exception decrypting " + getCursorsFile(), e);
+            }
+        }
+
+        List<byte[]> records = getReader().readJournal(getCursorsFile().getPath());
+        if (null == records)
+            return;
+
+        for (byte[] record : records) {
+            replay(record);
+            journalRecords++;
+        }
+    }
+
+    private void replay (byte[] record) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(record));
+        RecordTypes type = RecordTypes.values()[dataInputStream.readByte()];
+        String subscription = dataInputStream.readUTF();
+        String topic = dataInputStream.readUTF();
+        long sequence = dataInputStream.readLong();
+
+        DeliveryCursor cursor = cursors.get(subscription);
+
+        switch (type) {
+            case Created: {
+                cursors.put(subscription, new DeliveryCursor(subscription, topic, sequence));
+                break;
+            }
+
+            case Acknowledged: {
+                if (null != cursor)
+                    cursor.acknowledge(sequence);
+                break;
+            }
+
+            case Skipped: {
+                if (null != cursor)
+                    cursor.skipTo(sequence);
+                break;
+            }
+
+            case Removed: {
+                cursors.remove(subscription);
+                break;
+            }
+        }
+    }
+
+    public static byte[] toRecord (RecordTypes type, String subscription, String topic, long sequence)
+            throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream);
+
+        dataOutputStream.writeByte(type.ordinal());
+        dataOutputStream.writeUTF(subscription);
+        dataOutputStream.writeUTF(topic);
+        dataOutputStream.writeLong(sequence);
+
+        dataOutputStream.close();
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    public static byte[] toBytes (List<DeliveryCursor> cursors) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream);
+
+        dataOutputStream.writeInt(cursors.size());
+        for (DeliveryCursor cursor : cursors) {
+            cursor.writeTo(dataOutputStream);
+        }
+
+        dataOutputStream.close();
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    public static List<DeliveryCursor> fromBytes (byte[] data) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(data));
+        int count = dataInputStream.readInt();
+        List<DeliveryCursor> list = new ArrayList<DeliveryCursor>(count);
+
+        for (int i = 0; i < count; i++) {
+            list.add(DeliveryCursor.readFrom(dataInputStream));
+        }
+
+        return list;
+    }
+
+    /**
+     * Write all the cursors to the cursors file.  The Writer removes the
+     * journal once the file is in place.
+     */
+    public void writeCursors () {
+        journalRecords = 0;
+
+        try {
+            byte[] data = toBytes(new ArrayList<DeliveryCursor>(cursors.values()));
+            getWriter().sendWrite(getQueue(), this, getCursorsFile().getPath(), data);
+        } catch (IOException e) {
+            logger.error("Exception writing delivery cursors", e);
+        }
+    }
+
+    /**
+     * Record a change to the cursor of a subscription.
+     */
+    public void journal (RecordTypes type, DeliveryCursor cursor, long sequence) {
+        if (journalRecords + 1 >= Journal.getCheckpointInterval()) {
+            writeCursors();
+        } else {
+            try {
+                byte[] record = toRecord(type, cursor.getSubscription(), cursor.getTopic(), sequence);
+                getWriter().sendAppend(getQueue(), this, getCursorsFile().getPath(), record);
+                journalRecords++;
+            } catch (IOException e) {
+                logger.error("Exception journaling the delivery cursor for " + cursor.getSubscription(), e);
+            }
+        }
+    }
+
+    /**
+     * The cursor for a subscription.
+     *
+     * @return The cursor, or null if the subscription has none.
+     */
+    public DeliveryCursor getCursor (String subscription) {
+        return cursors.get(subscription);
+    }
+
+    /**
+     * Give a subscription a cursor that starts with the next event of its
+     * topic, unless it already has one for that topic.
+     */
+    public DeliveryCursor createCursor (String subscription, String topic) {
+        DeliveryCursor cursor = cursors.get(subscription);
+        if (null != cursor && cursor.getTopic().equals(topic))
+            return cursor;
+
+        long first = (null == getEventLog()) ? 0 : getEventLog().getNextSequence(topic);
+        cursor = new DeliveryCursor(subscription, topic, first);
+        cursors.put(subscription, cursor);
+        journal(RecordTypes.Created, cursor, first);
+
+        return cursor;
+    }
+
+    public boolean isDelivered (String subscription, long sequence) {
+        DeliveryCursor cursor = cursors.get(subscription);
+        return null != cursor && cursor.isAcknowledged(sequence);
+    }
+
+    /**
+     * Move a cursor over the events that the log has deleted.
+     */
+    public void skipExpired (DeliveryCursor cursor) {
+        if (null == getEventLog())
+            return;
+
+        long first = getEventLog().getFirstSequence(cursor.getTopic());
+        if (cursor.skipTo(first))
+            journal(RecordTypes.Skipped, cursor, first);
+    }
+
+    /**
+     * Record that the event with a sequence number has been delivered to a subscription.
+     *
+     * @return false if it had already been recorded, or the subscription has no cursor.
+     */
+    public boolean acknowledge (String subscription, long sequence) {
+        DeliveryCursor cursor = cursors.get(subscription);
+        if (null == cursor) {
+            logger.warn("Delivery of " + sequence + " to " + subscription + ", which has no cursor");
+            return false;
+        }
+
+        skipExpired(cursor);
+        boolean changed = cursor.acknowledge(sequence);
+
+        if (changed)
+            journal(RecordTypes.Acknowledged, cursor, sequence);
+
+        return changed;
+    }
+
+    public void removeCursor (String subscription) {
+        DeliveryCursor cursor = cursors.remove(subscription);
+        if (null != cursor)
+            journal(RecordTypes.Removed, cursor, 0);
+    }
+
+    public void addSubscription (Subscription subscription) {
+        subscriptions.put(subscription.getName(), subscription);
+        createCursor(subscription.getName(), subscription.getTopic());
+        deliverNext(subscription.getName());
+    }
+
+    public void removeSubscription (String subscription) {
+        subscriptions.remove(subscription);
+        inFlight.remove(subscription);
+        removeCursor(subscription);
+    }
+
+    /**
+     * Start delivering to the subscriptions for a topic that are not already busy.
+     */
+    public void eventsAvailable (String topic) {
+        for (Subscription subscription : subscriptions.values()) {
+            if (topic.equals(subscription.getTopic()))
+                deliverNext(subscription.getName());
+        }
+    }
+
+    /**
+     * An event has been delivered: move the cursor and send the next one.
+     */
+    public void delivered (String subscription, long sequence) {
+        inFlight.remove(subscription);
+        acknowledge(subscription, sequence);
+        deliverNext(subscription);
+    }
+
+    public void deliveryFailed (String subscription, long sequence) {
+        inFlight.remove(subscription);
+
+        Subscription theSubscription = subscriptions.get(subscription);
+        if (null != theSubscription && theSubscription.getErrorPolicy() == Subscription.ErrorPolicies.Drop) {
+            logger.warn("Dropping event " + sequence + " for " + subscription);
+            acknowledge(subscription, sequence);
+            deliverNext(subscription);
+        } else {
+            logger.warn("Could not deliver event " + sequence + " to " + subscription
+                    + ", trying again when there is another event");
+        }
+    }
+
+    /**
+     * Send the next undelivered event to a subscription, if it is not busy and there is one.
+     */
+    public void deliverNext (String subscription) {
+        Subscription theSubscription = subscriptions.get(subscription);
+        DeliveryCursor cursor = cursors.get(subscription);
+
+        if (null == theSubscription || null == cursor || null == getEventLog() || inFlight.contains(subscription))
+            return;
+
+        skipExpired(cursor);
+
+        long sequence = cursor.getNextUndelivered();
+        if (sequence >= getEventLog().getNextSequence(cursor.getTopic()))
+            return;
+
+        Event event;
+        try {
+            event = getEventLog().read(cursor.getTopic(), sequence);
+        } catch (IOException | EncryptionException e) {
+            logger.error("Exception reading event " + sequence + " of " + cursor.getTopic(), e);
+            return;
+        }
+
+        if (null == event)
+            return;
+
+        inFlight.add(subscription);
+        getDeliverers().execute(new DeliveryTask(this, theSubscription, sequence, event));
+    }
+
+    public void sendNewDelivery (BlockingQueue<Message> senderQueue, Object sender, String subscription, long sequence) {
+        NewDeliveryMessage newDeliveryMessage = new NewDeliveryMessage(senderQueue, sender, subscription, sequence);
+        sendToMe(newDeliveryMessage);
+    }
+
+    public void sendDeliveryFailed (BlockingQueue<Message> senderQueue, Object sender, String subscription,
+                                    long sequence) {
+        DeliveryFailedMessage deliveryFailedMessage = new DeliveryFailedMessage(senderQueue, sender, subscription,
+                sequence);
+        sendToMe(deliveryFailedMessage);
+    }
+
+    public void sendEventsAvailable (BlockingQueue<Message> senderQueue, Object sender, String topic) {
+        EventsAvailableMessage eventsAvailableMessage = new EventsAvailableMessage(senderQueue, sender, topic);
+        sendToMe(eventsAvailableMessage);
+    }
+
+    public void sendSubscriptionAdded (BlockingQueue<Message> senderQueue, Object sender, Subscription subscription) {
+        SubscriptionAddedMessage subscriptionAddedMessage = new SubscriptionAddedMessage(senderQueue, sender,
+                subscription);
+        sendToMe(subscriptionAddedMessage);
+    }
 
-    public DeliveryManager (String directory, int objectLimit, Reader reader, Writer writer) throws IOException {
-        super(NAME, directory, objectLimit, reader, writer);
+    public void sendSubscriptionDeleted (BlockingQueue<Message> senderQueue, Object sender, String subscription) {
+        SubscriptionDeletedMessage subscriptionDeletedMessage = new SubscriptionDeletedMessage(senderQueue, sender,
+                subscription);
+        sendToMe(subscriptionDeletedMessage);
     }
 }
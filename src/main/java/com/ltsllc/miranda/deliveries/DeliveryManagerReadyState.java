@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.deliveries;
+
+import com.ltsllc.miranda.Message;
+import com.ltsllc.miranda.State;
+import com.ltsllc.miranda.clientinterface.basicclasses.Subscription;
+import com.ltsllc.miranda.subsciptions.messages.GetSubscriptionsResponseMessage;
+import com.ltsllc.miranda.writer.WriteFailedMessage;
+import org.apache.log4j.Logger;
+
+/**
+ * The {@link DeliveryManager} is ready; this state hears about subscriptions
+ * and new events, moves cursors when events are delivered and hears back
+ * from the Writer about the cursors file.
+ */
+public class DeliveryManagerReadyState extends State {
+    private static Logger logger = Logger.getLogger(DeliveryManagerReadyState.class);
+
+    public DeliveryManager getDeliveryManager () {
+        return (DeliveryManager) getContainer();
+    }
+
+    public DeliveryManagerReadyState (DeliveryManager deliveryManager) {
+        super(deliveryManager);
+    }
+
+    public State processMessage (Message message) {
+        State nextState = getDeliveryManager().getCurrentState();
+
+        switch (message.getSubject()) {
+            case NewDelivery: {
+                NewDeliveryMessage newDeliveryMessage = (NewDeliveryMessage) message;
+                nextState = processNewDeliveryMessage(newDeliveryMessage);
+                break;
+            }
+
+            case DeliveryFailed: {
+                DeliveryFailedMessage deliveryFailedMessage = (DeliveryFailedMessage) message;
+                nextState = processDeliveryFailedMessage(deliveryFailedMessage);
+                break;
+            }
+
+            case EventsAvailable: {
+                EventsAvailableMessage eventsAvailableMessage = (EventsAvailableMessage) message;
+                nextState = processEventsAvailableMessage(eventsAvailableMessage);
+                break;
+            }
+
+            case SubscriptionAdded: {
+                SubscriptionAddedMessage subscriptionAddedMessage = (SubscriptionAddedMessage) message;
+                nextState = processSubscriptionAddedMessage(subscriptionAddedMessage);
+                break;
+            }
+
+            case SubscriptionDeleted: {
+                SubscriptionDeletedMessage subscriptionDeletedMessage = (SubscriptionDeletedMessage) message;
+                nextState = processSubscriptionDeletedMessage(subscriptionDeletedMessage);
+                break;
+            }
+
+            case GetSubscriptionsResponse: {
+                GetSubscriptionsResponseMessage getSubscriptionsResponseMessage = (GetSubscriptionsResponseMessage) message;
+                nextState = processGetSubscriptionsResponseMessage(getSubscriptionsResponseMessage);
+                break;
+            }
+
+            case WriteSucceeded: {
+                break;
+            }
+
+            case WriteFailed: {
+                WriteFailedMessage writeFailedMessage = (WriteFailedMessage) message;
+                nextState = processWriteFailedMessage(writeFailedMessage);
+                break;
+            }
+
+            default: {
+                nextState = super.processMessage(message);
+                break;
+            }
+        }
+
+        return nextState;
+    }
+
+    public State processNewDeliveryMessage (NewDeliveryMessage message) {
+        try {
+            getDeliveryManager().delivered(message.getSubscription(), message.getSequence());
+        } catch (IllegalArgumentException e) {
+            logger.error("Could not record the delivery of " + message.getSequence() + " to "
+                    + message.getSubscription(), e);
+        }
+
+        return getDeliveryManager().getCurrentState();
+    }
+
+    public State processDeliveryFailedMessage (DeliveryFailedMessage message) {
+        getDeliveryManager().deliveryFailed(message.getSubscription(), message.getSequence());
+
+        return getDeliveryManager().getCurrentState();
+    }
+
+    public State processEventsAvailableMessage (EventsAvailableMessage message) {
+        getDeliveryManager().eventsAvailable(message.getTopic());
+
+        return getDeliveryManager().getCurrentState();
+    }
+
+    public State processSubscriptionAddedMessage (SubscriptionAddedMessage message) {
+        getDeliveryManager().addSubscription(message.getSubscription());
+
+        return getDeliveryManager().getCurrentState();
+    }
+
+    public State processSubscriptionDeletedMessage (SubscriptionDeletedMessage message) {
+        getDeliveryManager().removeSubscription(message.getSubscription());
+
+        return getDeliveryManager().getCurrentState();
+    }
+
+    /**
+     * The subscriptions there were when Miranda started.
+     */
+    public State processGetSubscriptionsResponseMessage (GetSubscriptionsResponseMessage message) {
+        for (Subscription subscription : message.getSubscriptions()) {
+            getDeliveryManager().addSubscription(subscription);
+        }
+
+        return getDeliveryManager().getCurrentState();
+    }
+
+    public State processWriteFailedMessage (WriteFailedMessage message) {
+        logger.error("Failed to write delivery cursors: " + message.getFilename(), message.getCause());
+
+        return getDeliveryManager().getCurrentState();
+    }
+}
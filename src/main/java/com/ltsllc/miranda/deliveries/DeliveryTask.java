@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.deliveries;
+
+import com.ltsllc.miranda.clientinterface.basicclasses.Event;
+import com.ltsllc.miranda.clientinterface.basicclasses.Subscription;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Send one event to the dataUrl of a subscription.
+ *
+ * <P>
+ *     This runs on one of the threads of the {@link DeliveryManager}, so
+ *     that waiting on a subscriber never holds up the manager.  The event
+ *     goes out with the HTTP method it was published with.  A 2xx response
+ *     is sent back to the manager as a {@link NewDeliveryMessage}; anything
+ *     else, including not being able to connect, is a
+ *     {@link DeliveryFailedMessage}.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>deliveryManager - the manager to tell how it went.</LI>
+ *     <LI>subscription - the subscription to deliver to.</LI>
+ *     <LI>sequence - the sequence number of the event within its topic.</LI>
+ *     <LI>event - the event.</LI>
+ * </UL>
+ */
+public class DeliveryTask implements Runnable {
+    private static Logger logger = Logger.getLogger(DeliveryTask.class);
+
+    public static final int TIMEOUT = 30 * 1000; // milliseconds
+
+    private DeliveryManager deliveryManager;
+    private Subscription subscription;
+    private long sequence;
+    private Event event;
+
+    public DeliveryTask (DeliveryManager deliveryManager, Subscription subscription, long sequence, Event event) {
+        this.deliveryManager = deliveryManager;
+        this.subscription = subscription;
+        this.sequence = sequence;
+        this.event = event;
+    }
+
+    public DeliveryManager getDeliveryManager() {
+        return deliveryManager;
+    }
+
+    public Subscription getSubscription() {
+        return subscription;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    public void run () {
+        boolean delivered = false;
+
+        try {
+            delivered = post();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Exception delivering event " + getEvent().getGuid() + " to " + getSubscription().getName(), e);
+        }
+
+        if (delivered) {
+            getDeliveryManager().sendNewDelivery(null, this, getSubscription().getName(), getSequence());
+        } else {
+            getDeliveryManager().sendDeliveryFailed(null, this, getSubscription().getName(), getSequence());
+        }
+    }
+
+    /**
+     * Send the event.
+     *
+     * @return true if the subscriber took it.
+     */
+    public boolean post () throws IOException {
+        if (null == getSubscription().getDataUrl())
+            return false;
+
+        URL url = new URL(getSubscription().getDataUrl());
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+        try {
+            Event.Methods method = getEvent().getMethod();
+            if (null == method || method == Event.Methods.Unknown)
+                method = Event.Methods.POST;
+
+            connection.setRequestMethod(method.toString());
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setRequestProperty("Miranda-Event", getEvent().getGuid());
+
+            byte[] content = getEvent().getContent();
+            if (null != content && (method == Event.Methods.POST || method == Event.Methods.PUT)) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(content.length);
+
+                OutputStream outputStream = connection.getOutputStream();
+                try {
+                    outputStream.write(content);
+                } finally {
+                    outputStream.close();
+                }
+            }
+
+            int code = connection.getResponseCode();
+            return code >= 200 && code < 300;
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.deliveries;
+
+import com.ltsllc.miranda.Message;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * There are new events for a topic.
+ *
+ * <P>
+ *     The {@link DeliveryManager} starts delivering them to the subscriptions
+ *     for the topic that are not already busy.  There is no reply.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>topic - the name of the topic.</LI>
+ * </UL>
+ */
+public class EventsAvailableMessage extends Message {
+    private String topic;
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public EventsAvailableMessage (BlockingQueue<Message> senderQueue, Object sender, String topic) {
+        super(Subjects.EventsAvailable, senderQueue, sender);
+
+        this.topic = topic;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.deliveries;
+
+import com.ltsllc.miranda.Message;
+import com.ltsllc.miranda.clientinterface.basicclasses.Subscription;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A subscription has been created or changed.
+ *
+ * <P>
+ *     The {@link DeliveryManager} gives a new subscription a
+ *     {@link DeliveryCursor} that starts with the next event of its topic.
+ *     There is no reply.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>subscription - the subscription.</LI>
+ * </UL>
+ */
+public class SubscriptionAddedMessage extends Message {
+    private Subscription subscription;
+
+    public Subscription getSubscription() {
+        return subscription;
+    }
+
+    public SubscriptionAddedMessage (BlockingQueue<Message> senderQueue, Object sender, Subscription subscription) {
+        super(Subjects.SubscriptionAdded, senderQueue, sender);
+
+        this.subscription = subscription;
+    }
+}
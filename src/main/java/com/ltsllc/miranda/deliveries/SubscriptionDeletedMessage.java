@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.deliveries;
+
+import com.ltsllc.miranda.Message;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A subscription has been deleted.
+ *
+ * <P>
+ *     The {@link DeliveryManager} stops delivering to it and removes its
+ *     {@link DeliveryCursor}.  There is no reply.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>subscription - the name of the subscription.</LI>
+ * </UL>
+ */
+public class SubscriptionDeletedMessage extends Message {
+    private String subscription;
+
+    public String getSubscription() {
+        return subscription;
+    }
+
+    public SubscriptionDeletedMessage (BlockingQueue<Message> senderQueue, Object sender, String subscription) {
+        super(Subjects.SubscriptionDeleted, senderQueue, sender);
+
+        this.subscription = subscription;
+    }
+}
@@ -18,15 +18,21 @@ package com.ltsllc.miranda.directory;
 
 import com.google.gson.Gson;
 import com.ltsllc.miranda.Panic;
+import com.ltsllc.miranda.Version;
 import com.ltsllc.miranda.clientinterface.basicclasses.DirectoryEntry;
+import com.ltsllc.miranda.file.DirectoryScanner;
+import com.ltsllc.miranda.file.ManifestEntry;
 import com.ltsllc.miranda.file.MirandaFile;
+import com.ltsllc.miranda.file.ScanManifest;
 import com.ltsllc.miranda.miranda.Miranda;
 import com.ltsllc.miranda.reader.Reader;
 import com.ltsllc.miranda.writer.Writer;
+import org.apache.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -34,8 +40,41 @@ import java.util.Map;
 
 /**
  * Created by Clark on 5/13/2017.
+ *
+ * <P>
+ *     The directory is scanned with the {@link DirectoryScanner}, and what it
+ *     finds is kept in a {@link ScanManifest} in the directory.  The manifest
+ *     only records the path, size, modification time and version of each
+ *     file.  The first load reads every file; after that a load only reads
+ *     the files that the manifest says are new or have changed.  The version
+ *     of the directory comes from the versions in the manifest, so it is
+ *     known without reading the files.
+ * </P>
+ *
+ * <P>
+ *     A file that has not changed since the manifest was written keeps the
+ *     version recorded there, so reading it does not compute its SHA-1 again.
+ *     A file that is read again but whose version is the same as when it was
+ *     last added to the map, such as one that was only touched, is not added
+ *     again.
+ * </P>
+ *
+ * <P>
+ *     The manifest is written once the reads started by a load have all
+ *     finished, rather than after each file.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>manifest - the files found by the last scan.</LI>
+ *     <LI>loaded - every file has been read at least once.</LI>
+ *     <LI>mergedVersions - the version of each file when it was last added to the map, by path.</LI>
+ *     <LI>pendingReads - the number of reads that have been sent but not answered.</LI>
+ * </UL>
  */
 abstract public class MirandaDirectory<T extends DirectoryEntry> extends MirandaFile {
+    private static Logger logger = Logger.getLogger(MirandaDirectory.class);
+
     abstract public boolean isInteresting(String name);
     abstract public Type getListType();
 
@@ -43,6 +82,10 @@ abstract public class MirandaDirectory<T extends DirectoryEntry> extends Miranda
     private List<File> files;
     private Map<String, T> map;
     private int objectLimit;
+    private ScanManifest manifest;
+    private boolean loaded;
+    private Map<String, Version> mergedVersions;
+    private int pendingReads;
     private static Gson gson = new Gson();
 
     public static Gson getGson() {
@@ -84,10 +127,48 @@ abstract public class MirandaDirectory<T extends DirectoryEntry> extends Miranda
         this.files = files;
     }
 
+    /**
+     * The manifest is read the first time it is needed, which is the first
+     * load.  That happens in the constructor of {@link MirandaFile}, before
+     * the constructor of this class has run.
+     */
+    public ScanManifest getManifest() {
+        if (null == manifest) {
+            manifest = new ScanManifest(new File(getDirectory(), ScanManifest.FILENAME));
+            loadManifest();
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Like the manifest, this is created the first time it is needed because
+     * the first load happens before the constructor of this class has run.
+     */
+    public Map<String, Version> getMergedVersions() {
+        if (null == mergedVersions)
+            mergedVersions = new HashMap<String, Version>();
+
+        return mergedVersions;
+    }
+
+    public int getPendingReads() {
+        return pendingReads;
+    }
+
+    public DirectoryScanner.Filter getFilter () {
+        return new DirectoryScanner.Filter() {
+            public boolean isInteresting(String name) {
+                return MirandaDirectory.this.isInteresting(name);
+            }
+        };
+    }
+
     public MirandaDirectory(String directoryName, int objectLimit, Reader reader, Writer writer) throws IOException {
         super(directoryName, reader, writer);
         this.directory = new File(directoryName);
-        this.files = new ArrayList<File>();
+        if (null == this.files)
+            this.files = new ArrayList<File>();
         this.map = new HashMap<String, T>();
         this.objectLimit = objectLimit;
 
@@ -95,8 +176,6 @@ abstract public class MirandaDirectory<T extends DirectoryEntry> extends Miranda
 
         DirectoryStartState directoryStartState = new DirectoryStartState(this);
         setCurrentState(directoryStartState);
-
-        load();
     }
 
     public void start() {
@@ -119,72 +198,135 @@ abstract public class MirandaDirectory<T extends DirectoryEntry> extends Miranda
         sendToMe(exceptionDuringScanMessage);
     }
 
+    /**
+     * Read the manifest left by the last run.  The manifest only saves work,
+     * so if it cannot be read every file is treated as changed.
+     */
+    public void loadManifest () {
+        try {
+            if (manifest.getFile().exists())
+                manifest.load(getReader().getDataKeyCache());
+        } catch (IOException e) {
+            logger.warn("Could not read " + manifest.getFile() + ", rereading every file", e);
+        }
+    }
+
+    public void writeManifest () {
+        if (!getManifest().isDirty())
+            return;
+
+        getManifest().setDirty(false);
+        getWriter().sendWrite(getQueue(), this, getManifest().getFile().getPath(), getManifest().toBytes());
+    }
+
     public void load() {
-        List<String> list = scan();
+        List<ManifestEntry> scanned = scan();
+        List<ManifestEntry> changed = getManifest().update(scanned);
+
+        List<File> files = new ArrayList<File>(scanned.size());
+        for (ManifestEntry entry : scanned) {
+            files.add(new File(entry.getPath()));
+        }
+
+        setFiles(files);
+
+        List<ManifestEntry> toRead = loaded ? changed : scanned;
+        loaded = true;
 
-        for (String filename : list) {
-            getReader().sendReadMessage(getQueue(), this, filename);
+        List<String> paths = new ArrayList<String>(scanned.size());
+        for (ManifestEntry entry : scanned) {
+            paths.add(entry.getPath());
         }
+
+        getMergedVersions().keySet().retainAll(paths);
+
+        pendingReads += toRead.size();
+        for (ManifestEntry entry : toRead) {
+            getReader().sendReadMessage(getQueue(), this, entry.getPath());
+        }
+
+        if (pendingReads <= 0)
+            writeManifest();
     }
 
-    public List<String> scan() {
+    public void addContents (String filename, List<T> list) {
+        File file = new File(filename);
+        Miranda.fileWatcher.sendWatchDirectoryMessage(getQueue(), this, file, getQueue());
+
+        for (T item : list) {
+            add(item);
+        }
+    }
+
+    public List<ManifestEntry> scan() {
         String filename = getDirectory().getName();
 
         try {
-            filename = getDirectory().getCanonicalPath();
-            List<String> list = new ArrayList<String>();
-            scan (filename, list);
-            return list;
+            File directory = getDirectory().getCanonicalFile();
+            filename = directory.getPath();
+            return DirectoryScanner.getInstance().scan(directory, getFilter());
         } catch (IOException e) {
             String message = "Exception during scan of " + filename;
             Panic panic = new Panic(message, e, Panic.Reasons.ExceptionDuringScan);
             Miranda.panicMiranda(panic);
-            return new ArrayList<String>();
+            return new ArrayList<ManifestEntry>();
         }
     }
 
-    public void scan(String filename, List<String> list) {
-        File file = new File(filename);
-
-        if (file.isDirectory()) {
-            scanDirectory(filename, list);
-        } else if (file.exists() && isInteresting(filename)) {
-            list.add(filename);
-        }
+    /**
+     * The version of the directory is the digest of the versions in the
+     * manifest.
+     */
+    public Version calculateVersion () {
+        return getManifest().getVersion();
     }
 
-    public void scanDirectory(String directoryName, List<String> list) {
-        try {
-            File directory = new File(directoryName);
-            if (!directory.isDirectory())
-                return;
+    /**
+     * The version of a file that has just been read.  If the manifest already
+     * has a version for the file, then the file has not changed since that
+     * version was computed, so it is used instead of computing it again.
+     */
+    public Version getFileVersion (String filename, byte[] data) {
+        ManifestEntry entry = getManifest().get(filename);
+        if (null != entry && null != entry.getVersion())
+            return entry.getVersion();
 
-            String canonicalPath = directory.getCanonicalPath();
-            String[] contents = directory.list();
-            for (String entry : contents) {
-                String fullName = canonicalPath + File.pathSeparator + entry;
-                scan(fullName, list);
-            }
-        } catch (IOException e) {
-            String message = "Exception during scan of " + directoryName;
-            Panic panic = new Panic(message, e, Panic.Reasons.ExceptionDuringScan);
+        try {
+            Version version = new Version(data);
+            getManifest().setVersion(filename, version);
+            return version;
+        } catch (NoSuchAlgorithmException e) {
+            Panic panic = new Panic("Exception trying to calculate sha1", e, Panic.Reasons.ExceptionCalculatingSha1);
             Miranda.panicMiranda(panic);
+            return null;
         }
     }
 
+    /**
+     * A file that a load asked for has been read.  When it is the last one,
+     * the manifest is written.
+     */
     public void fileLoaded(String filename, byte[] data) {
-        String json = new String(data);
-        List<T> list = new ArrayList<T>();
+        try {
+            Version version = getFileVersion(filename, data);
+            if (null != version && version.equals(getMergedVersions().get(filename)))
+                return;
 
-        if (getMap().size() >= getObjectLimit())
-            return;
+            if (getMap().size() < getObjectLimit()) {
+                String json = new String(data);
+                List<T> list = getGson().fromJson(json, getListType());
+                addContents(filename, list);
 
-        list = getGson().fromJson(json, getListType());
-        File file = new File(filename);
-        Miranda.fileWatcher.sendWatchDirectoryMessage(getQueue(), this, file, getQueue());
+                if (null != version)
+                    getMergedVersions().put(filename, version);
+            }
+        } finally {
+            pendingReads--;
 
-        for (T item : list) {
-            add(item);
+            if (pendingReads <= 0) {
+                pendingReads = 0;
+                writeManifest();
+            }
         }
     }
 }
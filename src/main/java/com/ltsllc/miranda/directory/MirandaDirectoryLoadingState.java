@@ -73,6 +73,7 @@ public class MirandaDirectoryLoadingState extends State {
         getMirandaDirectory().fileLoaded(readResponseMessage.getFilename(), readResponseMessage.getData());
         decrementFilesToLoad();
         if (loadedAllFiles()) {
+            restoreDeferredMessages();
             return new MirandaDirectoryReadyState(getMirandaDirectory());
         }
 
@@ -1,11 +1,16 @@
 package com.ltsllc.miranda.directory;
 
+import com.ltsllc.miranda.Message;
 import com.ltsllc.miranda.State;
+import com.ltsllc.miranda.writer.WriteFailedMessage;
+import org.apache.log4j.Logger;
 
 /**
  * Created by Clark on 6/7/2017.
  */
 public class MirandaDirectoryReadyState extends State {
+    private static Logger logger = Logger.getLogger(MirandaDirectoryReadyState.class);
+
     public MirandaDirectoryReadyState (MirandaDirectory mirandaDirectory) {
         super(mirandaDirectory);
     }
@@ -14,5 +19,39 @@ public class MirandaDirectoryReadyState extends State {
         return (MirandaDirectory) getContainer();
     }
 
+    public State processMessage (Message message) {
+        State nextState = getMirandaDirectory().getCurrentState();
+
+        switch (message.getSubject()) {
+            case WriteSucceeded: {
+                break;
+            }
+
+            case WriteFailed: {
+                WriteFailedMessage writeFailedMessage = (WriteFailedMessage) message;
+                nextState = processWriteFailedMessage(writeFailedMessage);
+                break;
+            }
+
+            default: {
+                nextState = super.processMessage(message);
+                break;
+            }
+        }
+
+        return nextState;
+    }
+
+    /**
+     * The only thing a directory writes is its manifest, which only saves
+     * work, so a failure is logged and the manifest is written again the
+     * next time it changes.
+     */
+    public State processWriteFailedMessage (WriteFailedMessage writeFailedMessage) {
+        logger.warn("Failed to write " + writeFailedMessage.getFilename(), writeFailedMessage.getCause());
+        getMirandaDirectory().getManifest().setDirty(true);
+
+        return getMirandaDirectory().getCurrentState();
+    }
 
 }
@@ -16,6 +16,9 @@
 
 package com.ltsllc.miranda.directory;
 
+import com.ltsllc.miranda.file.DirectoryScanner;
+import com.ltsllc.miranda.file.ManifestEntry;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -23,6 +26,11 @@ import java.util.List;
 
 /**
  * Created by Clark on 5/13/2017.
+ *
+ * <P>
+ *     Scan a {@link MirandaDirectory} in the background with the
+ *     {@link DirectoryScanner} and tell the directory what was found.
+ * </P>
  */
 public class ScanTask implements Runnable {
     private MirandaDirectory mirandaDirectory;
@@ -56,16 +64,11 @@ public class ScanTask implements Runnable {
     }
 
     public void walk (File file, List<File> files) throws IOException {
-        String[] listing = file.list();
-        for (String name : listing) {
-            File newFile = new File (file.getCanonicalFile(), name);
-            if (getMirandaDirectory().isInteresting(name)) {
-                files.add(newFile);
-            }
+        File directory = file.getCanonicalFile();
+        List<ManifestEntry> entries = DirectoryScanner.getInstance().scan(directory, getMirandaDirectory().getFilter());
 
-            if (newFile.isDirectory()) {
-                walk (newFile, files);
-            }
+        for (ManifestEntry entry : entries) {
+            files.add(new File(entry.getPath()));
         }
     }
 }
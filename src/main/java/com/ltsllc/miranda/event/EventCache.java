@@ -0,0 +1,277 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.event;
+
+import com.ltsllc.miranda.clientinterface.basicclasses.Event;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The events that {@link EventManager} keeps in memory, in front of its
+ * {@link EventLog}.
+ *
+ * <P>
+ *     The cache is bounded by the number of events and by their approximate
+ *     size in bytes.  When it goes over either limit, the least recently used
+ *     events are dropped.  An event that has been dropped is still in the log,
+ *     so a later miss just reads it back from disk.
+ * </P>
+ *
+ * <P>
+ *     An event that cannot be evicted, because someone is still trying to
+ *     deliver it, is pinned: it is kept apart from the other events and does
+ *     not count against the limits, since the limits can do nothing about it.
+ *     That way trimming never has to step over it again, and the events that
+ *     can be evicted stay within the limits however many are pinned.  Pinned
+ *     events go back to the others when {@link #releasePinned()} finds that
+ *     they can be evicted.
+ * </P>
+ *
+ * <P>
+ *     The methods are synchronized because events are created by operations
+ *     running on threads of their own.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>maxCount - the most events to keep.</LI>
+ *     <LI>maxBytes - the most bytes of events to keep, as estimated by {@link #sizeOf(Event)}.</LI>
+ *     <LI>bytes - the estimated size of the events in the cache.</LI>
+ *     <LI>hits - the number of lookups that found their event.</LI>
+ *     <LI>misses - the number of lookups that did not.</LI>
+ *     <LI>evictions - the number of events dropped to stay within the limits.</LI>
+ *     <LI>events - the events that can be evicted, by GUID, least recently used first.</LI>
+ *     <LI>pinned - the events that could not be evicted, by GUID.</LI>
+ *     <LI>pinnedBytes - the estimated size of the pinned events.</LI>
+ * </UL>
+ */
+public class EventCache {
+    public static final int EVENT_OVERHEAD = 256; // bytes, for the object and its fields
+
+    private int maxCount;
+    private long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private LinkedHashMap<String, Event> events = new LinkedHashMap<String, Event>(16, 0.75f, true);
+    private Map<String, Event> pinned = new HashMap<String, Event>();
+    private long pinnedBytes;
+
+    public EventCache (int maxCount, long maxBytes) {
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public synchronized void setMaxCount(int maxCount) {
+        this.maxCount = maxCount;
+        trim();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getPinnedBytes() {
+        return pinnedBytes;
+    }
+
+    public synchronized int getPinnedCount () {
+        return pinned.size();
+    }
+
+    public synchronized int size () {
+        return events.size() + pinned.size();
+    }
+
+    public synchronized EventCacheGauge getGauge () {
+        return new EventCacheGauge(size(), bytes + pinnedBytes, getMaxCount(), getMaxBytes(), hits, misses,
+                evictions);
+    }
+
+    /**
+     * An estimate of the memory an event takes up.
+     */
+    public static long sizeOf (Event event) {
+        long size = EVENT_OVERHEAD;
+
+        if (null != event.getContent())
+            size += event.getContent().length;
+
+        if (null != event.getGuid())
+            size += 2 * event.getGuid().length();
+
+        if (null != event.getUserName())
+            size += 2 * event.getUserName().length();
+
+        if (null != event.getTopicName())
+            size += 2 * event.getTopicName().length();
+
+        return size;
+    }
+
+    /**
+     * Look up an event, making it the most recently used.
+     *
+     * @return The event, or null if it is not in the cache.
+     */
+    public synchronized Event get (String guid) {
+        Event event = events.get(guid);
+
+        if (null == event)
+            event = pinned.get(guid);
+
+        if (null == event)
+            misses++;
+        else
+            hits++;
+
+        return event;
+    }
+
+    public synchronized void put (Event event) {
+        remove(event.getGuid());
+
+        if (event.canBeEvicted()) {
+            events.put(event.getGuid(), event);
+            bytes += sizeOf(event);
+            trim();
+        } else {
+            pin(event);
+        }
+    }
+
+    public synchronized Event remove (String guid) {
+        Event event = events.remove(guid);
+
+        if (null != event) {
+            bytes -= sizeOf(event);
+        } else {
+            event = pinned.remove(guid);
+
+            if (null != event)
+                pinnedBytes -= sizeOf(event);
+        }
+
+        return event;
+    }
+
+    public synchronized List<String> getGuids () {
+        List<String> guids = new ArrayList<String>(events.keySet());
+        guids.addAll(pinned.keySet());
+        return guids;
+    }
+
+    private void pin (Event event) {
+        pinned.put(event.getGuid(), event);
+        pinnedBytes += sizeOf(event);
+    }
+
+    /**
+     * Move the pinned events that can now be evicted back in with the others,
+     * as the most recently used, and trim the cache.
+     *
+     * @return The number of events that were released.
+     */
+    public synchronized int releasePinned () {
+        int released = 0;
+        Iterator<Event> iterator = pinned.values().iterator();
+
+        while (iterator.hasNext()) {
+            Event event = iterator.next();
+
+            if (event.canBeEvicted()) {
+                iterator.remove();
+                long size = sizeOf(event);
+                pinnedBytes -= size;
+                events.put(event.getGuid(), event);
+                bytes += size;
+                released++;
+            }
+        }
+
+        trim();
+
+        return released;
+    }
+
+    public boolean isOverLimit () {
+        return events.size() > getMaxCount() || bytes > getMaxBytes();
+    }
+
+    /**
+     * Drop the least recently used events until the cache is within its
+     * limits.
+     *
+     * <P>
+     *     An event that someone has started to deliver since it was put in the
+     *     cache is pinned rather than dropped.
+     * </P>
+     *
+     * @return The number of events dropped.
+     */
+    public synchronized int trim () {
+        int dropped = 0;
+        Iterator<Event> iterator = events.values().iterator();
+
+        while (isOverLimit() && iterator.hasNext()) {
+            Event event = iterator.next();
+            iterator.remove();
+            bytes -= sizeOf(event);
+
+            if (event.canBeEvicted())
+                dropped++;
+            else
+                pin(event);
+        }
+
+        evictions += dropped;
+
+        return dropped;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.event;
+
+/**
+ * A snapshot of an {@link EventCache}; see {@link EventCache#getGauge()}.
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>size - the number of events in the cache.</LI>
+ *     <LI>bytes - the estimated size of the events in the cache.</LI>
+ *     <LI>maxCount - the most events the cache keeps.</LI>
+ *     <LI>maxBytes - the most bytes of events the cache keeps.</LI>
+ *     <LI>hits - the number of lookups that found their event.</LI>
+ *     <LI>misses - the number of lookups that did not, and went to the log.</LI>
+ *     <LI>evictions - the number of events dropped to stay within the limits.</LI>
+ * </UL>
+ */
+public class EventCacheGauge {
+    private int size;
+    private long bytes;
+    private int maxCount;
+    private long maxBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public EventCacheGauge (int size, long bytes, int maxCount, long maxBytes, long hits, long misses,
+                            long evictions) {
+        this.size = size;
+        this.bytes = bytes;
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    public String toString () {
+        return size + " events, " + hits + " hits, " + misses + " misses, " + evictions + " evictions";
+    }
+}
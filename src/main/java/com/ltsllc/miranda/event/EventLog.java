@@ -0,0 +1,415 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.event;
+
+import com.google.gson.Gson;
+import com.ltsllc.clcl.DataKeyCache;
+import com.ltsllc.clcl.EncryptingOutputStream;
+import com.ltsllc.clcl.EncryptionException;
+import com.ltsllc.miranda.clientinterface.basicclasses.Event;
+import com.ltsllc.miranda.property.MirandaProperties;
+import com.ltsllc.miranda.reader.Reader;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * An append only store of {@link Event}s, split into segments.
+ *
+ * <P>
+ *     Every event gets an offset, one more than the offset of the event
+ *     before it.  Events are appended to the newest segment until it reaches
+ *     {@link #getSegmentSize()}, at which point a new segment is started, so
+ *     writing events is sequential I/O.  An event can be read back by its
+ *     offset or by its GUID; only the GUIDs and a sparse index of each
+ *     segment are kept in memory, not the events themselves.
+ * </P>
+ *
+ * <P>
+ *     The events of each topic are also numbered from 0, in a sequence of
+ *     their own; see {@link TopicIndex}.  That is what delivery follows,
+ *     since the offsets of a topic's events have the other topics' events
+ *     in between them.  So that the numbering survives a topic's events
+ *     all expiring, the next sequence number of every topic is written to
+ *     the sequences file before a segment is deleted.
+ * </P>
+ *
+ * <P>
+ *     Events are never removed one at a time.  Instead
+ *     {@link #deleteExpiredSegments(long)} removes whole segments once
+ *     every event in them is older than {@link #getRetention()}.
+ * </P>
+ *
+ * <P>
+ *     The payload of each record is the JSON of the event, encrypted in the
+ *     format of {@link EncryptingOutputStream} with the writer's data key.
+ *     The methods are synchronized because events are created by operations
+ *     running on threads of their own.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>directory - the directory that holds the segments.</LI>
+ *     <LI>segmentSize - the size, in bytes, at which a segment is closed to new events.</LI>
+ *     <LI>indexInterval - the number of bytes between entries in the index of a segment.</LI>
+ *     <LI>retention - how long, in milliseconds, events are kept.</LI>
+ *     <LI>sync - if true, each event is forced to disk before append returns.</LI>
+ *     <LI>writeKeys - the data keys used to encrypt events.</LI>
+ *     <LI>readKeys - the data keys used to decrypt events.</LI>
+ *     <LI>segments - the segments, by their base offsets.</LI>
+ *     <LI>guids - the offset of each event, by its GUID.</LI>
+ *     <LI>topics - the index of each topic, by the name of the topic.</LI>
+ * </UL>
+ */
+public class EventLog {
+    private static Logger logger = Logger.getLogger(EventLog.class);
+    private static Gson gson = new Gson();
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_INDEX_INTERVAL = 4096;
+    public static final long DEFAULT_RETENTION = 7 * 24 * 60 * 60 * 1000L; // one week
+    public static final String SEQUENCES_FILE = "sequences";
+
+    private File directory;
+    private long segmentSize = DEFAULT_SEGMENT_SIZE;
+    private int indexInterval = DEFAULT_INDEX_INTERVAL;
+    private long retention = DEFAULT_RETENTION;
+    private boolean sync = Boolean.parseBoolean(MirandaProperties.DEFAULT_WRITER_SYNC);
+    private DataKeyCache writeKeys;
+    private DataKeyCache readKeys;
+    private TreeMap<Long, EventLogSegment> segments = new TreeMap<Long, EventLogSegment>();
+    private Map<String, Long> guids = new HashMap<String, Long>();
+    private Map<String, TopicIndex> topics = new HashMap<String, TopicIndex>();
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(long segmentSize) {
+        this.segmentSize = Math.max(1, segmentSize);
+    }
+
+    public int getIndexInterval() {
+        return indexInterval;
+    }
+
+    public void setIndexInterval(int indexInterval) {
+        this.indexInterval = Math.max(1, indexInterval);
+    }
+
+    public long getRetention() {
+        return retention;
+    }
+
+    public void setRetention(long retention) {
+        this.retention = retention;
+    }
+
+    public boolean getSync() {
+        return sync;
+    }
+
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+
+    public TreeMap<Long, EventLogSegment> getSegments() {
+        return segments;
+    }
+
+    public EventLog (File directory, DataKeyCache writeKeys, DataKeyCache readKeys) {
+        this.directory = directory;
+        this.writeKeys = writeKeys;
+        this.readKeys = readKeys;
+    }
+
+    /**
+     * Open the segments that are already in the directory.
+     */
+    public synchronized void open () throws IOException {
+        if (!getDirectory().isDirectory() && !getDirectory().mkdirs())
+            throw new IOException("Could not create " + getDirectory());
+
+        File[] files = getDirectory().listFiles();
+        if (null == files)
+            return;
+
+        List<Long> baseOffsets = new ArrayList<Long>();
+        for (File file : files) {
+            long baseOffset = EventLogSegment.getBaseOffset(file.getName());
+            if (baseOffset >= 0)
+                baseOffsets.add(baseOffset);
+        }
+
+        Collections.sort(baseOffsets);
+        readSequences();
+
+        for (long baseOffset : baseOffsets) {
+            EventLogSegment segment = new EventLogSegment(getDirectory(), baseOffset, getIndexInterval());
+            segment.setSync(getSync());
+            segment.open(guids, topics);
+            segments.put(baseOffset, segment);
+        }
+
+        logger.info("Opened " + segments.size() + " event segments holding " + guids.size() + " events");
+    }
+
+    public synchronized int size () {
+        return guids.size();
+    }
+
+    public synchronized long getNextOffset () {
+        if (segments.isEmpty())
+            return 0;
+
+        return segments.lastEntry().getValue().getNextOffset();
+    }
+
+    public synchronized boolean contains (String guid) {
+        return guids.containsKey(guid);
+    }
+
+    public static String getTopic (Event event) {
+        return (null == event.getTopicName()) ? "" : event.getTopicName();
+    }
+
+    /**
+     * The sequence number of the oldest event of a topic that the log still has.
+     */
+    public synchronized long getFirstSequence (String topic) {
+        TopicIndex topicIndex = topics.get(topic);
+        return (null == topicIndex) ? 0 : topicIndex.getFirstSequence();
+    }
+
+    /**
+     * The sequence number the next event of a topic will get.
+     */
+    public synchronized long getNextSequence (String topic) {
+        TopicIndex topicIndex = topics.get(topic);
+        return (null == topicIndex) ? 0 : topicIndex.getNextSequence();
+    }
+
+    public File getSequencesFile () {
+        return new File(getDirectory(), SEQUENCES_FILE);
+    }
+
+    /**
+     * Start the index of each topic in the sequences file from where the
+     * file says, in case none of the topic's events are left.
+     */
+    public void readSequences () throws IOException {
+        if (!getSequencesFile().exists())
+            return;
+
+        DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(getSequencesFile())));
+
+        try {
+            int count = dataInputStream.readInt();
+            for (int i = 0; i < count; i++) {
+                String topic = dataInputStream.readUTF();
+                topics.put(topic, new TopicIndex(dataInputStream.readLong()));
+            }
+        } finally {
+            dataInputStream.close();
+        }
+    }
+
+    /**
+     * Write the next sequence number of every topic to the sequences file.
+     */
+    public void writeSequences () throws IOException {
+        File temp = new File(getDirectory(), SEQUENCES_FILE + ".tmp");
+        FileOutputStream fileOutputStream = new FileOutputStream(temp);
+        DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+
+        try {
+            dataOutputStream.writeInt(topics.size());
+            for (Map.Entry<String, TopicIndex> entry : topics.entrySet()) {
+                dataOutputStream.writeUTF(entry.getKey());
+                dataOutputStream.writeLong(entry.getValue().getNextSequence());
+            }
+
+            dataOutputStream.flush();
+            fileOutputStream.getFD().sync();
+        } finally {
+            dataOutputStream.close();
+        }
+
+        if (!temp.renameTo(getSequencesFile()))
+            throw new IOException("Could not rename " + temp + " to " + getSequencesFile());
+    }
+
+    /**
+     * The segment that new events go to, starting a new one if there are
+     * none or the newest is full.
+     */
+    public EventLogSegment getActiveSegment () throws IOException {
+        EventLogSegment segment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+
+        if (null == segment || segment.getSize() >= getSegmentSize()) {
+            long baseOffset = (null == segment) ? 0 : segment.getNextOffset();
+            segment = new EventLogSegment(getDirectory(), baseOffset, getIndexInterval());
+            segment.setSync(getSync());
+            segment.open(guids, topics);
+            segments.put(baseOffset, segment);
+        }
+
+        return segment;
+    }
+
+    /**
+     * Add an event to the end of the log.
+     *
+     * @return The offset of the event.
+     */
+    public synchronized long append (Event event) throws IOException, EncryptionException {
+        byte[] plaintext = gson.toJson(event).getBytes("UTF-8");
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(plaintext.length + 512);
+        EncryptingOutputStream encryptingOutputStream = new EncryptingOutputStream(byteArrayOutputStream,
+                writeKeys.getCurrentKey(), Math.max(1, plaintext.length));
+        encryptingOutputStream.write(plaintext);
+        encryptingOutputStream.close();
+
+        String topic = getTopic(event);
+        TopicIndex topicIndex = topics.get(topic);
+        if (null == topicIndex) {
+            topicIndex = new TopicIndex(0);
+            topics.put(topic, topicIndex);
+        }
+
+        long sequence = topicIndex.getNextSequence();
+        long offset = getActiveSegment().append(event.getGuid(), event.getTimeOfCreation(), topic, sequence,
+                byteArrayOutputStream.toByteArray());
+
+        guids.put(event.getGuid(), offset);
+        topicIndex.add(sequence, offset);
+
+        return offset;
+    }
+
+    /**
+     * Read the event with an offset.
+     *
+     * @return The event, or null if there is no event with that offset.
+     */
+    public synchronized Event read (long offset) throws IOException, EncryptionException {
+        Map.Entry<Long, EventLogSegment> entry = segments.floorEntry(offset);
+        if (null == entry)
+            return null;
+
+        EventLogSegment.Record record = entry.getValue().read(offset);
+        if (null == record)
+            return null;
+
+        byte[] plaintext = Reader.readEncryptedStream(new ByteArrayInputStream(record.getPayload()),
+                record.getPayload().length, readKeys);
+
+        return gson.fromJson(new String(plaintext, "UTF-8"), Event.class);
+    }
+
+    /**
+     * Read the event with a GUID.
+     *
+     * @return The event, or null if there is no event with that GUID.
+     */
+    public synchronized Event read (String guid) throws IOException, EncryptionException {
+        Long offset = guids.get(guid);
+        if (null == offset)
+            return null;
+
+        return read(offset);
+    }
+
+    /**
+     * Read the event of a topic with a sequence number.
+     *
+     * @return The event, or null if the log does not have it.
+     */
+    public synchronized Event read (String topic, long sequence) throws IOException, EncryptionException {
+        TopicIndex topicIndex = topics.get(topic);
+        if (null == topicIndex)
+            return null;
+
+        long offset = topicIndex.getOffset(sequence);
+        if (offset < 0)
+            return null;
+
+        return read(offset);
+    }
+
+    /**
+     * Remove the segments whose events are all older than {@link #getRetention()}.
+     *
+     * <P>
+     *     The newest segment is never removed, since that is where the next
+     *     event goes.
+     * </P>
+     *
+     * @return The number of events removed.
+     */
+    public synchronized int deleteExpiredSegments (long now) throws IOException {
+        int removed = 0;
+        long cutoff = now - getRetention();
+
+        boolean sequencesWritten = false;
+
+        while (segments.size() > 1) {
+            EventLogSegment oldest = segments.firstEntry().getValue();
+            if (oldest.getNewestTime() >= cutoff)
+                break;
+
+            if (!sequencesWritten) {
+                writeSequences();
+                sequencesWritten = true;
+            }
+
+            for (String guid : oldest.getGuids()) {
+                guids.remove(guid);
+            }
+
+            for (String topic : oldest.getTopics()) {
+                topics.get(topic).removeBefore(oldest.getNextOffset());
+            }
+
+            removed += oldest.getGuids().size();
+
+            segments.remove(oldest.getBaseOffset());
+
+            if (!oldest.delete())
+                throw new IOException("Could not remove " + oldest.getFile());
+        }
+
+        if (removed > 0)
+            logger.info("Removed " + removed + " expired events");
+
+        return removed;
+    }
+
+    public synchronized void close () throws IOException {
+        for (EventLogSegment segment : segments.values()) {
+            segment.close();
+        }
+    }
+}
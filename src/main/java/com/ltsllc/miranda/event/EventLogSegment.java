@@ -0,0 +1,411 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.event;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * One file of an {@link EventLog}.
+ *
+ * <P>
+ *     A segment holds the records from its base offset up to, but not
+ *     including, its next offset.  Each record is:
+ * </P>
+ * <UL>
+ *     <LI>the length of the rest of the record, as an int,</LI>
+ *     <LI>the CRC-32 of the rest of the record after the CRC, as an int,</LI>
+ *     <LI>the GUID of the event, as modified UTF-8,</LI>
+ *     <LI>the time the event was created, as a long,</LI>
+ *     <LI>the topic of the event, as modified UTF-8,</LI>
+ *     <LI>the sequence number of the event within its topic, as a long and</LI>
+ *     <LI>the payload, which is the rest of the record.</LI>
+ * </UL>
+ * <P>
+ *     Records are only ever added to the end of the file.  Everything but the
+ *     payload is outside it so that the indexes can be rebuilt without
+ *     decrypting anything.  Opening a segment checks the CRC of every record,
+ *     so a record that was damaged on disk is found then rather than when
+ *     someone asks for the event.
+ * </P>
+ *
+ * <P>
+ *     If sync is true, each append forces the record to disk before it
+ *     returns, so an event is not acknowledged until it would survive a
+ *     crash.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>file - the file that holds the records.</LI>
+ *     <LI>baseOffset - the offset of the first record in the segment.</LI>
+ *     <LI>nextOffset - the offset the next record appended will get.</LI>
+ *     <LI>size - the number of bytes of records in the file.</LI>
+ *     <LI>newestTime - the latest creation time of any event in the segment.</LI>
+ *     <LI>indexInterval - the number of bytes between entries in the index.</LI>
+ *     <LI>index - a sparse index from the offset of some of the records to their position in the file.</LI>
+ *     <LI>sync - if true, force each record to disk as it is appended.</LI>
+ *     <LI>guids - the GUIDs of the events in this segment, so they can be forgotten when it is deleted.</LI>
+ *     <LI>topics - the topics of the events in this segment, for the same reason.</LI>
+ * </UL>
+ */
+public class EventLogSegment {
+    /**
+     * A record read back from a segment.
+     */
+    public static class Record {
+        private long offset;
+        private String guid;
+        private long time;
+        private String topic;
+        private long sequence;
+        private byte[] payload;
+
+        public Record (long offset, String guid, long time, String topic, long sequence, byte[] payload) {
+            this.offset = offset;
+            this.guid = guid;
+            this.time = time;
+            this.topic = topic;
+            this.sequence = sequence;
+            this.payload = payload;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public String getGuid() {
+            return guid;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    private static Logger logger = Logger.getLogger(EventLogSegment.class);
+
+    public static final String SUFFIX = ".log";
+
+    private File file;
+    private long baseOffset;
+    private long nextOffset;
+    private long size;
+    private long newestTime;
+    private int indexInterval;
+    private long lastIndexed;
+    private TreeMap<Long, Long> index = new TreeMap<Long, Long>();
+    private RandomAccessFile randomAccessFile;
+    private boolean sync;
+    private List<String> guids = new ArrayList<String>();
+    private Set<String> topics = new HashSet<String>();
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getBaseOffset() {
+        return baseOffset;
+    }
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getNewestTime() {
+        return newestTime;
+    }
+
+    public int getIndexInterval() {
+        return indexInterval;
+    }
+
+    public TreeMap<Long, Long> getIndex() {
+        return index;
+    }
+
+    public boolean getSync() {
+        return sync;
+    }
+
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+
+    public List<String> getGuids() {
+        return guids;
+    }
+
+    public Set<String> getTopics() {
+        return topics;
+    }
+
+    public EventLogSegment (File directory, long baseOffset, int indexInterval) {
+        this.file = new File(directory, getFilename(baseOffset));
+        this.baseOffset = baseOffset;
+        this.nextOffset = baseOffset;
+        this.indexInterval = Math.max(1, indexInterval);
+    }
+
+    /**
+     * The name of the file for a segment, which is its base offset padded so
+     * that the names sort in the order of the offsets.
+     */
+    public static String getFilename (long baseOffset) {
+        return String.format("%020d", baseOffset) + SUFFIX;
+    }
+
+    /**
+     * The base offset of a segment file, or -1 if the name is not the name of a segment.
+     */
+    public static long getBaseOffset (String filename) {
+        if (!filename.endsWith(SUFFIX))
+            return -1;
+
+        try {
+            return Long.parseLong(filename.substring(0, filename.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public boolean contains (long offset) {
+        return offset >= getBaseOffset() && offset < getNextOffset();
+    }
+
+    /**
+     * Open the file, checking each record and rebuilding the index.
+     *
+     * <P>
+     *     A record that runs past the end of the file is what is left of an
+     *     append that was interrupted.  A record whose CRC does not match was
+     *     damaged.  Either way, the segment is cut off before it, since
+     *     nothing after it can be trusted to be where the lengths say.
+     * </P>
+     *
+     * @param guids The map from GUID to offset that the records in this segment are added to.
+     * @param topics The index of each topic, which the records in this segment are added to.
+     */
+    public void open (Map<String, Long> guids, Map<String, TopicIndex> topics) throws IOException {
+        randomAccessFile = new RandomAccessFile(getFile(), "rw");
+        long length = randomAccessFile.length();
+        long position = 0;
+        boolean damaged = false;
+
+        DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(randomAccessFile.getFD())));
+
+        while (position + HEADER_SIZE <= length) {
+            int recordLength = dataInputStream.readInt();
+            if (recordLength < 4 || position + 4 + recordLength > length)
+                break;
+
+            int crc = dataInputStream.readInt();
+            byte[] body = new byte[recordLength - 4];
+            dataInputStream.readFully(body);
+
+            if (crc != checksum(body, 0, body.length)) {
+                damaged = true;
+                break;
+            }
+
+            DataInputStream bodyInputStream = new DataInputStream(new ByteArrayInputStream(body));
+            String guid = bodyInputStream.readUTF();
+            long time = bodyInputStream.readLong();
+            String topic = bodyInputStream.readUTF();
+            long sequence = bodyInputStream.readLong();
+
+            indexRecord(nextOffset, position, time);
+            guids.put(guid, nextOffset);
+            getGuids().add(guid);
+
+            TopicIndex topicIndex = topics.get(topic);
+            if (null == topicIndex) {
+                topicIndex = new TopicIndex(sequence);
+                topics.put(topic, topicIndex);
+            }
+
+            topicIndex.add(sequence, nextOffset);
+            getTopics().add(topic);
+
+            nextOffset++;
+            position = position + 4 + recordLength;
+        }
+
+        if (damaged) {
+            logger.error("Record " + nextOffset + " of " + getFile() + " is damaged, removing the last "
+                    + (length - position) + " bytes of the file");
+            randomAccessFile.setLength(position);
+        } else if (position != length) {
+            logger.warn("Removing " + (length - position) + " bytes of incomplete record from " + getFile());
+            randomAccessFile.setLength(position);
+        }
+
+        size = position;
+    }
+
+    /**
+     * The length and CRC at the start of every record.
+     */
+    public static final int HEADER_SIZE = 8;
+
+    public static int checksum (byte[] buffer, int offset, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer, offset, length);
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * Add a record to the end of the segment.
+     *
+     * @return The offset of the new record.
+     */
+    public long append (String guid, long time, String topic, long sequence, byte[] payload) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(payload.length + 64);
+        DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream);
+        dataOutputStream.writeInt(0);
+        dataOutputStream.writeInt(0);
+        dataOutputStream.writeUTF(guid);
+        dataOutputStream.writeLong(time);
+        dataOutputStream.writeUTF(topic);
+        dataOutputStream.writeLong(sequence);
+        dataOutputStream.write(payload);
+        dataOutputStream.close();
+
+        byte[] record = byteArrayOutputStream.toByteArray();
+        writeInt(record, 0, record.length - 4);
+        writeInt(record, 4, checksum(record, HEADER_SIZE, record.length - HEADER_SIZE));
+
+        randomAccessFile.seek(size);
+        randomAccessFile.write(record);
+
+        if (getSync())
+            randomAccessFile.getChannel().force(false);
+
+        long offset = nextOffset;
+        indexRecord(offset, size, time);
+        getGuids().add(guid);
+        getTopics().add(topic);
+
+        nextOffset++;
+        size = size + record.length;
+
+        return offset;
+    }
+
+    private static void writeInt (byte[] buffer, int position, int value) {
+        buffer[position] = (byte) (value >>> 24);
+        buffer[position + 1] = (byte) (value >>> 16);
+        buffer[position + 2] = (byte) (value >>> 8);
+        buffer[position + 3] = (byte) value;
+    }
+
+    /**
+     * Add a record to the index if it is far enough from the last entry.
+     */
+    public void indexRecord (long offset, long position, long time) {
+        if (index.isEmpty() || position - lastIndexed >= getIndexInterval()) {
+            index.put(offset, position);
+            lastIndexed = position;
+        }
+
+        if (time > newestTime)
+            newestTime = time;
+    }
+
+    /**
+     * Read the record with an offset.
+     *
+     * <P>
+     *     The search starts at the closest entry in the index at or before
+     *     the offset, so at most {@link #getIndexInterval()} bytes of other
+     *     records are skipped over.
+     * </P>
+     *
+     * @return The record, or null if the offset is not in this segment.
+     */
+    public Record read (long offset) throws IOException {
+        if (!contains(offset))
+            return null;
+
+        Map.Entry<Long, Long> entry = index.floorEntry(offset);
+        long current = entry.getKey();
+        long position = entry.getValue();
+
+        randomAccessFile.seek(position);
+        int recordLength = randomAccessFile.readInt();
+
+        while (current < offset) {
+            position = position + 4 + recordLength;
+            randomAccessFile.seek(position);
+            recordLength = randomAccessFile.readInt();
+            current++;
+        }
+
+        randomAccessFile.readInt(); // the CRC, which was checked when the segment was opened
+        String guid = randomAccessFile.readUTF();
+        long time = randomAccessFile.readLong();
+        String topic = randomAccessFile.readUTF();
+        long sequence = randomAccessFile.readLong();
+
+        long payloadLength = position + 4 + recordLength - randomAccessFile.getFilePointer();
+        byte[] payload = new byte[(int) payloadLength];
+        randomAccessFile.readFully(payload);
+
+        return new Record(offset, guid, time, topic, sequence, payload);
+    }
+
+    public void close () throws IOException {
+        if (null != randomAccessFile) {
+            randomAccessFile.close();
+            randomAccessFile = null;
+        }
+    }
+
+    /**
+     * Close and remove the file.
+     */
+    public boolean delete () throws IOException {
+        close();
+        return getFile().delete();
+    }
+}
@@ -16,14 +16,23 @@
 
 package com.ltsllc.miranda.event;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.ltsllc.clcl.EncryptionException;
 import com.ltsllc.miranda.Message;
+import com.ltsllc.miranda.Panic;
 import com.ltsllc.miranda.StartupPanic;
 import com.ltsllc.miranda.clientinterface.MirandaException;
 import com.ltsllc.miranda.clientinterface.basicclasses.Event;
+import com.ltsllc.miranda.clientinterface.results.Results;
+import com.ltsllc.miranda.deliveries.DeliveryManager;
 import com.ltsllc.miranda.event.messages.CreateEventMessage;
 import com.ltsllc.miranda.event.messages.EvictMessage;
 import com.ltsllc.miranda.event.messages.NewEventMessage;
 import com.ltsllc.miranda.event.messages.ReadEventMessage;
+import com.ltsllc.miranda.file.DirectoryScanner;
+import com.ltsllc.miranda.file.ManifestEntry;
 import com.ltsllc.miranda.manager.DirectoryManager;
 import com.ltsllc.miranda.manager.ListMessage;
 import com.ltsllc.miranda.miranda.Miranda;
@@ -31,22 +40,74 @@ import com.ltsllc.miranda.property.MirandaProperties;
 import com.ltsllc.miranda.reader.Reader;
 import com.ltsllc.miranda.session.Session;
 import com.ltsllc.miranda.writer.Writer;
+import org.apache.log4j.Logger;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.Map;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 
 /**
  * A DirectoryManager that handles Events
+ *
+ * <P>
+ *     Events are kept in an {@link EventLog} in the directory, rather than in
+ *     memory, so the number of events is limited by disk space rather than
+ *     heap.  The ones in use are kept in an {@link EventCache}, which is
+ *     limited to objectLimit events.
+ * </P>
+ *
+ * <P>
+ *     Events in files from before the log are imported into it when the
+ *     manager is created; see {@link #importLegacyEvents(File, Reader)}.
+ * </P>
  */
 public class EventManager extends DirectoryManager {
+    private static Logger logger = Logger.getLogger(EventManager.class);
+
     public static final String NAME = "event manager";
 
-    private Map<String, Event> eventMap;
+    private static Gson ourGson = new Gson();
+
+    private EventLog eventLog;
+    private EventCache eventCache;
+
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    public EventCache getEventCache() {
+        return eventCache;
+    }
 
     public EventManager(String directoryName, int objectLimit, Reader reader, Writer writer) throws IOException {
         super(NAME, directoryName, objectLimit, reader, writer);
 
+        this.eventLog = new EventLog(new File(directoryName), writer.getDataKeyCache(), reader.getDataKeyCache());
+        long cacheBytes = Long.parseLong(MirandaProperties.DEFAULT_EVENT_CACHE_BYTES);
+
+        //
+        // the settings of the log have to be in place before it is opened, since
+        // opening it indexes the segments that are already there
+        //
+        MirandaProperties properties = Miranda.properties;
+        if (null != properties) {
+            eventLog.setSegmentSize(properties.getLongProperty(MirandaProperties.PROPERTY_EVENT_SEGMENT_SIZE,
+                    MirandaProperties.DEFAULT_EVENT_SEGMENT_SIZE));
+            eventLog.setIndexInterval((int) properties.getLongProperty(MirandaProperties.PROPERTY_EVENT_INDEX_INTERVAL,
+                    MirandaProperties.DEFAULT_EVENT_INDEX_INTERVAL));
+            eventLog.setRetention(properties.getLongProperty(MirandaProperties.PROPERTY_EVENT_RETENTION,
+                    MirandaProperties.DEFAULT_EVENT_RETENTION));
+            eventLog.setSync(properties.getBooleanProperty(MirandaProperties.PROPERTY_WRITER_SYNC));
+            cacheBytes = properties.getLongProperty(MirandaProperties.PROPERTY_EVENT_CACHE_BYTES,
+                    MirandaProperties.DEFAULT_EVENT_CACHE_BYTES);
+        }
+
+        this.eventLog.open();
+        importLegacyEvents(new File(directoryName), reader);
+
+        this.eventCache = new EventCache(objectLimit, cacheBytes);
+
         EventManagerReadyState eventManagerReadyState = new EventManagerReadyState(this);
         setCurrentState(eventManagerReadyState);
     }
@@ -71,6 +132,68 @@ public class EventManager extends DirectoryManager {
         }
     }
 
+    public static final String IMPORTED_SUFFIX = ".imported";
+
+    /**
+     * Move the events in files from before the log into the log.
+     *
+     * <P>
+     *     Each {@link EventDirectory#EVENT_FILE} under the directory is read,
+     *     the events in it that are not already in the log are appended, and
+     *     the file is renamed with {@link #IMPORTED_SUFFIX} so it is not
+     *     imported again.  A file that cannot be read is left alone and tried
+     *     again the next time.  This way every old event can be found by
+     *     {@link #readEvent(String)}, however many there are.
+     * </P>
+     *
+     * @return The number of events imported.
+     */
+    public int importLegacyEvents (File directory, Reader reader) {
+        List<ManifestEntry> files;
+
+        try {
+            files = DirectoryScanner.getInstance().scan(directory, new DirectoryScanner.Filter() {
+                public boolean isInteresting(String name) {
+                    return name.endsWith(EventDirectory.EVENT_FILE);
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Exception looking for old event files in " + directory, e);
+            return 0;
+        }
+
+        int count = 0;
+
+        for (ManifestEntry entry : files) {
+            File file = new File(entry.getPath());
+
+            try {
+                byte[] data = Reader.readFile(file, reader.getDataKeyCache());
+                List<Event> events = ourGson.fromJson(new String(data), new TypeToken<List<Event>>(){}.getType());
+
+                if (null != events) {
+                    for (Event event : events) {
+                        if (null != event.getGuid() && !getEventLog().contains(event.getGuid())) {
+                            getEventLog().append(event);
+                            count++;
+                        }
+                    }
+                }
+
+                File imported = new File(file.getPath() + IMPORTED_SUFFIX);
+                if (!file.renameTo(imported))
+                    logger.warn("Could not rename " + file + " to " + imported);
+            } catch (IOException | EncryptionException | JsonParseException e) {
+                logger.error("Exception importing old event file " + file, e);
+            }
+        }
+
+        if (count > 0)
+            logger.info("Imported " + count + " events from " + files.size() + " old event files");
+
+        return count;
+    }
+
     public void sendReadEventMessage(BlockingQueue<Message> senderQueue, Object sender, String guid) {
         ReadEventMessage readEventMessage = new ReadEventMessage(senderQueue, sender, guid);
         sendToMe(readEventMessage);
@@ -91,7 +214,71 @@ public class EventManager extends DirectoryManager {
         sendToMe(newEventMessage);
     }
 
-    public void createEvent(Event event) {
-        eventMap.put(event.getGuid(), event);
+    /**
+     * Append an event to the log.
+     *
+     * @return {@link Results#Success} if the event was written, or {@link Results#Exception} if it
+     * could not be.
+     */
+    public Results createEvent(Event event) {
+        try {
+            getEventLog().append(event);
+            getEventCache().put(event);
+
+            Miranda miranda = Miranda.getInstance();
+            DeliveryManager deliveryManager = (null == miranda) ? null : miranda.getDeliveryManager();
+            if (null != deliveryManager)
+                deliveryManager.sendEventsAvailable(getQueue(), this, EventLog.getTopic(event));
+
+            return Results.Success;
+        } catch (IOException | EncryptionException e) {
+            Panic panic = new Panic("Exception writing event", e, Panic.Reasons.ExceptionWritingFile);
+            Miranda.panicMiranda(panic);
+            return Results.Exception;
+        }
+    }
+
+    /**
+     * Find an event by its GUID, going to the log if it is not in the cache.
+     *
+     * @return The event, or null if there is no such event or it could not be read.
+     */
+    public Event readEvent(String guid) {
+        Event event = getEventCache().get(guid);
+        if (null != event)
+            return event;
+
+        try {
+            event = getEventLog().read(guid);
+        } catch (IOException | EncryptionException e) {
+            logger.error("Exception reading event " + guid, e);
+            return null;
+        }
+
+        if (null != event)
+            getEventCache().put(event);
+
+        return event;
+    }
+
+    /**
+     * Remove the events that are past the retention period of the log, and
+     * let the cache drop the events that could not be dropped before.
+     */
+    public void evict() {
+        try {
+            getEventLog().deleteExpiredSegments(System.currentTimeMillis());
+        } catch (IOException e) {
+            logger.error("Exception removing expired events", e);
+        }
+
+        for (String guid : getEventCache().getGuids()) {
+            if (!getEventLog().contains(guid))
+                getEventCache().remove(guid);
+        }
+
+        getEventCache().releasePinned();
+
+        logger.info("Event cache: " + getEventCache().getGauge());
     }
 }
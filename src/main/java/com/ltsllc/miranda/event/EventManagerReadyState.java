@@ -18,7 +18,9 @@ package com.ltsllc.miranda.event;
 
 import com.ltsllc.miranda.Message;
 import com.ltsllc.miranda.State;
-import com.ltsllc.miranda.event.messages.NewEventMessage;
+import com.ltsllc.miranda.clientinterface.basicclasses.Event;
+import com.ltsllc.miranda.clientinterface.results.Results;
+import com.ltsllc.miranda.event.messages.*;
 import com.ltsllc.miranda.miranda.Miranda;
 import com.ltsllc.miranda.operations.events.NewEventOperation;
 
@@ -44,6 +46,23 @@ public class EventManagerReadyState extends State {
                 break;
             }
 
+            case CreateEvent: {
+                CreateEventMessage createEventMessage = (CreateEventMessage) message;
+                nextState = processCreateEventMessage (createEventMessage);
+                break;
+            }
+
+            case Read: {
+                ReadEventMessage readEventMessage = (ReadEventMessage) message;
+                nextState = processReadEventMessage (readEventMessage);
+                break;
+            }
+
+            case Evict: {
+                nextState = processEvictMessage ((EvictMessage) message);
+                break;
+            }
+
             default: {
                 nextState = super.processMessage(message);
                 break;
@@ -62,4 +81,31 @@ public class EventManagerReadyState extends State {
 
         return getEventManager().getCurrentState();
     }
+
+    public State processCreateEventMessage (CreateEventMessage message) {
+        Results result = getEventManager().createEvent(message.getEvent());
+
+        CreateEventResponseMessage response = new CreateEventResponseMessage(getEventManager().getQueue(),
+                this, result, message.getEvent().getGuid());
+        message.reply(response);
+
+        return getEventManager().getCurrentState();
+    }
+
+    public State processReadEventMessage (ReadEventMessage message) {
+        Event event = getEventManager().readEvent(message.getGuid());
+        Results result = (null == event) ? Results.EventNotFound : Results.Success;
+
+        ReadEventResponseMessage response = new ReadEventResponseMessage(getEventManager().getQueue(), this,
+                result, event);
+        message.reply(response);
+
+        return getEventManager().getCurrentState();
+    }
+
+    public State processEvictMessage (EvictMessage message) {
+        getEventManager().evict();
+
+        return getEventManager().getCurrentState();
+    }
 }
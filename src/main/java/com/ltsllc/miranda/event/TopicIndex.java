@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ltsllc.miranda.event;
+
+import java.util.Arrays;
+
+/**
+ * The events of one topic in an {@link EventLog}.
+ *
+ * <P>
+ *     The log numbers the events of each topic from 0 in the order they are
+ *     appended, so someone following a topic sees a run of sequence numbers
+ *     with no gaps, however many events other topics have.  This maps the
+ *     sequence number of each event the log still has to its offset.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>firstSequence - the sequence number of the oldest event of the topic the log still has.</LI>
+ *     <LI>offsets - the offset of each event, by its sequence number less firstSequence.</LI>
+ *     <LI>count - the number of entries in offsets that are in use.</LI>
+ * </UL>
+ */
+public class TopicIndex {
+    private long firstSequence;
+    private long[] offsets = new long[16];
+    private int count;
+
+    public TopicIndex (long firstSequence) {
+        this.firstSequence = firstSequence;
+    }
+
+    public long getFirstSequence() {
+        return firstSequence;
+    }
+
+    /**
+     * The sequence number the next event of the topic gets.
+     */
+    public long getNextSequence () {
+        return firstSequence + count;
+    }
+
+    public int size () {
+        return count;
+    }
+
+    /**
+     * Add the event with a sequence number.
+     *
+     * <P>
+     *     If the sequence number is past the next one, the events in between
+     *     are gone, for example because the records they were in were
+     *     damaged, and the index starts over from the sequence number.
+     * </P>
+     */
+    public void add (long sequence, long offset) {
+        if (sequence != getNextSequence()) {
+            firstSequence = sequence;
+            count = 0;
+        }
+
+        if (count == offsets.length)
+            offsets = Arrays.copyOf(offsets, 2 * count);
+
+        offsets[count] = offset;
+        count++;
+    }
+
+    /**
+     * The offset of the event with a sequence number.
+     *
+     * @return The offset, or -1 if the log does not have that event.
+     */
+    public long getOffset (long sequence) {
+        if (sequence < firstSequence || sequence >= getNextSequence())
+            return -1;
+
+        return offsets[(int) (sequence - firstSequence)];
+    }
+
+    /**
+     * Forget the events before an offset, which the log has deleted.
+     */
+    public void removeBefore (long offset) {
+        int removed = 0;
+        while (removed < count && offsets[removed] < offset) {
+            removed++;
+        }
+
+        if (removed > 0) {
+            System.arraycopy(offsets, removed, offsets, 0, count - removed);
+            count -= removed;
+            firstSequence += removed;
+        }
+    }
+}
@@ -10,6 +10,10 @@ import java.util.concurrent.BlockingQueue;
 public class ReadEventMessage extends Message {
     private String guid;
 
+    public String getGuid() {
+        return guid;
+    }
+
     public ReadEventMessage (BlockingQueue<Message> senderQueue, Object sender, String guid) {
         super (Subjects.Read, senderQueue, sender);
 
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.file;
+
+/**
+ * A snapshot of the compactions of a {@link SingleFile}; see {@link SingleFile#compact()}.
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>filename - the file.</LI>
+ *     <LI>journalRecords - the number of records in the journal now.</LI>
+ *     <LI>compactions - the number of times the journal has been folded into a snapshot.</LI>
+ *     <LI>recordsFolded - the total number of journal records folded.</LI>
+ *     <LI>bytesWritten - the total size of the snapshots.</LI>
+ *     <LI>totalTime - the total time, in milliseconds, spent building snapshots.</LI>
+ *     <LI>lastTime - the time, in milliseconds, spent building the last snapshot.</LI>
+ *     <LI>deferred - the number of compactions put off because the Writer was busy.</LI>
+ * </UL>
+ */
+public class CompactionGauge {
+    private String filename;
+    private int journalRecords;
+    private long compactions;
+    private long recordsFolded;
+    private long bytesWritten;
+    private long totalTime;
+    private long lastTime;
+    private long deferred;
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public int getJournalRecords() {
+        return journalRecords;
+    }
+
+    public long getCompactions() {
+        return compactions;
+    }
+
+    public long getRecordsFolded() {
+        return recordsFolded;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    public long getDeferred() {
+        return deferred;
+    }
+
+    public CompactionGauge (String filename, int journalRecords, long compactions, long recordsFolded,
+                            long bytesWritten, long totalTime, long lastTime, long deferred) {
+        this.filename = filename;
+        this.journalRecords = journalRecords;
+        this.compactions = compactions;
+        this.recordsFolded = recordsFolded;
+        this.bytesWritten = bytesWritten;
+        this.totalTime = totalTime;
+        this.lastTime = lastTime;
+        this.deferred = deferred;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ltsllc.miranda.file;
+
+import com.google.gson.Gson;
+import com.ltsllc.common.util.Utils;
+import com.ltsllc.miranda.MirandaUncheckedException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A digest of a collection of objects that does not depend on their order.
+ *
+ * <P>
+ *     The digest is the sum, modulo 2^160, of the SHA-1 of the JSON of each
+ *     object.  Adding or removing an object takes time proportional to the
+ *     size of that object rather than the size of the collection.  Two
+ *     collections that contain the same objects have the same digest, whatever
+ *     order the objects are in and whichever node built the collection, so
+ *     digests can be compared across the cluster.  Because it is a sum rather
+ *     than an exclusive or, an object that is in a collection twice does not
+ *     cancel itself out.
+ * </P>
+ *
+ * <P>
+ *     A ContentDigest is not synchronized.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>sum - the sum of the digests of the objects, most significant byte first.</LI>
+ *     <LI>messageDigest - used to calculate the SHA-1 of each object.</LI>
+ * </UL>
+ */
+public class ContentDigest {
+    public static final int LENGTH = 20;
+
+    private static Gson ourGson = new Gson();
+
+    private byte[] sum = new byte[LENGTH];
+    private MessageDigest messageDigest;
+
+    public ContentDigest () {
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new MirandaUncheckedException("SHA-1 is not available", e);
+        }
+    }
+
+    public byte[] digest (Object object) {
+        String json = ourGson.toJson(object);
+        return messageDigest.digest(json.getBytes());
+    }
+
+    public void add (Object object) {
+        add(digest(object));
+    }
+
+    public void remove (Object object) {
+        subtract(digest(object));
+    }
+
+    public void add (byte[] digest) {
+        int carry = 0;
+
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            int value = (sum[i] & 0xFF) + (digest[i] & 0xFF) + carry;
+            sum[i] = (byte) value;
+            carry = value >> 8;
+        }
+    }
+
+    public void subtract (byte[] digest) {
+        int borrow = 0;
+
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            int value = (sum[i] & 0xFF) - (digest[i] & 0xFF) - borrow;
+            sum[i] = (byte) value;
+            borrow = (value < 0) ? 1 : 0;
+        }
+    }
+
+    public void clear () {
+        sum = new byte[LENGTH];
+    }
+
+    public String toString () {
+        return Utils.bytesToString(sum);
+    }
+}
@@ -20,10 +20,10 @@ package com.ltsllc.miranda.file;
  * Created by Clark on 2/19/2017.
  */
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.ltsllc.miranda.Panic;
 import com.ltsllc.miranda.Version;
 import com.ltsllc.miranda.file.states.DirectoryReadyState;
+import com.ltsllc.miranda.miranda.Miranda;
 import com.ltsllc.miranda.reader.Reader;
 import com.ltsllc.miranda.writer.Writer;
 
@@ -69,22 +69,31 @@ abstract public class Directory extends MirandaFile {
         return matches;
     }
 
+    /**
+     * Add the files of interest under a directory to a list, using the
+     * {@link DirectoryScanner}.
+     */
     public void traverse (String directory, List<String> matches) {
         File f = new File(directory);
-        String[] contents = f.list();
-        if (null == contents)
+        if (!f.isDirectory()) {
             getFiles().clear();
-        else {
-            for (String file : contents) {
-                String fullName = directory + File.separator + file;
-                File entry = new File(fullName);
-                if (entry.isDirectory()) {
-                    String name = directory + File.separator + file;
-                    traverse(name, matches);
-                } else if (entry.isFile() && isFileOfInterest(file)) {
-                    matches.add(fullName);
-                }
+            return;
+        }
+
+        DirectoryScanner.Filter filter = new DirectoryScanner.Filter() {
+            public boolean isInteresting(String name) {
+                return isFileOfInterest(name);
+            }
+        };
+
+        try {
+            for (ManifestEntry entry : DirectoryScanner.getInstance().scan(f, filter)) {
+                matches.add(entry.getPath());
             }
+        } catch (IOException e) {
+            String message = "Exception during scan of " + directory;
+            Panic panic = new Panic(message, e, Panic.Reasons.ExceptionDuringScan);
+            Miranda.panicMiranda(panic);
         }
     }
 
@@ -107,21 +116,26 @@ abstract public class Directory extends MirandaFile {
         return new byte[0];
     }
 
+    /**
+     * The version of a directory is the {@link ContentDigest} of the versions
+     * of its files, so it does not depend on the order the files were found in.
+     *
+     * <P>
+     *     {@link SingleFile}s keep their versions up to date, so only other
+     *     files are asked to recalculate theirs.
+     * </P>
+     */
     public void updateVersion () throws NoSuchAlgorithmException {
-        List<Version> list = new ArrayList<Version>();
+        ContentDigest digest = new ContentDigest();
 
         for (MirandaFile file : getFiles()) {
-            file.updateVersion();
-            list.add(file.getVersion());
-        }
-
-        Gson gson = new GsonBuilder()
-                .setPrettyPrinting()
-                .create();
+            if (!(file instanceof SingleFile))
+                file.updateVersion();
 
-        String json = gson.toJson(list);
+            digest.add(file.getVersion());
+        }
 
-        Version version = new Version(json);
+        Version version = Version.createWithSha1(digest.toString());
         setVersion(version);
     }
 
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds the files of interest under a directory.
+ *
+ * <P>
+ *     Each directory is listed once with a {@link DirectoryStream}, and the
+ *     attributes of each entry are read once, which says whether it is a
+ *     directory and gives its size and modification time.  Subdirectories
+ *     are scanned in parallel, each as its own task on a {@link ForkJoinPool}.
+ * </P>
+ *
+ * <P>
+ *     Symbolic links to files are followed, but symbolic links to directories
+ *     are not, so a link cannot make a scan go around in circles.  Paths are
+ *     built from the directory as it was given, so scanning a canonical
+ *     directory gives canonical paths.  The results are sorted by path.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>pool - the threads that do the scanning.</LI>
+ * </UL>
+ */
+public class DirectoryScanner {
+    /**
+     * Decides which files a scan returns, by name.
+     */
+    public interface Filter {
+        boolean isInteresting (String name);
+    }
+
+    private static DirectoryScanner ourInstance = new DirectoryScanner(Runtime.getRuntime().availableProcessors());
+
+    public static DirectoryScanner getInstance() {
+        return ourInstance;
+    }
+
+    private ForkJoinPool pool;
+
+    public DirectoryScanner (int parallelism) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Return the files under a directory that the filter is interested in.
+     * A directory that does not exist has no files.
+     */
+    public List<ManifestEntry> scan (File directory, Filter filter) throws IOException {
+        List<ManifestEntry> entries = new ArrayList<ManifestEntry>();
+
+        if (!directory.isDirectory())
+            return entries;
+
+        try {
+            entries = getPool().invoke(new ScanDirectoryTask(directory.toPath(), filter));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        Collections.sort(entries, new Comparator<ManifestEntry>() {
+            public int compare(ManifestEntry entry1, ManifestEntry entry2) {
+                return entry1.getPath().compareTo(entry2.getPath());
+            }
+        });
+
+        return entries;
+    }
+
+    /**
+     * Scan one directory, forking a task for each of its subdirectories.
+     */
+    public static class ScanDirectoryTask extends RecursiveTask<List<ManifestEntry>> {
+        private Path directory;
+        private Filter filter;
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public Filter getFilter() {
+            return filter;
+        }
+
+        public ScanDirectoryTask (Path directory, Filter filter) {
+            this.directory = directory;
+            this.filter = filter;
+        }
+
+        protected List<ManifestEntry> compute () {
+            List<ManifestEntry> entries = new ArrayList<ManifestEntry>();
+            List<ScanDirectoryTask> subdirectories = new ArrayList<ScanDirectoryTask>();
+            DirectoryStream<Path> directoryStream = null;
+
+            try {
+                directoryStream = Files.newDirectoryStream(getDirectory());
+
+                for (Path path : directoryStream) {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+                    if (attributes.isDirectory()) {
+                        if (!Files.isSymbolicLink(path)) {
+                            ScanDirectoryTask task = new ScanDirectoryTask(path, getFilter());
+                            task.fork();
+                            subdirectories.add(task);
+                        }
+                    } else if (attributes.isRegularFile() && getFilter().isInteresting(path.getFileName().toString())) {
+                        ManifestEntry entry = new ManifestEntry(path.toString(), attributes.size(),
+                                attributes.lastModifiedTime().toMillis());
+                        entries.add(entry);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                closeIgnoreExceptions(directoryStream);
+            }
+
+            for (ScanDirectoryTask task : subdirectories) {
+                entries.addAll(task.join());
+            }
+
+            return entries;
+        }
+
+        public static void closeIgnoreExceptions (DirectoryStream<Path> directoryStream) {
+            if (null != directoryStream) {
+                try {
+                    directoryStream.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+}
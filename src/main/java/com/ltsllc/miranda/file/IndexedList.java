@@ -0,0 +1,274 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ltsllc.miranda.file;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * An ArrayList that keeps a hash index of its elements by key.
+ *
+ * <P>
+ *     Subclasses decide what the key of an element is.  {@link #find(Object)}
+ *     then returns an element with a given key without searching the list.
+ *     Elements whose key is null are kept in the list but not in the index.
+ * </P>
+ *
+ * <P>
+ *     Every method that changes the list, including the iterators, reports
+ *     each element that it adds or removes to {@link #added(Object)} and
+ *     {@link #removed(Object)}, so code that gets the list and changes it
+ *     directly does not need to know about the index.  Subclasses can
+ *     override those methods to keep other information about the elements up
+ *     to date.  Changing the key of an element while it is in the list is not
+ *     detected.
+ * </P>
+ *
+ * <P>
+ *     A list may contain more than one element with the same key.  In that
+ *     case find returns the one that was indexed first, and the others wait
+ *     in duplicates, so removing the indexed one only has to look at the
+ *     elements with the same key.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>index - the elements by key.</LI>
+ *     <LI>duplicates - for a key with more than one element, the elements after the one in the index, in the order they were indexed.</LI>
+ * </UL>
+ */
+abstract public class IndexedList<E> extends ArrayList<E> {
+    abstract public Object getKey (E element);
+
+    private Map<Object, E> index = new HashMap<Object, E>();
+    private Map<Object, ArrayDeque<E>> duplicates = new HashMap<Object, ArrayDeque<E>>();
+
+    public IndexedList () {
+    }
+
+    public IndexedList (Collection<? extends E> collection) {
+        super(collection);
+
+        rebuild();
+    }
+
+    public E find (Object key) {
+        if (null == key)
+            return null;
+
+        return index.get(key);
+    }
+
+    public boolean containsKey (Object key) {
+        return null != key && index.containsKey(key);
+    }
+
+    /**
+     * Start over, as if every element had just been added.
+     */
+    public void rebuild () {
+        index.clear();
+        duplicates.clear();
+
+        for (E element : this) {
+            added(element);
+        }
+    }
+
+    /**
+     * An element has been added to the list.
+     */
+    protected void added (E element) {
+        Object key = (null == element) ? null : getKey(element);
+        if (null == key)
+            return;
+
+        if (index.containsKey(key)) {
+            ArrayDeque<E> others = duplicates.get(key);
+            if (null == others) {
+                others = new ArrayDeque<E>();
+                duplicates.put(key, others);
+            }
+
+            others.addLast(element);
+        } else {
+            index.put(key, element);
+        }
+    }
+
+    /**
+     * An element has been removed from the list.
+     */
+    protected void removed (E element) {
+        Object key = (null == element) ? null : getKey(element);
+        if (null == key)
+            return;
+
+        ArrayDeque<E> others = duplicates.get(key);
+
+        if (index.get(key) != element) {
+            if (null != others)
+                removeInstance(others, element);
+        } else if (null == others) {
+            index.remove(key);
+        } else {
+            index.put(key, others.pollFirst());
+        }
+
+        if (null != others && others.isEmpty())
+            duplicates.remove(key);
+    }
+
+    private void removeInstance (ArrayDeque<E> others, E element) {
+        Iterator<E> iterator = others.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == element) {
+                iterator.remove();
+                return;
+            }
+        }
+    }
+
+    public boolean add (E element) {
+        super.add(element);
+        added(element);
+        return true;
+    }
+
+    public void add (int position, E element) {
+        super.add(position, element);
+        added(element);
+    }
+
+    public boolean addAll (Collection<? extends E> collection) {
+        Object[] elements = collection.toArray();
+        boolean changed = super.addAll(collection);
+
+        for (Object element : elements) {
+            added((E) element);
+        }
+
+        return changed;
+    }
+
+    public boolean addAll (int position, Collection<? extends E> collection) {
+        Object[] elements = collection.toArray();
+        boolean changed = super.addAll(position, collection);
+
+        for (Object element : elements) {
+            added((E) element);
+        }
+
+        return changed;
+    }
+
+    public E set (int position, E element) {
+        E old = super.set(position, element);
+        removed(old);
+        added(element);
+        return old;
+    }
+
+    public E remove (int position) {
+        E element = super.remove(position);
+        removed(element);
+        return element;
+    }
+
+    public boolean remove (Object object) {
+        int position = indexOf(object);
+        if (position < 0)
+            return false;
+
+        remove(position);
+        return true;
+    }
+
+    public void clear () {
+        super.clear();
+        rebuild();
+    }
+
+    public boolean removeAll (final Collection<?> collection) {
+        if (null == collection)
+            throw new NullPointerException();
+
+        return removeIf(new Predicate<E>() {
+            public boolean test(E element) {
+                return collection.contains(element);
+            }
+        });
+    }
+
+    public boolean retainAll (final Collection<?> collection) {
+        if (null == collection)
+            throw new NullPointerException();
+
+        return removeIf(new Predicate<E>() {
+            public boolean test(E element) {
+                return !collection.contains(element);
+            }
+        });
+    }
+
+    /**
+     * The filter is tested once per element; the elements it picks are
+     * noted as they are tested and reported once the list has changed.
+     */
+    public boolean removeIf (final Predicate<? super E> filter) {
+        final List<E> removedElements = new ArrayList<E>();
+
+        boolean changed = super.removeIf(new Predicate<E>() {
+            public boolean test(E element) {
+                if (!filter.test(element))
+                    return false;
+
+                removedElements.add(element);
+                return true;
+            }
+        });
+
+        for (E element : removedElements) {
+            removed(element);
+        }
+
+        return changed;
+    }
+
+    public void replaceAll (UnaryOperator<E> operator) {
+        super.replaceAll(operator);
+        rebuild();
+    }
+
+    protected void removeRange (int fromIndex, int toIndex) {
+        Object[] range = subList(fromIndex, toIndex).toArray();
+        super.removeRange(fromIndex, toIndex);
+
+        for (Object element : range) {
+            removed((E) element);
+        }
+    }
+
+    public Object clone () {
+        IndexedList<E> copy = (IndexedList<E>) super.clone();
+        copy.index = new HashMap<Object, E>();
+        copy.duplicates = new HashMap<Object, ArrayDeque<E>>();
+        copy.rebuild();
+        return copy;
+    }
+}
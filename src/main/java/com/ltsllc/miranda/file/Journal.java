@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ltsllc.miranda.file;
+
+import com.google.gson.JsonElement;
+import com.ltsllc.miranda.property.MirandaProperties;
+
+/**
+ * The write-ahead log that sits beside a {@link SingleFile}.
+ *
+ * <P>
+ *     Normally every change to a SingleFile rewrites the entire file.  When
+ *     journaling is enabled, a change is instead appended to the journal as
+ *     an encrypted {@link Record} holding only the objects that were added,
+ *     updated or removed.  Every {@link #getCheckpointInterval()} records the
+ *     file writes a full snapshot, and the {@link com.ltsllc.miranda.writer.Writer}
+ *     removes the journal once the snapshot is on disk.
+ * </P>
+ *
+ * <P>
+ *     Loading a file reads the last snapshot and then replays the journal
+ *     over it.  This happens whether or not journaling is enabled, so turning
+ *     journaling off never loses records that are waiting for a checkpoint.
+ *     Replaying a record is idempotent, because a crash between writing a
+ *     snapshot and removing the journal means records can be replayed over a
+ *     snapshot that already contains them.
+ * </P>
+ *
+ * <P>
+ *     The journal is a binary file of encrypted records; see {@link JournalFile}.
+ * </P>
+ *
+ * <P>
+ *     Checkpoints only happen when a file changes, so a file that changes a
+ *     little and then stops would keep its journal forever.  To bound the
+ *     time spent replaying after a restart, each periodic garbage collection
+ *     also compacts any file with at least {@link #getCompactionThreshold()}
+ *     records, unless the Writer is busy with more than
+ *     {@link #getCompactionBacklog()} messages, in which case the compaction
+ *     waits for the next collection.  See {@link SingleFile#compact()}.
+ * </P>
+ */
+public class Journal {
+    public static final String SUFFIX = ".journal";
+
+    public enum Operations {
+        Add,
+        Update,
+        Merge,
+        Remove
+    }
+
+    /**
+     * One change to a {@link SingleFile}.
+     *
+     * <H2>Attributes</H2>
+     * <UL>
+     *     <LI>operation - what happened to the objects.</LI>
+     *     <LI>objects - the objects, as a JSON array of the file's element type.</LI>
+     * </UL>
+     */
+    public static class Record {
+        private Operations operation;
+        private JsonElement objects;
+
+        public Record (Operations operation, JsonElement objects) {
+            this.operation = operation;
+            this.objects = objects;
+        }
+
+        public Operations getOperation() {
+            return operation;
+        }
+
+        public JsonElement getObjects() {
+            return objects;
+        }
+    }
+
+    private static volatile boolean ourEnabled = false;
+    private static volatile int ourCheckpointInterval =
+            Integer.parseInt(MirandaProperties.DEFAULT_FILE_JOURNAL_CHECKPOINT);
+    private static volatile int ourCompactionThreshold =
+            Integer.parseInt(MirandaProperties.DEFAULT_FILE_JOURNAL_COMPACTION_THRESHOLD);
+    private static volatile int ourCompactionBacklog =
+            Integer.parseInt(MirandaProperties.DEFAULT_FILE_JOURNAL_COMPACTION_BACKLOG);
+
+    public static boolean isEnabled () {
+        return ourEnabled;
+    }
+
+    public static void setEnabled (boolean enabled) {
+        ourEnabled = enabled;
+    }
+
+    public static int getCheckpointInterval () {
+        return ourCheckpointInterval;
+    }
+
+    public static void setCheckpointInterval (int checkpointInterval) {
+        ourCheckpointInterval = Math.max(1, checkpointInterval);
+    }
+
+    public static int getCompactionThreshold () {
+        return ourCompactionThreshold;
+    }
+
+    public static void setCompactionThreshold (int compactionThreshold) {
+        ourCompactionThreshold = Math.max(1, compactionThreshold);
+    }
+
+    public static int getCompactionBacklog () {
+        return ourCompactionBacklog;
+    }
+
+    public static void setCompactionBacklog (int compactionBacklog) {
+        ourCompactionBacklog = Math.max(0, compactionBacklog);
+    }
+
+    public static String getJournalFilename (String filename) {
+        return filename + SUFFIX;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.file;
+
+import com.ltsllc.clcl.DataKeyCache;
+import com.ltsllc.clcl.EncryptingOutputStream;
+import com.ltsllc.clcl.EncryptionException;
+import com.ltsllc.common.util.Utils;
+import org.apache.log4j.Logger;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.*;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary format of a {@link Journal}.
+ *
+ * <P>
+ *     The file starts with the 4 bytes of {@link #MAGIC} and a version byte.
+ *     After that come entries, each of which starts with a type byte:
+ * </P>
+ * <UL>
+ *     <LI>{@link #KEY} - the length of the ID of a data key, as a byte, the
+ *     ID, the length of the wrapped key, as an int, and the wrapped key.</LI>
+ *     <LI>{@link #RECORD} - the length of the ID of the data key, as a byte,
+ *     the ID, a {@link #NONCE_SIZE} byte nonce, the length of the ciphertext,
+ *     as an int, and the ciphertext.</LI>
+ * </UL>
+ *
+ * <P>
+ *     A data key is declared once, the first time an {@link Output} uses it,
+ *     so a record only carries the ID of its key instead of the wrapped key
+ *     that every {@link EncryptingOutputStream} starts with.  Each record is
+ *     encrypted on its own with AES-GCM and a random nonce, so a record that
+ *     was cut short or damaged fails to decrypt and ends the journal.
+ * </P>
+ *
+ * <P>
+ *     Journals written before this format are text, one record per line.
+ *     {@link #isBinary(File)} tells the two apart.
+ * </P>
+ */
+public class JournalFile {
+    private static Logger logger = Logger.getLogger(JournalFile.class);
+
+    public static final byte[] MAGIC = { 'M', 'J', 'N', 'L' };
+    public static final byte VERSION = 1;
+    public static final byte KEY = 1;
+    public static final byte RECORD = 2;
+    public static final int NONCE_SIZE = 12;
+
+    private static SecureRandom ourRandom = new SecureRandom();
+
+    /**
+     * A journal that is open for appending.
+     *
+     * <H2>Attributes</H2>
+     * <UL>
+     *     <LI>file - the journal.</LI>
+     *     <LI>fileOutputStream - where records go.</LI>
+     *     <LI>declaredKey - the ID of the last data key declared in the file by this Output.</LI>
+     * </UL>
+     */
+    public static class Output implements Closeable {
+        private File file;
+        private FileOutputStream fileOutputStream;
+        private byte[] declaredKey;
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Open a journal for appending, writing the start of the file if it is new.
+         */
+        public Output (File file) throws IOException {
+            this.file = file;
+            boolean isNew = !file.exists() || file.length() == 0;
+            this.fileOutputStream = new FileOutputStream(file, true);
+
+            if (isNew) {
+                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+                byteArrayOutputStream.write(MAGIC);
+                byteArrayOutputStream.write(VERSION);
+                fileOutputStream.write(byteArrayOutputStream.toByteArray());
+            }
+        }
+
+        /**
+         * Encrypt and append a record, declaring its data key first if this
+         * Output has not declared it yet.
+         *
+         * @param sync If true, force the record to disk before returning.
+         */
+        public void append (byte[] data, DataKeyCache dataKeyCache, boolean sync)
+                throws IOException, EncryptionException
+        {
+            DataKeyCache.DataKey dataKey = dataKeyCache.getCurrentKey();
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(data.length + 64);
+            DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+
+            if (!Arrays.equals(declaredKey, dataKey.getId())) {
+                out.writeByte(KEY);
+                out.writeByte(dataKey.getId().length);
+                out.write(dataKey.getId());
+                out.writeInt(dataKey.getWrappedKey().length);
+                out.write(dataKey.getWrappedKey());
+            }
+
+            byte[] nonce = new byte[NONCE_SIZE];
+            ourRandom.nextBytes(nonce);
+            byte[] cipherText = encrypt(dataKey.getSecretKey(), nonce, data);
+
+            out.writeByte(RECORD);
+            out.writeByte(dataKey.getId().length);
+            out.write(dataKey.getId());
+            out.write(nonce);
+            out.writeInt(cipherText.length);
+            out.write(cipherText);
+            out.flush();
+
+            fileOutputStream.write(byteArrayOutputStream.toByteArray());
+            declaredKey = dataKey.getId();
+
+            if (sync)
+                fileOutputStream.getChannel().force(false);
+        }
+
+        public void close () throws IOException {
+            fileOutputStream.close();
+        }
+    }
+
+    public static byte[] encrypt (SecretKey secretKey, byte[] nonce, byte[] data) throws IOException {
+        try {
+            Cipher cipher = Cipher.getInstance(EncryptingOutputStream.CHUNK_ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(EncryptingOutputStream.TAG_SIZE, nonce));
+            cipher.updateAAD(new byte[] { VERSION, RECORD });
+            return cipher.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Exception trying to encrypt a journal record", e);
+        }
+    }
+
+    public static byte[] decrypt (SecretKey secretKey, byte[] nonce, byte[] cipherText) throws IOException {
+        try {
+            Cipher cipher = Cipher.getInstance(EncryptingOutputStream.CHUNK_ALGORITHM);
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(EncryptingOutputStream.TAG_SIZE, nonce));
+            cipher.updateAAD(new byte[] { VERSION, RECORD });
+            return cipher.doFinal(cipherText);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Exception trying to decrypt a journal record", e);
+        }
+    }
+
+    /**
+     * Does a file start with {@link #MAGIC}?
+     */
+    public static boolean isBinary (File file) throws IOException {
+        byte[] prefix = new byte[MAGIC.length];
+        DataInputStream dataInputStream = null;
+
+        try {
+            dataInputStream = new DataInputStream(new FileInputStream(file));
+            dataInputStream.readFully(prefix);
+            return Arrays.equals(prefix, MAGIC);
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            Utils.closeIgnoreExceptions(dataInputStream);
+        }
+    }
+
+    /**
+     * Read a length, which cannot be more than the size of the file.
+     */
+    private static int readLength (DataInputStream in, File file) throws IOException {
+        int length = in.readInt();
+
+        if (length < 0 || length > file.length())
+            throw new IOException("Invalid length, " + length + ", in " + file);
+
+        return length;
+    }
+
+    /**
+     * Read the records of a binary journal.
+     *
+     * <P>
+     *     An entry that cannot be read or decrypted ends the journal.  This is
+     *     usually the last entry, cut short because the system stopped in the
+     *     middle of writing it.
+     * </P>
+     */
+    public static List<byte[]> read (File file, DataKeyCache dataKeyCache) throws IOException {
+        List<byte[]> records = new ArrayList<byte[]>();
+        Map<String, SecretKey> keys = new HashMap<String, SecretKey>();
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            byte[] prefix = new byte[MAGIC.length];
+            in.readFully(prefix);
+            if (!Arrays.equals(prefix, MAGIC) || in.readByte() != VERSION)
+                throw new IOException(file + " is not a journal");
+
+            int type = in.read();
+            while (type != -1) {
+                byte[] id = new byte[in.readUnsignedByte()];
+                in.readFully(id);
+
+                if (type == KEY) {
+                    byte[] wrappedKey = new byte[readLength(in, file)];
+                    in.readFully(wrappedKey);
+                    keys.put(Utils.bytesToString(id), dataKeyCache.unwrap(id, wrappedKey));
+                } else if (type == RECORD) {
+                    byte[] nonce = new byte[NONCE_SIZE];
+                    in.readFully(nonce);
+                    byte[] cipherText = new byte[readLength(in, file)];
+                    in.readFully(cipherText);
+
+                    SecretKey secretKey = keys.get(Utils.bytesToString(id));
+                    if (null == secretKey)
+                        throw new IOException("Record with an undeclared key in " + file);
+
+                    records.add(decrypt(secretKey, nonce, cipherText));
+                } else {
+                    throw new IOException("Unknown entry type, " + type + ", in " + file);
+                }
+
+                type = in.read();
+            }
+        } catch (IOException | EncryptionException e) {
+            logger.warn("Stopped reading " + file + " after " + records.size() + " records", e);
+        } finally {
+            Utils.closeIgnoreExceptions(in);
+        }
+
+        return records;
+    }
+}
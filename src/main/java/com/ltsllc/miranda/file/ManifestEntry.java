@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.file;
+
+import com.ltsllc.miranda.Version;
+
+/**
+ * What a {@link DirectoryScanner} found out about a file, and what a
+ * {@link ScanManifest} remembers about it.
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>path - the name of the file, including the directory that was scanned.</LI>
+ *     <LI>size - the length of the file in bytes.</LI>
+ *     <LI>lastModified - when the file was last modified, in milliseconds since the epoch.</LI>
+ *     <LI>version - the version of the contents of the file, or null if the file has not been read since it changed.</LI>
+ * </UL>
+ */
+public class ManifestEntry {
+    private String path;
+    private long size;
+    private long lastModified;
+    private Version version;
+
+    public ManifestEntry () {}
+
+    public ManifestEntry (String path, long size, long lastModified) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public Version getVersion() {
+        return version;
+    }
+
+    public void setVersion(Version version) {
+        this.version = version;
+    }
+
+    /**
+     * Does another entry describe the same file, unchanged?  The file is
+     * assumed to be unchanged if its size and modification time are the same.
+     */
+    public boolean isSameFileAs (ManifestEntry other) {
+        if (null == other || null == path)
+            return false;
+
+        return path.equals(other.path) && size == other.size && lastModified == other.lastModified;
+    }
+
+    public String toString () {
+        return path + " (" + size + " bytes, modified " + lastModified + ")";
+    }
+}
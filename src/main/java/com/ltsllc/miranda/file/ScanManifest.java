@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.file;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.ltsllc.clcl.DataKeyCache;
+import com.ltsllc.clcl.EncryptionException;
+import com.ltsllc.miranda.Version;
+import com.ltsllc.miranda.reader.Reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The files that were found the last time a directory was scanned.
+ *
+ * <P>
+ *     Each file has its size, modification time and the version of its
+ *     contents.  When the directory is scanned again, {@link #update(List)}
+ *     returns only the files that are new or whose size or modification time
+ *     has changed, so only those need to be read again.  The manifest is
+ *     kept in the directory itself, so this also holds across restarts.
+ * </P>
+ *
+ * <P>
+ *     The manifest is written like any other file, through the
+ *     {@link com.ltsllc.miranda.writer.Writer}.  If it is lost, the next scan
+ *     treats every file as changed.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>file - where the manifest is kept.</LI>
+ *     <LI>entries - the files, by path.</LI>
+ *     <LI>dirty - the manifest has changed since it was last written.</LI>
+ * </UL>
+ */
+public class ScanManifest {
+    public static final String FILENAME = ".manifest";
+
+    private static Gson gson = new Gson();
+
+    private File file;
+    private Map<String, ManifestEntry> entries = new TreeMap<String, ManifestEntry>();
+    private boolean dirty;
+
+    public ScanManifest (File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Map<String, ManifestEntry> getEntries() {
+        return entries;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
+    public synchronized ManifestEntry get (String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * Replace the entries with the results of a new scan.
+     *
+     * <P>
+     *     A file whose size and modification time have not changed keeps the
+     *     version it had.  Files that are no longer there are dropped.
+     * </P>
+     *
+     * @return The files that are new or have changed.
+     */
+    public synchronized List<ManifestEntry> update (List<ManifestEntry> scanned) {
+        Map<String, ManifestEntry> newEntries = new TreeMap<String, ManifestEntry>();
+        List<ManifestEntry> changed = new ArrayList<ManifestEntry>();
+
+        for (ManifestEntry entry : scanned) {
+            ManifestEntry oldEntry = entries.get(entry.getPath());
+
+            if (entry.isSameFileAs(oldEntry))
+                entry.setVersion(oldEntry.getVersion());
+            else
+                changed.add(entry);
+
+            newEntries.put(entry.getPath(), entry);
+        }
+
+        if (changed.size() > 0 || newEntries.size() != entries.size())
+            setDirty(true);
+
+        entries = newEntries;
+
+        return changed;
+    }
+
+    /**
+     * Record the version of a file after it has been read.
+     */
+    public synchronized void setVersion (String path, Version version) {
+        ManifestEntry entry = entries.get(path);
+
+        if (null != entry && !version.equals(entry.getVersion())) {
+            entry.setVersion(version);
+            setDirty(true);
+        }
+    }
+
+    /**
+     * The version of the directory: a {@link ContentDigest} of the versions of
+     * its files, so it does not depend on the order of the files and does not
+     * need them to be read again.
+     */
+    public synchronized Version getVersion () {
+        ContentDigest digest = new ContentDigest();
+
+        for (ManifestEntry entry : entries.values()) {
+            if (null != entry.getVersion())
+                digest.add(entry.getVersion());
+        }
+
+        return Version.createWithSha1(digest.toString());
+    }
+
+    public synchronized byte[] toBytes () {
+        List<ManifestEntry> list = new ArrayList<ManifestEntry>(entries.values());
+        return gson.toJson(list).getBytes();
+    }
+
+    public synchronized void fromBytes (byte[] data) {
+        Type listType = new TypeToken<List<ManifestEntry>>(){}.getType();
+        List<ManifestEntry> list = gson.fromJson(new String(data), listType);
+
+        entries.clear();
+
+        if (null != list) {
+            for (ManifestEntry entry : list) {
+                entries.put(entry.getPath(), entry);
+            }
+        }
+
+        setDirty(false);
+    }
+
+    /**
+     * Read the manifest, if there is one.
+     */
+    public void load (DataKeyCache dataKeyCache) throws IOException {
+        if (!getFile().exists())
+            return;
+
+        try {
+            byte[] data = Reader.readFile(getFile(), dataKeyCache);
+            fromBytes(data);
+        } catch (EncryptionException e) {
+            throw new IOException("Exception decrypting " + getFile(), e);
+        } catch (JsonParseException e) {
+            throw new IOException("Exception parsing " + getFile(), e);
+        }
+    }
+}
@@ -40,11 +40,10 @@ import org.apache.log4j.Logger;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Type;
 import java.security.GeneralSecurityException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.BlockingQueue;
 
 /**
@@ -57,38 +56,114 @@ abstract public class SingleFile<E extends MirandaObject> extends MirandaFile im
 
     private static Logger logger = Logger.getLogger(SingleFile.class);
 
+    /**
+     * The data of a file, indexed by {@link MirandaObject#getPrimaryKey()}.
+     *
+     * <P>
+     *     The list also keeps the {@link ContentDigest} of its elements, which
+     *     is the version of the file.
+     * </P>
+     */
+    public static class DataList<E extends MirandaObject> extends IndexedList<E> {
+        // no initializer: the superclass constructor sets this through rebuild
+        private ContentDigest digest;
+
+        public DataList (Collection<? extends E> collection) {
+            super(collection);
+        }
+
+        public ContentDigest getDigest() {
+            return digest;
+        }
+
+        public Object getKey (E element) {
+            return element.getPrimaryKey();
+        }
+
+        public void rebuild () {
+            digest = new ContentDigest();
+            super.rebuild();
+        }
+
+        protected void added (E element) {
+            super.added(element);
+            digest.add(element);
+        }
+
+        protected void removed (E element) {
+            super.removed(element);
+            digest.remove(element);
+        }
+    }
+
+    public static <E extends MirandaObject> List<E> toDataList (List<E> list) {
+        if (null == list || list instanceof DataList)
+            return list;
+
+        return new DataList<E>(list);
+    }
+
     private static Gson ourGson = new GsonBuilder()
             .setPrettyPrinting()
             .create();
 
     protected SingleFile () {}
 
+    // weak references rather than a WeakHashMap, because files with the same contents are equal
+    private static final List<WeakReference<SingleFile>> ourFiles = new LinkedList<WeakReference<SingleFile>>();
+
+    {
+        synchronized (ourFiles) {
+            ourFiles.add(new WeakReference<SingleFile>(this));
+        }
+    }
+
     public SingleFile(String filename, Reader reader, com.ltsllc.miranda.writer.Writer writer) throws IOException {
         super(filename, reader, writer);
 
         setDirty(false);
     }
 
-    private List<E> data = buildEmptyList();
+    private List<E> data = toDataList(buildEmptyList());
+    private int journalRecords;
+    private long compactions;
+    private long recordsFolded;
+    private long compactionBytes;
+    private long compactionTime;
+    private long lastCompactionTime;
+    private long deferredCompactions;
+
+    /**
+     * The number of records appended to the {@link Journal} since the last
+     * full write of the file.
+     */
+    public int getJournalRecords() {
+        return journalRecords;
+    }
+
+    public void setJournalRecords(int journalRecords) {
+        this.journalRecords = journalRecords;
+    }
 
     public List<E> getData() {
         return data;
     }
 
     public void setData(List<E> list) {
-        this.data = list;
+        this.data = toDataList(list);
     }
 
     public void setData (byte[] data) {
         if (null == data) {
-            this.data = new ArrayList();
+            setData(new ArrayList<E>());
         } else {
             ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(data);
             InputStreamReader inputStreamReader = null;
 
             try {
                 inputStreamReader = new InputStreamReader(byteArrayInputStream);
-                this.data = getGson().fromJson(inputStreamReader, getListType());
+                List<E> list = getGson().fromJson(inputStreamReader, getListType());
+                setData(list);
             } catch (Exception e) {
                 Panic panic = new Panic("Exception loading list", e, Panic.Reasons.ExceptionLoadingFile);
                 Miranda.panicMiranda(panic);
@@ -118,17 +193,57 @@ abstract public class SingleFile<E extends MirandaObject> extends MirandaFile im
     }
 
     public void processData(byte[] data) {
-        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(data);
-        InputStreamReader inputStreamReader = new InputStreamReader(byteArrayInputStream);
-        List<E> temp = null;
-        temp = getGson().fromJson(inputStreamReader, getListType());
+        processData(data, null);
+    }
+
+    public void processData(byte[] data, List<byte[]> journal) {
+        List<E> temp = buildEmptyList();
+
+        if (null != data) {
+            ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(data);
+            InputStreamReader inputStreamReader = new InputStreamReader(byteArrayInputStream);
+            temp = getGson().fromJson(inputStreamReader, getListType());
+        }
+
         setData(temp);
-        updateVersion();
+        replayJournal(journal);
         setLastLoaded(System.currentTimeMillis());
         fireFileLoaded();
     }
 
+    /**
+     * The version of a file is the {@link ContentDigest} of its data.
+     *
+     * <P>
+     *     The digest is kept up to date as elements are added and removed, so
+     *     this does not have to look at the data.
+     * </P>
+     */
+    public Version getVersion() {
+        if (getData() instanceof DataList)
+            return Version.createWithSha1(((DataList<E>) getData()).getDigest().toString());
+
+        return super.getVersion();
+    }
+
+    public Version calculateVersion() {
+        return getVersion();
+    }
+
+    /**
+     * Recalculate the version from scratch.
+     *
+     * <P>
+     *     This is only needed when elements have been changed in place by
+     *     something other than {@link #mergeElement(MirandaObject, MirandaObject)}.
+     * </P>
+     */
     public void updateVersion() {
+        if (getData() instanceof DataList) {
+            ((DataList<E>) getData()).rebuild();
+            return;
+        }
+
         try {
             String json = getGson().toJson(getData());
             Version version = new Version(json);
@@ -146,13 +261,10 @@ abstract public class SingleFile<E extends MirandaObject> extends MirandaFile im
 
 
     public boolean contains(Object o) {
-        E e = (E) o;
-        for (E contained : getData()) {
-            if (contained.isEquivalentTo(e))
-                return true;
-        }
+        if (!(o instanceof MirandaObject))
+            return false;
 
-        return false;
+        return null != find((MirandaObject) o);
     }
 
 
@@ -162,10 +274,171 @@ abstract public class SingleFile<E extends MirandaObject> extends MirandaFile im
 
     public void add(E e, boolean write) {
         getData().add(e);
-        updateVersion();
 
         if (write) {
-            getWriter().sendWrite(getQueue(), this, getFilename(), getBytes());
+            List<E> objects = new ArrayList<E>();
+            objects.add(e);
+            journal(Journal.Operations.Add, objects);
+        }
+    }
+
+    /**
+     * Write out the entire file.
+     *
+     * <P>
+     *     This is also the checkpoint for the {@link Journal}: once the file
+     *     is written the Writer removes the journal.
+     * </P>
+     */
+    public void write() {
+        setJournalRecords(0);
+        super.write();
+    }
+
+    /**
+     * Record a change to the file.
+     *
+     * <P>
+     *     If journaling is off, or the journal has reached
+     *     {@link Journal#getCheckpointInterval()} records, this writes the
+     *     entire file.  Otherwise only the change is appended to the journal.
+     * </P>
+     */
+    public void journal(Journal.Operations operation, List<E> objects) {
+        if (!Journal.isEnabled() || getJournalRecords() + 1 >= Journal.getCheckpointInterval()) {
+            write();
+        } else {
+            Journal.Record record = new Journal.Record(operation, getGson().toJsonTree(objects, getListType()));
+            byte[] bytes = getGson().toJson(record).getBytes();
+            getWriter().sendAppend(getQueue(), this, getFilename(), bytes);
+            journalRecords++;
+        }
+    }
+
+    public void performGarbageCollection () {
+        super.performGarbageCollection();
+        compact();
+    }
+
+    /**
+     * Fold the {@link Journal} into a new snapshot of the file.
+     *
+     * <P>
+     *     Nothing happens if the journal has fewer than
+     *     {@link Journal#getCompactionThreshold()} records.  If the Writer has
+     *     more than {@link Journal#getCompactionBacklog()} messages waiting,
+     *     the compaction is put off so that it does not hold up other writes.
+     *     The snapshot goes through the Writer like any other write, so it
+     *     replaces the file with a rename and the journal is removed once
+     *     it is in place.
+     * </P>
+     *
+     * @return true if a snapshot was written.
+     */
+    public boolean compact () {
+        int records = getJournalRecords();
+        if (records < Journal.getCompactionThreshold())
+            return false;
+
+        BlockingQueue<Message> writerQueue = getWriter().getQueue();
+        if (null != writerQueue && writerQueue.size() > Journal.getCompactionBacklog()) {
+            deferredCompactions++;
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        byte[] snapshot = getBytes();
+        setJournalRecords(0);
+        write(getFilename(), snapshot);
+        long duration = System.currentTimeMillis() - start;
+
+        compactions++;
+        recordsFolded += records;
+        compactionBytes += snapshot.length;
+        compactionTime += duration;
+        lastCompactionTime = duration;
+
+        logger.info("Compacted " + records + " journal records into " + getFilename() + " in " + duration + "ms");
+
+        return true;
+    }
+
+    public CompactionGauge getCompactionGauge () {
+        return new CompactionGauge(getFilename(), getJournalRecords(), compactions, recordsFolded, compactionBytes,
+                compactionTime, lastCompactionTime, deferredCompactions);
+    }
+
+    /**
+     * The compaction gauges of every SingleFile that is still in use.
+     */
+    public static List<CompactionGauge> getCompactionGauges () {
+        List<SingleFile> files = new ArrayList<SingleFile>();
+
+        synchronized (ourFiles) {
+            Iterator<WeakReference<SingleFile>> iterator = ourFiles.iterator();
+            while (iterator.hasNext()) {
+                SingleFile file = iterator.next().get();
+                if (null == file)
+                    iterator.remove();
+                else
+                    files.add(file);
+            }
+        }
+
+        List<CompactionGauge> gauges = new ArrayList<CompactionGauge>(files.size());
+        for (SingleFile file : files) {
+            gauges.add(file.getCompactionGauge());
+        }
+
+        return gauges;
+    }
+
+    /**
+     * Apply the records from the {@link Journal} to the data, oldest first.
+     *
+     * <P>
+     *     Nothing is written: the records are already on disk.  A record that
+     *     cannot be applied is logged and skipped.
+     * </P>
+     */
+    public void replayJournal(List<byte[]> records) {
+        if (null == records || records.size() < 1)
+            return;
+
+        for (byte[] bytes : records) {
+            try {
+                Journal.Record record = getGson().fromJson(new String(bytes), Journal.Record.class);
+                List<E> objects = getGson().fromJson(record.getObjects(), getListType());
+                replay(record.getOperation(), objects);
+            } catch (Exception e) {
+                logger.error("Exception replaying the journal for " + getFilename(), e);
+            }
+        }
+
+        setJournalRecords(records.size());
+    }
+
+    public void replay(Journal.Operations operation, List<E> objects) throws MergeException {
+        switch (operation) {
+            case Add: {
+                basicAddObjects(objects);
+                break;
+            }
+
+            case Update: {
+                basicUpdateObjects(objects);
+                break;
+            }
+
+            case Merge: {
+                basicMerge(objects);
+                break;
+            }
+
+            case Remove: {
+                basicRemoveObjects(objects);
+                break;
+            }
         }
     }
 
@@ -210,6 +483,17 @@ abstract public class SingleFile<E extends MirandaObject> extends MirandaFile im
     }
 
     public boolean merge(List list) {
+        boolean changed = basicMerge(list);
+
+        if (changed) {
+            journal(Journal.Operations.Merge, (List<E>) list);
+            fireFileChanged();
+        }
+
+        return changed;
+    }
+
+    public boolean basicMerge(List list) {
         List<E> newItems = new ArrayList<E>();
         boolean changed = false;
 
@@ -223,7 +507,7 @@ abstract public class SingleFile<E extends MirandaObject> extends MirandaFile im
                 newItems.add(e);
                 changed = true;
             } else {
-                boolean temp = existing.merge(mergeable);
+                boolean temp = mergeElement(existing, mergeable);
                 if (!(changed))
                     changed = temp;
             }
@@ -233,12 +517,6 @@ abstract public class SingleFile<E extends MirandaObject> extends MirandaFile im
             getData().addAll(newItems);
         }
 
-        if (changed) {
-            updateVersion();
-            write();
-            fireFileChanged();
-        }
-
         return changed;
     }
 
@@ -291,23 +569,31 @@ abstract public class SingleFile<E extends MirandaObject> extends MirandaFile im
     }
 
     public void addObjects(List list) {
+        basicAddObjects(list);
+
+        journal(Journal.Operations.Add, (List<E>) list);
+    }
+
+    public void basicAddObjects(List list) {
         List<E> newObjects = (List<E>) list;
         for (E object : newObjects) {
             if (!contains(object))
                 getData().add(object);
         }
-
-        write();
     }
 
     public void updateObjects(List<E> updatedObjects) throws MergeException {
+        basicUpdateObjects(updatedObjects);
+
+        journal(Journal.Operations.Update, updatedObjects);
+    }
+
+    public void basicUpdateObjects(List<E> updatedObjects) throws MergeException {
         for (E updatedObject : updatedObjects) {
             update(updatedObject);
         }
 
         checkForDuplicates();
-
-        write();
     }
 
     public void update(E updatedObject) throws MergeException {
@@ -316,20 +602,41 @@ abstract public class SingleFile<E extends MirandaObject> extends MirandaFile im
         if (null == existingObject) {
             logger.error("Could not find match for update");
         } else {
-            existingObject.merge(updatedObject);
+            mergeElement(existingObject, updatedObject);
         }
     }
 
-    public E findMatch(E object) {
-        for (E candidate : getData()) {
-            if (object.isEquivalentTo(candidate))
-                return candidate;
+    /**
+     * Merge an object into an element of the data, keeping the version up
+     * to date.
+     */
+    public boolean mergeElement(MirandaObject existing, MirandaObject other) {
+        if (!(getData() instanceof DataList))
+            return existing.merge(other);
+
+        ContentDigest digest = ((DataList<E>) getData()).getDigest();
+        byte[] before = digest.digest(existing);
+        boolean changed = existing.merge(other);
+
+        if (changed) {
+            digest.subtract(before);
+            digest.add(existing);
         }
 
-        return null;
+        return changed;
+    }
+
+    public E findMatch(E object) {
+        return (E) find(object);
     }
 
     public void removeObjects(List objects) {
+        List<E> removed = basicRemoveObjects(objects);
+
+        journal(Journal.Operations.Remove, removed);
+    }
+
+    public List<E> basicRemoveObjects(List objects) {
         List<E> oldObjects = (List<E>) objects;
         List<E> existingObjects = new ArrayList<E>(objects.size());
 
@@ -344,10 +651,26 @@ abstract public class SingleFile<E extends MirandaObject> extends MirandaFile im
 
         getData().removeAll(existingObjects);
 
-        write();
+        return existingObjects;
     }
 
+    /**
+     * Find the element that is equivalent to an object.
+     *
+     * <P>
+     *     If the object has a primary key this is a lookup in the index of the
+     *     data; otherwise it is a search.
+     * </P>
+     */
     public MirandaObject find(MirandaObject object) {
+        Object key = object.getPrimaryKey();
+
+        if (null != key && getData() instanceof DataList) {
+            MirandaObject candidate = ((DataList<E>) getData()).find(key);
+            if (null == candidate || candidate.isEquivalentTo(object))
+                return candidate;
+        }
+
         for (MirandaObject candidate : getData()) {
             if (candidate.isEquivalentTo(object))
                 return candidate;
@@ -66,7 +66,7 @@ abstract public class SingleFileLoadingState extends State {
         State nextState = getSingleFile().getCurrentState();
 
         if (readResponseMessage.getResult() == ReadResponseMessage.Results.Success) {
-            getSingleFile().processData(readResponseMessage.getData());
+            getSingleFile().processData(readResponseMessage.getData(), readResponseMessage.getJournal());
             nextState = getReadyState();
         } else if (readResponseMessage.getResult() == ReadResponseMessage.Results.ExceptionReadingFile){
             Panic panic = new Panic ("Error trying to load file", readResponseMessage.getException(), Panic.Reasons.ErrorLoadingFile);
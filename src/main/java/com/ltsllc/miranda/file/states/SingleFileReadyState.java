@@ -172,7 +172,7 @@ abstract public class SingleFileReadyState<E> extends MirandaFileReadyState {
     }
 
     public State processStopMessage (StopMessage stopMessage) {
-        if (getFile().isDirty())
+        if (getFile().isDirty() || getFile().getJournalRecords() > 0)
             getFile().getWriter().sendWrite(getFile().getQueue(), this, getFile().getFilename(), getFile().getBytes());
 
         SingleFileStoppingState singleFileStoppingState = new SingleFileStoppingState(getFile());
@@ -227,7 +227,7 @@ abstract public class SingleFileReadyState<E> extends MirandaFileReadyState {
     public State processReadResponseMessage (ReadResponseMessage readResponseMessage) {
         switch (readResponseMessage.getResult()) {
             case Success: {
-                processReadSuccess (readResponseMessage.getData());
+                processReadSuccess (readResponseMessage.getData(), readResponseMessage.getJournal());
                 break;
             }
 
@@ -252,7 +252,12 @@ abstract public class SingleFileReadyState<E> extends MirandaFileReadyState {
 
 
     public void processReadSuccess (byte[] data) {
+        processReadSuccess(data, null);
+    }
+
+    public void processReadSuccess (byte[] data, List<byte[]> journal) {
         getFile().setData(data);
+        getFile().replayJournal(journal);
         fireFileLoaded();
     }
 
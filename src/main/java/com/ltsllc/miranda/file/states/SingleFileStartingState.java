@@ -74,6 +74,7 @@ abstract public class SingleFileStartingState extends State {
     public State processReadResponseMessage(ReadResponseMessage readResponseMessage) {
         if (readResponseMessage.getResult() == ReadResponseMessage.Results.Success) {
             getFile().setData(readResponseMessage.getData());
+            getFile().replayJournal(readResponseMessage.getJournal());
             getFile().fireFileLoaded();
             restoreDeferredMessages();
             return getReadyState();
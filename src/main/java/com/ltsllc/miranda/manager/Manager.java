@@ -20,6 +20,7 @@ import com.ltsllc.miranda.Consumer;
 import com.ltsllc.miranda.Message;
 import com.ltsllc.miranda.State;
 import com.ltsllc.miranda.clientinterface.basicclasses.MirandaObject;
+import com.ltsllc.miranda.file.IndexedList;
 import com.ltsllc.miranda.file.SingleFile;
 import com.ltsllc.miranda.file.Updateable;
 import com.ltsllc.miranda.file.messages.FileLoadedMessage;
@@ -38,6 +39,19 @@ public abstract class Manager<E, F extends MirandaObject> extends Consumer {
     abstract public State createStartState ();
     abstract public E convert (F f);
 
+    /**
+     * The data of a manager, indexed by {@link #getIndexKey(Object)}.
+     */
+    public class DataList extends IndexedList<E> {
+        public DataList (List<E> list) {
+            super(list);
+        }
+
+        public Object getKey (E element) {
+            return getIndexKey(element);
+        }
+    }
+
     private SingleFile<F> file;
     private List<E> data;
     private boolean testMode;
@@ -71,7 +85,30 @@ public abstract class Manager<E, F extends MirandaObject> extends Consumer {
     }
 
     public void setData (List<E> data) {
-        this.data = data;
+        if (null == data || data instanceof Manager.DataList)
+            this.data = data;
+        else
+            this.data = new DataList(data);
+    }
+
+    /**
+     * The key that {@link #lookup(Object)} finds an element by.
+     *
+     * <P>
+     *     The default is null, which means that elements are not indexed.
+     *     Subclasses that look elements up by something like a name should
+     *     return it here, and use lookup instead of searching the data.
+     * </P>
+     */
+    public Object getIndexKey (E element) {
+        return null;
+    }
+
+    public E lookup (Object key) {
+        if (!(getData() instanceof Manager.DataList))
+            return null;
+
+        return ((DataList) getData()).find(key);
     }
 
     public List<E> convertList (List<F> data) {
@@ -97,7 +134,7 @@ public abstract class Manager<E, F extends MirandaObject> extends Consumer {
         setCurrentState(startState);
 
         List<E> newList = new ArrayList<E>();
-        this.data = newList;
+        setData(newList);
     }
 
     public Manager (String name, boolean testMode) {
@@ -107,7 +144,7 @@ public abstract class Manager<E, F extends MirandaObject> extends Consumer {
         setCurrentState(startState);
 
         List<E> newList = new ArrayList<E>();
-        this.data = newList;
+        setData(newList);
     }
 
     public void sendGarbageCollectionMessage (BlockingQueue<Message> senderQueue, Object sender) {
@@ -48,14 +48,17 @@ import com.ltsllc.miranda.session.Session;
 import com.ltsllc.miranda.session.SessionManager;
 import com.ltsllc.miranda.session.SessionsExpiredMessage;
 import com.ltsllc.miranda.subsciptions.SubscriptionManager;
+import com.ltsllc.miranda.subsciptions.SubscriptionsFile;
 import com.ltsllc.miranda.subsciptions.messages.CreateSubscriptionMessage;
 import com.ltsllc.miranda.subsciptions.messages.DeleteSubscriptionMessage;
 import com.ltsllc.miranda.subsciptions.messages.UpdateSubscriptionMessage;
 import com.ltsllc.miranda.timer.MirandaTimer;
 import com.ltsllc.miranda.topics.TopicManager;
+import com.ltsllc.miranda.topics.TopicsFile;
 import com.ltsllc.miranda.topics.messages.DeleteTopicMessage;
 import com.ltsllc.miranda.topics.messages.UpdateTopicMessage;
 import com.ltsllc.miranda.user.UserManager;
+import com.ltsllc.miranda.user.UsersFile;
 import com.ltsllc.miranda.user.messages.CreateUserMessage;
 import com.ltsllc.miranda.user.messages.DeleteUserMessage;
 import com.ltsllc.miranda.user.messages.LoginMessage;
@@ -69,7 +72,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * The Miranda system.
@@ -85,23 +87,27 @@ public class Miranda extends Consumer {
 
     public static FileWatcherService fileWatcher;
     public static MirandaTimer timer;
+    public static Dispatcher dispatcher;
     public static MirandaProperties properties;
     public static MirandaFactory factory;
     public static boolean panicking = false;
     public static InputStream inputStream;
 
-    private HttpServer httpServer;
-    private UserManager userManager;
-    private TopicManager topicManager;
-    private SubscriptionManager subscriptionManager;
-    private EventManager eventManager;
-    private DeliveryManager deliveryManager;
-    private Cluster cluster;
-    private PanicPolicy panicPolicy;
-    private NetworkListener networkListener;
-    private SessionManager sessionManager;
-    private Writer writer;
-    private Reader reader;
+    //
+    // these are read from every thread, so they are volatile
+    //
+    private volatile HttpServer httpServer;
+    private volatile UserManager userManager;
+    private volatile TopicManager topicManager;
+    private volatile SubscriptionManager subscriptionManager;
+    private volatile EventManager eventManager;
+    private volatile DeliveryManager deliveryManager;
+    private volatile Cluster cluster;
+    private volatile PanicPolicy panicPolicy;
+    private volatile NetworkListener networkListener;
+    private volatile SessionManager sessionManager;
+    private volatile Writer writer;
+    private volatile Reader reader;
     private List<String> waitingOn;
     private Network network;
     public MirandaCommandLine commandLine;
@@ -159,6 +165,7 @@ public class Miranda extends Consumer {
 
     public void setReader(Reader reader) {
         this.reader = reader;
+        Registry.getInstance().register(Reader.NAME, reader);
     }
 
     public Writer getWriter() {
@@ -167,6 +174,7 @@ public class Miranda extends Consumer {
 
     public void setWriter(Writer writer) {
         this.writer = writer;
+        Registry.getInstance().register(Writer.NAME, writer);
     }
 
     public SessionManager getSessionManager() {
@@ -175,6 +183,7 @@ public class Miranda extends Consumer {
 
     public void setSessionManager(SessionManager sessionManager) {
         this.sessionManager = sessionManager;
+        Registry.getInstance().register(SessionManager.NAME, sessionManager);
     }
 
     public NetworkListener getNetworkListener() {
@@ -215,6 +224,7 @@ public class Miranda extends Consumer {
 
     public void setCluster(Cluster cluster) {
         this.cluster = cluster;
+        Registry.getInstance().register(Cluster.NAME, cluster);
     }
 
     public UserManager getUserManager() {
@@ -223,6 +233,10 @@ public class Miranda extends Consumer {
 
     public void setUserManager(UserManager userManager) {
         this.userManager = userManager;
+        Registry.getInstance().register(UserManager.NAME, userManager);
+
+        if (null != userManager)
+            Registry.getInstance().register(UsersFile.FILE_NAME, userManager.getFile());
     }
 
     public TopicManager getTopicManager() {
@@ -231,6 +245,10 @@ public class Miranda extends Consumer {
 
     public void setTopicManager(TopicManager topicManager) {
         this.topicManager = topicManager;
+        Registry.getInstance().register(TopicManager.NAME, topicManager);
+
+        if (null != topicManager)
+            Registry.getInstance().register(TopicsFile.FILE_NAME, topicManager.getFile());
     }
 
     public SubscriptionManager getSubscriptionManager () {
@@ -239,6 +257,10 @@ public class Miranda extends Consumer {
 
     public void setSubscriptionManager (SubscriptionManager subscriptionManager) {
         this.subscriptionManager = subscriptionManager;
+        Registry.getInstance().register(SubscriptionManager.NAME, subscriptionManager);
+
+        if (null != subscriptionManager)
+            Registry.getInstance().register(SubscriptionsFile.FILE_NAME, subscriptionManager.getFile());
     }
 
     public EventManager getEventManager() {
@@ -247,6 +269,7 @@ public class Miranda extends Consumer {
 
     public void setEventManager(EventManager eventManager) {
         this.eventManager = eventManager;
+        Registry.getInstance().register(EventManager.NAME, eventManager);
     }
 
     public DeliveryManager getDeliveryManager() {
@@ -255,6 +278,7 @@ public class Miranda extends Consumer {
 
     public void setDeliveryManager(DeliveryManager deliveryManager) {
         this.deliveryManager = deliveryManager;
+        Registry.getInstance().register(DeliveryManager.NAME, deliveryManager);
     }
 
     public Miranda (String arguments) {
@@ -274,7 +298,7 @@ public class Miranda extends Consumer {
         State s = new Startup(this, argv);
         setCurrentStateWithoutStart(s);
 
-        BlockingQueue<Message> queue = new LinkedBlockingQueue<Message>();
+        BlockingQueue<Message> queue = new Mailbox(NAME);
         setQueue(queue);
 
         inputStream = System.in;
@@ -346,6 +370,7 @@ public class Miranda extends Consumer {
         fileWatcher = null;
         properties = null;
         timer = null;
+        dispatcher = null;
         logger = null;
 
         httpServer = null;
@@ -355,6 +380,8 @@ public class Miranda extends Consumer {
         eventManager = null;
         deliveryManager = null;
         panicPolicy = null;
+
+        Registry.getInstance().clear();
     }
 
 
@@ -26,6 +26,7 @@ import com.ltsllc.miranda.commadline.MirandaCommandLine;
 import com.ltsllc.miranda.deliveries.DeliveryManager;
 import com.ltsllc.miranda.event.EventManager;
 import com.ltsllc.miranda.file.FileWatcherService;
+import com.ltsllc.miranda.file.Journal;
 import com.ltsllc.miranda.http.HttpServer;
 import com.ltsllc.miranda.http.ServletMapping;
 import com.ltsllc.miranda.miranda.messages.GarbageCollectionMessage;
@@ -261,6 +262,11 @@ public class Startup extends State {
             getKeys(getKeystorePasswordString());
             startLogger();
             logProperties();
+            setupProvenance();
+            setupTracing();
+            setupMetrics();
+            setupJournal();
+            startDispatcher();
             startWriter();
             startReader();
             defineFactory();
@@ -339,6 +345,9 @@ public class Startup extends State {
         servletMapping = new ServletMapping("/status", StatusServlet.class);
         mappings.add(servletMapping);
 
+        servletMapping = new ServletMapping("/status/actors", StatusServlet.class);
+        mappings.add(servletMapping);
+
         servletMapping = new ServletMapping("/servlets/properties", ListPropertiesServlet.class);
         mappings.add(servletMapping);
 
@@ -617,8 +626,94 @@ public class Startup extends State {
         miranda.setSessionManager(sessionManager);
     }
 
+    /**
+     * Define {@link Miranda#dispatcher} if the properties call for one.
+     *
+     * <P>
+     *     This must happen before any of the subsystems are started, otherwise
+     *     they will get threads of their own.
+     * </P>
+     */
+    public void startDispatcher() {
+        MirandaProperties properties = Miranda.properties;
+
+        MirandaProperties.DispatcherModes mode = properties.getDispatcherModeProperty(MirandaProperties.PROPERTY_DISPATCHER_MODE);
+        if (mode == MirandaProperties.DispatcherModes.Pool) {
+            int poolSize = properties.getIntProperty(MirandaProperties.PROPERTY_DISPATCHER_POOL_SIZE);
+            int batchSize = properties.getIntProperty(MirandaProperties.PROPERTY_DISPATCHER_BATCH_SIZE);
+            Miranda.dispatcher = new Dispatcher(poolSize, batchSize);
+        }
+    }
+
+    /**
+     * Decide how often messages record where they were created.
+     */
+    public void setupProvenance() {
+        MirandaProperties properties = Miranda.properties;
+
+        MirandaProperties.ProvenanceModes mode = properties.getProvenanceModeProperty(MirandaProperties.PROPERTY_MESSAGE_PROVENANCE);
+        int sampleRate = properties.getIntProperty(MirandaProperties.PROPERTY_MESSAGE_PROVENANCE_SAMPLE_RATE);
+        Message.setProvenance(mode, sampleRate);
+    }
+
+    /**
+     * Decide whether {@link Trace} events are written on a thread of their own.
+     */
+    public void setupTracing() {
+        boolean async = Miranda.properties.getBooleanProperty(MirandaProperties.PROPERTY_ASYNC_TRACE);
+        Trace.setAsync(async);
+    }
+
+    /**
+     * Decide whether subsystems keep {@link ConsumerMetrics}.
+     */
+    public void setupMetrics() {
+        boolean enabled = Miranda.properties.getBooleanProperty(MirandaProperties.PROPERTY_ACTOR_METRICS);
+        ConsumerMetrics.setEnabled(enabled);
+    }
+
+    /**
+     * Decide whether files append changes to a {@link Journal} rather than
+     * rewriting themselves.
+     */
+    public void setupJournal() {
+        boolean enabled = Miranda.properties.getBooleanProperty(MirandaProperties.PROPERTY_FILE_JOURNAL);
+        Journal.setEnabled(enabled);
+
+        int checkpointInterval = Miranda.properties.getIntProperty(MirandaProperties.PROPERTY_FILE_JOURNAL_CHECKPOINT);
+        Journal.setCheckpointInterval(checkpointInterval);
+
+        int compactionThreshold = Miranda.properties.getIntProperty(MirandaProperties.PROPERTY_FILE_JOURNAL_COMPACTION_THRESHOLD);
+        Journal.setCompactionThreshold(compactionThreshold);
+
+        int compactionBacklog = Miranda.properties.getIntProperty(MirandaProperties.PROPERTY_FILE_JOURNAL_COMPACTION_BACKLOG);
+        Journal.setCompactionBacklog(compactionBacklog);
+    }
+
     public void startWriter() {
         Writer writer = new Writer(getPublicKey());
+
+        long coalesceDelay = Miranda.properties.getLongProperty(MirandaProperties.PROPERTY_WRITER_COALESCE_DELAY,
+                MirandaProperties.DEFAULT_WRITER_COALESCE_DELAY);
+        writer.setCoalesceDelay(coalesceDelay);
+
+        int coalesceSize = Miranda.properties.getIntProperty(MirandaProperties.PROPERTY_WRITER_COALESCE_SIZE);
+        writer.setCoalesceSize(coalesceSize);
+
+        int backupGenerations = Miranda.properties.getIntProperty(MirandaProperties.PROPERTY_WRITER_BACKUP_GENERATIONS);
+        writer.setBackupGenerations(backupGenerations);
+
+        boolean sync = Miranda.properties.getBooleanProperty(MirandaProperties.PROPERTY_WRITER_SYNC);
+        writer.setSync(sync);
+
+        long maxAge = Miranda.properties.getLongProperty(MirandaProperties.PROPERTY_DATA_KEY_MAX_AGE,
+                MirandaProperties.DEFAULT_DATA_KEY_MAX_AGE);
+        writer.getDataKeyCache().setMaxAge(maxAge);
+
+        long maxUses = Miranda.properties.getLongProperty(MirandaProperties.PROPERTY_DATA_KEY_MAX_USES,
+                MirandaProperties.DEFAULT_DATA_KEY_MAX_USES);
+        writer.getDataKeyCache().setMaxUses(maxUses);
+
         writer.start();
 
         logger.info(getMiranda());
@@ -628,6 +723,13 @@ public class Startup extends State {
 
     public void startReader() {
         Reader reader = new Reader(getPrivateKey());
+
+        int cacheSize = Miranda.properties.getIntProperty(MirandaProperties.PROPERTY_DATA_KEY_CACHE_SIZE);
+        reader.getDataKeyCache().setCapacity(cacheSize);
+
+        int poolSize = Miranda.properties.getIntProperty(MirandaProperties.PROPERTY_READER_POOL_SIZE);
+        reader.setPoolSize(poolSize);
+
         reader.start();
 
         getMiranda().setReader(reader);
@@ -676,10 +778,17 @@ public class Startup extends State {
             directoryName = properties.getProperty(MirandaProperties.PROPERTY_DELIVERY_DIRECTORY);
             f = new File(directoryName);
             directoryName = f.getCanonicalPath();
-            objectLimit = properties.getIntProperty(MirandaProperties.PROPERTY_DELIVERY_OBJECT_LIMIT);
-            DeliveryManager deliveryManager = new DeliveryManager(directoryName, objectLimit, getReader(), getWriter());
+            DeliveryManager deliveryManager = new DeliveryManager(directoryName, getReader(), getWriter(),
+                    eventManager.getEventLog());
+            deliveryManager.start();
             miranda.setDeliveryManager(deliveryManager);
 
+            //
+            // the subscription manager answers once its file is loaded, which
+            // gives the delivery manager the subscriptions to deliver to
+            //
+            subscriptionManager.sendGetSubscriptionsMessage(deliveryManager.getQueue(), deliveryManager);
+
         } catch (Exception e) {
             Panic panic = new StartupPanic("Unchecked exception during startup", e, StartupPanic.StartupReasons.UncheckedException);
             Miranda.getInstance().panic(panic);
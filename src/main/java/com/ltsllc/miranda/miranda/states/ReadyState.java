@@ -303,6 +303,7 @@ public class ReadyState extends State {
         getMiranda().getUserManager().sendGarbageCollectionMessage(getMiranda().getQueue(), this);
         getMiranda().getTopicManager().sendGarbageCollectionMessage(getMiranda().getQueue(), this);
         getMiranda().getSubscriptionManager().sendGarbageCollectionMessage(getMiranda().getQueue(), this);
+        getMiranda().getCluster().sendGarbageCollectionMessage(getMiranda().getQueue(), this);
 
         return this;
     }
@@ -101,6 +101,13 @@ abstract public class NetworkListener extends Consumer {
         }
     }
 
+    /**
+     * Listeners interrupt their own thread on shutdown, so they always get one.
+     */
+    public boolean isDispatchable () {
+        return false;
+    }
+
     public void shutdown () {
         setKeepGoing(false);
         getThread().interrupt();
@@ -45,6 +45,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Created by Clark on 1/29/2017.
@@ -267,17 +268,22 @@ public class NodeReadyState extends NodeState {
     }
 
 
+    /**
+     * Pass a request for a file on to whoever owns it.
+     *
+     * <P>
+     *     The owners register themselves with the {@link Registry} under the
+     *     names that other nodes use for the files: {@link Cluster#NAME},
+     *     {@link UsersFile#FILE_NAME}, {@link TopicsFile#FILE_NAME} and
+     *     {@link SubscriptionsFile#FILE_NAME}.
+     * </P>
+     */
     private State processGetFileWireMessage(GetFileWireMessage getFileWireMessage) {
         GetFileMessage getFileMessage = new GetFileMessage(getNode().getQueue(), this, getFileWireMessage.getFile());
+        BlockingQueue<Message> queue = Registry.getInstance().findQueue(getFileWireMessage.getFile());
 
-        if (getFileWireMessage.getFile().equalsIgnoreCase(Cluster.NAME)) {
-            send(Miranda.getInstance().getCluster().getQueue(), getFileMessage);
-        } else if (getFileWireMessage.getFile().equalsIgnoreCase(UsersFile.FILE_NAME)) {
-            send(UsersFile.getInstance().getQueue(), getFileMessage);
-        } else if (getFileWireMessage.getFile().equalsIgnoreCase(TopicsFile.FILE_NAME)) {
-            send(TopicsFile.getInstance().getQueue(), getFileMessage);
-        } else if (getFileWireMessage.getFile().equalsIgnoreCase(SubscriptionsFile.FILE_NAME)) {
-            send(SubscriptionsFile.getInstance().getQueue(), getFileMessage);
+        if (null != queue) {
+            send(queue, getFileMessage);
         } else {
             logger.error("Unknown file " + getFileWireMessage.getFile());
         }
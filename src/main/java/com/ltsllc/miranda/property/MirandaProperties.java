@@ -70,6 +70,17 @@ public class MirandaProperties {
         Fatal
     }
 
+    public enum DispatcherModes {
+        Thread,
+        Pool
+    }
+
+    public enum ProvenanceModes {
+        Off,
+        Sampled,
+        Always
+    }
+
     public enum MirandaModes {
         Normal,
         Debugging
@@ -111,6 +122,29 @@ public class MirandaProperties {
 
     public static final String PROPERTY_DELAY_BETWEEN_RETRIES = "com.ltsllc.miranda.DelayBetweenRetries";
     public static final String PROPERTY_DELIVERY_DIRECTORY = "com.ltsllc.miranda.DeliveryDirectory";
+    public static final String PROPERTY_DISPATCHER_MODE = PACKAGE_NAME + "DispatcherMode";
+    public static final String PROPERTY_DISPATCHER_POOL_SIZE = PACKAGE_NAME + "DispatcherPoolSize";
+    public static final String PROPERTY_DISPATCHER_BATCH_SIZE = PACKAGE_NAME + "DispatcherBatchSize";
+    public static final String PROPERTY_CONSUMER_BATCH_SIZE = PACKAGE_NAME + "ConsumerBatchSize";
+    public static final String PROPERTY_MAILBOX_CAPACITY = PACKAGE_NAME + "MailboxCapacity";
+    public static final String PROPERTY_MAILBOX_OVERFLOW_POLICY = PACKAGE_NAME + "MailboxOverflowPolicy";
+    public static final String PROPERTY_MESSAGE_PROVENANCE = PACKAGE_NAME + "MessageProvenance";
+    public static final String PROPERTY_MESSAGE_PROVENANCE_SAMPLE_RATE = PACKAGE_NAME + "MessageProvenanceSampleRate";
+    public static final String PROPERTY_ASYNC_TRACE = PACKAGE_NAME + "AsyncTrace";
+    public static final String PROPERTY_STASH_CAPACITY = PACKAGE_NAME + "StashCapacity";
+    public static final String PROPERTY_ACTOR_METRICS = PACKAGE_NAME + "ActorMetrics";
+    public static final String PROPERTY_FILE_JOURNAL = PACKAGE_NAME + "FileJournal";
+    public static final String PROPERTY_FILE_JOURNAL_CHECKPOINT = PACKAGE_NAME + "FileJournalCheckpoint";
+    public static final String PROPERTY_FILE_JOURNAL_COMPACTION_THRESHOLD = PACKAGE_NAME + "FileJournalCompactionThreshold";
+    public static final String PROPERTY_FILE_JOURNAL_COMPACTION_BACKLOG = PACKAGE_NAME + "FileJournalCompactionBacklog";
+    public static final String PROPERTY_WRITER_COALESCE_DELAY = PACKAGE_NAME + "WriterCoalesceDelay";
+    public static final String PROPERTY_WRITER_COALESCE_SIZE = PACKAGE_NAME + "WriterCoalesceSize";
+    public static final String PROPERTY_WRITER_BACKUP_GENERATIONS = PACKAGE_NAME + "WriterBackupGenerations";
+    public static final String PROPERTY_WRITER_SYNC = PACKAGE_NAME + "WriterSync";
+    public static final String PROPERTY_DATA_KEY_MAX_AGE = PACKAGE_NAME + "DataKeyMaxAge";
+    public static final String PROPERTY_DATA_KEY_MAX_USES = PACKAGE_NAME + "DataKeyMaxUses";
+    public static final String PROPERTY_DATA_KEY_CACHE_SIZE = PACKAGE_NAME + "DataKeyCacheSize";
+    public static final String PROPERTY_READER_POOL_SIZE = PACKAGE_NAME + "ReaderPoolSize";
     public static final String PROPERTY_FILE_CHECK_PERIOD = PACKAGE_NAME + "FileCheckPeriod";
     public static final String PROPERTY_GARBAGE_COLLECTION_PERIOD = PACKAGE_NAME + "GarbageCollectionPeriod";
     public static final String PROPERTY_LOG4J_FILE = "com.ltsllc.miranda.Log4jFile";
@@ -162,6 +196,10 @@ public class MirandaProperties {
 
     public static final String PROPERTY_EVENT_OBJECT_LIMIT = EVENT_PACKAGE + "ObjectLimit";
     public static final String PROPERTY_EVENT_EVICTION_PERIOD = EVENT_PACKAGE + "EvictionPeriod";
+    public static final String PROPERTY_EVENT_SEGMENT_SIZE = EVENT_PACKAGE + "SegmentSize";
+    public static final String PROPERTY_EVENT_INDEX_INTERVAL = EVENT_PACKAGE + "IndexInterval";
+    public static final String PROPERTY_EVENT_RETENTION = EVENT_PACKAGE + "Retention";
+    public static final String PROPERTY_EVENT_CACHE_BYTES = EVENT_PACKAGE + "CacheBytes";
 
     public static final String PROPERTY_DELIVERY_OBJECT_LIMIT = DELIVERY_PACKAGE + "ObjectLimit";
 
@@ -179,6 +217,29 @@ public class MirandaProperties {
     public static final String DEFAULT_GARBAGE_COLLECTION_PERIOD = "3600000"; // once/hour
     public static final String DEFAULT_NETWORK = Networks.Mina.toString();
     public static final String DEFAULT_MAX_WRITE_FAILURES = "5";
+    public static final String DEFAULT_DISPATCHER_MODE = DispatcherModes.Thread.toString();
+    public static final String DEFAULT_DISPATCHER_POOL_SIZE = "0"; // one per processor
+    public static final String DEFAULT_DISPATCHER_BATCH_SIZE = "32";
+    public static final String DEFAULT_CONSUMER_BATCH_SIZE = "32";
+    public static final String DEFAULT_MAILBOX_CAPACITY = "4096";
+    public static final String DEFAULT_MAILBOX_OVERFLOW_POLICY = "block";
+    public static final String DEFAULT_MESSAGE_PROVENANCE = "sampled";
+    public static final String DEFAULT_MESSAGE_PROVENANCE_SAMPLE_RATE = "1024"; // 1 in 1024 messages
+    public static final String DEFAULT_ASYNC_TRACE = "false";
+    public static final String DEFAULT_STASH_CAPACITY = "10000";
+    public static final String DEFAULT_ACTOR_METRICS = "true";
+    public static final String DEFAULT_FILE_JOURNAL = "false";
+    public static final String DEFAULT_FILE_JOURNAL_CHECKPOINT = "1000"; // records between snapshots
+    public static final String DEFAULT_FILE_JOURNAL_COMPACTION_THRESHOLD = "1"; // records before a compaction
+    public static final String DEFAULT_FILE_JOURNAL_COMPACTION_BACKLOG = "16"; // writer messages
+    public static final String DEFAULT_WRITER_COALESCE_DELAY = "0"; // flush as soon as the writer is idle
+    public static final String DEFAULT_WRITER_COALESCE_SIZE = "32"; // writes
+    public static final String DEFAULT_WRITER_BACKUP_GENERATIONS = "1";
+    public static final String DEFAULT_WRITER_SYNC = "true";
+    public static final String DEFAULT_DATA_KEY_MAX_AGE = "86400000"; // one day
+    public static final String DEFAULT_DATA_KEY_MAX_USES = "1048576"; // files and journal records
+    public static final String DEFAULT_DATA_KEY_CACHE_SIZE = "1024"; // unwrapped keys
+    public static final String DEFAULT_READER_POOL_SIZE = "0"; // one per processor
 
     public static final String DEFAULT_CLUSTER_FILE = "data/cluster.json";
     public static final String DEFAULT_CLUSTER_HEALTH_CHECK_PERIOD = "86400000"; // one day
@@ -212,6 +273,10 @@ public class MirandaProperties {
 
     public static final String DEFAULT_EVENT_OBJECT_LIMIT = "1000000";
     public static final String DEFAULT_EVENT_EVICTION_PERIOD = ONE_HOUR;
+    public static final String DEFAULT_EVENT_SEGMENT_SIZE = "67108864"; // 64MB
+    public static final String DEFAULT_EVENT_INDEX_INTERVAL = "4096"; // bytes
+    public static final String DEFAULT_EVENT_RETENTION = ONE_WEEK;
+    public static final String DEFAULT_EVENT_CACHE_BYTES = "67108864"; // 64MB
 
     public static final String DEFAULT_DELIVERY_OBJECT_LIMIT = "1000000";
 
@@ -228,6 +293,29 @@ public class MirandaProperties {
             {PROPERTY_PROPERTIES_FILE, DEFAULT_PROPERTIES_FILENAME},
             {PROPERTY_NETWORK, DEFAULT_NETWORK},
             {PROPERTY_MAX_WRITE_FAILURES, DEFAULT_MAX_WRITE_FAILURES},
+            {PROPERTY_DISPATCHER_MODE, DEFAULT_DISPATCHER_MODE},
+            {PROPERTY_DISPATCHER_POOL_SIZE, DEFAULT_DISPATCHER_POOL_SIZE},
+            {PROPERTY_DISPATCHER_BATCH_SIZE, DEFAULT_DISPATCHER_BATCH_SIZE},
+            {PROPERTY_CONSUMER_BATCH_SIZE, DEFAULT_CONSUMER_BATCH_SIZE},
+            {PROPERTY_MAILBOX_CAPACITY, DEFAULT_MAILBOX_CAPACITY},
+            {PROPERTY_MAILBOX_OVERFLOW_POLICY, DEFAULT_MAILBOX_OVERFLOW_POLICY},
+            {PROPERTY_MESSAGE_PROVENANCE, DEFAULT_MESSAGE_PROVENANCE},
+            {PROPERTY_MESSAGE_PROVENANCE_SAMPLE_RATE, DEFAULT_MESSAGE_PROVENANCE_SAMPLE_RATE},
+            {PROPERTY_ASYNC_TRACE, DEFAULT_ASYNC_TRACE},
+            {PROPERTY_STASH_CAPACITY, DEFAULT_STASH_CAPACITY},
+            {PROPERTY_ACTOR_METRICS, DEFAULT_ACTOR_METRICS},
+            {PROPERTY_FILE_JOURNAL, DEFAULT_FILE_JOURNAL},
+            {PROPERTY_FILE_JOURNAL_CHECKPOINT, DEFAULT_FILE_JOURNAL_CHECKPOINT},
+            {PROPERTY_FILE_JOURNAL_COMPACTION_THRESHOLD, DEFAULT_FILE_JOURNAL_COMPACTION_THRESHOLD},
+            {PROPERTY_FILE_JOURNAL_COMPACTION_BACKLOG, DEFAULT_FILE_JOURNAL_COMPACTION_BACKLOG},
+            {PROPERTY_WRITER_COALESCE_DELAY, DEFAULT_WRITER_COALESCE_DELAY},
+            {PROPERTY_WRITER_COALESCE_SIZE, DEFAULT_WRITER_COALESCE_SIZE},
+            {PROPERTY_WRITER_BACKUP_GENERATIONS, DEFAULT_WRITER_BACKUP_GENERATIONS},
+            {PROPERTY_WRITER_SYNC, DEFAULT_WRITER_SYNC},
+            {PROPERTY_DATA_KEY_MAX_AGE, DEFAULT_DATA_KEY_MAX_AGE},
+            {PROPERTY_DATA_KEY_MAX_USES, DEFAULT_DATA_KEY_MAX_USES},
+            {PROPERTY_DATA_KEY_CACHE_SIZE, DEFAULT_DATA_KEY_CACHE_SIZE},
+            {PROPERTY_READER_POOL_SIZE, DEFAULT_READER_POOL_SIZE},
 
             {PROPERTY_ENCRYPTION_MODE, DEFAULT_ENCRYPTION_MODE},
             {PROPERTY_TRUST_STORE_FILENAME, DEFAULT_TRUST_STORE},
@@ -264,6 +352,10 @@ public class MirandaProperties {
 
             {PROPERTY_EVENT_OBJECT_LIMIT, DEFAULT_EVENT_OBJECT_LIMIT},
             {PROPERTY_EVENT_EVICTION_PERIOD, DEFAULT_EVENT_EVICTION_PERIOD},
+            {PROPERTY_EVENT_SEGMENT_SIZE, DEFAULT_EVENT_SEGMENT_SIZE},
+            {PROPERTY_EVENT_INDEX_INTERVAL, DEFAULT_EVENT_INDEX_INTERVAL},
+            {PROPERTY_EVENT_RETENTION, DEFAULT_EVENT_RETENTION},
+            {PROPERTY_EVENT_CACHE_BYTES, DEFAULT_EVENT_CACHE_BYTES},
 
             {PROPERTY_DELIVERY_OBJECT_LIMIT, DEFAULT_DELIVERY_OBJECT_LIMIT}
     };
@@ -381,6 +473,16 @@ public class MirandaProperties {
         return getIntegerProperty(name);
     }
 
+    public boolean getBooleanProperty (String name) {
+        String temp = getProperty(name);
+
+        if (null == temp)
+            return false;
+        else {
+            return Boolean.parseBoolean(temp.trim());
+        }
+    }
+
     public EncryptionModes getEncryptionModeProperty (String name) {
         String value = getProperty(name);
 
@@ -399,6 +501,36 @@ public class MirandaProperties {
         return mode;
     }
 
+    public DispatcherModes getDispatcherModeProperty (String name) {
+        String value = getProperty(name);
+        DispatcherModes mode = DispatcherModes.Thread;
+
+        if (null != value) {
+            value = value.trim();
+
+            if (value.equalsIgnoreCase("pool") || value.equalsIgnoreCase("dispatcher"))
+                mode = DispatcherModes.Pool;
+        }
+
+        return mode;
+    }
+
+    public ProvenanceModes getProvenanceModeProperty (String name) {
+        String value = getProperty(name);
+        ProvenanceModes mode = ProvenanceModes.Sampled;
+
+        if (null != value) {
+            value = value.trim();
+
+            if (value.equalsIgnoreCase("off") || value.equalsIgnoreCase("none"))
+                mode = ProvenanceModes.Off;
+            else if (value.equalsIgnoreCase("always") || value.equalsIgnoreCase("all"))
+                mode = ProvenanceModes.Always;
+        }
+
+        return mode;
+    }
+
     public Networks getNetworkProperty (String name) {
         String value = getProperty(name);
         Networks network = Networks.Unknown;
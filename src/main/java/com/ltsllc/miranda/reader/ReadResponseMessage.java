@@ -18,6 +18,7 @@ package com.ltsllc.miranda.reader;
 
 import com.ltsllc.miranda.Message;
 
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 
 /**
@@ -36,6 +37,7 @@ public class ReadResponseMessage extends Message {
     private String filename;
     private Results result;
     private byte[] data;
+    private List<byte[]> journal;
 
     public String getFilename() {
         return filename;
@@ -49,6 +51,14 @@ public class ReadResponseMessage extends Message {
         return data;
     }
 
+    /**
+     * The decrypted records from the journal of the file, in the order they
+     * were written.  Never null for a successful read.
+     */
+    public List<byte[]> getJournal() {
+        return journal;
+    }
+
     public ReadResponseMessage (BlockingQueue<Message> senderQueue, Object sender) {
         super(Subjects.ReadResponse, senderQueue, sender);
     }
@@ -61,6 +71,10 @@ public class ReadResponseMessage extends Message {
         this.data = data;
     }
 
+    public void setJournal (List<byte[]> journal) {
+        this.journal = journal;
+    }
+
     public void setFilename (String filename) {
         this.filename = filename;
     }
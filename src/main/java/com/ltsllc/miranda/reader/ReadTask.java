@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.reader;
+
+/**
+ * Read a file and reply to the {@link ReadMessage} that asked for it.
+ *
+ * <P>
+ *     This runs on the {@link Reader}'s own thread, or on a worker of its
+ *     {@link ReaderPool} if it has one.
+ * </P>
+ */
+public class ReadTask implements Runnable {
+    private Reader reader;
+    private ReadMessage readMessage;
+    private Object senderObject;
+
+    public ReadTask (Reader reader, ReadMessage readMessage, Object senderObject) {
+        this.reader = reader;
+        this.readMessage = readMessage;
+        this.senderObject = senderObject;
+    }
+
+    public Reader getReader() {
+        return reader;
+    }
+
+    public ReadMessage getReadMessage() {
+        return readMessage;
+    }
+
+    public void run () {
+        ReadResponseMessage response = new ReadResponseMessage(getReader().getQueue(), senderObject);
+        response.setFilename(getReadMessage().getFilename());
+
+        Reader.ReadResult readResult = getReader().read(getReadMessage().getFilename());
+        response.setData(readResult.data);
+        response.setJournal(readResult.journal);
+        response.setException(readResult.exception);
+        response.setFilename(readResult.filename);
+        response.setResult(readResult.result);
+        getReadMessage().reply(response);
+    }
+}
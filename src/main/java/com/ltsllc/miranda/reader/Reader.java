@@ -17,17 +17,24 @@
 package com.ltsllc.miranda.reader;
 
 import com.google.gson.Gson;
+import com.ltsllc.clcl.DataKeyCache;
+import com.ltsllc.clcl.DecryptingInputStream;
 import com.ltsllc.clcl.EncryptedMessage;
+import com.ltsllc.clcl.EncryptingOutputStream;
 import com.ltsllc.clcl.EncryptionException;
 import com.ltsllc.clcl.PrivateKey;
+import com.ltsllc.common.util.Utils;
 import com.ltsllc.miranda.*;
+import com.ltsllc.miranda.file.Journal;
+import com.ltsllc.miranda.file.JournalFile;
 import com.ltsllc.miranda.miranda.Miranda;
 import org.apache.log4j.Logger;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
+import java.io.*;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 
 
@@ -39,6 +46,7 @@ public class Reader extends Consumer {
         public ReadResponseMessage.Results result;
         public String filename;
         public byte[] data;
+        public List<byte[]> journal;
         public Throwable exception;
 
         public void setAdditionalInfo (Throwable t) {
@@ -52,6 +60,8 @@ public class Reader extends Consumer {
     private static Gson gson = new Gson();
 
     private PrivateKey privateKey;
+    private DataKeyCache dataKeyCache;
+    private ReaderPool pool;
 
     public PrivateKey getPrivateKey() {
         return privateKey;
@@ -59,48 +69,220 @@ public class Reader extends Consumer {
 
     public void setPrivateKey(PrivateKey privateKey) {
         this.privateKey = privateKey;
+        this.dataKeyCache = new DataKeyCache(privateKey);
+    }
+
+    /**
+     * The data keys we have unwrapped, so that files written with the same
+     * data key only cost one private key operation.
+     */
+    public DataKeyCache getDataKeyCache() {
+        return dataKeyCache;
+    }
+
+    /**
+     * The workers that read files, or null if the reader reads them itself.
+     */
+    public ReaderPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Set the number of workers that read files.
+     *
+     * <P>
+     *     A size of 1 means the reader reads files on its own thread, which is
+     *     the default.  A size less than 1 means one worker per processor.
+     *     This should be called before the reader starts.
+     * </P>
+     */
+    public void setPoolSize (int poolSize) {
+        if (poolSize < 1)
+            poolSize = Runtime.getRuntime().availableProcessors();
+
+        if (null != pool)
+            pool.shutdown();
+
+        pool = (poolSize > 1) ? new ReaderPool(poolSize) : null;
+    }
+
+    public void stop () {
+        if (null != pool)
+            pool.shutdown();
+
+        super.stop();
     }
 
     public Reader (PrivateKey privateKey) {
         super (NAME);
 
-        this.privateKey = privateKey;
+        setPrivateKey(privateKey);
 
         ReaderReadyState readerReadyState = new ReaderReadyState(this);
         setCurrentState(readerReadyState);
     }
 
+    /**
+     * Read and decrypt a file, along with its journal.
+     *
+     * <P>
+     *     Files in the binary format of {@link EncryptingOutputStream} are
+     *     decrypted a chunk at a time.  Files written before that format
+     *     existed, which hold a JSON {@link EncryptedMessage}, can still be read.
+     * </P>
+     */
     public ReadResult read (String filename) {
         ReadResult result = new ReadResult();
-        FileReader fileReader = null;
         result.result = ReadResponseMessage.Results.Unknown;
         result.filename = filename;
 
         File file = new File (filename);
-        if (!file.exists()) {
+        File journal = new File (Journal.getJournalFilename(filename));
+        if (!file.exists() && journal.exists()) {
+            // a file that has not been checkpointed yet only has a journal
+            result.result = ReadResponseMessage.Results.Success;
+        } else if (!file.exists()) {
             result.result = ReadResponseMessage.Results.FileDoesNotExist;
         } else {
-            EncryptedMessage encryptedMessage = null;
             try {
-                fileReader = new FileReader(filename);
-                encryptedMessage = readEncryptedMessage(fileReader);
+                result.data = readFile(file);
+                result.result = ReadResponseMessage.Results.Success;
+            } catch (EncryptionException e) {
+                result.result = ReadResponseMessage.Results.ExceptionDecryptingFile;
+                result.exception = e;
             } catch (Exception e) {
                 result.result = ReadResponseMessage.Results.ExceptionReadingFile;
                 result.exception = e;
             }
+        }
+
+        if (result.result == ReadResponseMessage.Results.Success)
+            result.journal = readJournal(filename);
+
+        return result;
+    }
+
+    /**
+     * Read the records in the {@link Journal} for a file.
+     *
+     * <P>
+     *     A record that cannot be read or decrypted ends the journal.  This is
+     *     usually the last record, cut short because the system stopped in the
+     *     middle of writing it.
+     * </P>
+     *
+     * <P>
+     *     Journals are normally in the format of {@link JournalFile}.  In
+     *     journals written before that, a record is a line holding either a
+     *     JSON {@link EncryptedMessage} or the base 64 of an
+     *     {@link EncryptingOutputStream}.
+     * </P>
+     */
+    public List<byte[]> readJournal (String filename) {
+        List<byte[]> records = new ArrayList<byte[]>();
+        File file = new File(Journal.getJournalFilename(filename));
+
+        if (!file.exists())
+            return records;
+
+        try {
+            if (JournalFile.isBinary(file))
+                return JournalFile.read(file, getDataKeyCache());
+        } catch (IOException e) {
+            logger.warn("Could not read the journal for " + filename, e);
+            return records;
+        }
+
+        BufferedReader bufferedReader = null;
 
-            if (null != encryptedMessage) {
-                try {
-                    result.data = decryptMessage(encryptedMessage);
-                    result.result = ReadResponseMessage.Results.Success;
-                } catch (EncryptionException e) {
-                    result.result = ReadResponseMessage.Results.ExceptionDecryptingFile;
-                    result.exception = e;
+        try {
+            bufferedReader = new BufferedReader(new FileReader(file));
+            String line = bufferedReader.readLine();
+            while (null != line) {
+                line = line.trim();
+
+                if (line.startsWith("{")) {
+                    EncryptedMessage encryptedMessage = gson.fromJson(line, EncryptedMessage.class);
+                    records.add(decryptMessage(encryptedMessage));
+                } else if (!line.isEmpty()) {
+                    byte[] record = Base64.getDecoder().decode(line);
+                    records.add(readEncryptedStream(new ByteArrayInputStream(record), record.length, getDataKeyCache()));
                 }
+
+                line = bufferedReader.readLine();
             }
+        } catch (Exception e) {
+            logger.warn("Stopped reading the journal for " + filename + " after " + records.size() + " records", e);
+        } finally {
+            Utils.closeIgnoreExceptions(bufferedReader);
         }
 
-        return result;
+        return records;
+    }
+
+    public static final int BUFFER_SIZE = 8192;
+
+    public byte[] readFile (File file) throws IOException, EncryptionException {
+        return readFile(file, getDataKeyCache());
+    }
+
+    public static byte[] readFile (File file, PrivateKey privateKey) throws IOException, EncryptionException {
+        return readFile(file, new DataKeyCache(privateKey));
+    }
+
+    /**
+     * Read and decrypt a file in either format.
+     */
+    public static byte[] readFile (File file, DataKeyCache dataKeyCache) throws IOException, EncryptionException {
+        BufferedInputStream bufferedInputStream = null;
+
+        try {
+            bufferedInputStream = new BufferedInputStream(new FileInputStream(file));
+
+            byte[] prefix = new byte[EncryptingOutputStream.MAGIC.length];
+            bufferedInputStream.mark(prefix.length);
+            int length = 0;
+            int bytesRead = 0;
+            while (length < prefix.length && bytesRead != -1) {
+                bytesRead = bufferedInputStream.read(prefix, length, prefix.length - length);
+                if (bytesRead > 0)
+                    length += bytesRead;
+            }
+            bufferedInputStream.reset();
+
+            if (DecryptingInputStream.isEncryptedStream(prefix, length))
+                return readEncryptedStream(bufferedInputStream, (int) file.length(), dataKeyCache);
+
+            EncryptedMessage encryptedMessage = gson.fromJson(new InputStreamReader(bufferedInputStream),
+                    EncryptedMessage.class);
+            if (null == encryptedMessage)
+                throw new IOException(file + " is empty");
+
+            return dataKeyCache.getKey().decrypt(encryptedMessage);
+        } finally {
+            Utils.closeIgnoreExceptions(bufferedInputStream);
+        }
+    }
+
+    /**
+     * Decrypt a stream in the format of {@link EncryptingOutputStream}.
+     *
+     * @param sizeHint The size of the file, which is a little more than the size of the plaintext.
+     */
+    public static byte[] readEncryptedStream (InputStream inputStream, int sizeHint, DataKeyCache dataKeyCache)
+            throws IOException, EncryptionException
+    {
+        DecryptingInputStream decryptingInputStream = new DecryptingInputStream(inputStream, dataKeyCache);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(Math.max(sizeHint, BUFFER_SIZE));
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        int bytesRead = decryptingInputStream.read(buffer);
+        while (bytesRead != -1) {
+            byteArrayOutputStream.write(buffer, 0, bytesRead);
+            bytesRead = decryptingInputStream.read(buffer);
+        }
+
+        return byteArrayOutputStream.toByteArray();
     }
 
     public EncryptedMessage readEncryptedMessage (java.io.Reader reader) {
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.reader;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Worker threads that read and decrypt files for a {@link Reader}.
+ *
+ * <P>
+ *     Each worker has its own queue, and a file always goes to the same
+ *     worker, so two reads of the same file finish in the order they were
+ *     asked for.  Reads of different files run in parallel, and each reply
+ *     goes straight back to whoever asked as soon as it is ready.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>workers - a single threaded executor for each worker.</LI>
+ * </UL>
+ */
+public class ReaderPool {
+    private static Logger logger = Logger.getLogger(ReaderPool.class);
+
+    private ExecutorService[] workers;
+
+    public ReaderPool (int size) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+
+        ThreadFactory threadFactory = new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, Reader.NAME + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+
+        workers = new ExecutorService[size];
+        for (int i = 0; i < size; i++) {
+            workers[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+
+        logger.info("reader pool started with " + size + " workers");
+    }
+
+    public int getSize () {
+        return workers.length;
+    }
+
+    public int getWorkerIndex (String filename) {
+        int hash = (null == filename) ? 0 : filename.hashCode();
+        return (hash & Integer.MAX_VALUE) % workers.length;
+    }
+
+    public void execute (String filename, Runnable task) {
+        workers[getWorkerIndex(filename)].execute(task);
+    }
+
+    public void shutdown () {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+    }
+}
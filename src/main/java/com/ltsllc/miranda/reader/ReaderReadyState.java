@@ -50,16 +50,17 @@ public class ReaderReadyState extends State {
         return nextState;
     }
 
+    /**
+     * Read the file ourselves, or hand it to the {@link ReaderPool} if the
+     * reader has one.
+     */
     public State processReadMessage (ReadMessage readMessage) {
-        ReadResponseMessage response = new ReadResponseMessage(getReader().getQueue(), this);
-        response.setFilename(readMessage.getFilename());
+        ReadTask readTask = new ReadTask(getReader(), readMessage, this);
 
-        Reader.ReadResult readResult = getReader().read(readMessage.getFilename());
-        response.setData(readResult.data);
-        response.setException(readResult.exception);
-        response.setFilename(readResult.filename);
-        response.setResult(readResult.result);
-        readMessage.reply(response);
+        if (null == getReader().getPool())
+            readTask.run();
+        else
+            getReader().getPool().execute(readMessage.getFilename(), readTask);
 
         return getReader().getCurrentState();
     }
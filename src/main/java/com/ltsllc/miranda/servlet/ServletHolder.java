@@ -21,8 +21,11 @@ import com.ltsllc.miranda.Consumer;
 import com.ltsllc.miranda.State;
 import com.ltsllc.miranda.miranda.Miranda;
 import com.ltsllc.miranda.session.Session;
+import com.ltsllc.miranda.session.messages.CheckSessionMessage;
+import com.ltsllc.miranda.session.messages.CheckSessionResponseMessage;
 import org.apache.log4j.Logger;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -119,6 +122,22 @@ public class ServletHolder extends Consumer {
         return getSession();
     }
 
+    /**
+     * Check a session without waiting for the answer.
+     *
+     * <P>
+     *     Unlike {@link #getSession(long)}, this does not tie up the calling thread.
+     *     The future fails with a {@link TimeoutException} if the session manager
+     *     does not answer within {@link #getTimeoutPeriod()}.
+     * </P>
+     */
+    public CompletableFuture<Session> askSession (long sessionId) {
+        CheckSessionMessage checkSessionMessage = new CheckSessionMessage(null, this, sessionId);
+
+        return ask(Miranda.getInstance().getSessionManager(), checkSessionMessage, getTimeoutPeriod())
+                .thenApply(message -> ((CheckSessionResponseMessage) message).getSession());
+    }
+
     public void setSessionAndAwaken (Session session) {
         setSession(session);
         wake();
@@ -17,9 +17,17 @@
 package com.ltsllc.miranda.servlet.miranda;
 
 import com.ltsllc.miranda.Consumer;
+import com.ltsllc.miranda.ConsumerGauge;
+import com.ltsllc.miranda.ConsumerMetrics;
 import com.ltsllc.miranda.clientinterface.objects.StatusObject;
+import com.ltsllc.miranda.event.EventCache;
+import com.ltsllc.miranda.event.EventCacheGauge;
+import com.ltsllc.miranda.file.CompactionGauge;
+import com.ltsllc.miranda.file.SingleFile;
 import com.ltsllc.miranda.miranda.Miranda;
 
+import java.util.List;
+
 /**
  * Created by Clark on 3/9/2017.
  */
@@ -61,6 +69,36 @@ public class MirandaStatus extends Consumer {
         }
     }
 
+    /**
+     * The runtime metrics of every subsystem; see {@link ConsumerMetrics}.
+     *
+     * <P>
+     *     Unlike {@link #getStatus()} this does not need to ask Miranda for anything.
+     * </P>
+     */
+    public List<ConsumerGauge> getActorStatus () {
+        return ConsumerMetrics.getGauges();
+    }
+
+    /**
+     * How compacting the journals of the files has gone; see {@link SingleFile#compact()}.
+     */
+    public List<CompactionGauge> getCompactionStatus () {
+        return SingleFile.getCompactionGauges();
+    }
+
+    /**
+     * How the cache in front of the event log is doing, or null if there is
+     * no event manager; see {@link EventCache}.
+     */
+    public EventCacheGauge getEventCacheStatus () {
+        Miranda miranda = Miranda.getInstance();
+        if (null == miranda || null == miranda.getEventManager())
+            return null;
+
+        return miranda.getEventManager().getEventCache().getGauge();
+    }
+
     public StatusObject getStatus () {
         StatusObject statusObject = null;
 
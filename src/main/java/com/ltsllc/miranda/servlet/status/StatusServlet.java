@@ -27,16 +27,53 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
 /**
+ * Report the status of the node.
+ *
+ * <P>
+ *     If the request has an "actors" parameter, or the path ends in "/actors",
+ *     the response is the runtime metrics of each subsystem instead (see
+ *     {@link MirandaStatus#getActorStatus()}).  Likewise "compaction" gets
+ *     the journal compaction statistics of each file (see
+ *     {@link MirandaStatus#getCompactionStatus()}), and "events" gets the
+ *     hits, misses and evictions of the event cache (see
+ *     {@link MirandaStatus#getEventCacheStatus()}).
+ * </P>
+ *
  * Created by Clark on 3/4/2017.
  */
 public class StatusServlet extends MirandaServlet {
+    public static final String ACTORS = "actors";
+    public static final String COMPACTION = "compaction";
+    public static final String EVENTS = "events";
+
+    public static boolean wants (HttpServletRequest request, String report) {
+        if (null != request.getParameter(report))
+            return true;
+
+        String uri = request.getRequestURI();
+        return null != uri && uri.endsWith("/" + report);
+    }
+
+    public static boolean wantsActors (HttpServletRequest request) {
+        return wants(request, ACTORS);
+    }
 
     public void doGet(HttpServletRequest request,
                       HttpServletResponse response) throws IOException {
         MirandaStatus mirandaStatus = MirandaStatus.getInstance();
-        StatusObject statusObject = mirandaStatus.getStatus();
+        String json;
+
+        if (wantsActors(request)) {
+            json = getGson().toJson(mirandaStatus.getActorStatus());
+        } else if (wants(request, COMPACTION)) {
+            json = getGson().toJson(mirandaStatus.getCompactionStatus());
+        } else if (wants(request, EVENTS)) {
+            json = getGson().toJson(mirandaStatus.getEventCacheStatus());
+        } else {
+            StatusObject statusObject = mirandaStatus.getStatus();
+            json = getGson().toJson(statusObject);
+        }
 
-        String json = getGson().toJson(statusObject);
         response.getOutputStream().print(json);
     }
 }
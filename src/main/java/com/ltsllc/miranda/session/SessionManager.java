@@ -40,6 +40,8 @@ import java.util.concurrent.BlockingQueue;
  * This class is in charge of all the sessions for the System.
  */
 public class SessionManager extends Consumer {
+    public static final String NAME = "session manager";
+
     private static Logger logger = Logger.getLogger(SessionManager.class);
 
     private ImprovedRandom random;
@@ -68,7 +70,7 @@ public class SessionManager extends Consumer {
     }
 
     public SessionManager() throws MirandaException {
-        super("session manager");
+        super(NAME);
 
         sessions = new HashMap<Long, Session>();
         userToSession = new HashMap<String, Session>();
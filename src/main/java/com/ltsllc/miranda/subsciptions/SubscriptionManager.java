@@ -20,6 +20,7 @@ import com.ltsllc.miranda.Message;
 import com.ltsllc.miranda.State;
 import com.ltsllc.miranda.clientinterface.basicclasses.Subscription;
 import com.ltsllc.miranda.clientinterface.results.Results;
+import com.ltsllc.miranda.deliveries.DeliveryManager;
 import com.ltsllc.miranda.file.SingleFile;
 import com.ltsllc.miranda.manager.StandardManager;
 import com.ltsllc.miranda.miranda.Miranda;
@@ -113,16 +114,26 @@ public class SubscriptionManager extends StandardManager<Subscription> {
         getSubscriptions().add(subscription);
         getSubscriptionsFile().sendAddObjectsMessage(getQueue(), this, subscription);
 
+        if (null != getDeliveryManager())
+            getDeliveryManager().sendSubscriptionAdded(getQueue(), this, subscription);
+
         return Results.Success;
     }
 
-    public Subscription findSubscription(String name) {
-        for (Subscription subscription : getSubscriptions()) {
-            if (name.equals(subscription.getName()))
-                return subscription;
-        }
+    /**
+     * The manager that delivers events to the subscriptions, if there is one yet.
+     */
+    public DeliveryManager getDeliveryManager () {
+        Miranda miranda = Miranda.getInstance();
+        return (null == miranda) ? null : miranda.getDeliveryManager();
+    }
 
-        return null;
+    public Object getIndexKey (Subscription subscription) {
+        return subscription.getName();
+    }
+
+    public Subscription findSubscription(String name) {
+        return lookup(name);
     }
 
     public Results updateSubscription (Subscription subscription) {
@@ -134,6 +145,9 @@ public class SubscriptionManager extends StandardManager<Subscription> {
         } else {
             existing.updateFrom(subscription);
             result = Results.Success;
+
+            if (null != getDeliveryManager())
+                getDeliveryManager().sendSubscriptionAdded(getQueue(), this, existing);
         }
 
         return result;
@@ -149,6 +163,9 @@ public class SubscriptionManager extends StandardManager<Subscription> {
         } else {
             getSubscriptions().remove(subscription);
             result = Results.Success;
+
+            if (null != getDeliveryManager())
+                getDeliveryManager().sendSubscriptionDeleted(getQueue(), this, name);
         }
 
         return result;
@@ -17,6 +17,7 @@
 package com.ltsllc.miranda.subsciptions;
 
 import com.google.gson.reflect.TypeToken;
+import com.ltsllc.miranda.Registry;
 import com.ltsllc.miranda.clientinterface.basicclasses.Subscription;
 import com.ltsllc.miranda.file.SingleFile;
 import com.ltsllc.miranda.reader.Reader;
@@ -33,7 +34,7 @@ import java.util.List;
 public class SubscriptionsFile extends SingleFile<Subscription> {
     public static final String FILE_NAME = "subscriptions";
 
-    private static SubscriptionsFile ourInstance;
+    private static volatile SubscriptionsFile ourInstance;
 
     public static SubscriptionsFile getInstance () {
         return ourInstance;
@@ -41,7 +42,7 @@ public class SubscriptionsFile extends SingleFile<Subscription> {
 
     public static synchronized void initialize (String filename, Reader reader, Writer writer) throws IOException {
         if (null == ourInstance) {
-            ourInstance = new SubscriptionsFile(reader, writer, filename);
+            setInstance(new SubscriptionsFile(reader, writer, filename));
             ourInstance.start();
             ourInstance.load();
         }
@@ -49,6 +50,7 @@ public class SubscriptionsFile extends SingleFile<Subscription> {
 
     public static void setInstance (SubscriptionsFile subscriptionsFile) {
         ourInstance = subscriptionsFile;
+        Registry.getInstance().register(FILE_NAME, subscriptionsFile);
     }
 
     public SubscriptionsFile (Reader reader, Writer writer, String filename) throws IOException {
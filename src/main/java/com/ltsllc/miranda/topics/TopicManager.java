@@ -72,13 +72,12 @@ public class TopicManager extends StandardManager <Topic> {
         logger.info ("performGarbageCollection called");
     }
 
-    public Topic getTopic (String name) {
-        for (Topic topic : getTopics()) {
-            if (topic.getName().equals(name))
-                return topic;
-        }
+    public Object getIndexKey (Topic topic) {
+        return topic.getName();
+    }
 
-        return null;
+    public Topic getTopic (String name) {
+        return lookup(name);
     }
 
     public boolean contains (String name) {
@@ -17,6 +17,7 @@
 package com.ltsllc.miranda.topics;
 
 import com.google.gson.reflect.TypeToken;
+import com.ltsllc.miranda.Registry;
 import com.ltsllc.miranda.clientinterface.basicclasses.Topic;
 import com.ltsllc.miranda.clientinterface.basicclasses.User;
 import com.ltsllc.miranda.file.SingleFile;
@@ -38,7 +39,7 @@ public class TopicsFile extends SingleFile<Topic> {
 
     private static Logger logger = Logger.getLogger(TopicsFile.class);
 
-    private static TopicsFile ourInstance;
+    private static volatile TopicsFile ourInstance;
 
     public static TopicsFile getInstance() {
         return ourInstance;
@@ -46,7 +47,7 @@ public class TopicsFile extends SingleFile<Topic> {
 
     public static synchronized void initialize (String filename, Reader reader, Writer writer) throws IOException {
         if (null == ourInstance) {
-            ourInstance = new TopicsFile(filename, reader, writer);
+            setInstance(new TopicsFile(filename, reader, writer));
             ourInstance.start();
             ourInstance.load();
         }
@@ -54,6 +55,7 @@ public class TopicsFile extends SingleFile<Topic> {
 
     public static void setInstance (TopicsFile topicsFile) {
         ourInstance = topicsFile;
+        Registry.getInstance().register(FILE_NAME, topicsFile);
     }
 
     public TopicsFile(String filename, Reader reader, Writer writer) throws IOException {
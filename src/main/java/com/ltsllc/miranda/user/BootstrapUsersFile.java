@@ -2,16 +2,16 @@ package com.ltsllc.miranda.user;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
-import com.ltsllc.clcl.EncryptedMessage;
+import com.ltsllc.clcl.EncryptingOutputStream;
 import com.ltsllc.clcl.EncryptionException;
 import com.ltsllc.clcl.PrivateKey;
 import com.ltsllc.clcl.PublicKey;
 import com.ltsllc.common.util.Utils;
 import com.ltsllc.miranda.clientinterface.basicclasses.User;
+import com.ltsllc.miranda.reader.Reader;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.security.GeneralSecurityException;
@@ -86,33 +86,24 @@ public class BootstrapUsersFile {
         if (!file.exists())
             return;
 
-        FileReader fileReader = null;
-
-        try {
-            Gson gson = new Gson();
-            fileReader = new FileReader(getFilename());
-            EncryptedMessage encryptedMessage = gson.fromJson(fileReader, EncryptedMessage.class);
-            byte[] plainText = getPrivateKey().decryptFromMessage(encryptedMessage);
-            String json = new String(plainText);
-            Type t = new TypeToken<List<User>>() {
-            }.getType();
-            setUserList(gson.fromJson(json, t));
-        } finally {
-            Utils.closeIgnoreExceptions(fileReader);
-        }
+        Gson gson = new Gson();
+        byte[] plainText = Reader.readFile(file, getPrivateKey());
+        String json = new String(plainText);
+        Type t = new TypeToken<List<User>>() {
+        }.getType();
+        setUserList(gson.fromJson(json, t));
     }
 
     public void write () throws IOException, EncryptionException {
-        FileWriter fileWriter = null;
+        EncryptingOutputStream encryptingOutputStream = null;
 
         try {
             String json = gson.toJson(userList);
-            fileWriter = new FileWriter(getFilename());
-            EncryptedMessage encryptedMessage = getPublicKey().encryptToMessage(json.getBytes());
-            json = gson.toJson(encryptedMessage);
-            fileWriter.write(json);
+            encryptingOutputStream = new EncryptingOutputStream(new FileOutputStream(getFilename()), getPublicKey());
+            encryptingOutputStream.write(json.getBytes());
+            encryptingOutputStream.close();
         } finally {
-            Utils.closeIgnoreExceptions(fileWriter);
+            Utils.closeIgnoreExceptions(encryptingOutputStream);
         }
     }
 
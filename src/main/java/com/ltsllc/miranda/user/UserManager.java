@@ -96,13 +96,12 @@ public class UserManager extends StandardManager<User> {
         sendToMe(getUserMessage);
     }
 
-    public User getUser (String name) {
-        for (User user : getUsers()) {
-            if (user.getName().equals(name))
-                return user;
-        }
+    public Object getIndexKey (User user) {
+        return user.getName();
+    }
 
-        return null;
+    public User getUser (String name) {
+        return lookup(name);
     }
 
     public void deleteUser (String name) {
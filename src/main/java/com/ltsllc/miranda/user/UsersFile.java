@@ -22,6 +22,7 @@ import com.google.gson.reflect.TypeToken;
 import com.ltsllc.clcl.EncryptionException;
 import com.ltsllc.miranda.Message;
 import com.ltsllc.miranda.Panic;
+import com.ltsllc.miranda.Registry;
 import com.ltsllc.miranda.clientinterface.MirandaException;
 import com.ltsllc.miranda.clientinterface.basicclasses.User;
 import com.ltsllc.miranda.clientinterface.objects.UserObject;
@@ -48,7 +49,7 @@ public class UsersFile extends SingleFile<User> {
 
     private static Gson gson = new Gson();
 
-    private static UsersFile ourInstance;
+    private static volatile UsersFile ourInstance;
 
     public static UsersFile getInstance() {
         return ourInstance;
@@ -56,6 +57,7 @@ public class UsersFile extends SingleFile<User> {
 
     public static void setInstance(UsersFile usersFile) {
         ourInstance = usersFile;
+        Registry.getInstance().register(FILE_NAME, usersFile);
     }
 
     public UsersFile(com.ltsllc.miranda.reader.Reader reader, Writer writer, String filename) throws IOException {
@@ -88,7 +90,7 @@ public class UsersFile extends SingleFile<User> {
 
     public static synchronized void initialize(String filename, Reader reader, Writer writer) throws IOException {
         if (null == ourInstance) {
-            ourInstance = new UsersFile(reader, writer, filename);
+            setInstance(new UsersFile(reader, writer, filename));
             ourInstance.start();
             ourInstance.load();
         }
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ltsllc.miranda.writer;
+
+import com.ltsllc.miranda.Message;
+import com.ltsllc.miranda.file.Journal;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A request to append a record to the {@link Journal} of a file.
+ *
+ * <P>
+ *     The reply is a {@link WriteSucceededMessage} or a {@link WriteFailedMessage},
+ *     the same as for a {@link WriteMessage}.
+ * </P>
+ */
+public class AppendMessage extends Message {
+    private String filename;
+    private byte[] buffer;
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public AppendMessage (String filename, byte[] buffer, BlockingQueue<Message> sender, Object senderObject) {
+        super(Subjects.Append, sender, senderObject);
+
+        this.filename = filename;
+        this.buffer = buffer;
+    }
+}
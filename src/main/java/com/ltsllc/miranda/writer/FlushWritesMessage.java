@@ -14,25 +14,23 @@
  * limitations under the License.
  */
 
-package com.ltsllc.miranda.deliveries;
+
+package com.ltsllc.miranda.writer;
 
 import com.ltsllc.miranda.Message;
 
 import java.util.concurrent.BlockingQueue;
 
 /**
- * Created by Clark on 3/23/2017.
+ * Tell the {@link Writer} to write out the writes it has been holding on to.
+ *
+ * <P>
+ *     The writer sends this to itself, through the timer, when it has a
+ *     coalesce delay; see {@link Writer#getCoalesceDelay()}.
+ * </P>
  */
-public class GetSystemDeliveriesMessage extends Message {
-    private String filename;
-
-    public String getFilename() {
-        return filename;
-    }
-
-    public GetSystemDeliveriesMessage (BlockingQueue<Message> senderQueue, Object sender, String filename) {
-        super(Subjects.GetDeliveries, senderQueue, sender);
-
-        this.filename = filename;
+public class FlushWritesMessage extends Message {
+    public FlushWritesMessage (BlockingQueue<Message> senderQueue, Object sender) {
+        super(Subjects.FlushWrites, senderQueue, sender);
     }
 }
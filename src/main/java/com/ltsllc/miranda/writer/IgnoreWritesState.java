@@ -46,6 +46,17 @@ public class IgnoreWritesState extends State {
                 break;
             }
 
+            case Append: {
+                AppendMessage appendMessage = (AppendMessage) m;
+                nextState = processAppendMessage(appendMessage);
+                break;
+            }
+
+            case FlushWrites: {
+                nextState = ignore(m);
+                break;
+            }
+
             default: {
                 nextState = super.processMessage(m);
                 break;
@@ -60,4 +71,8 @@ public class IgnoreWritesState extends State {
         return this;
     }
 
+    private State processAppendMessage (AppendMessage appendMessage) {
+        logger.warn ("Ignoring append to " + appendMessage.getFilename());
+        return this;
+    }
 }
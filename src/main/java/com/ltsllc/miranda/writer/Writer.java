@@ -17,97 +17,334 @@
 package com.ltsllc.miranda.writer;
 
 import com.google.gson.Gson;
+import com.ltsllc.clcl.DataKeyCache;
 import com.ltsllc.clcl.EncryptedMessage;
+import com.ltsllc.clcl.EncryptingOutputStream;
 import com.ltsllc.clcl.EncryptionException;
 import com.ltsllc.clcl.PublicKey;
 import com.ltsllc.common.util.Utils;
 import com.ltsllc.miranda.Consumer;
+import com.ltsllc.miranda.Mailbox;
 import com.ltsllc.miranda.Message;
+import com.ltsllc.miranda.file.Journal;
+import com.ltsllc.miranda.file.JournalFile;
+import com.ltsllc.miranda.miranda.Miranda;
+import com.ltsllc.miranda.property.MirandaProperties;
+import org.apache.log4j.Logger;
 
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * Created by Clark on 12/31/2016.
+ *
+ * <P>
+ *     Writes to the same file are coalesced: when several arrive close
+ *     together only the last one goes to disk, and everyone who asked for a
+ *     write gets a reply once it is there.  See {@link WriterReadyState}.
+ * </P>
+ *
+ * <P>
+ *     A file is never written in place.  The new contents go to a temporary
+ *     file in the same directory, which is renamed over the old file once it
+ *     is complete, so a crash leaves either the old file or the new one.
+ *     The old file is kept as a backup by linking or renaming it rather than
+ *     copying it.
+ * </P>
+ *
+ * <P>
+ *     Files are written in the binary format of {@link EncryptingOutputStream}.
+ *     Journals are written in the format of {@link JournalFile} and are kept
+ *     open, up to {@link #MAX_OPEN_JOURNALS} of them, between records.  Both
+ *     use the current data key of the {@link DataKeyCache}, so the public key
+ *     is only used when the data key is rotated.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>coalesceDelay - how long, in milliseconds, to hold a write waiting for more.  0 means hold it only until the writer has processed the messages that have already arrived.</LI>
+ *     <LI>coalesceSize - the number of writes to hold before flushing regardless of the delay.</LI>
+ *     <LI>backupGenerations - the number of old versions of a file to keep.  The newest is filename.backup, the one before that filename.backup.1 and so on.</LI>
+ *     <LI>sync - if true, force the contents of a file to disk before renaming it into place, and force each journal record to disk.</LI>
+ *     <LI>journals - the journals that are open for appending.</LI>
+ * </UL>
  */
 public class Writer extends Consumer {
+    private static Logger logger = Logger.getLogger(Writer.class);
+
+    public static final String NAME = "writer";
+    public static final int MAX_OPEN_JOURNALS = 64;
+
     private static Gson gson = new Gson();
 
     private PublicKey publicKey;
+    private DataKeyCache dataKeyCache;
+    private long coalesceDelay = Long.parseLong(MirandaProperties.DEFAULT_WRITER_COALESCE_DELAY);
+    private int coalesceSize = Integer.parseInt(MirandaProperties.DEFAULT_WRITER_COALESCE_SIZE);
+    private int backupGenerations = Integer.parseInt(MirandaProperties.DEFAULT_WRITER_BACKUP_GENERATIONS);
+    private boolean sync = Boolean.parseBoolean(MirandaProperties.DEFAULT_WRITER_SYNC);
+    private Map<String, JournalFile.Output> journals = new LinkedHashMap<String, JournalFile.Output>(16, 0.75f, true) {
+        protected boolean removeEldestEntry (Map.Entry<String, JournalFile.Output> eldest) {
+            if (size() <= MAX_OPEN_JOURNALS)
+                return false;
+
+            Utils.closeIgnoreExceptions(eldest.getValue());
+            return true;
+        }
+    };
 
     public PublicKey getPublicKey() {
         return publicKey;
     }
 
+    public DataKeyCache getDataKeyCache() {
+        return dataKeyCache;
+    }
+
+    public long getCoalesceDelay() {
+        return coalesceDelay;
+    }
+
+    public void setCoalesceDelay(long coalesceDelay) {
+        this.coalesceDelay = Math.max(0, coalesceDelay);
+    }
+
+    public int getCoalesceSize() {
+        return coalesceSize;
+    }
+
+    public void setCoalesceSize(int coalesceSize) {
+        this.coalesceSize = Math.max(1, coalesceSize);
+    }
+
+    public int getBackupGenerations() {
+        return backupGenerations;
+    }
+
+    public void setBackupGenerations(int backupGenerations) {
+        this.backupGenerations = Math.max(0, backupGenerations);
+    }
+
+    /**
+     * The journals that are open for appending, by the name of the journal,
+     * least recently used first.
+     */
+    public Map<String, JournalFile.Output> getJournals() {
+        return journals;
+    }
+
+    public boolean getSync() {
+        return sync;
+    }
+
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+
 
     public Writer (PublicKey publicKey) {
-        super("writer");
-        BlockingQueue<Message> queue = new LinkedBlockingQueue<Message>();
+        super(NAME);
+        BlockingQueue<Message> queue = new Mailbox(getName());
         setQueue(queue);
 
         WriterReadyState writerReadyState = new WriterReadyState(this);
         setCurrentState(writerReadyState);
 
         this.publicKey = publicKey;
+        this.dataKeyCache = new DataKeyCache(publicKey);
     }
 
+    public static final String TEMP_SUFFIX = ".tmp";
+
     public void write (String filename, byte[] data) throws IOException, EncryptionException {
-        File file = new File(filename);
+        File file = new File(filename).getAbsoluteFile();
+        File temp = File.createTempFile(file.getName() + ".", TEMP_SUFFIX, file.getParentFile());
 
-        if (file.exists())
-            backup(file);
+        try {
+            writeFile(temp, data);
 
-        FileWriter fileWriter = null;
+            if (file.exists())
+                backup(file);
+
+            replace(temp, file);
+        } finally {
+            if (temp.exists() && !temp.delete())
+                logger.warn("Could not remove temporary file: " + temp);
+        }
+
+        removeJournal(filename);
+    }
+
+    /**
+     * Encrypt data into a new file, forcing it to disk if {@link #getSync()} is true.
+     */
+    public void writeFile (File file, byte[] data) throws IOException, EncryptionException {
+        FileOutputStream fileOutputStream = null;
 
         try {
-            EncryptedMessage encryptedMessage = encrypt(data);
-            fileWriter = new FileWriter(filename);
-            String json = gson.toJson(encryptedMessage);
-            fileWriter.write(json);
+            fileOutputStream = new FileOutputStream(file);
+            BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(fileOutputStream);
+            EncryptingOutputStream encryptingOutputStream = new EncryptingOutputStream(bufferedOutputStream, getDataKeyCache());
+            encryptingOutputStream.write(data);
+            encryptingOutputStream.finish();
+
+            if (getSync())
+                fileOutputStream.getChannel().force(true);
         } finally {
-            Utils.closeIgnoreExceptions(fileWriter);
+            Utils.closeIgnoreExceptions(fileOutputStream);
+        }
+    }
+
+    /**
+     * Rename one file over another, atomically if the file system allows it.
+     */
+    public void replace (File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
-    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Append a record to the journal for a file.
+     *
+     * <P>
+     *     The record is written in the format of {@link JournalFile}, so it
+     *     costs the size of the record plus a few dozen bytes, and the journal
+     *     stays open for the next one.  If {@link #getSync()} is true the
+     *     record is forced to disk before this returns.
+     * </P>
+     *
+     * <P>
+     *     A journal in the older text format keeps getting text records until
+     *     the next full write of the file removes it.
+     * </P>
+     */
+    public void append (String filename, byte[] data) throws IOException, EncryptionException {
+        String journalFilename = Journal.getJournalFilename(filename);
+        JournalFile.Output output = getJournals().get(journalFilename);
+
+        if (null == output) {
+            File journal = new File(journalFilename);
+
+            if (journal.exists() && journal.length() > 0 && !JournalFile.isBinary(journal)) {
+                appendText(journalFilename, data);
+                return;
+            }
+
+            output = new JournalFile.Output(journal);
+            getJournals().put(journalFilename, output);
+        }
 
-    public void copyFile (String srcFileName, String destFileName) throws IOException {
-        FileInputStream fileInputStream = null;
+        output.append(data, getDataKeyCache(), getSync());
+    }
+
+    /**
+     * Append a record to a journal in the older text format: the base 64 of
+     * an {@link EncryptingOutputStream}, one per line.
+     */
+    public void appendText (String journalFilename, byte[] data) throws IOException, EncryptionException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        EncryptingOutputStream encryptingOutputStream = new EncryptingOutputStream(byteArrayOutputStream,
+                getDataKeyCache().getCurrentKey(), Math.max(1, data.length));
+        encryptingOutputStream.write(data);
+        encryptingOutputStream.close();
+
+        String record = Base64.getEncoder().encodeToString(byteArrayOutputStream.toByteArray()) + '\n';
         FileOutputStream fileOutputStream = null;
-        byte[] buffer = new byte[BUFFER_SIZE];
 
         try {
-            fileInputStream = new FileInputStream(srcFileName);
-            fileOutputStream = new FileOutputStream(destFileName);
+            fileOutputStream = new FileOutputStream(journalFilename, true);
+            fileOutputStream.write(record.getBytes());
 
-            int bytesRead = fileInputStream.read(buffer);
-            while (bytesRead != -1) {
-                fileOutputStream.write(buffer);
-                bytesRead = fileInputStream.read(buffer);
-            }
+            if (getSync())
+                fileOutputStream.getChannel().force(false);
         } finally {
-            Utils.closeIgnoreExceptions(fileInputStream);
             Utils.closeIgnoreExceptions(fileOutputStream);
         }
     }
 
+    public void closeJournal (String journalFilename) {
+        JournalFile.Output output = getJournals().remove(journalFilename);
+        Utils.closeIgnoreExceptions(output);
+    }
+
+    public void closeJournals () {
+        for (JournalFile.Output output : getJournals().values()) {
+            Utils.closeIgnoreExceptions(output);
+        }
+
+        getJournals().clear();
+    }
+
+    /**
+     * A full write of a file contains everything in its journal, so the
+     * journal can go once the file is on disk.
+     */
+    public void removeJournal (String filename) throws IOException {
+        closeJournal(Journal.getJournalFilename(filename));
+        File journal = new File(Journal.getJournalFilename(filename));
+
+        if (journal.exists() && !journal.delete())
+            throw new IOException("Could not remove journal: " + journal);
+    }
+
+    public static final String BACKUP_SUFFIX = ".backup";
+
+    /**
+     * The name of a backup of a file: generation 0 is filename.backup, generation 1
+     * is filename.backup.1 and so on.
+     */
+    public static String getBackupFilename (String filename, int generation) {
+        if (generation < 1)
+            return filename + BACKUP_SUFFIX;
+        else
+            return filename + BACKUP_SUFFIX + "." + generation;
+    }
+
+    /**
+     * Keep the current contents of a file as its newest backup.
+     *
+     * <P>
+     *     Older backups are shifted down a generation by renaming them, and the
+     *     oldest falls off the end.  The newest backup is a hard link to the
+     *     file, so the file stays where it is until the new version is renamed
+     *     over it; on file systems without hard links the file is renamed instead.
+     * </P>
+     */
     public void backup (File file) throws IOException
     {
-        byte[] buffer = new byte[BUFFER_SIZE];
+        if (getBackupGenerations() < 1)
+            return;
 
-        File backup = new File(file.getCanonicalPath() + ".backup");
-        if (backup.exists()) {
-            if (!backup.delete()) {
-                throw new IOException ("Could not remove backup file: " + backup);
-            }
+        String filename = file.getCanonicalPath();
+
+        File oldest = new File(getBackupFilename(filename, getBackupGenerations() - 1));
+        if (oldest.exists() && !oldest.delete())
+            throw new IOException ("Could not remove backup file: " + oldest);
+
+        for (int generation = getBackupGenerations() - 2; generation >= 0; generation--) {
+            File backup = new File(getBackupFilename(filename, generation));
+            if (backup.exists())
+                Files.move(backup.toPath(), new File(getBackupFilename(filename, generation + 1)).toPath());
         }
 
-        String filename = file.getCanonicalPath();
-        String backupFilename = filename + ".backup";
+        Path backup = new File(getBackupFilename(filename, 0)).toPath();
 
-        copyFile(filename, backupFilename);
+        try {
+            Files.createLink(backup, file.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.move(file.toPath(), backup);
+        }
     }
 
     public void sendWrite (BlockingQueue<Message> senderQueue, Object sender, String filename, byte[] data) {
@@ -115,6 +352,19 @@ public class Writer extends Consumer {
         sendToMe(writeMessage);
     }
 
+    public void sendAppend (BlockingQueue<Message> senderQueue, Object sender, String filename, byte[] data) {
+        AppendMessage appendMessage = new AppendMessage(filename, data, senderQueue, sender);
+        sendToMe(appendMessage);
+    }
+
+    /**
+     * Have the timer send us a {@link FlushWritesMessage} after {@link #getCoalesceDelay()}.
+     */
+    public void scheduleFlush () {
+        FlushWritesMessage flushWritesMessage = new FlushWritesMessage(getQueue(), this);
+        Miranda.timer.sendScheduleOnce(getCoalesceDelay(), getQueue(), flushWritesMessage);
+    }
+
     public EncryptedMessage encrypt (byte[] plaintext) throws EncryptionException {
         return getPublicKey().encryptToMessage(plaintext);
     }
@@ -19,18 +19,87 @@ package com.ltsllc.miranda.writer;
 import com.ltsllc.clcl.EncryptionException;
 import com.ltsllc.miranda.Message;
 import com.ltsllc.miranda.State;
+import com.ltsllc.miranda.miranda.messages.StopMessage;
 
 import java.io.IOException;
-import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Clark on 1/3/2017.
+ *
+ * <P>
+ *     Writes are not done as soon as they arrive.  A write replaces any write
+ *     to the same file that is still pending, and the pending writes are
+ *     flushed when one of the following happens:
+ * </P>
+ * <UL>
+ *     <LI>the coalesce delay is 0 and there are no more messages waiting for the writer,</LI>
+ *     <LI>the coalesce delay has passed since the first pending write arrived,</LI>
+ *     <LI>{@link Writer#getCoalesceSize()} writes are pending,</LI>
+ *     <LI>an append arrives for a file with a pending write, or</LI>
+ *     <LI>the writer is stopped.</LI>
+ * </UL>
+ * <P>
+ *     Every request that was folded into a write gets the reply for that write.
+ * </P>
+ *
+ * <H2>Attributes</H2>
+ * <UL>
+ *     <LI>pendingWrites - the writes that have not been flushed yet, by filename, in the order they first arrived.</LI>
+ *     <LI>pendingCount - the number of write requests in pendingWrites.</LI>
+ *     <LI>flushScheduled - true if a {@link FlushWritesMessage} is on its way.</LI>
+ * </UL>
  */
 public class WriterReadyState extends State {
+    /**
+     * The latest data for a file, along with everyone who asked to write it.
+     */
+    public static class PendingWrite {
+        private String filename;
+        private byte[] buffer;
+        private List<WriteMessage> requests = new ArrayList<WriteMessage>();
+
+        public PendingWrite (String filename) {
+            this.filename = filename;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public byte[] getBuffer() {
+            return buffer;
+        }
+
+        public List<WriteMessage> getRequests() {
+            return requests;
+        }
+
+        public void add (WriteMessage writeMessage) {
+            buffer = writeMessage.getBuffer();
+            requests.add(writeMessage);
+        }
+    }
+
+    private Map<String, PendingWrite> pendingWrites = new LinkedHashMap<String, PendingWrite>();
+    private int pendingCount;
+    private boolean flushScheduled;
+
     public Writer getWriter () {
         return (Writer) getContainer();
     }
 
+    public Map<String, PendingWrite> getPendingWrites() {
+        return pendingWrites;
+    }
+
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
     public WriterReadyState(Writer writer) {
         super(writer);
     }
@@ -46,6 +115,18 @@ public class WriterReadyState extends State {
                 break;
             }
 
+            case Append: {
+                AppendMessage appendMessage = (AppendMessage) m;
+                nextState = processAppendMessage(appendMessage);
+                break;
+            }
+
+            case FlushWrites: {
+                FlushWritesMessage flushWritesMessage = (FlushWritesMessage) m;
+                nextState = processFlushWritesMessage(flushWritesMessage);
+                break;
+            }
+
             default: {
                 nextState = super.processMessage(m);
                 break;
@@ -56,15 +137,102 @@ public class WriterReadyState extends State {
     }
 
     private State processWriteMessage (WriteMessage writeMessage) {
-        try{
-            getWriter().write(writeMessage.getFilename(), writeMessage.getBuffer());
-            WriteSucceededMessage writeSucceededMessage = new WriteSucceededMessage(getWriter().getQueue(), writeMessage.getFilename(), this);
-            writeMessage.reply(writeSucceededMessage);
+        PendingWrite pendingWrite = getPendingWrites().get(writeMessage.getFilename());
+
+        if (null == pendingWrite) {
+            pendingWrite = new PendingWrite(writeMessage.getFilename());
+            getPendingWrites().put(writeMessage.getFilename(), pendingWrite);
+        }
+
+        pendingWrite.add(writeMessage);
+        pendingCount++;
+
+        if (getPendingCount() >= getWriter().getCoalesceSize()) {
+            flush();
+        } else if (getWriter().getCoalesceDelay() > 0) {
+            if (!flushScheduled) {
+                flushScheduled = true;
+                getWriter().scheduleFlush();
+            }
+        } else if (!getWriter().hasPendingMessages()) {
+            flush();
+        }
+
+        return this;
+    }
+
+    private State processFlushWritesMessage (FlushWritesMessage flushWritesMessage) {
+        flushScheduled = false;
+        flush();
+
+        return this;
+    }
+
+    /**
+     * A journal record has to land after the write it follows, because a
+     * write removes the journal.
+     */
+    private State processAppendMessage (AppendMessage appendMessage) {
+        PendingWrite pendingWrite = getPendingWrites().remove(appendMessage.getFilename());
+        if (null != pendingWrite) {
+            pendingCount -= pendingWrite.getRequests().size();
+            write(pendingWrite);
+        }
+
+        try {
+            getWriter().append(appendMessage.getFilename(), appendMessage.getBuffer());
+            WriteSucceededMessage writeSucceededMessage = new WriteSucceededMessage(getWriter().getQueue(), appendMessage.getFilename(), this);
+            appendMessage.reply(writeSucceededMessage);
         } catch (IOException | EncryptionException e) {
-            WriteFailedMessage writeFailedMessage = new WriteFailedMessage(getWriter().getQueue(), writeMessage.getFilename(), e, this);
-            writeMessage.reply(writeFailedMessage);
+            WriteFailedMessage writeFailedMessage = new WriteFailedMessage(getWriter().getQueue(), appendMessage.getFilename(), e, this);
+            appendMessage.reply(writeFailedMessage);
         }
 
         return this;
     }
+
+    public State processStopMessage (StopMessage stopMessage) {
+        flush();
+        getWriter().closeJournals();
+
+        return super.processStopMessage(stopMessage);
+    }
+
+    /**
+     * Write out all the pending writes.
+     */
+    public void flush () {
+        List<PendingWrite> list = new ArrayList<PendingWrite>(getPendingWrites().values());
+        getPendingWrites().clear();
+        pendingCount = 0;
+
+        for (PendingWrite pendingWrite : list) {
+            write(pendingWrite);
+        }
+    }
+
+    /**
+     * Write a file and reply to everyone who asked for it.  Each requester
+     * gets its own reply, since a reply carries the correlation ID of its
+     * request.
+     */
+    private void write (PendingWrite pendingWrite) {
+        Exception exception = null;
+
+        try{
+            getWriter().write(pendingWrite.getFilename(), pendingWrite.getBuffer());
+        } catch (IOException | EncryptionException e) {
+            exception = e;
+        }
+
+        for (WriteMessage writeMessage : pendingWrite.getRequests()) {
+            if (null == exception) {
+                WriteSucceededMessage writeSucceededMessage = new WriteSucceededMessage(getWriter().getQueue(), pendingWrite.getFilename(), this);
+                writeMessage.reply(writeSucceededMessage);
+            } else {
+                WriteFailedMessage writeFailedMessage = new WriteFailedMessage(getWriter().getQueue(), pendingWrite.getFilename(), exception, this);
+                writeMessage.reply(writeFailedMessage);
+            }
+        }
+    }
 }
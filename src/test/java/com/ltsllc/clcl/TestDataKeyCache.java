@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.clcl;
+
+import com.ltsllc.clcl.test.EncryptionTestCase;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+
+import static org.mockito.Mockito.*;
+
+public class TestDataKeyCache extends EncryptionTestCase {
+    public static final byte[] TEST_ID = { 1, 2, 3, 4 };
+    public static final byte[] TEST_WRAPPED_KEY = { 5, 6, 7, 8 };
+    public static final byte[] TEST_DATA_KEY = new byte[16];
+
+    @Before
+    public void setup () throws Exception {
+        KeyPair keyPair = KeyPair.newKeys();
+        setPublicKey(keyPair.getPublicKey());
+        setPrivateKey(keyPair.getPrivateKey());
+    }
+
+    @Test
+    public void testRotation () throws Exception {
+        DataKeyCache dataKeyCache = new DataKeyCache(getPublicKey(), DataKeyCache.DEFAULT_MAX_AGE, 2, 10);
+
+        DataKeyCache.DataKey first = dataKeyCache.getCurrentKey();
+
+        assert (dataKeyCache.getCurrentKey() == first);
+        assert (dataKeyCache.getCurrentKey() != first);
+
+        dataKeyCache.setMaxAge(0);
+
+        assert (dataKeyCache.needsRotation());
+    }
+
+    @Test
+    public void testUnwrapOnce () throws Exception {
+        PrivateKey mockPrivateKey = mock(PrivateKey.class);
+        when(mockPrivateKey.decrypt(Matchers.any(byte[].class))).thenReturn(TEST_DATA_KEY);
+
+        DataKeyCache dataKeyCache = new DataKeyCache(mockPrivateKey);
+        dataKeyCache.unwrap(TEST_ID, TEST_WRAPPED_KEY);
+        dataKeyCache.unwrap(TEST_ID, TEST_WRAPPED_KEY);
+
+        verify(mockPrivateKey, times(1)).decrypt(Matchers.any(byte[].class));
+        assert (dataKeyCache.size() == 1);
+    }
+
+    @Test
+    public void testUnwrapOutsideLock () throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final byte[] slowKey = { 9 };
+
+        PrivateKey mockPrivateKey = mock(PrivateKey.class);
+        when(mockPrivateKey.decrypt(Matchers.any(byte[].class))).thenAnswer(new Answer<byte[]>() {
+            public byte[] answer(InvocationOnMock invocation) throws Throwable {
+                byte[] wrappedKey = (byte[]) invocation.getArguments()[0];
+                if (wrappedKey == slowKey) {
+                    started.countDown();
+                    release.await();
+                }
+
+                return TEST_DATA_KEY;
+            }
+        });
+
+        final DataKeyCache dataKeyCache = new DataKeyCache(mockPrivateKey);
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    dataKeyCache.unwrap(new byte[] { 9 }, slowKey);
+                } catch (EncryptionException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+
+        thread.start();
+        started.await();
+
+        // a different key can be unwrapped while the slow one is still going
+        dataKeyCache.unwrap(TEST_ID, TEST_WRAPPED_KEY);
+        assert (dataKeyCache.size() == 1);
+
+        release.countDown();
+        thread.join(1000);
+
+        assert (dataKeyCache.size() == 2);
+        assert (dataKeyCache.getUnwrapping().isEmpty());
+    }
+
+    @Test
+    public void testCapacity () throws Exception {
+        PrivateKey mockPrivateKey = mock(PrivateKey.class);
+        when(mockPrivateKey.decrypt(Matchers.any(byte[].class))).thenReturn(TEST_DATA_KEY);
+
+        DataKeyCache dataKeyCache = new DataKeyCache(mockPrivateKey, DataKeyCache.DEFAULT_MAX_AGE,
+                DataKeyCache.DEFAULT_MAX_USES, 2);
+
+        for (byte i = 0; i < 5; i++) {
+            dataKeyCache.unwrap(new byte[] { i }, TEST_WRAPPED_KEY);
+        }
+
+        assert (dataKeyCache.size() == 2);
+    }
+
+    @Test
+    public void testStreams () throws Exception {
+        DataKeyCache writerCache = new DataKeyCache(getPublicKey());
+        DataKeyCache readerCache = new DataKeyCache(getPrivateKey());
+
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            EncryptingOutputStream encryptingOutputStream = new EncryptingOutputStream(byteArrayOutputStream, writerCache);
+            encryptingOutputStream.write(i);
+            encryptingOutputStream.close();
+
+            DecryptingInputStream decryptingInputStream = new DecryptingInputStream(
+                    new ByteArrayInputStream(byteArrayOutputStream.toByteArray()), readerCache);
+
+            assert (decryptingInputStream.read() == i);
+            assert (decryptingInputStream.read() == -1);
+        }
+
+        assert (readerCache.size() == 1);
+    }
+}
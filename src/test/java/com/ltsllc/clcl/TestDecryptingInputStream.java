@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.clcl;
+
+import com.ltsllc.clcl.test.EncryptionTestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestDecryptingInputStream extends EncryptionTestCase {
+    public static final int TEST_CHUNK_SIZE = 100;
+
+    @Before
+    public void setup () throws Exception {
+        KeyPair keyPair = KeyPair.newKeys();
+        setPublicKey(keyPair.getPublicKey());
+        setPrivateKey(keyPair.getPrivateKey());
+    }
+
+    public byte[] encrypt (byte[] plainText) throws Exception {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        EncryptingOutputStream encryptingOutputStream = new EncryptingOutputStream(byteArrayOutputStream,
+                getPublicKey(), TEST_CHUNK_SIZE);
+        encryptingOutputStream.write(plainText);
+        encryptingOutputStream.close();
+
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    public byte[] decrypt (byte[] cipherText) throws Exception {
+        DecryptingInputStream decryptingInputStream = new DecryptingInputStream(new ByteArrayInputStream(cipherText),
+                getPrivateKey());
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+
+        int b = decryptingInputStream.read();
+        while (b != -1) {
+            byteArrayOutputStream.write(b);
+            b = decryptingInputStream.read();
+        }
+
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip () throws Exception {
+        byte[] plainText = new byte[1050];
+        new Random(1).nextBytes(plainText);
+
+        byte[] cipherText = encrypt(plainText);
+
+        assert (DecryptingInputStream.isEncryptedStream(cipherText, cipherText.length));
+        assert (Arrays.equals(plainText, decrypt(cipherText)));
+        assert (decrypt(encrypt(new byte[0])).length == 0);
+    }
+
+    @Test
+    public void testTampered () throws Exception {
+        byte[] cipherText = encrypt(new byte[500]);
+        cipherText[cipherText.length - 1] ^= 1;
+
+        IOException ioException = null;
+        try {
+            decrypt(cipherText);
+        } catch (IOException e) {
+            ioException = e;
+        }
+
+        assert (ioException != null);
+    }
+
+    @Test
+    public void testTruncated () throws Exception {
+        byte[] cipherText = encrypt(new byte[500]);
+
+        // drop the last chunk: the length, the flag, 100 bytes of ciphertext and the tag
+        byte[] truncated = Arrays.copyOf(cipherText, cipherText.length - (4 + 1 + TEST_CHUNK_SIZE + 16));
+
+        IOException ioException = null;
+        try {
+            decrypt(truncated);
+        } catch (IOException e) {
+            ioException = e;
+        }
+
+        assert (ioException != null);
+    }
+}
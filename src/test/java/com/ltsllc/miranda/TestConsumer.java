@@ -22,9 +22,17 @@ import org.junit.Test;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.mockito.Mockito.*;
 
@@ -200,4 +208,147 @@ public class TestConsumer extends TestCase {
         assert (getConsumer().compare(map, getConsumer()));
         assert (!getConsumer().compare(map, null));
     }
+
+    public static class CountingState extends State {
+        private int count;
+
+        public int getCount() {
+            return count;
+        }
+
+        public CountingState (Consumer consumer) {
+            super(consumer);
+        }
+
+        public State processMessage (Message message) {
+            count++;
+
+            if (message.getSubject() == Message.Subjects.Stop)
+                return StopState.getInstance();
+
+            return this;
+        }
+    }
+
+    @Test
+    public void testProcessBatchStops () {
+        CountingState countingState = new CountingState(getConsumer());
+        getConsumer().setCurrentStateWithoutStart(countingState);
+
+        List<Message> batch = new ArrayList<Message>();
+        batch.add(new Message(Message.Subjects.Version, null, null));
+        batch.add(new Message(Message.Subjects.Stop, null, null));
+        batch.add(new Message(Message.Subjects.Version, null, null));
+
+        State nextState = getConsumer().processBatch(batch);
+
+        assert (nextState == StopState.getInstance());
+        assert (countingState.getCount() == 2);
+        assert (batch.isEmpty());
+    }
+
+    @Test
+    public void testRunBatched () {
+        CountingState countingState = new CountingState(getConsumer());
+        getConsumer().setCurrentStateWithoutStart(countingState);
+        getConsumer().setBatchSize(4);
+
+        for (int i = 0; i < 10; i++) {
+            putMessage(getConsumer().getQueue(), new Message(Message.Subjects.Version, null, null));
+        }
+
+        putMessage(getConsumer().getQueue(), new Message(Message.Subjects.Stop, null, null));
+        putMessage(getConsumer().getQueue(), new Message(Message.Subjects.Version, null, null));
+
+        getConsumer().run();
+
+        //
+        // the stop message is in the control lane, so it overtakes the others and
+        // the rest of its batch is discarded
+        //
+        assert (countingState.getCount() == 1);
+        assert (getConsumer().getQueue().size() == 8);
+        assert (getConsumer().isTerminated());
+    }
+
+    @Test
+    public void testProcessBatchControlFirst () {
+        CountingState countingState = new CountingState(getConsumer());
+        getConsumer().setCurrentStateWithoutStart(countingState);
+
+        List<Message> batch = new ArrayList<Message>();
+        batch.add(new Message(Message.Subjects.Version, null, null));
+        batch.add(new Message(Message.Subjects.Version, null, null));
+        batch.add(new Message(Message.Subjects.Version, null, null));
+
+        putMessage(getConsumer().getQueue(), new Message(Message.Subjects.Stop, null, null));
+
+        State nextState = getConsumer().processBatch(batch);
+
+        assert (nextState == StopState.getInstance());
+        assert (countingState.getCount() == 2);
+    }
+
+    @Test
+    public void testAsk () throws Exception {
+        BlockingQueue<Message> target = new LinkedBlockingQueue<Message>();
+        Message request = new Message(Message.Subjects.GetVersion, null, null);
+
+        CompletableFuture<Message> future = getConsumer().ask(target, request, 10000);
+
+        assert (target.take() == request);
+        assert (request.getCorrelationId() != 0);
+        assert (!future.isDone());
+
+        Message reply = new Message(Message.Subjects.Version, null, null);
+        request.reply(reply);
+
+        assert (future.get(1, TimeUnit.SECONDS) == reply);
+        assert (reply.getInReplyTo() == request.getCorrelationId());
+    }
+
+    @Test
+    public void testAskCancelsTimeout () throws Exception {
+        Ask ask = new Ask(Message.nextCorrelationId());
+        ask.scheduleTimeout(10000);
+        TimerTask timerTask = ask.getTimerTask();
+
+        Message reply = new Message(Message.Subjects.Version, null, null);
+        ask.getReplyQueue().put(reply);
+
+        assert (ask.getFuture().get(1, TimeUnit.SECONDS) == reply);
+        assert (null == ask.getTimerTask());
+        assert (!timerTask.cancel());
+    }
+
+    @Test
+    public void testAskTimeout () throws Exception {
+        BlockingQueue<Message> target = new LinkedBlockingQueue<Message>();
+        Message request = new Message(Message.Subjects.GetVersion, null, null);
+
+        CompletableFuture<Message> future = getConsumer().ask(target, request, 10);
+
+        ExecutionException executionException = null;
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            executionException = e;
+        }
+
+        assert (executionException != null);
+        assert (executionException.getCause() instanceof TimeoutException);
+    }
+
+    @Test
+    public void testReplayBeforeNewMessages () {
+        Message deferred = new Message(Message.Subjects.Version, null, null);
+        Message newer = new Message(Message.Subjects.Version, null, null);
+
+        getConsumer().getStash().stash(deferred);
+        putMessage(getConsumer().getQueue(), newer);
+        getConsumer().getStash().unstashAll();
+
+        assert (getConsumer().getNextMessage() == deferred);
+        assert (getConsumer().getNextMessage() == newer);
+    }
 }
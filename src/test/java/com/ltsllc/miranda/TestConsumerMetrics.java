@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda;
+
+import com.ltsllc.miranda.test.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestConsumerMetrics extends TestCase {
+    public static class OtherState extends TestConsumer.CountingState {
+        public OtherState (Consumer consumer) {
+            super(consumer);
+        }
+    }
+
+    private Consumer consumer;
+
+    public Consumer getConsumer() {
+        return consumer;
+    }
+
+    public void reset () {
+        super.reset();
+
+        consumer = null;
+    }
+
+    @Before
+    public void setup () {
+        reset();
+
+        super.setup();
+
+        setuplog4j();
+        consumer = new Consumer("metrics test");
+    }
+
+    @Test
+    public void testToBucket () {
+        assert (ConsumerMetrics.toBucket(500) == 0);
+        assert (ConsumerMetrics.toBucket(1000) == 1);
+        assert (ConsumerMetrics.toBucket(3000) == 2);
+        assert (ConsumerMetrics.toBucket(Long.MAX_VALUE) == ConsumerMetrics.BUCKETS - 1);
+    }
+
+    @Test
+    public void testMessages () {
+        getConsumer().setCurrentState(new TestConsumer.CountingState(getConsumer()));
+
+        for (int i = 0; i < 3; i++) {
+            getConsumer().processMessageInCurrentState(new Message(Message.Subjects.Version, null, null));
+        }
+
+        getConsumer().processMessageInCurrentState(new Message(Message.Subjects.GetVersion, null, null));
+
+        ConsumerGauge gauge = getConsumer().getMetrics().getGauge();
+
+        assert (gauge.getName().equals("metrics test"));
+        assert (gauge.getProcessed() == 4);
+        assert (gauge.getSubject(Message.Subjects.Version).getCount() == 3);
+        assert (gauge.getSubject(Message.Subjects.GetVersion).getCount() == 1);
+        assert (gauge.getSubject(Message.Subjects.Stop) == null);
+
+        long histogramTotal = 0;
+        for (long count : gauge.getSubject(Message.Subjects.Version).getHistogram()) {
+            histogramTotal += count;
+        }
+
+        assert (histogramTotal == 3);
+        assert (gauge.getState("CountingState").getMessages() == 4);
+    }
+
+    @Test
+    public void testTransitions () {
+        getConsumer().setCurrentState(new TestConsumer.CountingState(getConsumer()));
+        getConsumer().setCurrentState(new OtherState(getConsumer()));
+        getConsumer().setCurrentState(new TestConsumer.CountingState(getConsumer()));
+
+        ConsumerGauge gauge = getConsumer().getMetrics().getGauge();
+
+        assert (gauge.getState("CountingState").getEntries() == 2);
+        assert (gauge.getState("OtherState").getEntries() == 1);
+        assert (gauge.getTransitions().size() == 2);
+    }
+
+    @Test
+    public void testSnapshot () {
+        getConsumer().setCurrentState(new TestConsumer.CountingState(getConsumer()));
+
+        boolean found = false;
+        for (ConsumerGauge gauge : ConsumerMetrics.getGauges()) {
+            if (gauge.getName().equals("metrics test"))
+                found = true;
+        }
+
+        assert (found);
+        assert (ConsumerMetrics.toJson().contains("metrics test"));
+    }
+}
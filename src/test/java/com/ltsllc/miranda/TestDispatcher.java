@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ltsllc.miranda;
+
+import com.ltsllc.miranda.miranda.Miranda;
+import com.ltsllc.miranda.test.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestDispatcher extends TestCase {
+    public static class CountingState extends State {
+        private AtomicInteger count = new AtomicInteger();
+        private AtomicInteger active = new AtomicInteger();
+        private volatile boolean overlapped;
+
+        public int getCount() {
+            return count.get();
+        }
+
+        public boolean getOverlapped() {
+            return overlapped;
+        }
+
+        public CountingState (Consumer consumer) {
+            super(consumer);
+        }
+
+        public State processMessage (Message message) {
+            if (active.incrementAndGet() > 1)
+                overlapped = true;
+
+            count.incrementAndGet();
+            active.decrementAndGet();
+
+            if (message.getSubject() == Message.Subjects.Stop)
+                return StopState.getInstance();
+
+            return this;
+        }
+    }
+
+    private Dispatcher dispatcher;
+    private Consumer consumer;
+    private CountingState countingState;
+
+    public Dispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public Consumer getConsumer() {
+        return consumer;
+    }
+
+    public CountingState getCountingState() {
+        return countingState;
+    }
+
+    public void reset () {
+        super.reset();
+
+        if (null != dispatcher)
+            dispatcher.shutdown();
+
+        dispatcher = null;
+        consumer = null;
+        countingState = null;
+        Miranda.dispatcher = null;
+    }
+
+    @Before
+    public void setup () {
+        reset();
+
+        super.setup();
+
+        dispatcher = new Dispatcher(4, 8);
+        Miranda.dispatcher = dispatcher;
+
+        consumer = new Consumer("test");
+        countingState = new CountingState(consumer);
+        consumer.setCurrentState(countingState);
+    }
+
+    @After
+    public void cleanup () {
+        reset();
+    }
+
+    public void waitForCount (int count) {
+        long timeout = System.currentTimeMillis() + 5000;
+
+        while (getCountingState().getCount() < count && System.currentTimeMillis() < timeout) {
+            pause(10);
+        }
+    }
+
+    @Test
+    public void testStart () {
+        getConsumer().start();
+
+        assert (getConsumer().getThread() == null);
+        assert (getConsumer().getDispatcher() == getDispatcher());
+    }
+
+    @Test
+    public void testProcessesAllMessages () {
+        getConsumer().start();
+
+        for (int i = 0; i < 1000; i++) {
+            Message message = new Message(Message.Subjects.Version, null, null);
+            send(message, getConsumer().getQueue());
+        }
+
+        waitForCount(1000);
+
+        assert (getCountingState().getCount() == 1000);
+        assert (!getCountingState().getOverlapped());
+    }
+
+    @Test
+    public void testStop () {
+        getConsumer().start();
+
+        send(new Message(Message.Subjects.Stop, null, null), getConsumer().getQueue());
+        waitForCount(1);
+        pause(50);
+
+        assert (getConsumer().isTerminated());
+
+        send(new Message(Message.Subjects.Version, null, null), getConsumer().getQueue());
+        pause(50);
+
+        assert (getCountingState().getCount() == 1);
+    }
+
+    @Test
+    public void testThreadMode () {
+        Miranda.dispatcher = null;
+
+        getConsumer().start();
+
+        assert (getConsumer().getThread() != null);
+        assert (getConsumer().getDispatcher() == null);
+
+        send(new Message(Message.Subjects.Stop, null, null), getConsumer().getQueue());
+    }
+}
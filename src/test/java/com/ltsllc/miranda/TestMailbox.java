@@ -0,0 +1,335 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ltsllc.miranda;
+
+import com.ltsllc.miranda.clientinterface.results.Results;
+import com.ltsllc.miranda.test.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestMailbox extends TestCase {
+    private Mailbox mailbox;
+
+    public Mailbox getMailbox() {
+        return mailbox;
+    }
+
+    public void reset () {
+        super.reset();
+
+        mailbox = null;
+    }
+
+    @Before
+    public void setup () {
+        reset();
+
+        super.setup();
+    }
+
+    public Message newMessage () {
+        return new Message(Message.Subjects.Version, null, null);
+    }
+
+    public boolean containsInstance (Message message) {
+        for (Message m : getMailbox()) {
+            if (m == message)
+                return true;
+        }
+
+        return false;
+    }
+
+    public void fill (int count) {
+        for (int i = 0; i < count; i++) {
+            send(newMessage(), getMailbox());
+        }
+    }
+
+    @Test
+    public void testCapacity () {
+        mailbox = new Mailbox("test", 5, Mailbox.OverflowPolicies.Reject);
+
+        assert (getMailbox().getCapacity() == 8);
+        assert (getMailbox().remainingCapacity() == 8);
+    }
+
+    @Test
+    public void testFifo () {
+        mailbox = new Mailbox("test", 8, Mailbox.OverflowPolicies.Block);
+        Message first = newMessage();
+        Message second = newMessage();
+
+        send(first, getMailbox());
+        send(second, getMailbox());
+
+        assert (getMailbox().size() == 2);
+        assert (getMailbox().peek() == first);
+        assert (getMailbox().poll() == first);
+        assert (getMailbox().poll() == second);
+        assert (getMailbox().poll() == null);
+        assert (getMailbox().isEmpty());
+    }
+
+    @Test
+    public void testReject () {
+        mailbox = new Mailbox("test", 4, Mailbox.OverflowPolicies.Reject);
+        fill(4);
+
+        assert (getMailbox().deliver(newMessage()) == Results.MailboxFull);
+        assert (!getMailbox().offer(newMessage()));
+        assert (getMailbox().size() == 4);
+        assert (getMailbox().getRejected() == 2);
+    }
+
+    @Test
+    public void testSendReject () {
+        mailbox = new Mailbox("test", 4, Mailbox.OverflowPolicies.Reject);
+        fill(4);
+
+        Results result = Consumer.staticSend(newMessage(), getMailbox());
+
+        assert (result == Results.MailboxFull);
+        assert (getMailbox().getRejected() == 1);
+    }
+
+    @Test
+    public void testPutReject () throws InterruptedException {
+        mailbox = new Mailbox("test", 4, Mailbox.OverflowPolicies.Reject);
+        fill(4);
+
+        boolean thrown = false;
+        try {
+            getMailbox().put(newMessage());
+        } catch (IllegalStateException e) {
+            thrown = true;
+        }
+
+        assert (thrown);
+        assert (getMailbox().size() == 4);
+    }
+
+    @Test
+    public void testReplyReject () {
+        mailbox = new Mailbox("test", 4, Mailbox.OverflowPolicies.Reject);
+        fill(4);
+
+        Message request = new Message(Message.Subjects.Version, getMailbox(), this);
+        Results result = request.reply(newMessage());
+
+        assert (result == Results.MailboxFull);
+        assert (getMailbox().getRejected() == 1);
+    }
+
+    @Test
+    public void testReceiverDoesNotBlock () {
+        mailbox = new Mailbox("test", 2, Mailbox.OverflowPolicies.Block);
+        fill(2);
+        getMailbox().setReceiver(Thread.currentThread());
+
+        Results result = Consumer.staticSend(newMessage(), getMailbox());
+
+        assert (result == Results.MailboxFull);
+        assert (getMailbox().size() == 2);
+        assert (getMailbox().getRejected() == 1);
+    }
+
+    @Test
+    public void testDropOldest () {
+        mailbox = new Mailbox("test", 4, Mailbox.OverflowPolicies.DropOldest);
+        Message oldest = newMessage();
+        send(oldest, getMailbox());
+        fill(3);
+
+        Message newest = newMessage();
+        assert (getMailbox().deliver(newest) == Results.Success);
+        assert (getMailbox().size() == 4);
+        assert (!containsInstance(oldest));
+        assert (containsInstance(newest));
+        assert (getMailbox().getDropped() == 1);
+    }
+
+    @Test
+    public void testBlock () throws Exception {
+        mailbox = new Mailbox("test", 2, Mailbox.OverflowPolicies.Block);
+        fill(2);
+
+        assert (!getMailbox().offer(newMessage()));
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                send(newMessage(), getMailbox());
+            }
+        });
+
+        thread.start();
+        pause(50);
+
+        assert (thread.isAlive());
+
+        getMailbox().poll();
+        thread.join(1000);
+
+        assert (!thread.isAlive());
+        assert (getMailbox().size() == 2);
+    }
+
+    @Test
+    public void testTake () throws Exception {
+        mailbox = new Mailbox("test", 2, Mailbox.OverflowPolicies.Block);
+        final Message message = newMessage();
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                pause(50);
+                send(message, getMailbox());
+            }
+        });
+
+        thread.start();
+
+        assert (getMailbox().take() == message);
+    }
+
+    @Test
+    public void testDrainTo () {
+        mailbox = new Mailbox("test", 16, Mailbox.OverflowPolicies.Block);
+        fill(10);
+
+        List<Message> list = new ArrayList<Message>();
+
+        assert (getMailbox().drainTo(list, 4) == 4);
+        assert (getMailbox().drainTo(list) == 6);
+        assert (list.size() == 10);
+    }
+
+    @Test
+    public void testManyProducers () throws Exception {
+        mailbox = new Mailbox("test", 64, Mailbox.OverflowPolicies.Block);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    fill(1000);
+                }
+            });
+
+            threads.add(thread);
+            thread.start();
+        }
+
+        int count = 0;
+        while (count < 4000) {
+            getMailbox().take();
+            count++;
+        }
+
+        for (Thread thread : threads) {
+            thread.join(1000);
+        }
+
+        assert (getMailbox().isEmpty());
+        assert (getMailbox().getEnqueued() == 4000);
+    }
+
+    @Test
+    public void testGauges () {
+        mailbox = new Mailbox("gauge test", 8, Mailbox.OverflowPolicies.Block);
+        fill(3);
+
+        MailboxGauge found = null;
+        for (MailboxGauge gauge : Mailbox.getGauges()) {
+            if ("gauge test".equals(gauge.getName()))
+                found = gauge;
+        }
+
+        assert (found != null);
+        assert (found.getDepth() == 3);
+        assert (found.getHighWaterMark() == 3);
+    }
+
+    @Test
+    public void testControlFirst () {
+        mailbox = new Mailbox("test", 8, Mailbox.OverflowPolicies.Block);
+        fill(3);
+        Message stop = new Message(Message.Subjects.Stop, null, null);
+        send(stop, getMailbox());
+
+        assert (getMailbox().size() == 4);
+        assert (getMailbox().getLaneDepth(Mailbox.Lanes.Control) == 1);
+        assert (getMailbox().getLaneDepth(Mailbox.Lanes.Data) == 3);
+        assert (getMailbox().peek() == stop);
+        assert (getMailbox().poll() == stop);
+        assert (getMailbox().poll().getSubject() == Message.Subjects.Version);
+    }
+
+    @Test
+    public void testControlWhenFull () {
+        mailbox = new Mailbox("test", 4, Mailbox.OverflowPolicies.Reject);
+        fill(4);
+
+        Message stop = new Message(Message.Subjects.Stop, null, null);
+        send(stop, getMailbox());
+
+        assert (getMailbox().getRejected() == 0);
+        assert (getMailbox().remainingCapacity() == 0);
+        assert (getMailbox().poll() == stop);
+    }
+
+    @Test
+    public void testDropOldestKeepsControl () {
+        mailbox = new Mailbox("test", 4, Mailbox.OverflowPolicies.DropOldest);
+
+        for (int i = 0; i < Mailbox.CONTROL_LANE_CAPACITY; i++) {
+            send(new Message(Message.Subjects.Timeout, null, null), getMailbox());
+        }
+
+        Message stop = new Message(Message.Subjects.Stop, null, null);
+        send(stop, getMailbox());
+        fill(3);
+
+        Message newest = newMessage();
+        Results result = getMailbox().deliver(newest);
+
+        assert (result == Results.Success);
+        assert (containsInstance(stop));
+        assert (containsInstance(newest));
+        assert (getMailbox().getDropped() == 1);
+    }
+
+    @Test
+    public void testLaneGauges () {
+        mailbox = new Mailbox("lane gauge test", 8, Mailbox.OverflowPolicies.Block);
+        fill(2);
+        send(new Message(Message.Subjects.Timeout, null, null), getMailbox());
+
+        MailboxGauge found = null;
+        for (MailboxGauge gauge : Mailbox.getGauges()) {
+            if ("lane gauge test".equals(gauge.getName()))
+                found = gauge;
+        }
+
+        assert (found != null);
+        assert (found.getDepth() == 3);
+        assert (found.getLaneDepth(Mailbox.Lanes.Control) == 1);
+        assert (found.getLaneDepth(Mailbox.Lanes.Data) == 2);
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.ltsllc.miranda;
 
+import com.ltsllc.miranda.property.MirandaProperties;
 import com.ltsllc.miranda.test.TestCase;
 import org.junit.Before;
 import org.junit.Test;
@@ -61,6 +62,9 @@ public class TestMessage extends TestCase {
         super.reset();
 
         message = null;
+
+        Message.setProvenance(MirandaProperties.ProvenanceModes.Sampled,
+                Integer.parseInt(MirandaProperties.DEFAULT_MESSAGE_PROVENANCE_SAMPLE_RATE));
     }
 
     @Before
@@ -70,6 +74,7 @@ public class TestMessage extends TestCase {
         super.setup();
 
         queue = new LinkedBlockingQueue<Message>();
+        Message.setProvenance(MirandaProperties.ProvenanceModes.Always, 1);
         message = new Message(Message.Subjects.Version, queue, this);
     }
 
@@ -115,4 +120,28 @@ public class TestMessage extends TestCase {
         assert (getMessage().equals(getMessage()));
         assert (!getMessage().equals(null));
     }
+
+    @Test
+    public void testProvenanceOff () {
+        Message.setProvenance(MirandaProperties.ProvenanceModes.Off, 1);
+
+        Message message = new Message(Message.Subjects.Version, null, this);
+
+        assert (message.getWhere() == null);
+        assert (message.getSenderClassName().equals(getClass().getName()));
+    }
+
+    @Test
+    public void testProvenanceSampled () {
+        Message.setProvenance(MirandaProperties.ProvenanceModes.Sampled, 4);
+
+        int recorded = 0;
+        for (int i = 0; i < 4000; i++) {
+            Message message = new Message(Message.Subjects.Version, null, null);
+            if (null != message.getWhere())
+                recorded++;
+        }
+
+        assert (recorded > 0 && recorded < 4000);
+    }
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda;
+
+import com.ltsllc.miranda.test.TestCase;
+import com.ltsllc.miranda.writer.Writer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestRegistry extends TestCase {
+    public static class RecordingListener implements Registry.Listener {
+        private List<String> events = new ArrayList<String>();
+
+        public List<String> getEvents() {
+            return events;
+        }
+
+        public void registered (String name, Subsystem subsystem) {
+            events.add("registered " + name);
+        }
+
+        public void unregistered (String name, Subsystem subsystem) {
+            events.add("unregistered " + name);
+        }
+    }
+
+    private Registry registry;
+
+    public Registry getRegistry() {
+        return registry;
+    }
+
+    public void reset () {
+        super.reset();
+
+        registry = null;
+    }
+
+    @Before
+    public void setup () {
+        reset();
+
+        super.setup();
+
+        registry = new Registry();
+    }
+
+    @After
+    public void cleanup () {
+        Registry.getInstance().clear();
+    }
+
+    @Test
+    public void testFindByName () {
+        Consumer consumer = new Consumer("test");
+        getRegistry().register(consumer);
+
+        assert (getRegistry().find("test") == consumer);
+        assert (getRegistry().find("TEST") == consumer);
+        assert (getRegistry().findQueue("test") == consumer.getQueue());
+        assert (getRegistry().find("test", Consumer.class) == consumer);
+        assert (getRegistry().find("test", Writer.class) == null);
+        assert (getRegistry().find("whatever") == null);
+    }
+
+    @Test
+    public void testFindByClass () {
+        Consumer consumer = new Consumer("test");
+        getRegistry().register(consumer);
+
+        assert (getRegistry().find(Consumer.class) == consumer);
+        assert (getRegistry().find(Subsystem.class) == consumer);
+        assert (getRegistry().find(Writer.class) == null);
+    }
+
+    @Test
+    public void testUnregister () {
+        Consumer consumer = new Consumer("test");
+        getRegistry().register(consumer);
+
+        assert (getRegistry().unregister("test") == consumer);
+        assert (getRegistry().find("test") == null);
+        assert (getRegistry().find(Consumer.class) == null);
+    }
+
+    @Test
+    public void testListener () {
+        RecordingListener listener = new RecordingListener();
+        getRegistry().addListener(listener);
+
+        Consumer first = new Consumer("test");
+        Consumer second = new Consumer("test");
+        getRegistry().register(first);
+        getRegistry().register(first);
+        getRegistry().register(second);
+        getRegistry().register("test", null);
+
+        assert (listener.getEvents().size() == 4);
+        assert (listener.getEvents().get(0).equals("registered test"));
+        assert (listener.getEvents().get(1).equals("unregistered test"));
+        assert (listener.getEvents().get(2).equals("registered test"));
+        assert (listener.getEvents().get(3).equals("unregistered test"));
+    }
+}
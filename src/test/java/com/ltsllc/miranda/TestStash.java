@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda;
+
+import com.ltsllc.miranda.test.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestStash extends TestCase {
+    private Stash stash;
+
+    public Stash getStash() {
+        return stash;
+    }
+
+    public void reset () {
+        super.reset();
+
+        stash = null;
+    }
+
+    @Before
+    public void setup () {
+        reset();
+
+        super.setup();
+
+        stash = new Stash(3);
+    }
+
+    public Message newMessage () {
+        return new Message(Message.Subjects.Version, null, null);
+    }
+
+    @Test
+    public void testReplayOrder () {
+        Message first = newMessage();
+        Message second = newMessage();
+
+        getStash().stash(first);
+        getStash().stash(second);
+
+        assert (!getStash().hasReplay());
+        assert (getStash().pollReplay() == null);
+
+        getStash().unstashAll();
+
+        assert (getStash().pollReplay() == first);
+        assert (getStash().pollReplay() == second);
+        assert (getStash().isEmpty());
+    }
+
+    @Test
+    public void testStashDuringReplay () {
+        Message first = newMessage();
+        Message second = newMessage();
+
+        getStash().stash(first);
+        getStash().unstashAll();
+        getStash().stash(second);
+
+        assert (getStash().pollReplay() == first);
+        assert (getStash().pollReplay() == null);
+
+        getStash().unstashAll();
+
+        assert (getStash().pollReplay() == second);
+    }
+
+    @Test
+    public void testCapacity () {
+        for (int i = 0; i < 5; i++) {
+            getStash().stash(newMessage());
+        }
+
+        assert (getStash().size() == 3);
+        assert (getStash().getDropped() == 2);
+        assert (getStash().getTotal() == 3);
+        assert (getStash().getHighWaterMark() == 3);
+    }
+
+    @Test
+    public void testDrainReplayTo () {
+        for (int i = 0; i < 3; i++) {
+            getStash().stash(newMessage());
+        }
+
+        getStash().unstashAll();
+
+        List<Message> list = new ArrayList<Message>();
+
+        assert (getStash().drainReplayTo(list, 2) == 2);
+        assert (getStash().size() == 1);
+    }
+}
@@ -28,6 +28,8 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 /**
@@ -130,4 +132,20 @@ public class TestState extends TestCase {
 
         verify(getMockMiranda(), atLeastOnce()).panic(Matchers.any(Panic.class));
     }
+
+    @Test
+    public void testDeferFull () {
+        setupMockMiranda();
+        int capacity = getState().getStash().getCapacity();
+
+        for (int i = 0; i < capacity; i++) {
+            getState().defer(new Message(Message.Subjects.Version, null, this));
+        }
+
+        verify(getMockMiranda(), never()).panic(Matchers.any(Panic.class));
+
+        getState().defer(new Message(Message.Subjects.Version, null, this));
+
+        verify(getMockMiranda(), times(1)).panic(Matchers.any(Panic.class));
+    }
 }
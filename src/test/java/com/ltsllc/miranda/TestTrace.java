@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda;
+
+import com.ltsllc.miranda.test.TestCase;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestTrace extends TestCase {
+    public static class CountingMessage extends Message {
+        private volatile int toStringCount;
+
+        public int getToStringCount() {
+            return toStringCount;
+        }
+
+        public CountingMessage () {
+            super(Subjects.Version, null, null);
+        }
+
+        public String toString () {
+            toStringCount++;
+            return super.toString();
+        }
+    }
+
+    private Trace trace;
+
+    public Trace getTrace() {
+        return trace;
+    }
+
+    public void reset () {
+        super.reset();
+
+        trace = null;
+    }
+
+    @Before
+    public void setup () {
+        reset();
+
+        super.setup();
+
+        setuplog4j();
+        trace = Trace.forName("test trace");
+    }
+
+    @After
+    public void cleanup () {
+        Trace.setAsync(false);
+    }
+
+    @Test
+    public void testLoggerName () {
+        assert (Trace.toLoggerName("network listener").equals("com.ltsllc.miranda.trace.network_listener"));
+        assert (getTrace().getLogger().getName().equals("com.ltsllc.miranda.trace.test_trace"));
+    }
+
+    @Test
+    public void testDisabled () {
+        getTrace().getLogger().setLevel(Level.INFO);
+        CountingMessage message = new CountingMessage();
+
+        getTrace().sending(this, null, message);
+        getTrace().received(this, null, message);
+
+        assert (message.getToStringCount() == 0);
+    }
+
+    @Test
+    public void testEnabled () {
+        getTrace().getLogger().setLevel(Level.DEBUG);
+        CountingMessage message = new CountingMessage();
+
+        getTrace().sending(this, null, message);
+
+        assert (message.getToStringCount() == 1);
+    }
+
+    @Test
+    public void testAsync () throws Exception {
+        Trace.setAsync(true);
+        getTrace().getLogger().setLevel(Level.DEBUG);
+        CountingMessage message = new CountingMessage();
+
+        getTrace().sending(this, null, message);
+
+        for (int i = 0; i < 100 && message.getToStringCount() < 1; i++) {
+            Thread.sleep(10);
+        }
+
+        assert (Trace.isAsync());
+        assert (message.getToStringCount() == 1);
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.ltsllc.miranda.clientinterface.basicclasses;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import com.ltsllc.common.util.ImprovedRandom;
 import com.ltsllc.common.util.Utils;
 import com.ltsllc.miranda.clientinterface.basicclasses.Event;
@@ -96,4 +98,28 @@ public class TestEvent extends TestCase {
         assert (event.matches(event));
         assert (!event.matches(other));
     }
+
+    @Test
+    public void testContentAsBase64 () {
+        Gson gson = new Gson();
+        String json = gson.toJson(getEvent());
+        JsonObject jsonObject = gson.fromJson(json, JsonObject.class);
+
+        assert (jsonObject.get("content").getAsString().equals("AQID"));
+
+        Event event = gson.fromJson(json, Event.class);
+        assert (byteArraysAreEqual(event.getContent(), getEvent().getContent()));
+    }
+
+    @Test
+    public void testContentAsArray () {
+        Gson gson = new Gson();
+        JsonObject jsonObject = gson.toJsonTree(getEvent()).getAsJsonObject();
+        jsonObject.add("content", gson.toJsonTree(new int[] {1, 2, -1}));
+
+        Event event = gson.fromJson(jsonObject, Event.class);
+        byte[] expected = { 1, 2, -1 };
+
+        assert (byteArraysAreEqual(event.getContent(), expected));
+    }
 }
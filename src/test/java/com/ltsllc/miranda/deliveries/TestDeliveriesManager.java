@@ -16,26 +16,54 @@
 
 package com.ltsllc.miranda.deliveries;
 
+import com.ltsllc.clcl.EncryptionException;
+import com.ltsllc.miranda.clientinterface.basicclasses.Event;
+import com.ltsllc.miranda.clientinterface.basicclasses.Subscription;
+import com.ltsllc.miranda.event.EventLog;
+import com.ltsllc.miranda.file.Journal;
 import com.ltsllc.miranda.test.TestCase;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+
+import static org.mockito.Mockito.*;
 
 /**
  * Created by Clark on 5/13/2017.
  */
 public class TestDeliveriesManager extends TestCase {
+    public static final String TEST_DIRECTORY = "testDeliveries";
+
     private DeliveryManager deliveryManager;
+    private EventLog mockEventLog;
+    private ExecutorService mockDeliverers;
 
     public DeliveryManager getDeliveryManager() {
         return deliveryManager;
     }
 
+    public EventLog getMockEventLog() {
+        return mockEventLog;
+    }
+
+    public ExecutorService getMockDeliverers() {
+        return mockDeliverers;
+    }
+
     public void reset () {
         super.reset();
 
         this.deliveryManager = null;
+        this.mockEventLog = null;
+        this.mockDeliverers = null;
     }
 
     @Before
@@ -48,16 +76,211 @@ public class TestDeliveriesManager extends TestCase {
             setupMockMiranda();
             setupMockFileWatcher();
 
-            this.deliveryManager = new DeliveryManager("testdir", 1000000, getMockReader(), getMockWriter());
+            this.mockEventLog = mock(EventLog.class);
+            this.mockDeliverers = mock(ExecutorService.class);
+            this.deliveryManager = new DeliveryManager(TEST_DIRECTORY, getMockReader(), getMockWriter(),
+                    getMockEventLog());
+            getDeliveryManager().getDeliverers().shutdown();
+            getDeliveryManager().setDeliverers(getMockDeliverers());
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    @After
+    public void cleanup () {
+        deleteDirectory(TEST_DIRECTORY);
+    }
+
+    public Subscription createSubscription (Subscription.ErrorPolicies errorPolicy) {
+        return new Subscription("a subscription", "whatever", "a topic", "http://localhost/events", null,
+                errorPolicy);
+    }
+
+    public Event createEvent () {
+        return new Event("whatever", "a guid", "a topic", System.currentTimeMillis(), Event.Methods.POST,
+                new byte[10]);
+    }
+
+    public DeliveryTask lastTask (int times) {
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(getMockDeliverers(), times(times)).execute(captor.capture());
+        return (DeliveryTask) captor.getValue();
+    }
+
     @Test
     public void testConstructor () {
         assert (getDeliveryManager().getName().equals(DeliveryManager.NAME));
         assert (getDeliveryManager().getReader() == getMockReader());
         assert (getDeliveryManager().getWriter() == getMockWriter());
+        assert (getDeliveryManager().getEventLog() == getMockEventLog());
+    }
+
+    @Test
+    public void testAcknowledge () throws IOException {
+        getDeliveryManager().createCursor("a subscription", "a topic");
+
+        boolean first = getDeliveryManager().acknowledge("a subscription", 0);
+        boolean second = getDeliveryManager().acknowledge("a subscription", 2);
+        boolean again = getDeliveryManager().acknowledge("a subscription", 2);
+        boolean noCursor = getDeliveryManager().acknowledge("another subscription", 0);
+
+        assert (first);
+        assert (second);
+        assert (!again);
+        assert (!noCursor);
+
+        assert (getDeliveryManager().isDelivered("a subscription", 2));
+        assert (!getDeliveryManager().isDelivered("a subscription", 1));
+        assert (!getDeliveryManager().isDelivered("another subscription", 0));
+
+        verify(getMockWriter(), times(3)).sendAppend(any(BlockingQueue.class), any(), anyString(), any(byte[].class));
+        verify(getMockWriter(), never()).sendWrite(any(BlockingQueue.class), any(), anyString(), any(byte[].class));
+        assert (getDeliveryManager().getJournalRecords() == 3);
+
+        List<DeliveryCursor> list = DeliveryManager.fromBytes(DeliveryManager.toBytes(
+                Collections.singletonList(getDeliveryManager().getCursor("a subscription"))));
+
+        assert (list.size() == 1);
+        assert (list.get(0).getTopic().equals("a topic"));
+        assert (list.get(0).getAcknowledged() == 0);
+        assert (list.get(0).isAcknowledged(2));
+    }
+
+    @Test
+    public void testNewCursorStartsAtNextEvent () {
+        when(getMockEventLog().getNextSequence("a topic")).thenReturn(1000000L);
+
+        DeliveryCursor cursor = getDeliveryManager().createCursor("a subscription", "a topic");
+
+        assert (cursor.getNextUndelivered() == 1000000);
+        assert (getDeliveryManager().acknowledge("a subscription", 1000000));
+        assert (cursor.getOutOfOrderCount() == 0);
+    }
+
+    @Test
+    public void testSkipExpired () {
+        getDeliveryManager().createCursor("a subscription", "a topic");
+        getDeliveryManager().acknowledge("a subscription", 5);
+
+        when(getMockEventLog().getFirstSequence("a topic")).thenReturn(10L);
+        getDeliveryManager().acknowledge("a subscription", 10);
+
+        DeliveryCursor cursor = getDeliveryManager().getCursor("a subscription");
+        assert (cursor.getAcknowledged() == 10);
+        assert (cursor.getOutOfOrderCount() == 0);
+    }
+
+    @Test
+    public void testCheckpoint () {
+        int interval = Journal.getCheckpointInterval();
+
+        try {
+            Journal.setCheckpointInterval(3);
+
+            getDeliveryManager().createCursor("a subscription", "a topic");
+            getDeliveryManager().acknowledge("a subscription", 0);
+            getDeliveryManager().acknowledge("a subscription", 1);
+
+            verify(getMockWriter(), times(2)).sendAppend(any(BlockingQueue.class), any(), anyString(), any(byte[].class));
+            verify(getMockWriter(), times(1)).sendWrite(any(BlockingQueue.class), any(), anyString(), any(byte[].class));
+            assert (getDeliveryManager().getJournalRecords() == 0);
+        } finally {
+            Journal.setCheckpointInterval(interval);
+        }
+    }
+
+    @Test
+    public void testLoadJournal () throws IOException {
+        List<byte[]> records = new ArrayList<byte[]>();
+        records.add(DeliveryManager.toRecord(DeliveryManager.RecordTypes.Created, "a subscription", "a topic", 0));
+        records.add(DeliveryManager.toRecord(DeliveryManager.RecordTypes.Acknowledged, "a subscription", "a topic", 0));
+        records.add(DeliveryManager.toRecord(DeliveryManager.RecordTypes.Acknowledged, "a subscription", "a topic", 2));
+        records.add(DeliveryManager.toRecord(DeliveryManager.RecordTypes.Created, "another subscription", "a topic", 0));
+        records.add(DeliveryManager.toRecord(DeliveryManager.RecordTypes.Acknowledged, "another subscription", "a topic", 0));
+        records.add(DeliveryManager.toRecord(DeliveryManager.RecordTypes.Removed, "another subscription", "a topic", 0));
+        records.add(DeliveryManager.toRecord(DeliveryManager.RecordTypes.Created, "a third subscription", "a topic", 5));
+        records.add(DeliveryManager.toRecord(DeliveryManager.RecordTypes.Skipped, "a third subscription", "a topic", 8));
+
+        when(getMockReader().readJournal(anyString())).thenReturn(records);
+
+        getDeliveryManager().loadCursors();
+
+        assert (getDeliveryManager().getJournalRecords() == 8);
+        assert (getDeliveryManager().isDelivered("a subscription", 0));
+        assert (getDeliveryManager().isDelivered("a subscription", 2));
+        assert (!getDeliveryManager().isDelivered("a subscription", 1));
+        assert (!getDeliveryManager().isDelivered("another subscription", 0));
+        assert (getDeliveryManager().getCursor("a third subscription").getNextUndelivered() == 8);
+    }
+
+    @Test
+    public void testDeliver () throws IOException, EncryptionException {
+        Event event = createEvent();
+        when(getMockEventLog().getNextSequence("a topic")).thenReturn(0L);
+        getDeliveryManager().addSubscription(createSubscription(Subscription.ErrorPolicies.Retry));
+
+        verify(getMockDeliverers(), never()).execute(any(Runnable.class));
+
+        when(getMockEventLog().getNextSequence("a topic")).thenReturn(2L);
+        when(getMockEventLog().read("a topic", 0)).thenReturn(event);
+        when(getMockEventLog().read("a topic", 1)).thenReturn(event);
+
+        getDeliveryManager().eventsAvailable("a topic");
+        getDeliveryManager().eventsAvailable("a topic");
+
+        DeliveryTask task = lastTask(1);
+        assert (task.getSequence() == 0);
+        assert (task.getEvent() == event);
+        assert (getDeliveryManager().getInFlight().contains("a subscription"));
+
+        NewDeliveryMessage newDeliveryMessage = new NewDeliveryMessage(null, this, "a subscription", 0);
+        DeliveryManagerReadyState readyState = (DeliveryManagerReadyState) getDeliveryManager().getCurrentState();
+        readyState.processMessage(newDeliveryMessage);
+
+        assert (getDeliveryManager().isDelivered("a subscription", 0));
+        assert (lastTask(2).getSequence() == 1);
+
+        getDeliveryManager().delivered("a subscription", 1);
+
+        verify(getMockDeliverers(), times(2)).execute(any(Runnable.class));
+        assert (!getDeliveryManager().getInFlight().contains("a subscription"));
+    }
+
+    @Test
+    public void testDeliveryFailed () throws IOException, EncryptionException {
+        when(getMockEventLog().getNextSequence("a topic")).thenReturn(0L);
+        getDeliveryManager().addSubscription(createSubscription(Subscription.ErrorPolicies.Retry));
+
+        when(getMockEventLog().getNextSequence("a topic")).thenReturn(2L);
+        when(getMockEventLog().read(eq("a topic"), anyLong())).thenReturn(createEvent());
+        getDeliveryManager().eventsAvailable("a topic");
+
+        getDeliveryManager().deliveryFailed("a subscription", 0);
+
+        assert (!getDeliveryManager().isDelivered("a subscription", 0));
+        verify(getMockDeliverers(), times(1)).execute(any(Runnable.class));
+
+        getDeliveryManager().eventsAvailable("a topic");
+
+        assert (lastTask(2).getSequence() == 0);
+
+        getDeliveryManager().getSubscriptions().get("a subscription").setErrorPolicy(Subscription.ErrorPolicies.Drop);
+        getDeliveryManager().deliveryFailed("a subscription", 0);
+
+        assert (getDeliveryManager().isDelivered("a subscription", 0));
+        assert (lastTask(3).getSequence() == 1);
+    }
+
+    @Test
+    public void testSubscriptionDeleted () {
+        getDeliveryManager().addSubscription(createSubscription(Subscription.ErrorPolicies.Retry));
+
+        SubscriptionDeletedMessage message = new SubscriptionDeletedMessage(null, this, "a subscription");
+        DeliveryManagerReadyState readyState = (DeliveryManagerReadyState) getDeliveryManager().getCurrentState();
+        readyState.processMessage(message);
+
+        assert (null == getDeliveryManager().getCursor("a subscription"));
+        assert (!getDeliveryManager().getSubscriptions().containsKey("a subscription"));
     }
 }
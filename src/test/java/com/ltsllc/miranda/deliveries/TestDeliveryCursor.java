@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.deliveries;
+
+import com.ltsllc.miranda.test.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class TestDeliveryCursor extends TestCase {
+    private DeliveryCursor cursor;
+
+    public DeliveryCursor getCursor() {
+        return cursor;
+    }
+
+    public void reset () {
+        super.reset();
+
+        cursor = null;
+    }
+
+    @Before
+    public void setup () {
+        reset();
+
+        super.setup();
+
+        cursor = new DeliveryCursor("a subscription", "a topic", 0);
+    }
+
+    @Test
+    public void testInOrder () {
+        assert (getCursor().getAcknowledged() == -1);
+
+        for (long offset = 0; offset < 10; offset++) {
+            assert (getCursor().acknowledge(offset));
+        }
+
+        assert (getCursor().getAcknowledged() == 9);
+        assert (getCursor().getOutOfOrderCount() == 0);
+        assert (!getCursor().acknowledge(5));
+    }
+
+    @Test
+    public void testOutOfOrder () {
+        getCursor().acknowledge(0);
+        getCursor().acknowledge(2);
+        getCursor().acknowledge(3);
+        getCursor().acknowledge(6);
+
+        assert (getCursor().getAcknowledged() == 0);
+        assert (getCursor().getOutOfOrderCount() == 3);
+        assert (getCursor().isAcknowledged(3));
+        assert (!getCursor().isAcknowledged(1));
+        assert (!getCursor().isAcknowledged(4));
+        assert (!getCursor().acknowledge(2));
+
+        getCursor().acknowledge(1);
+
+        assert (getCursor().getAcknowledged() == 3);
+        assert (getCursor().getNextUndelivered() == 4);
+        assert (getCursor().getOutOfOrderCount() == 1);
+        assert (getCursor().isAcknowledged(6));
+        assert (!getCursor().isAcknowledged(5));
+    }
+
+    @Test
+    public void testWriteTo () throws IOException {
+        getCursor().acknowledge(0);
+        getCursor().acknowledge(1000);
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream);
+        getCursor().writeTo(dataOutputStream);
+        dataOutputStream.close();
+
+        DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
+        DeliveryCursor copy = DeliveryCursor.readFrom(dataInputStream);
+
+        assert (copy.getSubscription().equals("a subscription"));
+        assert (copy.getTopic().equals("a topic"));
+        assert (copy.getAcknowledged() == 0);
+        assert (copy.isAcknowledged(1000));
+        assert (!copy.isAcknowledged(999));
+    }
+
+    @Test
+    public void testStartsAtFirst () {
+        cursor = new DeliveryCursor("a subscription", "a topic", 1000000);
+
+        assert (getCursor().getNextUndelivered() == 1000000);
+        assert (getCursor().isAcknowledged(999999));
+        assert (getCursor().acknowledge(1000000));
+        assert (getCursor().getAcknowledged() == 1000000);
+        assert (getCursor().getOutOfOrderCount() == 0);
+    }
+
+    @Test
+    public void testSkipTo () {
+        getCursor().acknowledge(0);
+        getCursor().acknowledge(5);
+        getCursor().acknowledge(12);
+
+        assert (getCursor().skipTo(5));
+        assert (getCursor().getAcknowledged() == 5);
+        assert (getCursor().getOutOfOrderCount() == 1);
+        assert (getCursor().isAcknowledged(12));
+
+        assert (getCursor().skipTo(12));
+        assert (getCursor().getAcknowledged() == 12);
+        assert (getCursor().getOutOfOrderCount() == 0);
+
+        assert (!getCursor().skipTo(3));
+        assert (getCursor().getAcknowledged() == 12);
+
+        assert (getCursor().skipTo(100));
+        assert (getCursor().getNextUndelivered() == 100);
+    }
+}
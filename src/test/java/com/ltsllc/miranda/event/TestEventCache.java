@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.event;
+
+import com.ltsllc.miranda.clientinterface.basicclasses.Event;
+import com.ltsllc.miranda.test.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestEventCache extends TestCase {
+    private EventCache eventCache;
+
+    public EventCache getEventCache() {
+        return eventCache;
+    }
+
+    public void reset () {
+        super.reset();
+
+        eventCache = null;
+    }
+
+    @Before
+    public void setup () {
+        reset();
+
+        super.setup();
+
+        eventCache = new EventCache(3, 1024 * 1024);
+    }
+
+    public Event createEvent (int size) {
+        return new Event(Event.Methods.POST, new byte[size]);
+    }
+
+    @Test
+    public void testLeastRecentlyUsed () {
+        Event first = createEvent(10);
+        Event second = createEvent(10);
+        Event third = createEvent(10);
+        Event fourth = createEvent(10);
+
+        getEventCache().put(first);
+        getEventCache().put(second);
+        getEventCache().put(third);
+
+        assert (getEventCache().get(first.getGuid()) == first);
+
+        getEventCache().put(fourth);
+
+        assert (getEventCache().size() == 3);
+        assert (getEventCache().get(second.getGuid()) == null);
+        assert (getEventCache().get(first.getGuid()) == first);
+        assert (getEventCache().getHits() == 2);
+        assert (getEventCache().getMisses() == 1);
+        assert (getEventCache().getEvictions() == 1);
+
+        EventCacheGauge gauge = getEventCache().getGauge();
+        assert (gauge.getSize() == 3);
+        assert (gauge.getHits() == 2);
+        assert (gauge.getMisses() == 1);
+        assert (gauge.getEvictions() == 1);
+    }
+
+    @Test
+    public void testAwaitingDelivery () {
+        Event first = createEvent(10);
+        first.addAwaitingDelivery(this);
+        Event second = createEvent(10);
+
+        getEventCache().setMaxCount(1);
+        getEventCache().put(first);
+        getEventCache().put(second);
+
+        assert (getEventCache().size() == 2);
+        assert (getEventCache().getPinnedCount() == 1);
+        assert (getEventCache().getBytes() == EventCache.sizeOf(second));
+        assert (getEventCache().get(first.getGuid()) == first);
+        assert (getEventCache().get(second.getGuid()) == second);
+
+        Event third = createEvent(10);
+        third.addAwaitingDelivery(this);
+        getEventCache().put(third);
+
+        assert (getEventCache().size() == 3);
+        assert (getEventCache().getPinnedCount() == 2);
+
+        first.removeAwaitingDelivery(this);
+
+        assert (getEventCache().releasePinned() == 1);
+        assert (getEventCache().size() == 2);
+        assert (getEventCache().get(second.getGuid()) == null);
+        assert (getEventCache().get(first.getGuid()) == first);
+        assert (getEventCache().get(third.getGuid()) == third);
+    }
+
+    @Test
+    public void testPinnedWhileCached () {
+        Event first = createEvent(10);
+        Event second = createEvent(10);
+
+        getEventCache().setMaxCount(1);
+        getEventCache().put(first);
+        first.addAwaitingDelivery(this);
+        getEventCache().put(second);
+
+        assert (getEventCache().getPinnedCount() == 1);
+        assert (getEventCache().getEvictions() == 0);
+        assert (getEventCache().get(first.getGuid()) == first);
+        assert (getEventCache().getPinnedBytes() == EventCache.sizeOf(first));
+
+        assert (getEventCache().remove(first.getGuid()) == first);
+        assert (getEventCache().getPinnedBytes() == 0);
+    }
+
+    @Test
+    public void testMaxBytes () {
+        getEventCache().setMaxBytes(2 * EventCache.sizeOf(createEvent(1000)));
+
+        for (int i = 0; i < 10; i++) {
+            getEventCache().put(createEvent(1000));
+        }
+
+        assert (getEventCache().size() == 2);
+        assert (getEventCache().getBytes() <= getEventCache().getMaxBytes());
+        assert (getEventCache().getEvictions() == 8);
+    }
+}
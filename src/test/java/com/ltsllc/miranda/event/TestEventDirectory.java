@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.event;
+
+import com.google.gson.Gson;
+import com.ltsllc.clcl.DataKeyCache;
+import com.ltsllc.clcl.EncryptingOutputStream;
+import com.ltsllc.clcl.KeyPair;
+import com.ltsllc.miranda.Version;
+import com.ltsllc.miranda.clientinterface.basicclasses.Event;
+import com.ltsllc.miranda.file.ScanManifest;
+import com.ltsllc.miranda.test.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+
+import static org.mockito.Mockito.*;
+
+public class TestEventDirectory extends TestCase {
+    public static final String TEST_DIRECTORY = "testEventDirectory";
+
+    private EventDirectory eventDirectory;
+    private KeyPair keyPair;
+
+    public EventDirectory getEventDirectory() {
+        return eventDirectory;
+    }
+
+    public KeyPair getKeyPair() {
+        return keyPair;
+    }
+
+    public void reset () {
+        super.reset();
+
+        eventDirectory = null;
+        keyPair = null;
+    }
+
+    @Before
+    public void setup () {
+        try {
+            reset();
+
+            super.setup();
+
+            setupMockMiranda();
+            setupMockFileWatcher();
+
+            keyPair = KeyPair.newKeys();
+            when(getMockReader().getDataKeyCache()).thenReturn(new DataKeyCache(keyPair.getPrivateKey()));
+
+            deleteDirectory(TEST_DIRECTORY);
+            createDirectory(TEST_DIRECTORY);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @After
+    public void cleanup () {
+        deleteDirectory(TEST_DIRECTORY);
+    }
+
+    public void writeEncrypted (File file, byte[] data) throws Exception {
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        EncryptingOutputStream encryptingOutputStream = new EncryptingOutputStream(fileOutputStream,
+                new DataKeyCache(getKeyPair().getPublicKey()));
+        encryptingOutputStream.write(data);
+        encryptingOutputStream.finish();
+        fileOutputStream.close();
+    }
+
+    public List<Event> createEvents () {
+        List<Event> events = new ArrayList<Event>();
+        events.add(new Event("whatever", UUID.randomUUID().toString(), "a topic", System.currentTimeMillis(),
+                Event.Methods.POST, new byte[] { 1, 2, 3 }));
+
+        return events;
+    }
+
+    /**
+     * The manifest only records the files, not what is in them.  After a
+     * restart, a file that has not changed is read again but keeps the
+     * version in the manifest, so the manifest is not written again.
+     */
+    @Test
+    public void testRestart () throws Exception {
+        List<Event> events = createEvents();
+        byte[] data = new Gson().toJson(events).getBytes();
+
+        File file = new File(TEST_DIRECTORY, "old" + EventDirectory.EVENT_FILE);
+        writeEncrypted(file, data);
+
+        eventDirectory = new EventDirectory(TEST_DIRECTORY, 1000, getMockReader(), getMockWriter());
+
+        ArgumentCaptor<String> filename = ArgumentCaptor.forClass(String.class);
+        verify(getMockReader(), times(1)).sendReadMessage(any(BlockingQueue.class), any(), filename.capture());
+        assert (getEventDirectory().getPendingReads() == 1);
+
+        getEventDirectory().fileLoaded(filename.getValue(), data);
+
+        ArgumentCaptor<byte[]> manifest = ArgumentCaptor.forClass(byte[].class);
+        verify(getMockWriter(), times(1)).sendWrite(any(BlockingQueue.class), any(), anyString(), manifest.capture());
+        assert (getEventDirectory().getPendingReads() == 0);
+        assert (getEventDirectory().getMap().size() == 1);
+        assert (!new String(manifest.getValue()).contains(events.get(0).getGuid()));
+
+        Version version = getEventDirectory().getManifest().get(filename.getValue()).getVersion();
+        writeEncrypted(new File(TEST_DIRECTORY, ScanManifest.FILENAME), manifest.getValue());
+
+        eventDirectory = new EventDirectory(TEST_DIRECTORY, 1000, getMockReader(), getMockWriter());
+
+        verify(getMockReader(), times(2)).sendReadMessage(any(BlockingQueue.class), any(), anyString());
+        assert (getEventDirectory().getPendingReads() == 1);
+        assert (version.equals(getEventDirectory().getManifest().get(filename.getValue()).getVersion()));
+
+        getEventDirectory().fileLoaded(filename.getValue(), data);
+
+        verify(getMockWriter(), times(1)).sendWrite(any(BlockingQueue.class), any(), anyString(), any(byte[].class));
+        assert (getEventDirectory().getPendingReads() == 0);
+        assert (getEventDirectory().getMap().containsKey(events.get(0).getKey()));
+    }
+
+    /**
+     * A file that is read again with the same version is not added to the
+     * map again.
+     */
+    @Test
+    public void testUnchangedNotMerged () throws Exception {
+        byte[] data = new Gson().toJson(createEvents()).getBytes();
+        File file = new File(TEST_DIRECTORY, "old" + EventDirectory.EVENT_FILE);
+        writeEncrypted(file, data);
+
+        eventDirectory = new EventDirectory(TEST_DIRECTORY, 1000, getMockReader(), getMockWriter());
+
+        ArgumentCaptor<String> filename = ArgumentCaptor.forClass(String.class);
+        verify(getMockReader(), times(1)).sendReadMessage(any(BlockingQueue.class), any(), filename.capture());
+
+        getEventDirectory().fileLoaded(filename.getValue(), data);
+        assert (getEventDirectory().getMap().size() == 1);
+
+        getEventDirectory().getMap().clear();
+        getEventDirectory().fileLoaded(filename.getValue(), data);
+
+        assert (getEventDirectory().getMap().size() == 0);
+        assert (getEventDirectory().getPendingReads() == 0);
+    }
+}
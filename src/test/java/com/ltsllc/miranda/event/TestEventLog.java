@@ -0,0 +1,270 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.event;
+
+import com.ltsllc.clcl.DataKeyCache;
+import com.ltsllc.clcl.KeyPair;
+import com.ltsllc.miranda.clientinterface.basicclasses.Event;
+import com.ltsllc.miranda.test.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+
+public class TestEventLog extends TestCase {
+    public static final String TEST_DIRECTORY = "testEventLog";
+
+    private static KeyPair keyPair;
+
+    private EventLog eventLog;
+
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    public void reset () {
+        super.reset();
+
+        eventLog = null;
+    }
+
+    @Before
+    public void setup () {
+        try {
+            reset();
+
+            super.setup();
+
+            setuplog4j();
+
+            if (null == keyPair)
+                keyPair = KeyPair.newKeys();
+
+            deleteDirectory(TEST_DIRECTORY);
+            eventLog = createEventLog();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @After
+    public void cleanup () throws Exception {
+        getEventLog().close();
+        deleteDirectory(TEST_DIRECTORY);
+    }
+
+    public EventLog createEventLog () throws Exception {
+        EventLog eventLog = new EventLog(new File(TEST_DIRECTORY), new DataKeyCache(keyPair.getPublicKey()),
+                new DataKeyCache(keyPair.getPrivateKey()));
+        eventLog.setSegmentSize(1024);
+        eventLog.setIndexInterval(256);
+        eventLog.open();
+
+        return eventLog;
+    }
+
+    public Event createEvent (long time, int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+
+        return new Event("whatever", UUID.randomUUID().toString(), "a topic", time, Event.Methods.POST, content);
+    }
+
+    @Test
+    public void testAppendAndRead () throws Exception {
+        Event[] events = new Event[20];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = createEvent(System.currentTimeMillis(), 100);
+            assert (getEventLog().append(events[i]) == i);
+        }
+
+        assert (getEventLog().getSegments().size() > 1);
+
+        for (int i = 0; i < events.length; i++) {
+            Event event = getEventLog().read(i);
+            assert (event.getGuid().equals(events[i].getGuid()));
+            assert (arraysAreEquivalent(event.getContent(), events[i].getContent()));
+
+            event = getEventLog().read(events[i].getGuid());
+            assert (event.getGuid().equals(events[i].getGuid()));
+        }
+
+        assert (getEventLog().read(events.length) == null);
+        assert (getEventLog().read("not there") == null);
+    }
+
+    @Test
+    public void testReopen () throws Exception {
+        Event first = createEvent(System.currentTimeMillis(), 100);
+        Event last = null;
+
+        getEventLog().append(first);
+        for (int i = 1; i < 20; i++) {
+            last = createEvent(System.currentTimeMillis(), 100);
+            getEventLog().append(last);
+        }
+
+        getEventLog().close();
+
+        //
+        // leave half a record at the end of the newest segment, as if an append had been interrupted
+        //
+        File file = getEventLog().getSegments().lastEntry().getValue().getFile();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        long length = randomAccessFile.length();
+        randomAccessFile.seek(length);
+        randomAccessFile.writeInt(1000);
+        randomAccessFile.write(new byte[10]);
+        randomAccessFile.close();
+
+        eventLog = createEventLog();
+
+        assert (getEventLog().size() == 20);
+        assert (getEventLog().getNextOffset() == 20);
+        assert (file.length() == length);
+        assert (getEventLog().read(first.getGuid()).getGuid().equals(first.getGuid()));
+        assert (getEventLog().read(last.getGuid()).getGuid().equals(last.getGuid()));
+
+        Event event = createEvent(System.currentTimeMillis(), 100);
+        assert (getEventLog().append(event) == 20);
+    }
+
+    @Test
+    public void testCorruptRecord () throws Exception {
+        Event last = null;
+        for (int i = 0; i < 20; i++) {
+            last = createEvent(System.currentTimeMillis(), 100);
+            getEventLog().append(last);
+        }
+
+        getEventLog().close();
+
+        //
+        // damage the payload of the last record, leaving its length alone
+        //
+        File file = getEventLog().getSegments().lastEntry().getValue().getFile();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        long length = randomAccessFile.length();
+        randomAccessFile.seek(length - 1);
+        int value = randomAccessFile.read();
+        randomAccessFile.seek(length - 1);
+        randomAccessFile.write(value ^ 0xff);
+        randomAccessFile.close();
+
+        eventLog = createEventLog();
+
+        assert (getEventLog().size() == 19);
+        assert (getEventLog().getNextOffset() == 19);
+        assert (file.length() < length);
+        assert (!getEventLog().contains(last.getGuid()));
+
+        Event event = createEvent(System.currentTimeMillis(), 100);
+        assert (getEventLog().append(event) == 19);
+        assert (getEventLog().read(19).getGuid().equals(event.getGuid()));
+    }
+
+    @Test
+    public void testDeleteExpiredSegments () throws Exception {
+        long now = System.currentTimeMillis();
+        getEventLog().setRetention(1000);
+
+        Event old = createEvent(now - 10000, 100);
+        getEventLog().append(old);
+        for (int i = 1; i < 10; i++) {
+            getEventLog().append(createEvent(now - 10000, 100));
+        }
+
+        Event recent = createEvent(now, 100);
+        getEventLog().append(recent);
+
+        int segments = getEventLog().getSegments().size();
+        int removed = getEventLog().deleteExpiredSegments(now);
+
+        assert (removed > 0);
+        assert (getEventLog().getSegments().size() < segments);
+        assert (getEventLog().size() == 10 - removed + 1);
+        assert (!getEventLog().contains(old.getGuid()));
+        assert (getEventLog().read(0) == null);
+
+        int remaining = 0;
+        for (EventLogSegment segment : getEventLog().getSegments().values()) {
+            remaining += segment.getGuids().size();
+        }
+
+        assert (remaining == getEventLog().size());
+        assert (getEventLog().read(recent.getGuid()) != null);
+    }
+
+    public Event createEvent (String topic, long time) {
+        return new Event("whatever", UUID.randomUUID().toString(), topic, time, Event.Methods.POST, new byte[100]);
+    }
+
+    @Test
+    public void testTopicSequences () throws Exception {
+        Event[] events = new Event[10];
+        for (int i = 0; i < events.length; i++) {
+            String topic = (i % 3 == 0) ? "one topic" : "another topic";
+            events[i] = createEvent(topic, System.currentTimeMillis());
+            getEventLog().append(events[i]);
+        }
+
+        assert (getEventLog().getNextSequence("one topic") == 4);
+        assert (getEventLog().getNextSequence("another topic") == 6);
+        assert (getEventLog().getNextSequence("no topic") == 0);
+        assert (getEventLog().read("one topic", 1).getGuid().equals(events[3].getGuid()));
+        assert (getEventLog().read("another topic", 0).getGuid().equals(events[1].getGuid()));
+        assert (getEventLog().read("one topic", 4) == null);
+
+        getEventLog().close();
+        eventLog = createEventLog();
+
+        assert (getEventLog().getNextSequence("one topic") == 4);
+        assert (getEventLog().read("another topic", 5).getGuid().equals(events[8].getGuid()));
+    }
+
+    @Test
+    public void testSequencesSurviveExpiry () throws Exception {
+        long now = System.currentTimeMillis();
+        getEventLog().setRetention(1000);
+
+        for (int i = 0; i < 10; i++) {
+            getEventLog().append(createEvent("old topic", now - 10000));
+        }
+
+        getEventLog().append(createEvent("new topic", now));
+
+        getEventLog().deleteExpiredSegments(now);
+
+        assert (getEventLog().getFirstSequence("old topic") > 0);
+
+        getEventLog().close();
+        eventLog = createEventLog();
+
+        assert (getEventLog().getNextSequence("old topic") == 10);
+        assert (getEventLog().getFirstSequence("old topic") > 0);
+
+        getEventLog().append(createEvent("old topic", now));
+        assert (getEventLog().getNextSequence("old topic") == 11);
+        assert (getEventLog().read("old topic", 10) != null);
+    }
+}
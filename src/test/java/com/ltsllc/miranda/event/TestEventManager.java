@@ -16,11 +16,25 @@
 
 package com.ltsllc.miranda.event;
 
+import com.google.gson.Gson;
+import com.ltsllc.clcl.DataKeyCache;
+import com.ltsllc.clcl.EncryptingOutputStream;
+import com.ltsllc.clcl.KeyPair;
+import com.ltsllc.miranda.clientinterface.basicclasses.Event;
+import com.ltsllc.miranda.miranda.Miranda;
+import com.ltsllc.miranda.property.MirandaProperties;
 import com.ltsllc.miranda.test.TestCase;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.Mockito.when;
 
 /**
  * Created by Clark on 5/13/2017.
@@ -58,4 +72,57 @@ public class TestEventManager extends TestCase {
         assert (getEventManager().getDirectory().getDirectory().getName().equals("testDirectory"));
         assert (getEventManager().getCurrentState() instanceof EventManagerReadyState);
     }
+
+    @Test
+    public void testLogSettings () throws IOException {
+        setupMirandaProperties();
+        Miranda.properties.setProperty(MirandaProperties.PROPERTY_EVENT_INDEX_INTERVAL, "128");
+        Miranda.properties.setProperty(MirandaProperties.PROPERTY_EVENT_SEGMENT_SIZE, "1024");
+
+        eventManager = new EventManager("testDirectory", 1000000, getMockReader(), getMockWriter());
+
+        assert (getEventManager().getEventLog().getIndexInterval() == 128);
+        assert (getEventManager().getEventLog().getSegmentSize() == 1024);
+    }
+
+    @Test
+    public void testImportLegacyEvents () throws Exception {
+        KeyPair keyPair = KeyPair.newKeys();
+        when(getMockWriter().getDataKeyCache()).thenReturn(new DataKeyCache(keyPair.getPublicKey()));
+        when(getMockReader().getDataKeyCache()).thenReturn(new DataKeyCache(keyPair.getPrivateKey()));
+
+        deleteDirectory("testDirectory");
+        createDirectory("testDirectory");
+
+        List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < 3; i++) {
+            events.add(new Event("whatever", UUID.randomUUID().toString(), "a topic", System.currentTimeMillis(),
+                    Event.Methods.POST, new byte[] { 1, 2, 3 }));
+        }
+
+        FileOutputStream fileOutputStream = new FileOutputStream("testDirectory/old" + EventDirectory.EVENT_FILE);
+        EncryptingOutputStream encryptingOutputStream = new EncryptingOutputStream(fileOutputStream,
+                new DataKeyCache(keyPair.getPublicKey()));
+        encryptingOutputStream.write(new Gson().toJson(events).getBytes());
+        encryptingOutputStream.finish();
+        fileOutputStream.close();
+
+        eventManager = new EventManager("testDirectory", 1, getMockReader(), getMockWriter());
+
+        for (Event event : events) {
+            Event read = getEventManager().readEvent(event.getGuid());
+            assert (null != read);
+            assert (read.getGuid().equals(event.getGuid()));
+        }
+
+        assert (!new File("testDirectory/old" + EventDirectory.EVENT_FILE).exists());
+        assert (new File("testDirectory/old" + EventDirectory.EVENT_FILE + EventManager.IMPORTED_SUFFIX).exists());
+
+        getEventManager().getEventLog().close();
+        eventManager = new EventManager("testDirectory", 1, getMockReader(), getMockWriter());
+
+        assert (getEventManager().getEventLog().size() == 3);
+        getEventManager().getEventLog().close();
+        deleteDirectory("testDirectory");
+    }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.file;
+
+import com.ltsllc.miranda.test.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ContentDigest}.
+ */
+public class TestContentDigest extends TestCase {
+    private ContentDigest contentDigest;
+
+    public ContentDigest getContentDigest() {
+        return contentDigest;
+    }
+
+    public void reset () {
+        super.reset();
+
+        contentDigest = null;
+    }
+
+    @Before
+    public void setup () {
+        reset();
+
+        super.setup();
+
+        contentDigest = new ContentDigest();
+    }
+
+    @Test
+    public void testOrderIndependence () {
+        getContentDigest().add("apple");
+        getContentDigest().add("banana");
+        getContentDigest().add("cherry");
+
+        ContentDigest other = new ContentDigest();
+        other.add("cherry");
+        other.add("apple");
+        other.add("banana");
+
+        assert (getContentDigest().toString().equals(other.toString()));
+    }
+
+    @Test
+    public void testAddAndRemove () {
+        String empty = getContentDigest().toString();
+
+        getContentDigest().add("apple");
+        String apple = getContentDigest().toString();
+
+        getContentDigest().add("banana");
+
+        assert (!getContentDigest().toString().equals(apple));
+
+        getContentDigest().remove("banana");
+
+        assert (getContentDigest().toString().equals(apple));
+
+        getContentDigest().remove("apple");
+
+        assert (getContentDigest().toString().equals(empty));
+    }
+
+    @Test
+    public void testDuplicates () {
+        getContentDigest().add("apple");
+        String apple = getContentDigest().toString();
+
+        getContentDigest().add("apple");
+
+        assert (!getContentDigest().toString().equals(apple));
+    }
+}
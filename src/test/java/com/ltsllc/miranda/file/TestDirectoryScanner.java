@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ltsllc.miranda.file;
+
+import com.ltsllc.miranda.Version;
+import com.ltsllc.miranda.test.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+public class TestDirectoryScanner extends TestCase {
+    public static final String TEST_DIRECTORY = "testDirectoryScanner";
+
+    private DirectoryScanner directoryScanner;
+
+    public DirectoryScanner getDirectoryScanner() {
+        return directoryScanner;
+    }
+
+    public void reset () {
+        super.reset();
+
+        directoryScanner = null;
+    }
+
+    @Before
+    public void setup () {
+        reset();
+
+        super.setup();
+
+        deleteDirectory(TEST_DIRECTORY);
+        new File(TEST_DIRECTORY, "a/b").mkdirs();
+        new File(TEST_DIRECTORY, "c").mkdirs();
+
+        createFile(TEST_DIRECTORY + "/1.event", new byte[] { 1 });
+        createFile(TEST_DIRECTORY + "/a/2.event", new byte[] { 1, 2 });
+        createFile(TEST_DIRECTORY + "/a/b/3.event", new byte[] { 1, 2, 3 });
+        createFile(TEST_DIRECTORY + "/c/4.event", new byte[] { 1, 2, 3, 4 });
+        createFile(TEST_DIRECTORY + "/c/ignored.txt", new byte[] { 1 });
+
+        directoryScanner = new DirectoryScanner(4);
+    }
+
+    @After
+    public void cleanup () {
+        deleteDirectory(TEST_DIRECTORY);
+    }
+
+    public DirectoryScanner.Filter getFilter () {
+        return new DirectoryScanner.Filter() {
+            public boolean isInteresting(String name) {
+                return name.endsWith(".event");
+            }
+        };
+    }
+
+    @Test
+    public void testScan () throws Exception {
+        List<ManifestEntry> entries = getDirectoryScanner().scan(new File(TEST_DIRECTORY), getFilter());
+
+        assert (entries.size() == 4);
+        assert (entries.get(0).getPath().equals(TEST_DIRECTORY + File.separator + "1.event"));
+        assert (entries.get(1).getPath().equals(TEST_DIRECTORY + File.separator + "a" + File.separator + "2.event"));
+        assert (entries.get(2).getPath().endsWith("3.event"));
+        assert (entries.get(2).getSize() == 3);
+        assert (entries.get(3).getPath().endsWith("4.event"));
+        assert (entries.get(3).getLastModified() == new File(entries.get(3).getPath()).lastModified());
+    }
+
+    @Test
+    public void testScanMissingDirectory () throws Exception {
+        List<ManifestEntry> entries = getDirectoryScanner().scan(new File(TEST_DIRECTORY, "missing"), getFilter());
+
+        assert (entries.isEmpty());
+    }
+
+    @Test
+    public void testManifest () throws Exception {
+        ScanManifest scanManifest = new ScanManifest(new File(TEST_DIRECTORY, ScanManifest.FILENAME));
+
+        List<ManifestEntry> changed = scanManifest.update(getDirectoryScanner().scan(new File(TEST_DIRECTORY), getFilter()));
+        assert (changed.size() == 4);
+
+        for (ManifestEntry entry : changed) {
+            scanManifest.setVersion(entry.getPath(), new Version(entry.getPath()));
+        }
+
+        Version version = scanManifest.getVersion();
+
+        ScanManifest restored = new ScanManifest(scanManifest.getFile());
+        restored.fromBytes(scanManifest.toBytes());
+        assert (restored.getVersion().equals(version));
+
+        File file = new File(TEST_DIRECTORY + "/a/2.event");
+        touch(file, file.lastModified() - 10000);
+
+        changed = restored.update(getDirectoryScanner().scan(new File(TEST_DIRECTORY), getFilter()));
+        assert (changed.size() == 1);
+        assert (changed.get(0).getPath().endsWith("2.event"));
+        assert (null == changed.get(0).getVersion());
+        assert (null != restored.get(TEST_DIRECTORY + File.separator + "1.event").getVersion());
+        assert (restored.isDirty());
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ltsllc.miranda.file;
+
+import com.ltsllc.miranda.test.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Tests for {@link IndexedList}; the key of a string is its first character.
+ */
+public class TestIndexedList extends TestCase {
+    public static class FirstCharacterList extends IndexedList<String> {
+        public Object getKey (String element) {
+            return element.length() > 0 ? element.charAt(0) : null;
+        }
+    }
+
+    private FirstCharacterList list;
+
+    public FirstCharacterList getList() {
+        return list;
+    }
+
+    public void reset () {
+        super.reset();
+
+        list = null;
+    }
+
+    @Before
+    public void setup () {
+        reset();
+
+        super.setup();
+
+        list = new FirstCharacterList();
+    }
+
+    @Test
+    public void testAddAndFind () {
+        getList().add("apple");
+        getList().add("banana");
+        getList().add("");
+
+        assert (getList().find('a').equals("apple"));
+        assert (getList().find('b').equals("banana"));
+        assert (getList().find('c') == null);
+        assert (getList().find(null) == null);
+        assert (getList().size() == 3);
+    }
+
+    @Test
+    public void testRemove () {
+        getList().add("apple");
+        getList().add("banana");
+
+        getList().remove("apple");
+
+        assert (getList().find('a') == null);
+        assert (getList().find('b').equals("banana"));
+    }
+
+    @Test
+    public void testDuplicates () {
+        getList().add("apple");
+        getList().add("avocado");
+
+        assert (getList().find('a').equals("apple"));
+
+        getList().remove(0);
+
+        assert (getList().find('a').equals("avocado"));
+
+        getList().remove("avocado");
+
+        assert (!getList().containsKey('a'));
+    }
+
+    @Test
+    public void testIteratorRemove () {
+        getList().add("apple");
+        getList().add("banana");
+
+        Iterator<String> iterator = getList().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().startsWith("b"))
+                iterator.remove();
+        }
+
+        assert (getList().find('b') == null);
+        assert (getList().find('a').equals("apple"));
+    }
+
+    @Test
+    public void testBulkOperations () {
+        List<String> fruit = new ArrayList<String>();
+        fruit.add("apple");
+        fruit.add("banana");
+        fruit.add("cherry");
+
+        getList().addAll(fruit);
+
+        assert (getList().find('c').equals("cherry"));
+
+        List<String> remove = new ArrayList<String>();
+        remove.add("banana");
+        getList().removeAll(remove);
+
+        assert (getList().find('b') == null);
+
+        getList().set(0, "date");
+
+        assert (getList().find('a') == null);
+        assert (getList().find('d').equals("date"));
+
+        getList().clear();
+
+        assert (getList().find('c') == null);
+    }
+
+    @Test
+    public void testDuplicatesPerKey () {
+        getList().add("apple");
+        getList().add("avocado");
+        getList().add("apricot");
+        getList().add("banana");
+
+        getList().remove("avocado");
+
+        assert (getList().find('a').equals("apple"));
+
+        getList().remove("apple");
+
+        assert (getList().find('a').equals("apricot"));
+        assert (getList().find('b').equals("banana"));
+
+        getList().remove("apricot");
+
+        assert (!getList().containsKey('a'));
+    }
+
+    @Test
+    public void testRemoveIf () {
+        getList().add("apple");
+        getList().add("banana");
+        getList().add("blueberry");
+
+        final int[] tests = new int[1];
+        getList().removeIf(new Predicate<String>() {
+            public boolean test(String element) {
+                tests[0]++;
+                return element.startsWith("b");
+            }
+        });
+
+        assert (tests[0] == 3);
+        assert (getList().size() == 1);
+        assert (getList().find('b') == null);
+        assert (getList().find('a').equals("apple"));
+    }
+}
@@ -20,14 +20,17 @@ import com.google.gson.Gson;
 import com.ltsllc.common.util.ImprovedRandom;
 import com.ltsllc.common.util.Utils;
 import com.ltsllc.miranda.Message;
+import com.ltsllc.miranda.Version;
 import com.ltsllc.miranda.clientinterface.basicclasses.NodeElement;
 import com.ltsllc.miranda.cluster.ClusterFile;
 import com.ltsllc.miranda.miranda.Miranda;
+import com.ltsllc.miranda.property.MirandaProperties;
 import com.ltsllc.miranda.test.NodeElementFileCreator;
 import com.ltsllc.miranda.test.TestCase;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 
 import java.io.File;
@@ -69,10 +72,16 @@ public class TestSingleFile extends TestCase {
 
         this.queue = null;
         this.singleFile = null;
+
+        Journal.setEnabled(false);
+        Journal.setCheckpointInterval(Integer.parseInt(MirandaProperties.DEFAULT_FILE_JOURNAL_CHECKPOINT));
+        Journal.setCompactionBacklog(Integer.parseInt(MirandaProperties.DEFAULT_FILE_JOURNAL_COMPACTION_BACKLOG));
     }
 
     @Before
     public void setup () {
+        reset();
+
         super.setup();
 
         setuplog4j();
@@ -316,4 +325,140 @@ public class TestSingleFile extends TestCase {
         verify (getMockWriter(), atLeast(2)).sendWrite(Matchers.any(BlockingQueue.class), Matchers.any(),
                 Matchers.anyString(), Matchers.any(byte[].class));
     }
+
+    public List<NodeElement> randomNodeElements (int count) {
+        ImprovedRandom improvedRandom = new ImprovedRandom(new SecureRandom());
+        List<NodeElement> nodeElements = new ArrayList<NodeElement>();
+        for (int i = 0; i < count; i++) {
+            nodeElements.add(NodeElement.random(improvedRandom));
+        }
+
+        return nodeElements;
+    }
+
+    @Test
+    public void testJournal () throws IOException {
+        setupMockWriter();
+        Journal.setEnabled(true);
+
+        List<NodeElement> nodeElements = randomNodeElements(3);
+        getSingleFile().addObjects(nodeElements);
+        List<NodeElement> removed = new ArrayList<NodeElement>();
+        removed.add(nodeElements.get(1));
+        getSingleFile().removeObjects(removed);
+
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(getMockWriter(), times(2)).sendAppend(Matchers.any(BlockingQueue.class), Matchers.any(),
+                Matchers.eq(TEST_FILE), captor.capture());
+        verify(getMockWriter(), never()).sendWrite(Matchers.any(BlockingQueue.class), Matchers.any(),
+                Matchers.anyString(), Matchers.any(byte[].class));
+        assert (getSingleFile().getJournalRecords() == 2);
+
+        ClusterFile replayed = new ClusterFile(TEST_FILE, getMockReader(), getMockWriter(), getQueue());
+        replayed.replayJournal(captor.getAllValues());
+
+        assert (replayed.getData().size() == 2);
+        assert (replayed.contains(nodeElements.get(0)));
+        assert (!replayed.contains(nodeElements.get(1)));
+        assert (replayed.contains(nodeElements.get(2)));
+        assert (replayed.getJournalRecords() == 2);
+    }
+
+    @Test
+    public void testJournalCheckpoint () {
+        setupMockWriter();
+        Journal.setEnabled(true);
+        Journal.setCheckpointInterval(3);
+
+        for (int i = 0; i < 3; i++) {
+            getSingleFile().addObjects(randomNodeElements(1));
+        }
+
+        verify(getMockWriter(), times(2)).sendAppend(Matchers.any(BlockingQueue.class), Matchers.any(),
+                Matchers.anyString(), Matchers.any(byte[].class));
+        verify(getMockWriter(), times(1)).sendWrite(Matchers.any(BlockingQueue.class), Matchers.any(),
+                Matchers.anyString(), Matchers.any(byte[].class));
+        assert (getSingleFile().getJournalRecords() == 0);
+    }
+
+    @Test
+    public void testCompact () {
+        setupMockWriter();
+        Journal.setEnabled(true);
+        Journal.setCompactionBacklog(1);
+
+        BlockingQueue<Message> writerQueue = new LinkedBlockingQueue<Message>();
+        when(getMockWriter().getQueue()).thenReturn(writerQueue);
+
+        assert (!getSingleFile().compact());
+
+        getSingleFile().addObjects(randomNodeElements(1));
+        getSingleFile().addObjects(randomNodeElements(1));
+
+        writerQueue.add(new Message(Message.Subjects.Write, null, null));
+        writerQueue.add(new Message(Message.Subjects.Write, null, null));
+
+        assert (!getSingleFile().compact());
+        assert (getSingleFile().getCompactionGauge().getDeferred() == 1);
+
+        writerQueue.clear();
+        getSingleFile().performGarbageCollection();
+
+        verify(getMockWriter(), times(1)).sendWrite(Matchers.any(BlockingQueue.class), Matchers.any(),
+                Matchers.eq(TEST_FILE), Matchers.any(byte[].class));
+        assert (getSingleFile().getJournalRecords() == 0);
+
+        CompactionGauge gauge = getSingleFile().getCompactionGauge();
+        assert (gauge.getCompactions() == 1);
+        assert (gauge.getRecordsFolded() == 2);
+        assert (gauge.getBytesWritten() > 0);
+        assert (SingleFile.getCompactionGauges().size() > 0);
+    }
+
+    @Test
+    public void testIndex () {
+        setupMockWriter();
+
+        List<NodeElement> nodeElements = randomNodeElements(100);
+        getSingleFile().addObjects(nodeElements);
+
+        NodeElement copy = new NodeElement(nodeElements.get(42).getDns(), nodeElements.get(42).getPort(),
+                "a different description");
+
+        assert (getSingleFile().find(copy) == nodeElements.get(42));
+
+        List<NodeElement> removed = new ArrayList<NodeElement>();
+        removed.add(copy);
+        getSingleFile().removeObjects(removed);
+
+        assert (!getSingleFile().contains(copy));
+        assert (getSingleFile().contains(nodeElements.get(43)));
+
+        getSingleFile().getData().add(copy);
+
+        assert (getSingleFile().find(nodeElements.get(42)) == copy);
+    }
+
+    @Test
+    public void testIncrementalVersion () {
+        setupMockWriter();
+
+        List<NodeElement> nodeElements = randomNodeElements(10);
+        getSingleFile().addObjects(nodeElements);
+
+        Version before = getSingleFile().getVersion();
+
+        List<NodeElement> added = randomNodeElements(1);
+        getSingleFile().addObjects(added);
+
+        assert (!getSingleFile().getVersion().equals(before));
+
+        getSingleFile().removeObjects(added);
+
+        assert (getSingleFile().getVersion().equals(before));
+
+        getSingleFile().updateVersion();
+
+        assert (getSingleFile().getVersion().equals(before));
+    }
 }
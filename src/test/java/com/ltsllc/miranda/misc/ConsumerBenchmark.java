@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017 Long Term Software LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ltsllc.miranda.misc;
+
+import com.ltsllc.miranda.Consumer;
+import com.ltsllc.miranda.Message;
+import com.ltsllc.miranda.State;
+import com.ltsllc.miranda.StopState;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A throughput benchmark for {@link Consumer#run()}.
+ *
+ * <P>
+ *     Several producer threads flood one Consumer whose state does nothing, and
+ *     the benchmark reports how many messages per second the Consumer gets
+ *     through for each batch size.  A batch size of 1 is the original
+ *     one-take-per-message loop.
+ * </P>
+ *
+ * <P>
+ *     Usage: ConsumerBenchmark [messages per producer] [producers] [batch size...]
+ * </P>
+ */
+public class ConsumerBenchmark {
+    public static class CountingState extends State {
+        private CountDownLatch latch;
+
+        public CountingState (Consumer consumer, CountDownLatch latch) {
+            super(consumer);
+
+            this.latch = latch;
+        }
+
+        public State processMessage (Message message) {
+            latch.countDown();
+
+            if (latch.getCount() == 0)
+                return StopState.getInstance();
+
+            return this;
+        }
+    }
+
+    public static long run (final int messagesPerProducer, int producers, int batchSize) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(messagesPerProducer * producers);
+        final Consumer consumer = new Consumer("benchmark");
+        consumer.setCurrentStateWithoutStart(new CountingState(consumer, latch));
+        consumer.setBatchSize(batchSize);
+
+        long start = System.nanoTime();
+        consumer.start();
+
+        for (int i = 0; i < producers; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    Message message = new Message(Message.Subjects.Version, null, null);
+
+                    try {
+                        for (int count = 0; count < messagesPerProducer; count++) {
+                            consumer.getQueue().put(message);
+                        }
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+
+            thread.start();
+        }
+
+        latch.await();
+        long elapsed = System.nanoTime() - start;
+
+        return (1000000000L * messagesPerProducer * producers) / elapsed;
+    }
+
+    public static void main (String[] argv) throws InterruptedException {
+        Logger.getRootLogger().setLevel(Level.WARN);
+
+        int messagesPerProducer = argv.length > 0 ? Integer.parseInt(argv[0]) : 250000;
+        int producers = argv.length > 1 ? Integer.parseInt(argv[1]) : 4;
+
+        int[] batchSizes = { 1, 32 };
+        if (argv.length > 2) {
+            batchSizes = new int[argv.length - 2];
+            for (int i = 2; i < argv.length; i++) {
+                batchSizes[i - 2] = Integer.parseInt(argv[i]);
+            }
+        }
+
+        //
+        // warm up
+        //
+        for (int batchSize : batchSizes) {
+            run(messagesPerProducer / 10, producers, batchSize);
+        }
+
+        for (int batchSize : batchSizes) {
+            long rate = run(messagesPerProducer, producers, batchSize);
+            System.out.println("batch size " + batchSize + ": " + rate + " messages/second");
+        }
+    }
+}
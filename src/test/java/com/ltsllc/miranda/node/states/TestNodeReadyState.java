@@ -19,6 +19,7 @@ package com.ltsllc.miranda.node.states;
 import com.ltsllc.clcl.JavaKeyStore;
 import com.ltsllc.clcl.PublicKey;
 import com.ltsllc.miranda.Message;
+import com.ltsllc.miranda.Registry;
 import com.ltsllc.miranda.State;
 import com.ltsllc.miranda.Version;
 import com.ltsllc.miranda.clientinterface.MirandaException;
@@ -204,6 +205,7 @@ public class TestNodeReadyState extends TesterNodeState {
             setupMockCluster();
             when(getMockMiranda().getCluster()).thenReturn(getMockCluster());
             when(getMockCluster().getQueue()).thenReturn(queue);
+            Registry.getInstance().register(Cluster.NAME, getMockCluster());
         } else if (file.equalsIgnoreCase(UsersFile.FILE_NAME)) {
             setupMockUsersFile();
             when(getMockMiranda().getUserManager()).thenReturn(getMockUserManager());
@@ -18,10 +18,13 @@ package com.ltsllc.miranda.reader;
 
 import com.google.gson.Gson;
 import com.ltsllc.clcl.EncryptedMessage;
+import com.ltsllc.clcl.EncryptingOutputStream;
 import com.ltsllc.clcl.EncryptionException;
+import com.ltsllc.clcl.KeyPair;
 import com.ltsllc.clcl.PrivateKey;
 import com.ltsllc.common.util.Utils;
 import com.ltsllc.miranda.Message;
+import com.ltsllc.miranda.file.Journal;
 import com.ltsllc.miranda.test.TestCase;
 import org.junit.After;
 import org.junit.Before;
@@ -29,8 +32,10 @@ import org.junit.Test;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.List;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -74,6 +79,7 @@ public class TestReader extends TestCase {
     public void cleanup() {
         System.gc();
         deleteFile(TEST_FILENAME);
+        deleteFile(Journal.getJournalFilename(TEST_FILENAME));
     }
 
     public static final String TEST_FILENAME = "testfile";
@@ -106,6 +112,22 @@ public class TestReader extends TestCase {
         assert (null == generalSecurityException);
     }
 
+    @Test
+    public void testReadEncryptedStream() throws Exception {
+        KeyPair keyPair = KeyPair.newKeys();
+        getReader().setPrivateKey(keyPair.getPrivateKey());
+
+        EncryptingOutputStream encryptingOutputStream = new EncryptingOutputStream(new FileOutputStream(TEST_FILENAME),
+                keyPair.getPublicKey());
+        encryptingOutputStream.write(TEST_FILE_CONTENTS.getBytes());
+        encryptingOutputStream.close();
+
+        Reader.ReadResult result = getReader().read(TEST_FILENAME);
+
+        assert (result.result == ReadResponseMessage.Results.Success);
+        assert (arraysAreEquivalent(result.data, TEST_FILE_CONTENTS.getBytes()));
+    }
+
     @Test
     public void testReadFileDoesNotExist() throws GeneralSecurityException, IOException {
         Reader.ReadResult result = getReader().read("I don't exist");
@@ -133,4 +155,46 @@ public class TestReader extends TestCase {
 
         assert (contains(Message.Subjects.Read, getReader().getQueue()));
     }
+
+    public void createTestJournal (String filename, int records) {
+        EncryptedMessage encryptedMessage = new EncryptedMessage();
+        encryptedMessage.setMessage(TEST_STRING);
+        encryptedMessage.setKey(TEST_STRING);
+        Gson gson = new Gson();
+
+        String[] lines = new String[records];
+        for (int i = 0; i < records; i++) {
+            lines[i] = gson.toJson(encryptedMessage);
+        }
+
+        createFile(Journal.getJournalFilename(filename), lines);
+    }
+
+    @Test
+    public void testReadJournal () throws Exception {
+        createTestJournal(TEST_FILENAME, 3);
+
+        when(getMockPrivateKey().decrypt(Matchers.any(EncryptedMessage.class))).thenReturn(TEST_FILE_CONTENTS.getBytes());
+
+        Reader.ReadResult result = getReader().read(TEST_FILENAME);
+
+        assert (result.result == ReadResponseMessage.Results.Success);
+        assert (null == result.data);
+        assert (result.journal.size() == 3);
+        assert (arraysAreEquivalent(result.journal.get(2), TEST_FILE_CONTENTS.getBytes()));
+    }
+
+    @Test
+    public void testReadJournalTornRecord () throws Exception {
+        createFile(Journal.getJournalFilename(TEST_FILENAME), new String[] {
+                new Gson().toJson(new EncryptedMessage()),
+                "{\"key\":\"hi th"
+        });
+
+        when(getMockPrivateKey().decrypt(Matchers.any(EncryptedMessage.class))).thenReturn(TEST_FILE_CONTENTS.getBytes());
+
+        List<byte[]> records = getReader().readJournal(TEST_FILENAME);
+
+        assert (records.size() == 1);
+    }
 }
@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Mockito.when;
 
@@ -72,4 +73,32 @@ public class TestReaderReadyState extends TestCase {
         assert (nextState == getReaderReadyState());
         assert (contains(Message.Subjects.ReadResponse, queue));
     }
+
+    @Test
+    public void testProcessReadMessageWithPool () throws Exception {
+        ReaderPool readerPool = new ReaderPool(2);
+
+        try {
+            BlockingQueue<Message> queue = new LinkedBlockingQueue<Message>();
+            Reader.ReadResult result = new Reader.ReadResult();
+            result.result = ReadResponseMessage.Results.Success;
+            result.data = "whatever".getBytes();
+            result.filename = "whatever";
+
+            when(getMockReader().read(Matchers.anyString())).thenReturn(result);
+            when(getMockReader().getCurrentState()).thenReturn(getReaderReadyState());
+            when(getMockReader().getPool()).thenReturn(readerPool);
+
+            getReaderReadyState().processMessage(new ReadMessage(queue, this, "one"));
+            getReaderReadyState().processMessage(new ReadMessage(queue, this, "two"));
+
+            Message first = queue.poll(5, TimeUnit.SECONDS);
+            Message second = queue.poll(5, TimeUnit.SECONDS);
+
+            assert (first.getSubject() == Message.Subjects.ReadResponse);
+            assert (second.getSubject() == Message.Subjects.ReadResponse);
+        } finally {
+            readerPool.shutdown();
+        }
+    }
 }
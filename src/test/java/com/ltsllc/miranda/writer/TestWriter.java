@@ -17,10 +17,14 @@
 package com.ltsllc.miranda.writer;
 
 import com.google.gson.Gson;
+import com.ltsllc.clcl.DataKeyCache;
 import com.ltsllc.clcl.EncryptedMessage;
 import com.ltsllc.clcl.EncryptionException;
+import com.ltsllc.clcl.KeyPair;
 import com.ltsllc.clcl.PrivateKey;
 import com.ltsllc.common.util.Utils;
+import com.ltsllc.miranda.file.Journal;
+import com.ltsllc.miranda.file.JournalFile;
 import com.ltsllc.miranda.property.MirandaProperties;
 import com.ltsllc.miranda.test.TestCase;
 import org.apache.log4j.Logger;
@@ -29,14 +33,17 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Matchers;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
+import java.util.List;
 
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 /**
  * Created by Clark on 3/27/2017.
@@ -71,6 +78,8 @@ public class TestWriter extends TestCase {
         String filename = TEST_FILE_NAME + ".backup";
         deleteFile(TEST_FILE_NAME);
         deleteFile(filename);
+        deleteFile(Writer.getBackupFilename(TEST_FILE_NAME, 1));
+        deleteFile(Journal.getJournalFilename(TEST_FILE_NAME));
     }
 
     @Test
@@ -223,6 +232,98 @@ public class TestWriter extends TestCase {
         }
     }
 
+    @Test
+    public void testBackupGenerations() throws Exception {
+        when(getMockPublicKey().encrypt(Matchers.any(byte[].class))).thenReturn(TEST_DATA);
+        getWriter().setBackupGenerations(2);
+
+        getWriter().write(TEST_FILE_NAME, TEST_DATA);
+        getWriter().write(TEST_FILE_NAME, TEST_DATA);
+        getWriter().write(TEST_FILE_NAME, TEST_DATA);
+
+        assert (new File(TEST_FILE_NAME).exists());
+        assert (new File(Writer.getBackupFilename(TEST_FILE_NAME, 0)).exists());
+        assert (new File(Writer.getBackupFilename(TEST_FILE_NAME, 1)).exists());
+        assert (!new File(Writer.getBackupFilename(TEST_FILE_NAME, 2)).exists());
+
+        File directory = new File(TEST_FILE_NAME).getAbsoluteFile().getParentFile();
+        for (String name : directory.list()) {
+            assert (!(name.startsWith(TEST_FILE_NAME) && name.endsWith(Writer.TEMP_SUFFIX)));
+        }
+    }
+
+    public int countLines (String filename) throws IOException {
+        BufferedReader bufferedReader = null;
+        int lines = 0;
+
+        try {
+            bufferedReader = new BufferedReader(new FileReader(filename));
+            while (null != bufferedReader.readLine()) {
+                lines++;
+            }
+        } finally {
+            Utils.closeIgnoreExceptions(bufferedReader);
+        }
+
+        return lines;
+    }
+
+    @Test
+    public void testAppend() throws Exception {
+        KeyPair keyPair = KeyPair.newKeys();
+        writer = new Writer(keyPair.getPublicKey());
+
+        getWriter().append(TEST_FILE_NAME, TEST_DATA);
+        getWriter().append(TEST_FILE_NAME, TEST_DATA);
+        getWriter().closeJournals();
+
+        File journal = new File(Journal.getJournalFilename(TEST_FILE_NAME));
+        assert (JournalFile.isBinary(journal));
+        assert (!new File(TEST_FILE_NAME).exists());
+
+        // the data key is declared once, so the second record is only the key ID, nonce and ciphertext
+        int wrappedKeyLength = getWriter().getDataKeyCache().getCurrentKey().getWrappedKey().length;
+        assert (journal.length() < wrappedKeyLength + 2 * (TEST_DATA.length + 64));
+
+        List<byte[]> records = JournalFile.read(journal, new DataKeyCache(keyPair.getPrivateKey()));
+        assert (records.size() == 2);
+        assert (equivalent(records.get(1), TEST_DATA));
+
+        getWriter().removeJournal(TEST_FILE_NAME);
+
+        assert (!journal.exists());
+    }
+
+    @Test
+    public void testAppendTornRecord() throws Exception {
+        KeyPair keyPair = KeyPair.newKeys();
+        writer = new Writer(keyPair.getPublicKey());
+
+        getWriter().append(TEST_FILE_NAME, TEST_DATA);
+        getWriter().append(TEST_FILE_NAME, TEST_DATA);
+        getWriter().closeJournals();
+
+        File journal = new File(Journal.getJournalFilename(TEST_FILE_NAME));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(journal, "rw");
+        randomAccessFile.setLength(journal.length() - 3);
+        randomAccessFile.close();
+
+        List<byte[]> records = JournalFile.read(journal, new DataKeyCache(keyPair.getPrivateKey()));
+        assert (records.size() == 1);
+    }
+
+    @Test
+    public void testAppendTextJournal() throws Exception {
+        when(getMockPublicKey().encrypt(Matchers.any(byte[].class))).thenReturn(TEST_DATA);
+        String journalFilename = Journal.getJournalFilename(TEST_FILE_NAME);
+        createFile(journalFilename, new String[] { "an older record" });
+
+        getWriter().append(TEST_FILE_NAME, TEST_DATA);
+
+        assert (!JournalFile.isBinary(new File(journalFilename)));
+        assert (countLines(journalFilename) == 2);
+    }
+
     public FileInputStream openFile(String filename) {
         try {
             return new FileInputStream(filename);
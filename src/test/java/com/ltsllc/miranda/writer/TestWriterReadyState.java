@@ -29,7 +29,7 @@ import java.security.GeneralSecurityException;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
-import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.*;
 
 /**
  * Created by Clark on 3/27/2017.
@@ -93,4 +93,41 @@ public class TestWriterReadyState extends TestCase {
         assert (nextState instanceof WriterReadyState);
         assert (contains(Message.Subjects.WriteFailed, queue));
     }
+
+    @Test
+    public void testCoalesceWrites () throws Exception {
+        when(getMockWriter().getCoalesceSize()).thenReturn(32);
+        when(getMockWriter().hasPendingMessages()).thenReturn(true, true, false);
+
+        BlockingQueue<Message> queue = new LinkedBlockingQueue<Message>();
+        byte[] last = { 5, 6, 7, 8 };
+
+        getWriterReadyState().processMessage(new WriteMessage(TEST_FILE_NAME, TEST_DATA, queue, this));
+        getWriterReadyState().processMessage(new WriteMessage(TEST_FILE_NAME, TEST_DATA, queue, this));
+
+        assert (queue.isEmpty());
+        assert (getWriterReadyState().getPendingCount() == 2);
+
+        getWriterReadyState().processMessage(new WriteMessage(TEST_FILE_NAME, last, queue, this));
+
+        verify(getMockWriter(), times(1)).write(Matchers.anyString(), Matchers.any(byte[].class));
+        verify(getMockWriter()).write(TEST_FILE_NAME, last);
+        assert (queue.size() == 3);
+        assert (getWriterReadyState().getPendingCount() == 0);
+    }
+
+    @Test
+    public void testAppendFlushesWrite () throws Exception {
+        when(getMockWriter().getCoalesceSize()).thenReturn(32);
+        when(getMockWriter().hasPendingMessages()).thenReturn(true);
+
+        BlockingQueue<Message> queue = new LinkedBlockingQueue<Message>();
+
+        getWriterReadyState().processMessage(new WriteMessage(TEST_FILE_NAME, TEST_DATA, queue, this));
+        getWriterReadyState().processMessage(new AppendMessage(TEST_FILE_NAME, TEST_DATA, queue, this));
+
+        verify(getMockWriter()).write(TEST_FILE_NAME, TEST_DATA);
+        verify(getMockWriter()).append(TEST_FILE_NAME, TEST_DATA);
+        assert (queue.size() == 2);
+    }
 }